@@ -14,6 +14,7 @@
 package io.prestosql.plugin.hive;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
@@ -21,10 +22,12 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Streams;
 import com.google.common.io.CharStreams;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.Duration;
 import io.prestosql.plugin.hive.HdfsEnvironment.HdfsContext;
 import io.prestosql.plugin.hive.HiveSplit.BucketConversion;
 import io.prestosql.plugin.hive.metastore.Column;
 import io.prestosql.plugin.hive.metastore.Partition;
+import io.prestosql.plugin.hive.metastore.SortingColumn;
 import io.prestosql.plugin.hive.metastore.Table;
 import io.prestosql.plugin.hive.util.HiveBucketing.BucketingVersion;
 import io.prestosql.plugin.hive.util.HiveBucketing.HiveBucketFilter;
@@ -36,6 +39,9 @@ import io.prestosql.plugin.hive.util.ResumableTasks;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.connector.ColumnHandle;
 import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.connector.DynamicFilter;
+import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.NullableValue;
 import io.prestosql.spi.predicate.TupleDomain;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -62,9 +68,11 @@ import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -77,6 +85,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static io.airlift.concurrent.MoreFutures.addExceptionCallback;
+import static io.airlift.concurrent.MoreFutures.toListenableFuture;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_BAD_DATA;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_FILESYSTEM_ERROR;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_INVALID_BUCKET_FILES;
@@ -84,6 +93,7 @@ import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_INVALID_METADATA;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_INVALID_PARTITION_VALUE;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_UNKNOWN_ERROR;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isForceLocalScheduling;
+import static io.prestosql.plugin.hive.HiveSessionProperties.isPropagateTableScanSortingProperties;
 import static io.prestosql.plugin.hive.metastore.MetastoreUtil.getHiveSchema;
 import static io.prestosql.plugin.hive.metastore.MetastoreUtil.getPartitionLocation;
 import static io.prestosql.plugin.hive.s3select.S3SelectPushdown.shouldEnablePushdownForTable;
@@ -100,6 +110,8 @@ import static java.lang.Integer.parseInt;
 import static java.lang.Math.max;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.hadoop.hive.common.FileUtils.HIDDEN_FILES_PATH_FILTER;
 
 public class BackgroundHiveSplitLoader
@@ -115,6 +127,8 @@ public class BackgroundHiveSplitLoader
 
     private final Table table;
     private final TupleDomain<? extends ColumnHandle> compactEffectivePredicate;
+    private final DynamicFilter dynamicFilter;
+    private final long dynamicFilteringProbeBlockingTimeoutMillis;
     private final Optional<BucketSplitInfo> tableBucketInfo;
     private final HdfsEnvironment hdfsEnvironment;
     private final HdfsContext hdfsContext;
@@ -127,6 +141,7 @@ public class BackgroundHiveSplitLoader
     private final ConcurrentLazyQueue<HivePartitionMetadata> partitions;
     private final Deque<Iterator<InternalHiveSplit>> fileIterators = new ConcurrentLinkedDeque<>();
     private final Optional<ValidWriteIdList> validWriteIds;
+    private final Stopwatch stopwatch = Stopwatch.createUnstarted();
 
     // Purpose of this lock:
     // * Write lock: when you need a consistent view across partitions, fileIterators, and hiveSplitSource.
@@ -152,6 +167,8 @@ public class BackgroundHiveSplitLoader
             Table table,
             Iterable<HivePartitionMetadata> partitions,
             TupleDomain<? extends ColumnHandle> compactEffectivePredicate,
+            DynamicFilter dynamicFilter,
+            Duration dynamicFilteringProbeBlockingTimeout,
             Optional<BucketSplitInfo> tableBucketInfo,
             ConnectorSession session,
             HdfsEnvironment hdfsEnvironment,
@@ -164,6 +181,12 @@ public class BackgroundHiveSplitLoader
     {
         this.table = table;
         this.compactEffectivePredicate = compactEffectivePredicate;
+        this.dynamicFilter = requireNonNull(dynamicFilter, "dynamicFilter is null");
+        requireNonNull(dynamicFilteringProbeBlockingTimeout, "dynamicFilteringProbeBlockingTimeout is null");
+        // waiting for the dynamic filter only helps when it can prune partitions
+        boolean filtersPartitions = dynamicFilter.getColumnsCovered().stream()
+                .anyMatch(column -> ((HiveColumnHandle) column).isPartitionKey());
+        this.dynamicFilteringProbeBlockingTimeoutMillis = filtersPartitions ? dynamicFilteringProbeBlockingTimeout.toMillis() : 0;
         this.tableBucketInfo = tableBucketInfo;
         this.loaderConcurrency = loaderConcurrency;
         this.session = session;
@@ -181,6 +204,7 @@ public class BackgroundHiveSplitLoader
     public void start(HiveSplitSource splitSource)
     {
         this.hiveSplitSource = splitSource;
+        this.stopwatch.start();
         for (int i = 0; i < loaderConcurrency; i++) {
             ListenableFuture<?> future = ResumableTasks.submit(executor, new HiveSplitLoaderTask());
             addExceptionCallback(future, hiveSplitSource::fail); // best effort; hiveSplitSource could be already completed
@@ -273,6 +297,14 @@ public class BackgroundHiveSplitLoader
     {
         Iterator<InternalHiveSplit> splits = fileIterators.poll();
         if (splits == null) {
+            // Wait for the dynamic filter before listing any partition, so that partitions can be pruned
+            long timeLeft = dynamicFilteringProbeBlockingTimeoutMillis - stopwatch.elapsed(MILLISECONDS);
+            if (timeLeft > 0 && dynamicFilter.isAwaitable()) {
+                return toListenableFuture(CompletableFuture.anyOf(
+                        dynamicFilter.isBlocked(),
+                        CompletableFuture.runAsync(() -> {}, delayedExecutor(timeLeft, MILLISECONDS, executor))));
+            }
+
             HivePartitionMetadata partition = partitions.poll();
             if (partition == null) {
                 return COMPLETED_FUTURE;
@@ -295,6 +327,10 @@ public class BackgroundHiveSplitLoader
     private ListenableFuture<?> loadPartition(HivePartitionMetadata partition)
             throws IOException
     {
+        if (!partitionMatchesPredicate(partition.getHivePartition(), dynamicFilter.getCurrentPredicate())) {
+            return COMPLETED_FUTURE;
+        }
+
         String partitionName = partition.getHivePartition().getPartitionId();
         Properties schema = getPartitionSchema(table, partition.getPartition());
         List<HivePartitionKey> partitionKeys = getPartitionKeys(table, partition.getPartition());
@@ -457,6 +493,22 @@ public class BackgroundHiveSplitLoader
         return lastResult;
     }
 
+    @VisibleForTesting
+    static boolean partitionMatchesPredicate(HivePartition partition, TupleDomain<ColumnHandle> predicate)
+    {
+        if (predicate.isNone()) {
+            return false;
+        }
+        Map<ColumnHandle, Domain> domains = predicate.getDomains().get();
+        for (Map.Entry<ColumnHandle, NullableValue> entry : partition.getKeys().entrySet()) {
+            Domain allowedDomain = domains.get(entry.getKey());
+            if (allowedDomain != null && !allowedDomain.includesNullableValue(entry.getValue().getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean shouldUseFileSplitsFromInputFormat(InputFormat<?, ?> inputFormat)
     {
         return Arrays.stream(inputFormat.getClass().getAnnotations())
@@ -528,6 +580,19 @@ public class BackgroundHiveSplitLoader
             break;
         }
 
+        if (isPropagateTableScanSortingProperties(session) && !bucketSplitInfo.getSortedBy().isEmpty()) {
+            // the table scan was planned assuming the rows of a bucket are read in sort order by a single split
+            for (int bucket : bucketFiles.keySet()) {
+                if (bucketFiles.get(bucket).size() > 1) {
+                    throw new PrestoException(HIVE_INVALID_BUCKET_FILES, format(
+                            "Hive table '%s' has multiple files for bucket %s of sorted partition %s, which is not supported when propagate_table_scan_sorting_properties is enabled",
+                            table.getSchemaTableName(),
+                            bucket,
+                            splitFactory.getPartitionName()));
+                }
+            }
+        }
+
         // convert files internal splits
         List<InternalHiveSplit> splitList = new ArrayList<>();
         for (int bucketNumber = 0; bucketNumber < bucketCount; bucketNumber++) {
@@ -635,6 +700,7 @@ public class BackgroundHiveSplitLoader
         private final List<HiveColumnHandle> bucketColumns;
         private final int tableBucketCount;
         private final int readBucketCount;
+        private final List<SortingColumn> sortedBy;
         private final IntPredicate bucketFilter;
 
         public static Optional<BucketSplitInfo> createBucketSplitInfo(Optional<HiveBucketHandle> bucketHandle, Optional<HiveBucketFilter> bucketFilter)
@@ -659,14 +725,15 @@ public class BackgroundHiveSplitLoader
             IntPredicate predicate = bucketFilter
                     .<IntPredicate>map(filter -> filter.getBucketsToKeep()::contains)
                     .orElse(bucket -> true);
-            return Optional.of(new BucketSplitInfo(bucketColumns, tableBucketCount, readBucketCount, predicate));
+            return Optional.of(new BucketSplitInfo(bucketColumns, tableBucketCount, readBucketCount, bucketHandle.get().getSortedBy(), predicate));
         }
 
-        private BucketSplitInfo(List<HiveColumnHandle> bucketColumns, int tableBucketCount, int readBucketCount, IntPredicate bucketFilter)
+        private BucketSplitInfo(List<HiveColumnHandle> bucketColumns, int tableBucketCount, int readBucketCount, List<SortingColumn> sortedBy, IntPredicate bucketFilter)
         {
             this.bucketColumns = ImmutableList.copyOf(requireNonNull(bucketColumns, "bucketColumns is null"));
             this.tableBucketCount = tableBucketCount;
             this.readBucketCount = readBucketCount;
+            this.sortedBy = ImmutableList.copyOf(requireNonNull(sortedBy, "sortedBy is null"));
             this.bucketFilter = requireNonNull(bucketFilter, "bucketFilter is null");
         }
 
@@ -685,6 +752,11 @@ public class BackgroundHiveSplitLoader
             return readBucketCount;
         }
 
+        public List<SortingColumn> getSortedBy()
+        {
+            return sortedBy;
+        }
+
         /**
          * Evaluates whether the provided table bucket number passes the bucket predicate.
          * A bucket predicate can be present in two cases:
@@ -16,6 +16,7 @@ package io.prestosql.plugin.hive;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
+import io.prestosql.plugin.hive.metastore.SortingColumn;
 import io.prestosql.plugin.hive.util.HiveBucketing.BucketingVersion;
 
 import java.util.List;
@@ -32,18 +33,22 @@ public class HiveBucketHandle
     // Number of buckets the table will appear to have when the Hive connector
     // presents the table to the engine for read.
     private final int readBucketCount;
+    // Sort order of the rows within each bucket file, as specified in table metadata
+    private final List<SortingColumn> sortedBy;
 
     @JsonCreator
     public HiveBucketHandle(
             @JsonProperty("columns") List<HiveColumnHandle> columns,
             @JsonProperty("bucketingVersion") BucketingVersion bucketingVersion,
             @JsonProperty("tableBucketCount") int tableBucketCount,
-            @JsonProperty("readBucketCount") int readBucketCount)
+            @JsonProperty("readBucketCount") int readBucketCount,
+            @JsonProperty("sortedBy") List<SortingColumn> sortedBy)
     {
         this.columns = requireNonNull(columns, "columns is null");
         this.bucketingVersion = requireNonNull(bucketingVersion, "bucketingVersion is null");
         this.tableBucketCount = tableBucketCount;
         this.readBucketCount = readBucketCount;
+        this.sortedBy = ImmutableList.copyOf(requireNonNull(sortedBy, "sortedBy is null"));
     }
 
     @JsonProperty
@@ -70,6 +75,12 @@ public class HiveBucketHandle
         return readBucketCount;
     }
 
+    @JsonProperty
+    public List<SortingColumn> getSortedBy()
+    {
+        return sortedBy;
+    }
+
     public HiveBucketProperty toTableBucketProperty()
     {
         return new HiveBucketProperty(
@@ -78,6 +89,6 @@ public class HiveBucketHandle
                         .collect(toList()),
                 bucketingVersion,
                 tableBucketCount,
-                ImmutableList.of());
+                sortedBy);
     }
 }
@@ -98,6 +98,7 @@ public class HiveConfig
     private boolean sortedWritingEnabled = true;
 
     private boolean optimizeMismatchedBucketCount;
+    private boolean propagateTableScanSortingProperties;
     private boolean writesToNonManagedTablesEnabled;
     private boolean createsOfNonManagedTablesEnabled = true;
 
@@ -122,6 +123,8 @@ public class HiveConfig
     private Optional<Duration> hiveTransactionHeartbeatInterval = Optional.empty();
     private int hiveTransactionHeartbeatThreads = 5;
 
+    private Duration dynamicFilteringProbeBlockingTimeout = new Duration(0, MINUTES);
+
     public int getMaxInitialSplits()
     {
         return maxInitialSplits;
@@ -566,6 +569,19 @@ public class HiveConfig
         return this;
     }
 
+    public boolean isPropagateTableScanSortingProperties()
+    {
+        return propagateTableScanSortingProperties;
+    }
+
+    @Config("hive.propagate-table-scan-sorting-properties")
+    @ConfigDescription("Use the sorted_by layout of bucketed tables to plan streaming operators. May lead to incorrect results if files are not sorted as declared")
+    public HiveConfig setPropagateTableScanSortingProperties(boolean propagateTableScanSortingProperties)
+    {
+        this.propagateTableScanSortingProperties = propagateTableScanSortingProperties;
+        return this;
+    }
+
     public List<String> getFileStatusCacheTables()
     {
         return fileStatusCacheTables;
@@ -849,4 +865,18 @@ public class HiveConfig
         this.hiveTransactionHeartbeatThreads = hiveTransactionHeartbeatThreads;
         return this;
     }
+
+    @NotNull
+    public Duration getDynamicFilteringProbeBlockingTimeout()
+    {
+        return dynamicFilteringProbeBlockingTimeout;
+    }
+
+    @Config("hive.dynamic-filtering-probe-blocking-timeout")
+    @ConfigDescription("Duration to wait for completion of dynamic filters before enumerating the splits of partitions")
+    public HiveConfig setDynamicFilteringProbeBlockingTimeout(Duration dynamicFilteringProbeBlockingTimeout)
+    {
+        this.dynamicFilteringProbeBlockingTimeout = dynamicFilteringProbeBlockingTimeout;
+        return this;
+    }
 }
@@ -63,8 +63,10 @@ import io.prestosql.spi.connector.Constraint;
 import io.prestosql.spi.connector.ConstraintApplicationResult;
 import io.prestosql.spi.connector.DiscretePredicates;
 import io.prestosql.spi.connector.InMemoryRecordSet;
+import io.prestosql.spi.connector.LocalProperty;
 import io.prestosql.spi.connector.SchemaTableName;
 import io.prestosql.spi.connector.SchemaTablePrefix;
+import io.prestosql.spi.connector.SortingProperty;
 import io.prestosql.spi.connector.SystemTable;
 import io.prestosql.spi.connector.TableNotFoundException;
 import io.prestosql.spi.connector.ViewNotFoundException;
@@ -146,6 +148,7 @@ import static io.prestosql.plugin.hive.HiveSessionProperties.isBucketExecutionEn
 import static io.prestosql.plugin.hive.HiveSessionProperties.isCollectColumnStatisticsOnWrite;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isCreateEmptyBucketFiles;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isOptimizedMismatchedBucketCount;
+import static io.prestosql.plugin.hive.HiveSessionProperties.isPropagateTableScanSortingProperties;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isRespectTableFormat;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isSortedWritingEnabled;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isStatisticsEnabled;
@@ -1815,12 +1818,41 @@ public class HiveMetadata
                             .collect(toImmutableList())));
         }
 
+        Optional<Set<ColumnHandle>> streamPartitioningColumns = Optional.empty();
+        List<LocalProperty<ColumnHandle>> localProperties = ImmutableList.of();
+        if (isPropagateTableScanSortingProperties(session)
+                && hiveTable.getBucketHandle().isPresent()
+                && !hiveTable.getBucketHandle().get().getSortedBy().isEmpty()
+                && hiveTable.getBucketHandle().get().getReadBucketCount() == hiveTable.getBucketHandle().get().getTableBucketCount()) {
+            // Every bucket of a partition is stored in a single file, which is read as a single split (this is verified
+            // when the splits are loaded). So the rows of each split are sorted as declared by the table, and all the rows
+            // with the same partition and bucket column values are read by the same split. When the buckets are read with
+            // a smaller bucket count, each bucket read by the engine consists of multiple files, so an unpartitioned table
+            // would no longer be read as a single stream for each bucket, as implied by the properties.
+            HiveBucketHandle bucketHandle = hiveTable.getBucketHandle().get();
+            streamPartitioningColumns = Optional.of(ImmutableSet.<ColumnHandle>builder()
+                    .addAll(partitionColumns)
+                    .addAll(bucketHandle.getColumns())
+                    .build());
+
+            Map<String, ColumnHandle> columnHandles = getColumnHandles(session, table);
+            ImmutableList.Builder<LocalProperty<ColumnHandle>> sortingProperties = ImmutableList.builder();
+            for (SortingColumn sortingColumn : bucketHandle.getSortedBy()) {
+                ColumnHandle columnHandle = columnHandles.get(sortingColumn.getColumnName());
+                if (columnHandle == null) {
+                    break;
+                }
+                sortingProperties.add(new SortingProperty<>(columnHandle, sortingColumn.getOrder().getSortOrder()));
+            }
+            localProperties = sortingProperties.build();
+        }
+
         return new ConnectorTableProperties(
                 predicate,
                 tablePartitioning,
-                Optional.empty(),
+                streamPartitioningColumns,
                 discretePredicates,
-                ImmutableList.of());
+                localProperties);
     }
 
     @Override
@@ -1928,7 +1960,8 @@ public class HiveMetadata
                         bucketHandle.getColumns(),
                         bucketHandle.getBucketingVersion(),
                         bucketHandle.getTableBucketCount(),
-                        hivePartitioningHandle.getBucketCount())),
+                        hivePartitioningHandle.getBucketCount(),
+                        bucketHandle.getSortedBy())),
                 hiveTable.getBucketFilter(),
                 hiveTable.getAnalyzePartitionValues(),
                 hiveTable.getAnalyzeColumnNames());
@@ -26,9 +26,12 @@ import io.prestosql.plugin.hive.metastore.Column;
 import io.prestosql.plugin.hive.metastore.StorageFormat;
 import io.prestosql.plugin.hive.metastore.Table;
 import io.prestosql.plugin.hive.util.HiveBucketing.HiveBucketFilter;
+import io.prestosql.spi.connector.ColumnHandle;
 import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.connector.DynamicFilter;
 import io.prestosql.spi.connector.SchemaTableName;
 import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.NullableValue;
 import io.prestosql.spi.predicate.TupleDomain;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
@@ -57,6 +60,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -71,6 +76,7 @@ import static io.airlift.units.DataSize.Unit.GIGABYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static io.prestosql.plugin.hive.BackgroundHiveSplitLoader.BucketSplitInfo.createBucketSplitInfo;
 import static io.prestosql.plugin.hive.BackgroundHiveSplitLoader.getBucketNumber;
+import static io.prestosql.plugin.hive.BackgroundHiveSplitLoader.partitionMatchesPredicate;
 import static io.prestosql.plugin.hive.HiveColumnHandle.pathColumnHandle;
 import static io.prestosql.plugin.hive.HiveStorageFormat.CSV;
 import static io.prestosql.plugin.hive.HiveTestUtils.HDFS_ENVIRONMENT;
@@ -86,6 +92,7 @@ import static io.prestosql.spi.predicate.TupleDomain.withColumnDomains;
 import static io.prestosql.spi.type.IntegerType.INTEGER;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
 import static java.lang.String.format;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.testng.Assert.assertEquals;
@@ -116,6 +123,7 @@ public class TestBackgroundHiveSplitLoader
 
     private static final List<Column> PARTITION_COLUMNS = ImmutableList.of(
             new Column("partitionColumn", HIVE_INT, Optional.empty()));
+    private static final HiveColumnHandle PARTITION_COLUMN = new HiveColumnHandle("partitionColumn", HIVE_INT, INTEGER, 0, ColumnType.PARTITION_KEY, Optional.empty());
     private static final List<HiveColumnHandle> BUCKET_COLUMN_HANDLES = ImmutableList.of(
             new HiveColumnHandle("col1", HIVE_INT, INTEGER, 0, ColumnType.REGULAR, Optional.empty()));
 
@@ -195,7 +203,7 @@ public class TestBackgroundHiveSplitLoader
                 RETURNED_PATH_DOMAIN,
                 Optional.of(new HiveBucketFilter(ImmutableSet.of(0, 1))),
                 PARTITIONED_TABLE,
-                Optional.of(new HiveBucketHandle(BUCKET_COLUMN_HANDLES, BUCKETING_V1, BUCKET_COUNT, BUCKET_COUNT)));
+                Optional.of(new HiveBucketHandle(BUCKET_COLUMN_HANDLES, BUCKETING_V1, BUCKET_COUNT, BUCKET_COUNT, ImmutableList.of())));
 
         HiveSplitSource hiveSplitSource = hiveSplitSource(backgroundHiveSplitLoader);
         backgroundHiveSplitLoader.start(hiveSplitSource);
@@ -218,7 +226,8 @@ public class TestBackgroundHiveSplitLoader
                                 getRegularColumnHandles(PARTITIONED_TABLE, TYPE_MANAGER),
                                 BUCKETING_V1,
                                 BUCKET_COUNT,
-                                BUCKET_COUNT)));
+                                BUCKET_COUNT,
+                                ImmutableList.of())));
 
         HiveSplitSource hiveSplitSource = hiveSplitSource(backgroundHiveSplitLoader);
         backgroundHiveSplitLoader.start(hiveSplitSource);
@@ -227,6 +236,83 @@ public class TestBackgroundHiveSplitLoader
         assertEquals(paths.get(0), RETURNED_PATH.toString());
     }
 
+    @Test
+    public void testNoneDynamicFilter()
+            throws Exception
+    {
+        BackgroundHiveSplitLoader backgroundHiveSplitLoader = backgroundHiveSplitLoader(
+                TEST_FILES,
+                new TestingDynamicFilter(PARTITION_COLUMN, completedFuture(null), false, TupleDomain.none()),
+                new Duration(0, TimeUnit.SECONDS));
+
+        HiveSplitSource hiveSplitSource = hiveSplitSource(backgroundHiveSplitLoader);
+        backgroundHiveSplitLoader.start(hiveSplitSource);
+
+        assertEquals(drain(hiveSplitSource).size(), 0);
+    }
+
+    @Test(timeOut = 60_000)
+    public void testWaitForDynamicFilter()
+            throws Exception
+    {
+        CompletableFuture<?> blocked = new CompletableFuture<>();
+        TestingDynamicFilter dynamicFilter = new TestingDynamicFilter(PARTITION_COLUMN, blocked, true, TupleDomain.all());
+        BackgroundHiveSplitLoader backgroundHiveSplitLoader = backgroundHiveSplitLoader(TEST_FILES, dynamicFilter, new Duration(1, TimeUnit.MINUTES));
+
+        HiveSplitSource hiveSplitSource = hiveSplitSource(backgroundHiveSplitLoader);
+        backgroundHiveSplitLoader.start(hiveSplitSource);
+
+        // no partition is loaded before the dynamic filter is collected
+        dynamicFilter.setCurrentPredicate(TupleDomain.none());
+        blocked.complete(null);
+
+        assertEquals(drain(hiveSplitSource).size(), 0);
+    }
+
+    @Test(timeOut = 60_000)
+    public void testDoNotWaitForDynamicFilter()
+            throws Exception
+    {
+        // the dynamic filter of a broadcast join is only collected once the splits are scheduled
+        BackgroundHiveSplitLoader backgroundHiveSplitLoader = backgroundHiveSplitLoader(
+                TEST_FILES,
+                new TestingDynamicFilter(PARTITION_COLUMN, new CompletableFuture<>(), false, TupleDomain.all()),
+                new Duration(1, TimeUnit.HOURS));
+
+        HiveSplitSource hiveSplitSource = hiveSplitSource(backgroundHiveSplitLoader);
+        backgroundHiveSplitLoader.start(hiveSplitSource);
+
+        assertEquals(drain(hiveSplitSource).size(), TEST_FILES.size());
+
+        // a dynamic filter which does not constrain partition columns cannot prune partitions
+        HiveColumnHandle regularColumn = new HiveColumnHandle("regularColumn", HIVE_INT, INTEGER, 0, ColumnType.REGULAR, Optional.empty());
+        backgroundHiveSplitLoader = backgroundHiveSplitLoader(
+                TEST_FILES,
+                new TestingDynamicFilter(regularColumn, new CompletableFuture<>(), true, TupleDomain.all()),
+                new Duration(1, TimeUnit.HOURS));
+
+        hiveSplitSource = hiveSplitSource(backgroundHiveSplitLoader);
+        backgroundHiveSplitLoader.start(hiveSplitSource);
+
+        assertEquals(drain(hiveSplitSource).size(), TEST_FILES.size());
+    }
+
+    @Test
+    public void testPartitionMatchesPredicate()
+    {
+        HiveColumnHandle partitionColumn = new HiveColumnHandle("partitionColumn", HIVE_INT, INTEGER, 0, ColumnType.PARTITION_KEY, Optional.empty());
+        HivePartition partition = new HivePartition(
+                new SchemaTableName("testSchema", "table_name"),
+                "partitionColumn=1",
+                ImmutableMap.<ColumnHandle, NullableValue>of(partitionColumn, NullableValue.of(INTEGER, 1L)));
+
+        assertTrue(partitionMatchesPredicate(partition, TupleDomain.all()));
+        assertFalse(partitionMatchesPredicate(partition, TupleDomain.none()));
+        assertTrue(partitionMatchesPredicate(partition, withColumnDomains(ImmutableMap.<ColumnHandle, Domain>of(partitionColumn, Domain.singleValue(INTEGER, 1L)))));
+        assertFalse(partitionMatchesPredicate(partition, withColumnDomains(ImmutableMap.<ColumnHandle, Domain>of(partitionColumn, Domain.singleValue(INTEGER, 2L)))));
+        assertTrue(partitionMatchesPredicate(partition, withColumnDomains(ImmutableMap.<ColumnHandle, Domain>of(pathColumnHandle(), Domain.singleValue(VARCHAR, utf8Slice("path"))))));
+    }
+
     @Test
     public void testEmptyFileWithNoBlocks()
             throws Exception
@@ -343,6 +429,8 @@ public class TestBackgroundHiveSplitLoader
                     }
                 },
                 TupleDomain.all(),
+                DynamicFilter.EMPTY,
+                new Duration(0, TimeUnit.SECONDS),
                 createBucketSplitInfo(Optional.empty(), Optional.empty()),
                 SESSION,
                 new TestingHdfsEnvironment(TEST_FILES),
@@ -513,6 +601,8 @@ public class TestBackgroundHiveSplitLoader
                 table,
                 hivePartitionMetadatas,
                 compactEffectivePredicate,
+                DynamicFilter.EMPTY,
+                new Duration(0, TimeUnit.SECONDS),
                 createBucketSplitInfo(bucketHandle, hiveBucketFilter),
                 SESSION,
                 hdfsEnvironment,
@@ -524,6 +614,34 @@ public class TestBackgroundHiveSplitLoader
                 validWriteIds);
     }
 
+    private static BackgroundHiveSplitLoader backgroundHiveSplitLoader(
+            List<LocatedFileStatus> files,
+            DynamicFilter dynamicFilter,
+            Duration dynamicFilteringProbeBlockingTimeout)
+    {
+        List<HivePartitionMetadata> hivePartitionMetadatas = ImmutableList.of(
+                new HivePartitionMetadata(
+                        new HivePartition(new SchemaTableName("testSchema", "table_name")),
+                        Optional.empty(),
+                        ImmutableMap.of()));
+
+        return new BackgroundHiveSplitLoader(
+                SIMPLE_TABLE,
+                hivePartitionMetadatas,
+                TupleDomain.all(),
+                dynamicFilter,
+                dynamicFilteringProbeBlockingTimeout,
+                Optional.empty(),
+                SESSION,
+                new TestingHdfsEnvironment(files),
+                new NamenodeStats(),
+                new CachingDirectoryLister(new HiveConfig()),
+                EXECUTOR,
+                2,
+                false,
+                Optional.empty());
+    }
+
     private static BackgroundHiveSplitLoader backgroundHiveSplitLoader(List<LocatedFileStatus> files, DirectoryLister directoryLister)
     {
         List<HivePartitionMetadata> hivePartitionMetadatas = ImmutableList.of(
@@ -539,6 +657,8 @@ public class TestBackgroundHiveSplitLoader
                 SIMPLE_TABLE,
                 hivePartitionMetadatas,
                 TupleDomain.none(),
+                DynamicFilter.EMPTY,
+                new Duration(0, TimeUnit.SECONDS),
                 Optional.empty(),
                 connectorSession,
                 new TestingHdfsEnvironment(files),
@@ -559,6 +679,8 @@ public class TestBackgroundHiveSplitLoader
                 SIMPLE_TABLE,
                 createPartitionMetadataWithOfflinePartitions(),
                 TupleDomain.all(),
+                DynamicFilter.EMPTY,
+                new Duration(0, TimeUnit.SECONDS),
                 createBucketSplitInfo(Optional.empty(), Optional.empty()),
                 connectorSession,
                 new TestingHdfsEnvironment(TEST_FILES),
@@ -847,4 +969,50 @@ public class TestBackgroundHiveSplitLoader
             throw new UnsupportedOperationException();
         }
     }
+
+    private static class TestingDynamicFilter
+            implements DynamicFilter
+    {
+        private final HiveColumnHandle column;
+        private final CompletableFuture<?> blocked;
+        private final boolean awaitable;
+        private volatile TupleDomain<ColumnHandle> currentPredicate;
+
+        public TestingDynamicFilter(HiveColumnHandle column, CompletableFuture<?> blocked, boolean awaitable, TupleDomain<ColumnHandle> currentPredicate)
+        {
+            this.column = column;
+            this.blocked = blocked;
+            this.awaitable = awaitable;
+            this.currentPredicate = currentPredicate;
+        }
+
+        public void setCurrentPredicate(TupleDomain<ColumnHandle> currentPredicate)
+        {
+            this.currentPredicate = currentPredicate;
+        }
+
+        @Override
+        public Set<ColumnHandle> getColumnsCovered()
+        {
+            return ImmutableSet.of(column);
+        }
+
+        @Override
+        public CompletableFuture<?> isBlocked()
+        {
+            return blocked;
+        }
+
+        @Override
+        public boolean isAwaitable()
+        {
+            return awaitable && !blocked.isDone();
+        }
+
+        @Override
+        public TupleDomain<ColumnHandle> getCurrentPredicate()
+        {
+            return currentPredicate;
+        }
+    }
 }
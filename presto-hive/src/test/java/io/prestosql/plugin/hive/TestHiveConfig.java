@@ -72,6 +72,7 @@ public class TestHiveConfig
                 .setBucketExecutionEnabled(true)
                 .setTableStatisticsEnabled(true)
                 .setOptimizeMismatchedBucketCount(false)
+                .setPropagateTableScanSortingProperties(false)
                 .setWritesToNonManagedTablesEnabled(false)
                 .setCreatesOfNonManagedTablesEnabled(true)
                 .setPartitionStatisticsSampleSize(100)
@@ -88,7 +89,8 @@ public class TestHiveConfig
                 .setFileStatusCacheMaxSize(1000 * 1000)
                 .setFileStatusCacheTables("")
                 .setHiveTransactionHeartbeatInterval(null)
-                .setHiveTransactionHeartbeatThreads(5));
+                .setHiveTransactionHeartbeatThreads(5)
+                .setDynamicFilteringProbeBlockingTimeout(new Duration(0, TimeUnit.MINUTES)));
     }
 
     @Test
@@ -133,6 +135,7 @@ public class TestHiveConfig
                 .put("hive.sorted-writing", "false")
                 .put("hive.table-statistics-enabled", "false")
                 .put("hive.optimize-mismatched-bucket-count", "true")
+                .put("hive.propagate-table-scan-sorting-properties", "true")
                 .put("hive.non-managed-table-writes-enabled", "true")
                 .put("hive.non-managed-table-creates-enabled", "false")
                 .put("hive.partition-statistics-sample-size", "1234")
@@ -150,6 +153,7 @@ public class TestHiveConfig
                 .put("hive.file-status-cache-expire-time", "30m")
                 .put("hive.transaction-heartbeat-interval", "10s")
                 .put("hive.transaction-heartbeat-threads", "10")
+                .put("hive.dynamic-filtering-probe-blocking-timeout", "10s")
                 .build();
 
         HiveConfig expected = new HiveConfig()
@@ -191,6 +195,7 @@ public class TestHiveConfig
                 .setSortedWritingEnabled(false)
                 .setTableStatisticsEnabled(false)
                 .setOptimizeMismatchedBucketCount(true)
+                .setPropagateTableScanSortingProperties(true)
                 .setWritesToNonManagedTablesEnabled(true)
                 .setCreatesOfNonManagedTablesEnabled(false)
                 .setPartitionStatisticsSampleSize(1234)
@@ -207,7 +212,8 @@ public class TestHiveConfig
                 .setFileStatusCacheMaxSize(1000)
                 .setFileStatusCacheExpireAfterWrite(new Duration(30, TimeUnit.MINUTES))
                 .setHiveTransactionHeartbeatInterval(new Duration(10, TimeUnit.SECONDS))
-                .setHiveTransactionHeartbeatThreads(10);
+                .setHiveTransactionHeartbeatThreads(10)
+                .setDynamicFilteringProbeBlockingTimeout(new Duration(10, TimeUnit.SECONDS));
 
         assertFullMapping(properties, expected);
     }
@@ -21,6 +21,7 @@ import io.prestosql.sql.analyzer.FeaturesConfig;
 import io.prestosql.sql.planner.Plan;
 import io.prestosql.sql.planner.optimizations.PlanNodeSearcher;
 import io.prestosql.sql.planner.plan.FilterNode;
+import io.prestosql.sql.planner.plan.PlanNode;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 import io.prestosql.sql.planner.plan.ProjectNode;
 import io.prestosql.sql.planner.plan.TableScanNode;
@@ -31,9 +32,16 @@ import io.prestosql.testing.QueryRunner;
 import io.prestosql.testing.ResultWithQueryId;
 import org.testng.annotations.Test;
 
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static io.airlift.testing.Assertions.assertGreaterThan;
 import static io.airlift.tpch.TpchTable.getTables;
+import static io.prestosql.SystemSessionProperties.ENABLE_COORDINATOR_DYNAMIC_FILTERS_DISTRIBUTION;
 import static io.prestosql.SystemSessionProperties.ENABLE_DYNAMIC_FILTERING;
 import static io.prestosql.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
+import static io.prestosql.SystemSessionProperties.JOIN_REORDERING_STRATEGY;
 import static org.testng.Assert.assertEquals;
 
 public class TestHiveDistributedJoinQueriesWithDynamicFiltering
@@ -71,6 +79,78 @@ public class TestHiveDistributedJoinQueriesWithDynamicFiltering
         assertEquals(probeStats.getInputPositions(), 0L);
     }
 
+    @Test
+    public void testPartitionsPrunedDuringSplitEnumeration()
+    {
+        assertUpdate("CREATE TABLE orders_partitioned_by_key WITH (partitioned_by = ARRAY['part']) AS " +
+                "SELECT orderkey, totalprice, orderkey % 10 part FROM orders", "SELECT count(*) FROM orders");
+        try {
+            long expectedRowCount = (long) computeScalar("SELECT count(*) FROM orders WHERE orderkey % 10 = 1");
+            long matchingFileCount = (long) computeScalar("SELECT count(DISTINCT \"$path\") FROM orders_partitioned_by_key WHERE part = 1");
+            long fileCount = (long) computeScalar("SELECT count(DISTINCT \"$path\") FROM orders_partitioned_by_key");
+
+            // the split loader waits for the dynamic filter collected by the coordinator from the build side of the partitioned join
+            Session session = Session.builder(getSession())
+                    .setSystemProperty(JOIN_DISTRIBUTION_TYPE, FeaturesConfig.JoinDistributionType.PARTITIONED.name())
+                    .setSystemProperty(JOIN_REORDERING_STRATEGY, FeaturesConfig.JoinReorderingStrategy.NONE.name())
+                    .setSystemProperty(ENABLE_COORDINATOR_DYNAMIC_FILTERS_DISTRIBUTION, "true")
+                    .setCatalogSessionProperty("hive", "dynamic_filtering_probe_blocking_timeout", "1m")
+                    .build();
+            DistributedQueryRunner runner = (DistributedQueryRunner) getQueryRunner();
+            ResultWithQueryId<MaterializedResult> result = runner.executeWithQueryId(
+                    session,
+                    "SELECT count(*) FROM orders_partitioned_by_key o JOIN supplier s ON o.part = s.suppkey AND s.name = 'Supplier#000000001'");
+            assertEquals(result.getResult().getOnlyValue(), expectedRowCount);
+
+            // only the files of the matching partition are split
+            OperatorStats probeStats = searchScanOperatorStats(result.getQueryId(), "tpch:orders_partitioned_by_key");
+            assertEquals((long) probeStats.getTotalDrivers(), matchingFileCount);
+            assertGreaterThan(fileCount, matchingFileCount);
+
+            // the domains of broadcast joins are reported to the coordinator as well
+            Session broadcastSession = Session.builder(session)
+                    .setSystemProperty(JOIN_DISTRIBUTION_TYPE, FeaturesConfig.JoinDistributionType.BROADCAST.name())
+                    .setCatalogSessionProperty("hive", "dynamic_filtering_probe_blocking_timeout", "0s")
+                    .build();
+            assertQuery(
+                    broadcastSession,
+                    "SELECT count(*) FROM orders_partitioned_by_key o JOIN supplier s ON o.part = s.suppkey AND s.name = 'Supplier#000000001'",
+                    "VALUES " + expectedRowCount);
+        }
+        finally {
+            assertUpdate("DROP TABLE orders_partitioned_by_key");
+        }
+    }
+
+    private OperatorStats searchScanOperatorStats(QueryId queryId, String tableName)
+    {
+        DistributedQueryRunner runner = (DistributedQueryRunner) getQueryRunner();
+        Plan plan = runner.getQueryPlan(queryId);
+        // the table scan is executed by a single operator together with the filters and projections on top of it
+        Set<PlanNodeId> nodeIds = PlanNodeSearcher.searchFrom(plan.getRoot())
+                .where(node -> isScan(node, tableName))
+                .findAll()
+                .stream()
+                .map(PlanNode::getId)
+                .collect(toImmutableSet());
+        return runner.getCoordinator()
+                .getQueryManager()
+                .getFullQueryInfo(queryId)
+                .getQueryStats()
+                .getOperatorSummaries()
+                .stream()
+                .filter(summary -> nodeIds.contains(summary.getPlanNodeId()))
+                .collect(MoreCollectors.onlyElement());
+    }
+
+    private static boolean isScan(PlanNode node, String tableName)
+    {
+        if (node instanceof ProjectNode || node instanceof FilterNode) {
+            return isScan(getOnlyElement(node.getSources()), tableName);
+        }
+        return node instanceof TableScanNode && tableName.equals(((TableScanNode) node).getTable().getConnectorHandle().toString());
+    }
+
     private OperatorStats searchScanFilterAndProjectOperatorStats(QueryId queryId, String tableName)
     {
         DistributedQueryRunner runner = (DistributedQueryRunner) getQueryRunner();
@@ -27,6 +27,8 @@ import io.prestosql.metadata.Metadata;
 import io.prestosql.metadata.QualifiedObjectName;
 import io.prestosql.metadata.TableHandle;
 import io.prestosql.metadata.TableMetadata;
+import io.prestosql.operator.OperatorStats;
+import io.prestosql.spi.QueryId;
 import io.prestosql.spi.connector.CatalogSchemaTableName;
 import io.prestosql.spi.connector.ColumnMetadata;
 import io.prestosql.spi.connector.Constraint;
@@ -36,6 +38,7 @@ import io.prestosql.spi.type.DateType;
 import io.prestosql.spi.type.TimestampType;
 import io.prestosql.spi.type.Type;
 import io.prestosql.sql.planner.Plan;
+import io.prestosql.sql.planner.plan.AggregationNode;
 import io.prestosql.sql.planner.plan.ExchangeNode;
 import io.prestosql.sql.planner.planprinter.IoPlanPrinter.ColumnConstraint;
 import io.prestosql.sql.planner.planprinter.IoPlanPrinter.EstimatedStatsAndCost;
@@ -72,6 +75,7 @@ import java.util.stream.LongStream;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.io.Files.asCharSink;
 import static com.google.common.io.Files.createTempDir;
@@ -84,6 +88,7 @@ import static io.prestosql.SystemSessionProperties.CONCURRENT_LIFESPANS_PER_NODE
 import static io.prestosql.SystemSessionProperties.DYNAMIC_SCHEDULE_FOR_GROUPED_EXECUTION;
 import static io.prestosql.SystemSessionProperties.GROUPED_EXECUTION;
 import static io.prestosql.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
+import static io.prestosql.SystemSessionProperties.MERGE_JOIN_ENABLED;
 import static io.prestosql.plugin.hive.HiveColumnHandle.BUCKET_COLUMN_NAME;
 import static io.prestosql.plugin.hive.HiveColumnHandle.FILE_MODIFIED_TIME_COLUMN_NAME;
 import static io.prestosql.plugin.hive.HiveColumnHandle.FILE_SIZE_COLUMN_NAME;
@@ -111,6 +116,7 @@ import static io.prestosql.spi.type.VarcharType.VARCHAR;
 import static io.prestosql.spi.type.VarcharType.createUnboundedVarcharType;
 import static io.prestosql.spi.type.VarcharType.createVarcharType;
 import static io.prestosql.sql.analyzer.FeaturesConfig.JoinDistributionType.BROADCAST;
+import static io.prestosql.sql.analyzer.FeaturesConfig.JoinDistributionType.PARTITIONED;
 import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
 import static io.prestosql.sql.planner.planprinter.PlanPrinter.textLogicalPlan;
 import static io.prestosql.testing.MaterializedResult.resultBuilder;
@@ -3756,6 +3762,113 @@ public class TestHiveIntegrationSmokeTest
         };
     }
 
+    @Test
+    public void testStreamingAggregationOverSortedBucketedTable()
+    {
+        try {
+            assertUpdate(
+                    "CREATE TABLE test_sorted_aggregation\n" +
+                            "WITH (bucket_count = 7, bucketed_by = ARRAY['custkey'], sorted_by = ARRAY['custkey', 'orderstatus']) AS\n" +
+                            "SELECT custkey, orderstatus, totalprice FROM orders",
+                    15000);
+
+            Session sortedScan = Session.builder(getSession())
+                    .setCatalogSessionProperty(catalog, "propagate_table_scan_sorting_properties", "true")
+                    .build();
+
+            @Language("SQL") String query = "SELECT custkey, orderstatus, count(*), max(totalprice) FROM test_sorted_aggregation GROUP BY custkey, orderstatus";
+            @Language("SQL") String expected = "SELECT custkey, orderstatus, count(*), max(totalprice) FROM orders GROUP BY custkey, orderstatus";
+
+            assertQuery(getSession(), query, expected, assertStreamingAggregation(false));
+            assertQuery(sortedScan, query, expected, assertStreamingAggregation(true));
+
+            // grouping on a column the table is not sorted on
+            assertQuery(
+                    sortedScan,
+                    "SELECT custkey, totalprice, count(*) FROM test_sorted_aggregation GROUP BY custkey, totalprice",
+                    "SELECT custkey, totalprice, count(*) FROM orders GROUP BY custkey, totalprice",
+                    assertStreamingAggregation(false));
+        }
+        finally {
+            assertUpdate("DROP TABLE IF EXISTS test_sorted_aggregation");
+        }
+    }
+
+    @Test
+    public void testMergeJoinOverSortedBucketedTables()
+    {
+        try {
+            assertUpdate(
+                    "CREATE TABLE test_merge_join_orders\n" +
+                            "WITH (bucket_count = 7, bucketed_by = ARRAY['orderkey'], sorted_by = ARRAY['orderkey']) AS\n" +
+                            "SELECT orderkey, orderstatus FROM orders",
+                    15000);
+            assertUpdate(
+                    "CREATE TABLE test_merge_join_lineitem\n" +
+                            "WITH (bucket_count = 7, bucketed_by = ARRAY['orderkey'], sorted_by = ARRAY['orderkey']) AS\n" +
+                            "SELECT orderkey, linenumber FROM lineitem",
+                    60175);
+            assertUpdate(
+                    "CREATE TABLE test_merge_join_orders_partitioned\n" +
+                            "WITH (bucket_count = 7, bucketed_by = ARRAY['orderkey'], sorted_by = ARRAY['orderkey'], partitioned_by = ARRAY['ds']) AS\n" +
+                            "SELECT orderkey, orderstatus, orderkey % 3 ds FROM orders",
+                    15000);
+            assertUpdate(
+                    "CREATE TABLE test_merge_join_lineitem_partitioned\n" +
+                            "WITH (bucket_count = 7, bucketed_by = ARRAY['orderkey'], sorted_by = ARRAY['orderkey'], partitioned_by = ARRAY['ds']) AS\n" +
+                            "SELECT orderkey, linenumber, orderkey % 3 ds FROM lineitem",
+                    60175);
+
+            Session mergeJoin = Session.builder(getSession())
+                    .setSystemProperty(MERGE_JOIN_ENABLED, "true")
+                    .setSystemProperty(JOIN_DISTRIBUTION_TYPE, PARTITIONED.name())
+                    .setSystemProperty(COLOCATED_JOIN, "true")
+                    .setSystemProperty(GROUPED_EXECUTION, "true")
+                    .setCatalogSessionProperty(catalog, "propagate_table_scan_sorting_properties", "true")
+                    .build();
+
+            @Language("SQL") String expected = "SELECT o.orderkey, o.orderstatus, l.linenumber FROM orders o JOIN lineitem l ON o.orderkey = l.orderkey";
+
+            @Language("SQL") String query = "SELECT o.orderkey, o.orderstatus, l.linenumber FROM test_merge_join_orders o JOIN test_merge_join_lineitem l ON o.orderkey = l.orderkey";
+            assertQuery(mergeJoin, query, expected);
+            assertTrue(getOperatorTypes(mergeJoin, query).contains("MergeJoinOperator"));
+
+            // every bucket of a partitioned table is read by one split for each partition, so the splits of a bucket are not sorted with respect to each other
+            query = "SELECT o.orderkey, o.orderstatus, l.linenumber FROM test_merge_join_orders_partitioned o JOIN test_merge_join_lineitem_partitioned l ON o.ds = l.ds AND o.orderkey = l.orderkey";
+            assertQuery(mergeJoin, query, expected);
+            assertFalse(getOperatorTypes(mergeJoin, query).contains("MergeJoinOperator"));
+        }
+        finally {
+            assertUpdate("DROP TABLE IF EXISTS test_merge_join_orders");
+            assertUpdate("DROP TABLE IF EXISTS test_merge_join_lineitem");
+            assertUpdate("DROP TABLE IF EXISTS test_merge_join_orders_partitioned");
+            assertUpdate("DROP TABLE IF EXISTS test_merge_join_lineitem_partitioned");
+        }
+    }
+
+    private Set<String> getOperatorTypes(Session session, @Language("SQL") String sql)
+    {
+        DistributedQueryRunner queryRunner = (DistributedQueryRunner) getQueryRunner();
+        QueryId queryId = queryRunner.executeWithQueryId(session, sql).getQueryId();
+        return queryRunner.getCoordinator()
+                .getQueryManager()
+                .getFullQueryInfo(queryId)
+                .getQueryStats()
+                .getOperatorSummaries()
+                .stream()
+                .map(OperatorStats::getOperatorType)
+                .collect(toImmutableSet());
+    }
+
+    private Consumer<Plan> assertStreamingAggregation(boolean expectedStreaming)
+    {
+        return plan -> assertEquals(
+                searchFrom(plan.getRoot())
+                        .where(node -> node instanceof AggregationNode && ((AggregationNode) node).isStreamable())
+                        .matches(),
+                expectedStreaming);
+    }
+
     @Test
     public void testRcTextCharDecoding()
     {
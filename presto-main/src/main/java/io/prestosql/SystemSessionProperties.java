@@ -35,6 +35,7 @@ import java.util.OptionalInt;
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.prestosql.spi.StandardErrorCode.INVALID_SESSION_PROPERTY;
 import static io.prestosql.spi.session.PropertyMetadata.booleanProperty;
+import static io.prestosql.spi.session.PropertyMetadata.doubleProperty;
 import static io.prestosql.spi.session.PropertyMetadata.enumProperty;
 import static io.prestosql.spi.session.PropertyMetadata.integerProperty;
 import static io.prestosql.spi.session.PropertyMetadata.stringProperty;
@@ -120,10 +121,29 @@ public final class SystemSessionProperties
     public static final String PREDICATE_PUSHDOWN_USE_TABLE_PROPERTIES = "predicate_pushdown_use_table_properties";
     public static final String LATE_MATERIALIZATION = "late_materialization";
     public static final String ENABLE_DYNAMIC_FILTERING = "enable_dynamic_filtering";
+    public static final String ENABLE_COORDINATOR_DYNAMIC_FILTERS_DISTRIBUTION = "enable_coordinator_dynamic_filters_distribution";
     public static final String QUERY_MAX_MEMORY_PER_NODE = "query_max_memory_per_node";
     public static final String QUERY_MAX_TOTAL_MEMORY_PER_NODE = "query_max_total_memory_per_node";
     public static final String DYNAMIC_FILTERING_MAX_PER_DRIVER_ROW_COUNT = "dynamic_filtering_max_per_driver_row_count";
     public static final String DYNAMIC_FILTERING_MAX_PER_DRIVER_SIZE = "dynamic_filtering_max_per_driver_size";
+    public static final String DYNAMIC_FILTERING_BLOOM_FILTER_SIZE = "dynamic_filtering_bloom_filter_size";
+    public static final String TASK_RETRY_ENABLED = "task_retry_enabled";
+    public static final String TASK_MAX_RETRIES = "task_max_retries";
+    public static final String ADAPTIVE_JOIN_REORDERING_ENABLED = "adaptive_join_reordering_enabled";
+    public static final String JOIN_SKEW_SPLITTING_ENABLED = "join_skew_splitting_enabled";
+    public static final String JOIN_SKEW_FACTOR = "join_skew_factor";
+    public static final String JOIN_SKEW_MIN_PARTITION_SIZE = "join_skew_min_partition_size";
+    public static final String ADAPTIVE_PARTIAL_AGGREGATION_ENABLED = "adaptive_partial_aggregation_enabled";
+    public static final String ADAPTIVE_PARTIAL_AGGREGATION_MIN_ROWS = "adaptive_partial_aggregation_min_rows";
+    public static final String ADAPTIVE_PARTIAL_AGGREGATION_UNIQUE_ROWS_RATIO_THRESHOLD = "adaptive_partial_aggregation_unique_rows_ratio_threshold";
+    public static final String PARTITIONED_AGGREGATION_SPILL_ENABLED = "partitioned_aggregation_spill_enabled";
+    public static final String JOIN_HASH_OFF_HEAP_ENABLED = "join_hash_off_heap_enabled";
+    public static final String FLAT_HASH_AGGREGATION_ENABLED = "flat_hash_aggregation_enabled";
+    public static final String DIRECT_GROUP_BY_HASH_ENABLED = "direct_group_by_hash_enabled";
+    public static final String FUSED_AGGREGATION_ENABLED = "fused_aggregation_enabled";
+    public static final String JOIN_BLOOM_FILTER_ENABLED = "join_bloom_filter_enabled";
+    public static final String RADIX_PARTITIONED_JOIN_ENABLED = "radix_partitioned_join_enabled";
+    public static final String MERGE_JOIN_ENABLED = "merge_join_enabled";
     public static final String IGNORE_DOWNSTREAM_PREFERENCES = "ignore_downstream_preferences";
 
     private final List<PropertyMetadata<?>> sessionProperties;
@@ -528,6 +548,11 @@ public final class SystemSessionProperties
                         "Experimental: Enable dynamic filtering",
                         featuresConfig.isEnableDynamicFiltering(),
                         false),
+                booleanProperty(
+                        ENABLE_COORDINATOR_DYNAMIC_FILTERS_DISTRIBUTION,
+                        "Experimental: Enable distribution of dynamic filters from the coordinator to all workers",
+                        featuresConfig.isEnableCoordinatorDynamicFiltersDistribution(),
+                        false),
                 dataSizeProperty(
                         QUERY_MAX_MEMORY_PER_NODE,
                         "Maximum amount of memory a query can use per node",
@@ -548,6 +573,96 @@ public final class SystemSessionProperties
                         "Experimental: maximum number of bytes to be collected for dynamic filtering per-driver",
                         featuresConfig.getDynamicFilteringMaxPerDriverSize(),
                         false),
+                dataSizeProperty(
+                        DYNAMIC_FILTERING_BLOOM_FILTER_SIZE,
+                        "Experimental: size of the Bloom filters collected per-driver when the build side is too large, used by the probe-side table scans of the same task",
+                        featuresConfig.getDynamicFilteringBloomFilterSize(),
+                        false),
+                booleanProperty(
+                        TASK_RETRY_ENABLED,
+                        "Experimental: Spool task output to the exchange storage and retry failed tasks on other nodes",
+                        featuresConfig.isTaskRetryEnabled(),
+                        false),
+                integerProperty(
+                        TASK_MAX_RETRIES,
+                        "Experimental: Maximum number of times a failed task is retried",
+                        featuresConfig.getTaskMaxRetries(),
+                        false),
+                booleanProperty(
+                        ADAPTIVE_JOIN_REORDERING_ENABLED,
+                        "Experimental: Choose the build side of partitioned joins from the actual size of their inputs, when task output is spooled",
+                        featuresConfig.isAdaptiveJoinReorderingEnabled(),
+                        false),
+                booleanProperty(
+                        JOIN_SKEW_SPLITTING_ENABLED,
+                        "Experimental: Split skewed partitions of partitioned joins over multiple tasks, when task output is spooled",
+                        featuresConfig.isJoinSkewSplittingEnabled(),
+                        false),
+                integerProperty(
+                        JOIN_SKEW_FACTOR,
+                        "Experimental: A join partition is skewed when its probe side is this many times larger than the median partition",
+                        featuresConfig.getJoinSkewFactor(),
+                        false),
+                dataSizeProperty(
+                        JOIN_SKEW_MIN_PARTITION_SIZE,
+                        "Experimental: Minimum size of the probe side of a join partition for it to be considered skewed",
+                        featuresConfig.getJoinSkewMinPartitionSize(),
+                        false),
+                booleanProperty(
+                        ADAPTIVE_PARTIAL_AGGREGATION_ENABLED,
+                        "Experimental: Stop aggregating in partial aggregations which do not reduce the number of rows",
+                        featuresConfig.isAdaptivePartialAggregationEnabled(),
+                        false),
+                integerProperty(
+                        ADAPTIVE_PARTIAL_AGGREGATION_MIN_ROWS,
+                        "Experimental: Minimum number of rows a partial aggregation must process before it can be disabled",
+                        featuresConfig.getAdaptivePartialAggregationMinRows(),
+                        false),
+                doubleProperty(
+                        ADAPTIVE_PARTIAL_AGGREGATION_UNIQUE_ROWS_RATIO_THRESHOLD,
+                        "Experimental: Disable a partial aggregation when the ratio of its output rows to its input rows exceeds this threshold",
+                        featuresConfig.getAdaptivePartialAggregationUniqueRowsRatioThreshold(),
+                        false),
+                booleanProperty(
+                        PARTITIONED_AGGREGATION_SPILL_ENABLED,
+                        "Experimental: Spill hash aggregations in partitions of the group by hash, instead of as sorted runs which are merged",
+                        featuresConfig.isPartitionedAggregationSpillEnabled(),
+                        false),
+                booleanProperty(
+                        JOIN_HASH_OFF_HEAP_ENABLED,
+                        "Experimental: Keep the hash tables and position links of join build sides in direct memory",
+                        featuresConfig.isJoinHashOffHeapEnabled(),
+                        false),
+                booleanProperty(
+                        FLAT_HASH_AGGREGATION_ENABLED,
+                        "Experimental: Keep group by keys and fixed size aggregation states together in a flat hash table",
+                        featuresConfig.isFlatHashAggregationEnabled(),
+                        false),
+                booleanProperty(
+                        DIRECT_GROUP_BY_HASH_ENABLED,
+                        "Experimental: Look up groups of small range integer keys by array index instead of hashing",
+                        featuresConfig.isDirectGroupByHashEnabled(),
+                        false),
+                booleanProperty(
+                        FUSED_AGGREGATION_ENABLED,
+                        "Experimental: Compile all aggregations of a flat hash aggregation into a single accumulator",
+                        featuresConfig.isFusedAggregationEnabled(),
+                        false),
+                booleanProperty(
+                        JOIN_BLOOM_FILTER_ENABLED,
+                        "Experimental: Check probe rows against a Bloom filter of the build side before looking them up in the join hash table",
+                        featuresConfig.isJoinBloomFilterEnabled(),
+                        false),
+                booleanProperty(
+                        RADIX_PARTITIONED_JOIN_ENABLED,
+                        "Experimental: Split large join hash tables into cache sized partitions and look up probe rows grouped by partition",
+                        featuresConfig.isRadixPartitionedJoinEnabled(),
+                        false),
+                booleanProperty(
+                        MERGE_JOIN_ENABLED,
+                        "Experimental: Use a merge join instead of a hash join when both sides of an inner join are sorted on the join keys",
+                        featuresConfig.isMergeJoinEnabled(),
+                        false),
                 booleanProperty(
                         IGNORE_DOWNSTREAM_PREFERENCES,
                         "Ignore Parent's PreferredProperties in AddExchange optimizer",
@@ -958,6 +1073,11 @@ public final class SystemSessionProperties
         return session.getSystemProperty(ENABLE_DYNAMIC_FILTERING, Boolean.class);
     }
 
+    public static boolean isEnableCoordinatorDynamicFiltersDistribution(Session session)
+    {
+        return session.getSystemProperty(ENABLE_COORDINATOR_DYNAMIC_FILTERS_DISTRIBUTION, Boolean.class);
+    }
+
     public static DataSize getQueryMaxMemoryPerNode(Session session)
     {
         return session.getSystemProperty(QUERY_MAX_MEMORY_PER_NODE, DataSize.class);
@@ -978,6 +1098,96 @@ public final class SystemSessionProperties
         return session.getSystemProperty(DYNAMIC_FILTERING_MAX_PER_DRIVER_SIZE, DataSize.class);
     }
 
+    public static DataSize getDynamicFilteringBloomFilterSize(Session session)
+    {
+        return session.getSystemProperty(DYNAMIC_FILTERING_BLOOM_FILTER_SIZE, DataSize.class);
+    }
+
+    public static boolean isTaskRetryEnabled(Session session)
+    {
+        return session.getSystemProperty(TASK_RETRY_ENABLED, Boolean.class);
+    }
+
+    public static int getTaskMaxRetries(Session session)
+    {
+        return session.getSystemProperty(TASK_MAX_RETRIES, Integer.class);
+    }
+
+    public static boolean isAdaptiveJoinReorderingEnabled(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_JOIN_REORDERING_ENABLED, Boolean.class);
+    }
+
+    public static boolean isJoinSkewSplittingEnabled(Session session)
+    {
+        return session.getSystemProperty(JOIN_SKEW_SPLITTING_ENABLED, Boolean.class);
+    }
+
+    public static int getJoinSkewFactor(Session session)
+    {
+        return session.getSystemProperty(JOIN_SKEW_FACTOR, Integer.class);
+    }
+
+    public static DataSize getJoinSkewMinPartitionSize(Session session)
+    {
+        return session.getSystemProperty(JOIN_SKEW_MIN_PARTITION_SIZE, DataSize.class);
+    }
+
+    public static boolean isAdaptivePartialAggregationEnabled(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_PARTIAL_AGGREGATION_ENABLED, Boolean.class);
+    }
+
+    public static int getAdaptivePartialAggregationMinRows(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_PARTIAL_AGGREGATION_MIN_ROWS, Integer.class);
+    }
+
+    public static double getAdaptivePartialAggregationUniqueRowsRatioThreshold(Session session)
+    {
+        return session.getSystemProperty(ADAPTIVE_PARTIAL_AGGREGATION_UNIQUE_ROWS_RATIO_THRESHOLD, Double.class);
+    }
+
+    public static boolean isPartitionedAggregationSpillEnabled(Session session)
+    {
+        return session.getSystemProperty(PARTITIONED_AGGREGATION_SPILL_ENABLED, Boolean.class);
+    }
+
+    public static boolean isJoinHashOffHeapEnabled(Session session)
+    {
+        return session.getSystemProperty(JOIN_HASH_OFF_HEAP_ENABLED, Boolean.class);
+    }
+
+    public static boolean isFlatHashAggregationEnabled(Session session)
+    {
+        return session.getSystemProperty(FLAT_HASH_AGGREGATION_ENABLED, Boolean.class);
+    }
+
+    public static boolean isDirectGroupByHashEnabled(Session session)
+    {
+        return session.getSystemProperty(DIRECT_GROUP_BY_HASH_ENABLED, Boolean.class);
+    }
+
+    public static boolean isFusedAggregationEnabled(Session session)
+    {
+        return session.getSystemProperty(FUSED_AGGREGATION_ENABLED, Boolean.class);
+    }
+
+    public static boolean isJoinBloomFilterEnabled(Session session)
+    {
+        return session.getSystemProperty(JOIN_BLOOM_FILTER_ENABLED, Boolean.class);
+    }
+
+    public static boolean isRadixPartitionedJoinEnabled(Session session)
+    {
+        return session.getSystemProperty(RADIX_PARTITIONED_JOIN_ENABLED, Boolean.class);
+    }
+
+    public static boolean isMergeJoinEnabled(Session session)
+    {
+        return session.getSystemProperty(MERGE_JOIN_ENABLED, Boolean.class);
+    }
+
     public static boolean ignoreDownStreamPreferences(Session session)
     {
         return session.getSystemProperty(IGNORE_DOWNSTREAM_PREFERENCES, Boolean.class);
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.exchange;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import io.airlift.log.Logger;
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.classloader.ThreadContextClassLoader;
+import io.prestosql.spi.exchange.ExchangeStorage;
+import io.prestosql.spi.exchange.ExchangeStorageFactory;
+
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.prestosql.spi.StandardErrorCode.NOT_SUPPORTED;
+import static io.prestosql.util.PropertiesUtil.loadProperties;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+public class ExchangeStorageManager
+{
+    private static final Logger log = Logger.get(ExchangeStorageManager.class);
+
+    private static final File CONFIG_FILE = new File("etc/exchange-storage.properties");
+    private static final String NAME_PROPERTY = "exchange-storage.name";
+
+    private final Map<String, ExchangeStorageFactory> exchangeStorageFactories = new ConcurrentHashMap<>();
+    private final AtomicReference<Optional<ExchangeStorage>> configuredExchangeStorage = new AtomicReference<>(Optional.empty());
+    private final ExecutorService writeExecutor = newCachedThreadPool(daemonThreadsNamed("exchange-storage-writer-%s"));
+
+    public ExchangeStorageManager()
+    {
+        addExchangeStorageFactory(new LocalFileSystemExchangeStorageFactory());
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        writeExecutor.shutdownNow();
+    }
+
+    public void addExchangeStorageFactory(ExchangeStorageFactory exchangeStorageFactory)
+    {
+        requireNonNull(exchangeStorageFactory, "exchangeStorageFactory is null");
+
+        if (exchangeStorageFactories.putIfAbsent(exchangeStorageFactory.getName(), exchangeStorageFactory) != null) {
+            throw new IllegalArgumentException(format("Exchange storage '%s' is already registered", exchangeStorageFactory.getName()));
+        }
+    }
+
+    public void loadConfiguredExchangeStorage()
+            throws Exception
+    {
+        File configFile = CONFIG_FILE.getAbsoluteFile();
+        if (!configFile.exists()) {
+            return;
+        }
+
+        Map<String, String> properties = new HashMap<>(loadProperties(configFile));
+
+        String name = properties.remove(NAME_PROPERTY);
+        checkState(!isNullOrEmpty(name), "Exchange storage configuration %s does not contain '%s'", configFile, NAME_PROPERTY);
+
+        setConfiguredExchangeStorage(name, properties);
+    }
+
+    @VisibleForTesting
+    public void setConfiguredExchangeStorage(String name, Map<String, String> properties)
+    {
+        requireNonNull(name, "name is null");
+        requireNonNull(properties, "properties is null");
+
+        log.info("-- Loading exchange storage --");
+
+        ExchangeStorageFactory exchangeStorageFactory = exchangeStorageFactories.get(name);
+        checkState(exchangeStorageFactory != null, "Exchange storage '%s' is not registered", name);
+
+        try (ThreadContextClassLoader ignored = new ThreadContextClassLoader(exchangeStorageFactory.getClass().getClassLoader())) {
+            ExchangeStorage exchangeStorage = exchangeStorageFactory.create(ImmutableMap.copyOf(properties));
+            this.configuredExchangeStorage.set(Optional.of(exchangeStorage));
+        }
+
+        log.info("-- Loaded exchange storage %s --", name);
+    }
+
+    public ExchangeStorage getExchangeStorage()
+    {
+        return configuredExchangeStorage.get()
+                .orElseThrow(() -> new PrestoException(NOT_SUPPORTED, "Task retries require an exchange storage, which is not configured"));
+    }
+
+    /**
+     * Returns the executor which writes task output to the exchange storage, so that
+     * drivers do not block on the storage.
+     */
+    public Executor getWriteExecutor()
+    {
+        return writeExecutor;
+    }
+}
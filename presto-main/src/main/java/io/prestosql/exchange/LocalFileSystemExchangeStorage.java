@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.exchange;
+
+import com.google.common.io.MoreFiles;
+import io.prestosql.spi.exchange.ExchangeStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stores the exchange data in a local directory. Directories are committed by an atomic rename,
+ * so the storage can only be used by a multi-node cluster when the directory is on a file system
+ * which is shared by all nodes.
+ */
+public class LocalFileSystemExchangeStorage
+        implements ExchangeStorage
+{
+    private final Path baseDirectory;
+
+    public LocalFileSystemExchangeStorage(Path baseDirectory)
+    {
+        this.baseDirectory = requireNonNull(baseDirectory, "baseDirectory is null");
+    }
+
+    @Override
+    public OutputStream createFile(String directory, String fileName)
+            throws IOException
+    {
+        Path path = baseDirectory.resolve(directory);
+        Files.createDirectories(path);
+        return Files.newOutputStream(path.resolve(fileName));
+    }
+
+    @Override
+    public boolean commitDirectory(String directory, String targetDirectory)
+            throws IOException
+    {
+        Path target = baseDirectory.resolve(targetDirectory);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(baseDirectory.resolve(directory), target, ATOMIC_MOVE);
+            return true;
+        }
+        catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Optional<InputStream> openFile(String directory, String fileName)
+            throws IOException
+    {
+        try {
+            return Optional.of(Files.newInputStream(baseDirectory.resolve(directory).resolve(fileName)));
+        }
+        catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void removeDirectory(String directory)
+            throws IOException
+    {
+        Path path = baseDirectory.resolve(directory);
+        if (Files.exists(path)) {
+            MoreFiles.deleteRecursively(path, ALLOW_INSECURE);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.exchange;
+
+import io.prestosql.spi.exchange.ExchangeStorage;
+import io.prestosql.spi.exchange.ExchangeStorageFactory;
+
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+public class LocalFileSystemExchangeStorageFactory
+        implements ExchangeStorageFactory
+{
+    private static final String BASE_DIRECTORY_PROPERTY = "exchange.base-directory";
+
+    @Override
+    public String getName()
+    {
+        return "local";
+    }
+
+    @Override
+    public ExchangeStorage create(Map<String, String> config)
+    {
+        String baseDirectory = config.get(BASE_DIRECTORY_PROPERTY);
+        checkArgument(!isNullOrEmpty(baseDirectory), "Exchange storage configuration does not contain '%s'", BASE_DIRECTORY_PROPERTY);
+        checkArgument(config.size() == 1, "Unknown exchange storage properties: %s", config.keySet());
+        return new LocalFileSystemExchangeStorage(Paths.get(baseDirectory));
+    }
+}
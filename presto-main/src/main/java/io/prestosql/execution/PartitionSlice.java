@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.execution;
+
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+
+import java.util.Set;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The part of a partition of the source stages which is processed by a single task, when a skewed
+ * partition is split over multiple tasks. The task reads the partition from a subset of the tasks
+ * of the split sources, and the whole partition from all other sources.
+ */
+public final class PartitionSlice
+{
+    private final int partition;
+    private final Set<PlanNodeId> splitSources;
+    private final Set<TaskId> sourceTasks;
+
+    public PartitionSlice(int partition, Set<PlanNodeId> splitSources, Set<TaskId> sourceTasks)
+    {
+        checkArgument(partition >= 0, "partition is negative");
+        this.partition = partition;
+        this.splitSources = ImmutableSet.copyOf(requireNonNull(splitSources, "splitSources is null"));
+        this.sourceTasks = ImmutableSet.copyOf(requireNonNull(sourceTasks, "sourceTasks is null"));
+    }
+
+    public int getPartition()
+    {
+        return partition;
+    }
+
+    public Set<PlanNodeId> getSplitSources()
+    {
+        return splitSources;
+    }
+
+    public Set<TaskId> getSourceTasks()
+    {
+        return sourceTasks;
+    }
+
+    /**
+     * @return true if the output of the source task for the given remote source is read by this slice
+     */
+    public boolean includes(PlanNodeId remoteSource, TaskId sourceTask)
+    {
+        return !splitSources.contains(remoteSource) || sourceTasks.contains(sourceTask);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("partition", partition)
+                .add("splitSources", splitSources)
+                .add("sourceTasks", sourceTasks)
+                .toString();
+    }
+}
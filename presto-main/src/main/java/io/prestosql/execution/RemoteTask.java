@@ -18,8 +18,11 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.prestosql.execution.StateMachine.StateChangeListener;
 import io.prestosql.execution.buffer.OutputBuffers;
 import io.prestosql.metadata.Split;
+import io.prestosql.spi.predicate.Domain;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 
+import java.util.Map;
+
 public interface RemoteTask
 {
     TaskId getTaskId();
@@ -40,6 +43,11 @@ public interface RemoteTask
 
     void setOutputBuffers(OutputBuffers outputBuffers);
 
+    /**
+     * Sends the domains of dynamic filters, which were collected from the build side of a join, to the task.
+     */
+    void addDynamicFilterDomains(Map<String, Domain> dynamicFilterDomains);
+
     /**
      * Listener is always notified asynchronously using a dedicated notification thread pool so, care should
      * be taken to avoid leaking {@code this} when adding a listener in a constructor. Additionally, it is
@@ -13,26 +13,34 @@
  */
 package io.prestosql.execution;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import io.airlift.log.Logger;
 import io.airlift.units.Duration;
 import io.prestosql.Session;
 import io.prestosql.execution.StateMachine.StateChangeListener;
 import io.prestosql.execution.buffer.OutputBuffers;
+import io.prestosql.execution.scheduler.NodeSelector;
 import io.prestosql.execution.scheduler.SplitSchedulerStats;
 import io.prestosql.failuredetector.FailureDetector;
 import io.prestosql.metadata.InternalNode;
 import io.prestosql.metadata.Split;
+import io.prestosql.spi.ErrorCode;
 import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.predicate.Domain;
 import io.prestosql.split.RemoteSplit;
 import io.prestosql.sql.planner.PlanFragment;
+import io.prestosql.sql.planner.plan.JoinNode;
 import io.prestosql.sql.planner.plan.PlanFragmentId;
+import io.prestosql.sql.planner.plan.PlanNode;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 import io.prestosql.sql.planner.plan.RemoteSourceNode;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
@@ -40,10 +48,12 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
@@ -61,15 +71,20 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Sets.newConcurrentHashSet;
 import static io.airlift.http.client.HttpUriBuilder.uriBuilderFrom;
+import static io.prestosql.SystemSessionProperties.isTaskRetryEnabled;
 import static io.prestosql.failuredetector.FailureDetector.State.GONE;
 import static io.prestosql.operator.ExchangeOperator.REMOTE_CONNECTOR_ID;
+import static io.prestosql.spi.ErrorType.USER_ERROR;
 import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.prestosql.spi.StandardErrorCode.REMOTE_HOST_GONE;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
 import static java.util.Objects.requireNonNull;
 
 @ThreadSafe
 public final class SqlStageExecution
 {
+    private static final Logger log = Logger.get(SqlStageExecution.class);
+
     private final StageStateMachine stateMachine;
     private final RemoteTaskFactory remoteTaskFactory;
     private final NodeTaskMap nodeTaskMap;
@@ -103,6 +118,30 @@ public final class SqlStageExecution
 
     private final ListenerManager<Set<Lifespan>> completedLifespansChangeListeners = new ListenerManager<>();
 
+    // dynamic filter domains reported by the tasks of this stage
+    @GuardedBy("this")
+    private final Map<TaskId, Map<String, Domain>> taskDynamicFilterDomains = new HashMap<>();
+    @GuardedBy("this")
+    private final Set<String> completedDynamicFilters = new HashSet<>();
+    private final ListenerManager<Map<String, Domain>> dynamicFilterDomainsListeners = new ListenerManager<>();
+    // dynamic filter domains produced by other stages, which are sent to all tasks of this stage
+    @GuardedBy("this")
+    private final Map<String, Domain> dynamicFilterDomains = new HashMap<>();
+    @GuardedBy("this")
+    private boolean schedulingComplete;
+
+    // failed tasks are retried on other nodes when the output of the tasks is spooled to the exchange storage
+    @GuardedBy("this")
+    private int maxTaskRetries;
+    @GuardedBy("this")
+    private NodeSelector retryNodeSelector;
+    @GuardedBy("this")
+    private final Map<TaskId, RetryableTask> retryableTasks = new HashMap<>();
+    private final Set<RemoteTask> replacedTasks = newConcurrentHashSet();
+
+    // tasks which process a slice of a skewed partition, see scheduleTask
+    private final Map<TaskId, PartitionSlice> partitionSlices = new ConcurrentHashMap<>();
+
     public static SqlStageExecution createSqlStageExecution(
             StageId stageId,
             PlanFragment fragment,
@@ -200,6 +239,16 @@ public final class SqlStageExecution
         return stateMachine.getFragment();
     }
 
+    /**
+     * Replaces the plan of the stage with an equivalent plan, e.g. one optimized with runtime statistics.
+     * Must be called before any tasks are scheduled.
+     */
+    public synchronized void replaceFragment(PlanFragment fragment)
+    {
+        checkState(allTasks.isEmpty(), "Fragment cannot be replaced after tasks are scheduled");
+        stateMachine.replaceFragment(fragment);
+    }
+
     public OutputBuffers getOutputBuffers()
     {
         return outputBuffers.get();
@@ -210,6 +259,45 @@ public final class SqlStageExecution
         stateMachine.transitionToScheduling();
     }
 
+    /**
+     * Retries the tasks of this stage which fail with an error which is not a user error on another node,
+     * with the splits which were assigned to the failed task. Must be called before any tasks are scheduled,
+     * and only when the output of the tasks is spooled to the exchange storage.
+     */
+    public synchronized void enableTaskRetries(int maxTaskRetries, NodeSelector retryNodeSelector)
+    {
+        checkArgument(maxTaskRetries >= 0, "maxTaskRetries is negative");
+        checkState(isTaskRetryEnabled(stateMachine.getSession()), "Task retries require a spooled exchange");
+        checkState(allTasks.isEmpty(), "Task retries must be enabled before tasks are scheduled");
+        this.maxTaskRetries = maxTaskRetries;
+        this.retryNodeSelector = requireNonNull(retryNodeSelector, "retryNodeSelector is null");
+    }
+
+    /**
+     * Add a listener for the domains of dynamic filters produced by this stage. The listener is invoked
+     * with the union of the domains reported by all tasks of the stage, once all tasks have been scheduled
+     * and have reported their domains. Each dynamic filter is reported at most once.
+     */
+    public void addDynamicFilterDomainsListener(Consumer<Map<String, Domain>> dynamicFilterDomainsConsumer)
+    {
+        dynamicFilterDomainsListeners.addListener(dynamicFilterDomainsConsumer);
+    }
+
+    /**
+     * Sends the domains of dynamic filters produced by other stages to the current and future tasks of this stage.
+     */
+    public synchronized void addDynamicFilterDomains(Map<String, Domain> domains)
+    {
+        requireNonNull(domains, "domains is null");
+        if (domains.isEmpty()) {
+            return;
+        }
+        dynamicFilterDomains.putAll(domains);
+        for (RemoteTask task : getAllTasks()) {
+            task.addDynamicFilterDomains(domains);
+        }
+    }
+
     public synchronized void transitionToSchedulingSplits()
     {
         stateMachine.transitionToSchedulingSplits();
@@ -217,6 +305,9 @@ public final class SqlStageExecution
 
     public synchronized void schedulingComplete()
     {
+        schedulingComplete = true;
+        collectDynamicFilterDomains();
+
         if (!stateMachine.transitionToScheduled()) {
             return;
         }
@@ -301,8 +392,10 @@ public final class SqlStageExecution
         for (RemoteTask task : getAllTasks()) {
             ImmutableMultimap.Builder<PlanNodeId, Split> newSplits = ImmutableMultimap.builder();
             for (RemoteTask sourceTask : sourceTasks) {
-                URI exchangeLocation = sourceTask.getTaskStatus().getSelf();
-                newSplits.put(remoteSource.getId(), createRemoteSplitFor(task.getTaskId(), exchangeLocation));
+                if (readsSourceTask(task.getTaskId(), remoteSource.getId(), sourceTask.getTaskId())) {
+                    URI exchangeLocation = sourceTask.getTaskStatus().getSelf();
+                    newSplits.put(remoteSource.getId(), createRemoteSplitFor(getSourceBufferId(task.getTaskId()), exchangeLocation));
+                }
             }
             task.addSplits(newSplits.build());
         }
@@ -369,6 +462,51 @@ public final class SqlStageExecution
         return Optional.of(scheduleTask(node, new TaskId(stateMachine.getStageId(), partition), ImmutableMultimap.of(), totalPartitions));
     }
 
+    /**
+     * Schedules a task which processes a slice of a partition. The task reads the output buffer of the partition
+     * from the source stages, so the slices of a partition must together read the output of all source tasks.
+     *
+     * @param taskNumber the id of the task, which must be distinct from the partitions of the stage
+     * unless the task processes the first slice of the partition
+     */
+    public synchronized Optional<RemoteTask> scheduleTask(InternalNode node, int taskNumber, PartitionSlice slice, OptionalInt totalPartitions)
+    {
+        requireNonNull(node, "node is null");
+        requireNonNull(slice, "slice is null");
+
+        if (stateMachine.getState().isDone()) {
+            return Optional.empty();
+        }
+        checkState(!splitsScheduled.get(), "scheduleTask cannot be called once splits have been scheduled");
+        TaskId taskId = new TaskId(stateMachine.getStageId(), taskNumber);
+        checkArgument(!allTasks.contains(taskId), "A task with id %s already exists", taskId);
+        partitionSlices.put(taskId, slice);
+        return Optional.of(scheduleTask(node, taskId, ImmutableMultimap.of(), totalPartitions));
+    }
+
+    /**
+     * Returns the id of the output buffer of the source stages which is read by the task.
+     */
+    public int getSourceBufferId(TaskId taskId)
+    {
+        PartitionSlice slice = partitionSlices.get(taskId);
+        if (slice != null) {
+            return slice.getPartition();
+        }
+        return taskId.getId();
+    }
+
+    private boolean readsSourceTask(TaskId taskId, PlanNodeId remoteSource, TaskId sourceTask)
+    {
+        PartitionSlice slice = partitionSlices.get(taskId);
+        return slice == null || slice.includes(remoteSource, sourceTask);
+    }
+
+    public void recordSkewedPartitions(int partitions, int tasks, long largestPartitionSize, long largestPartitionTaskSize)
+    {
+        stateMachine.recordSkewedPartitions(partitions, tasks, largestPartitionSize, largestPartitionTaskSize);
+    }
+
     public synchronized Set<RemoteTask> scheduleSplits(InternalNode node, Multimap<PlanNodeId, Split> splits, Multimap<PlanNodeId, Lifespan> noMoreSplitsNotification)
     {
         requireNonNull(node, "node is null");
@@ -394,6 +532,10 @@ public final class SqlStageExecution
         else {
             task = tasks.iterator().next();
             task.addSplits(splits);
+            RetryableTask retryableTask = retryableTasks.get(task.getTaskId());
+            if (retryableTask != null) {
+                retryableTask.addSplits(splits);
+            }
         }
         if (noMoreSplitsNotification.size() > 1) {
             // The assumption that `noMoreSplitsNotification.size() <= 1` currently holds.
@@ -404,6 +546,10 @@ public final class SqlStageExecution
         for (Entry<PlanNodeId, Lifespan> entry : noMoreSplitsNotification.entries()) {
             task.noMoreSplits(entry.getKey(), entry.getValue());
         }
+        RetryableTask retryableTask = retryableTasks.get(task.getTaskId());
+        if (retryableTask != null) {
+            retryableTask.addNoMoreSplits(noMoreSplitsNotification);
+        }
         return newTasks.build();
     }
 
@@ -411,13 +557,29 @@ public final class SqlStageExecution
     {
         checkArgument(!allTasks.contains(taskId), "A task with id %s already exists", taskId);
 
+        RemoteTask task = createTask(node, taskId, sourceSplits, totalPartitions);
+
+        allTasks.add(taskId);
+        tasks.computeIfAbsent(node, key -> newConcurrentHashSet()).add(task);
+        if (maxTaskRetries > 0) {
+            retryableTasks.put(taskId, new RetryableTask(node, sourceSplits, totalPartitions));
+        }
+
+        startTask(node, task);
+        return task;
+    }
+
+    private synchronized RemoteTask createTask(InternalNode node, TaskId taskId, Multimap<PlanNodeId, Split> sourceSplits, OptionalInt totalPartitions)
+    {
         ImmutableMultimap.Builder<PlanNodeId, Split> initialSplits = ImmutableMultimap.builder();
         initialSplits.putAll(sourceSplits);
 
+        // the output of a finished task is still available when it is spooled
+        boolean spooledExchange = isTaskRetryEnabled(stateMachine.getSession());
         sourceTasks.forEach((planNodeId, task) -> {
             TaskStatus status = task.getTaskStatus();
-            if (status.getState() != TaskState.FINISHED) {
-                initialSplits.put(planNodeId, createRemoteSplitFor(taskId, status.getSelf()));
+            if ((spooledExchange || status.getState() != TaskState.FINISHED) && readsSourceTask(taskId, planNodeId, task.getTaskId())) {
+                initialSplits.put(planNodeId, createRemoteSplitFor(getSourceBufferId(taskId), status.getSelf()));
             }
         });
 
@@ -436,13 +598,23 @@ public final class SqlStageExecution
                 summarizeTaskInfo);
 
         completeSources.forEach(task::noMoreSplits);
+        if (!dynamicFilterDomains.isEmpty()) {
+            task.addDynamicFilterDomains(ImmutableMap.copyOf(dynamicFilterDomains));
+        }
+        return task;
+    }
 
-        allTasks.add(taskId);
-        tasks.computeIfAbsent(node, key -> newConcurrentHashSet()).add(task);
+    private synchronized void startTask(InternalNode node, RemoteTask task)
+    {
         nodeTaskMap.addTask(node, task);
 
-        task.addStateChangeListener(new StageTaskListener());
-        task.addFinalTaskInfoListener(this::updateFinalTaskInfo);
+        task.addStateChangeListener(new StageTaskListener(task));
+        task.addFinalTaskInfoListener(finalTaskInfo -> {
+            // the final info of a retried task is replaced by the final info of its last attempt
+            if (!replacedTasks.contains(task)) {
+                updateFinalTaskInfo(finalTaskInfo);
+            }
+        });
 
         if (!stateMachine.getState().isDone()) {
             task.start();
@@ -451,8 +623,51 @@ public final class SqlStageExecution
             // stage finished while we were scheduling this task
             task.abort();
         }
+    }
 
-        return task;
+    /**
+     * @return true if the failed task has been replaced by a new attempt on another node
+     */
+    private synchronized boolean retryTask(RemoteTask failedTask, TaskStatus taskStatus)
+    {
+        RetryableTask retryableTask = retryableTasks.get(taskStatus.getTaskId());
+        if (retryableTask == null || retryableTask.getRetries() >= maxTaskRetries) {
+            return false;
+        }
+        boolean userError = taskStatus.getFailures().stream()
+                .map(ExecutionFailureInfo::getErrorCode)
+                .anyMatch(errorCode -> errorCode != null && errorCode.getType() == USER_ERROR);
+        if (userError || !retryableTask.getSplits().values().stream().allMatch(Split::isRemotelyAccessible)) {
+            return false;
+        }
+        List<InternalNode> nodes = retryNodeSelector.selectRandomNodes(1, retryableTask.getAttemptedNodes());
+        if (nodes.isEmpty()) {
+            return false;
+        }
+        InternalNode node = nodes.get(0);
+
+        log.debug("Retrying task %s on node %s after failure: %s", taskStatus.getTaskId(), node.getNodeIdentifier(), taskStatus.getFailures().stream()
+                .map(ExecutionFailureInfo::getErrorCode)
+                .filter(Objects::nonNull)
+                .map(ErrorCode::getName)
+                .collect(toImmutableList()));
+
+        // the remote splits are recreated from the source tasks, so only the partitioned splits are sent again
+        RemoteTask task = createTask(node, taskStatus.getTaskId(), retryableTask.getSplits(), retryableTask.getTotalPartitions());
+        retryableTask.getNoMoreSplits().forEach(task::noMoreSplits);
+
+        // the new attempt takes the place of the failed task under the node it was scheduled on,
+        // so that the splits assigned to that node are sent to the new attempt
+        replacedTasks.add(failedTask);
+        Set<RemoteTask> nodeTasks = tasks.get(retryableTask.getSchedulingNode());
+        nodeTasks.remove(failedTask);
+        nodeTasks.add(task);
+        retryableTask.retry(node);
+        tasksWithFinalInfo.remove(taskStatus.getTaskId());
+
+        startTask(node, task);
+        failedTask.abort();
+        return true;
     }
 
     public Set<InternalNode> getScheduledNodes()
@@ -465,22 +680,25 @@ public final class SqlStageExecution
         stateMachine.recordGetSplitTime(start);
     }
 
-    private static Split createRemoteSplitFor(TaskId taskId, URI taskLocation)
+    private static Split createRemoteSplitFor(int bufferId, URI taskLocation)
     {
         // Fetch the results from the buffer assigned to the task based on id
-        URI splitLocation = uriBuilderFrom(taskLocation).appendPath("results").appendPath(String.valueOf(taskId.getId())).build();
+        URI splitLocation = uriBuilderFrom(taskLocation).appendPath("results").appendPath(String.valueOf(bufferId)).build();
         return new Split(REMOTE_CONNECTOR_ID, new RemoteSplit(splitLocation), Lifespan.taskWide());
     }
 
-    private synchronized void updateTaskStatus(TaskStatus taskStatus)
+    private synchronized void updateTaskStatus(RemoteTask task, TaskStatus taskStatus)
     {
         try {
             StageState stageState = getState();
-            if (stageState.isDone()) {
+            if (stageState.isDone() || replacedTasks.contains(task)) {
                 return;
             }
 
             TaskState taskState = taskStatus.getState();
+            if (taskState == TaskState.FAILED && retryTask(task, taskStatus)) {
+                return;
+            }
             if (taskState == TaskState.FAILED) {
                 RuntimeException failure = taskStatus.getFailures().stream()
                         .findFirst()
@@ -512,6 +730,86 @@ public final class SqlStageExecution
         }
     }
 
+    private synchronized void updateDynamicFilterDomains(TaskStatus taskStatus)
+    {
+        Map<String, Domain> domains = taskStatus.getDynamicFilterDomains();
+        if (domains.isEmpty()) {
+            return;
+        }
+        Map<String, Domain> previousDomains = taskDynamicFilterDomains.put(taskStatus.getTaskId(), domains);
+        if (previousDomains != null && previousDomains.keySet().containsAll(domains.keySet())) {
+            return;
+        }
+        collectDynamicFilterDomains();
+    }
+
+    private synchronized void collectDynamicFilterDomains()
+    {
+        Set<String> pendingDynamicFilters = new HashSet<>();
+        taskDynamicFilterDomains.values().forEach(domains -> pendingDynamicFilters.addAll(domains.keySet()));
+        pendingDynamicFilters.removeAll(completedDynamicFilters);
+        if (pendingDynamicFilters.isEmpty()) {
+            return;
+        }
+
+        Set<String> replicatedDynamicFilters = getReplicatedDynamicFilters(getFragment().getRoot());
+        ImmutableMap.Builder<String, Domain> result = ImmutableMap.builder();
+        for (String filterId : pendingDynamicFilters) {
+            if (replicatedDynamicFilters.contains(filterId)) {
+                // every task builds the whole replicated build side, so the domain reported by any task is complete,
+                // and it is available before the splits of a source distributed stage have been scheduled
+                Domain domain = taskDynamicFilterDomains.values().stream()
+                        .map(domains -> domains.get(filterId))
+                        .filter(Objects::nonNull)
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalStateException("No domain reported for dynamic filter " + filterId));
+                completedDynamicFilters.add(filterId);
+                result.put(filterId, domain.simplify());
+                continue;
+            }
+
+            // more tasks may be created until scheduling is complete
+            if (!schedulingComplete) {
+                continue;
+            }
+
+            List<Domain> domains = new ArrayList<>();
+            for (TaskId taskId : allTasks) {
+                Domain domain = taskDynamicFilterDomains.getOrDefault(taskId, ImmutableMap.of()).get(filterId);
+                if (domain == null) {
+                    // the task has not finished collecting the build side yet
+                    break;
+                }
+                domains.add(domain);
+            }
+            if (domains.size() == allTasks.size()) {
+                completedDynamicFilters.add(filterId);
+                // the union grows with the number of tasks and is sent to every probe task,
+                // so large sets of values are collapsed into their span
+                result.put(filterId, Domain.union(domains).simplify());
+            }
+        }
+
+        Map<String, Domain> completedDomains = result.build();
+        if (!completedDomains.isEmpty()) {
+            dynamicFilterDomainsListeners.invoke(completedDomains, executor);
+        }
+    }
+
+    private static Set<String> getReplicatedDynamicFilters(PlanNode root)
+    {
+        ImmutableSet.Builder<String> replicatedDynamicFilters = ImmutableSet.builder();
+        searchFrom(root)
+                .where(node -> node instanceof JoinNode && ((JoinNode) node).getDistributionType().equals(Optional.of(JoinNode.DistributionType.REPLICATED)))
+                .<JoinNode>findAll()
+                .forEach(node -> replicatedDynamicFilters.addAll(node.getDynamicFilters().keySet()));
+        searchFrom(root)
+                .where(node -> node instanceof SemiJoinNode && ((SemiJoinNode) node).getDistributionType().equals(Optional.of(SemiJoinNode.DistributionType.REPLICATED)))
+                .<SemiJoinNode>findAll()
+                .forEach(node -> node.getDynamicFilterId().ifPresent(replicatedDynamicFilters::add));
+        return replicatedDynamicFilters.build();
+    }
+
     private synchronized void updateFinalTaskInfo(TaskInfo finalTaskInfo)
     {
         tasksWithFinalInfo.add(finalTaskInfo.getTaskStatus().getTaskId());
@@ -554,20 +852,31 @@ public final class SqlStageExecution
     private class StageTaskListener
             implements StateChangeListener<TaskStatus>
     {
+        private final RemoteTask task;
         private long previousUserMemory;
         private long previousSystemMemory;
         private long previousRevocableMemory;
         private final Set<Lifespan> completedDriverGroups = new HashSet<>();
 
+        public StageTaskListener(RemoteTask task)
+        {
+            this.task = requireNonNull(task, "task is null");
+        }
+
         @Override
         public void stateChanged(TaskStatus taskStatus)
         {
             try {
                 updateMemoryUsage(taskStatus);
+                if (replacedTasks.contains(task)) {
+                    // only the memory of a task which has been retried is still tracked
+                    return;
+                }
                 updateCompletedDriverGroups(taskStatus);
+                updateDynamicFilterDomains(taskStatus);
             }
             finally {
-                updateTaskStatus(taskStatus);
+                updateTaskStatus(task, taskStatus);
             }
         }
 
@@ -603,6 +912,70 @@ public final class SqlStageExecution
         }
     }
 
+    private static class RetryableTask
+    {
+        private final InternalNode schedulingNode;
+        private final OptionalInt totalPartitions;
+        private final Multimap<PlanNodeId, Split> splits = ArrayListMultimap.create();
+        private final Multimap<PlanNodeId, Lifespan> noMoreSplits = HashMultimap.create();
+        private final Set<InternalNode> attemptedNodes = new HashSet<>();
+        private int retries;
+
+        public RetryableTask(InternalNode node, Multimap<PlanNodeId, Split> splits, OptionalInt totalPartitions)
+        {
+            this.schedulingNode = requireNonNull(node, "node is null");
+            this.totalPartitions = requireNonNull(totalPartitions, "totalPartitions is null");
+            this.splits.putAll(requireNonNull(splits, "splits is null"));
+            attemptedNodes.add(node);
+        }
+
+        public InternalNode getSchedulingNode()
+        {
+            return schedulingNode;
+        }
+
+        public OptionalInt getTotalPartitions()
+        {
+            return totalPartitions;
+        }
+
+        public Multimap<PlanNodeId, Split> getSplits()
+        {
+            return splits;
+        }
+
+        public void addSplits(Multimap<PlanNodeId, Split> splits)
+        {
+            this.splits.putAll(splits);
+        }
+
+        public Multimap<PlanNodeId, Lifespan> getNoMoreSplits()
+        {
+            return noMoreSplits;
+        }
+
+        public void addNoMoreSplits(Multimap<PlanNodeId, Lifespan> noMoreSplits)
+        {
+            this.noMoreSplits.putAll(noMoreSplits);
+        }
+
+        public Set<InternalNode> getAttemptedNodes()
+        {
+            return attemptedNodes;
+        }
+
+        public int getRetries()
+        {
+            return retries;
+        }
+
+        public void retry(InternalNode node)
+        {
+            attemptedNodes.add(node);
+            retries++;
+        }
+    }
+
     private static class ListenerManager<T>
     {
         private final List<Consumer<T>> listeners = new ArrayList<>();
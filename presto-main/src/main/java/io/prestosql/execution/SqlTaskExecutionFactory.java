@@ -79,6 +79,7 @@ public class SqlTaskExecutionFactory
                         fragment.getPartitioningScheme(),
                         fragment.getStageExecutionDescriptor(),
                         fragment.getPartitionedSources(),
+                        fragment.getStatsAndCosts(),
                         outputBuffer);
             }
             catch (Throwable e) {
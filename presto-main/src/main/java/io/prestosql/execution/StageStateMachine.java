@@ -75,7 +75,7 @@ public class StageStateMachine
     private static final Logger log = Logger.get(StageStateMachine.class);
 
     private final StageId stageId;
-    private final PlanFragment fragment;
+    private volatile PlanFragment fragment;
     private final Session session;
     private final Map<PlanNodeId, TableInfo> tables;
     private final SplitSchedulerStats scheduledStats;
@@ -87,6 +87,11 @@ public class StageStateMachine
     private final AtomicReference<DateTime> schedulingComplete = new AtomicReference<>();
     private final Distribution getSplitDistribution = new Distribution();
 
+    private volatile int skewedPartitions;
+    private volatile int skewedPartitionTasks;
+    private volatile long largestSkewedPartitionSize;
+    private volatile long largestSkewedPartitionTaskSize;
+
     private final AtomicLong peakUserMemory = new AtomicLong();
     private final AtomicLong peakRevocableMemory = new AtomicLong();
     private final AtomicLong currentUserMemory = new AtomicLong();
@@ -133,6 +138,13 @@ public class StageStateMachine
         return fragment;
     }
 
+    public void replaceFragment(PlanFragment fragment)
+    {
+        requireNonNull(fragment, "fragment is null");
+        checkArgument(fragment.getId().equals(this.fragment.getId()), "Expected fragment %s, but got %s", this.fragment.getId(), fragment.getId());
+        this.fragment = fragment;
+    }
+
     /**
      * Listener is always notified asynchronously using a dedicated notification thread pool so, care should
      * be taken to avoid leaking {@code this} when adding a listener in a constructor. Additionally, it is
@@ -526,6 +538,11 @@ public class StageStateMachine
                 outputPositions,
                 succinctBytes(physicalWrittenDataSize),
 
+                skewedPartitions,
+                skewedPartitionTasks,
+                succinctBytes(largestSkewedPartitionSize),
+                succinctBytes(largestSkewedPartitionTaskSize),
+
                 new StageGcStatistics(
                         stageId.getId(),
                         totalTasks,
@@ -559,6 +576,14 @@ public class StageStateMachine
         scheduledStats.getGetSplitTime().add(elapsedNanos, NANOSECONDS);
     }
 
+    public void recordSkewedPartitions(int partitions, int tasks, long largestPartitionSize, long largestPartitionTaskSize)
+    {
+        skewedPartitions = partitions;
+        skewedPartitionTasks = tasks;
+        largestSkewedPartitionSize = largestPartitionSize;
+        largestSkewedPartitionTaskSize = largestPartitionTaskSize;
+    }
+
     @Override
     public String toString()
     {
@@ -84,6 +84,11 @@ public class StageStats
 
     private final DataSize physicalWrittenDataSize;
 
+    private final int skewedPartitions;
+    private final int skewedPartitionTasks;
+    private final DataSize largestSkewedPartitionDataSize;
+    private final DataSize largestSkewedPartitionTaskDataSize;
+
     private final StageGcStatistics gcInfo;
 
     private final List<OperatorStats> operatorSummaries;
@@ -135,6 +140,11 @@ public class StageStats
 
             @JsonProperty("physicalWrittenDataSize") DataSize physicalWrittenDataSize,
 
+            @JsonProperty("skewedPartitions") int skewedPartitions,
+            @JsonProperty("skewedPartitionTasks") int skewedPartitionTasks,
+            @JsonProperty("largestSkewedPartitionDataSize") DataSize largestSkewedPartitionDataSize,
+            @JsonProperty("largestSkewedPartitionTaskDataSize") DataSize largestSkewedPartitionTaskDataSize,
+
             @JsonProperty("gcInfo") StageGcStatistics gcInfo,
 
             @JsonProperty("operatorSummaries") List<OperatorStats> operatorSummaries)
@@ -196,6 +206,13 @@ public class StageStats
 
         this.physicalWrittenDataSize = requireNonNull(physicalWrittenDataSize, "writtenDataSize is null");
 
+        checkArgument(skewedPartitions >= 0, "skewedPartitions is negative");
+        this.skewedPartitions = skewedPartitions;
+        checkArgument(skewedPartitionTasks >= 0, "skewedPartitionTasks is negative");
+        this.skewedPartitionTasks = skewedPartitionTasks;
+        this.largestSkewedPartitionDataSize = requireNonNull(largestSkewedPartitionDataSize, "largestSkewedPartitionDataSize is null");
+        this.largestSkewedPartitionTaskDataSize = requireNonNull(largestSkewedPartitionTaskDataSize, "largestSkewedPartitionTaskDataSize is null");
+
         this.gcInfo = requireNonNull(gcInfo, "gcInfo is null");
 
         this.operatorSummaries = ImmutableList.copyOf(requireNonNull(operatorSummaries, "operatorSummaries is null"));
@@ -399,6 +416,42 @@ public class StageStats
         return physicalWrittenDataSize;
     }
 
+    /**
+     * Number of join partitions whose probe side was split over multiple tasks because of skew.
+     */
+    @JsonProperty
+    public int getSkewedPartitions()
+    {
+        return skewedPartitions;
+    }
+
+    /**
+     * Number of tasks which processed the skewed partitions.
+     */
+    @JsonProperty
+    public int getSkewedPartitionTasks()
+    {
+        return skewedPartitionTasks;
+    }
+
+    /**
+     * Probe side size of the largest skewed partition, which would have been processed by a single task.
+     */
+    @JsonProperty
+    public DataSize getLargestSkewedPartitionDataSize()
+    {
+        return largestSkewedPartitionDataSize;
+    }
+
+    /**
+     * Largest probe side size processed by one of the tasks of the skewed partitions.
+     */
+    @JsonProperty
+    public DataSize getLargestSkewedPartitionTaskDataSize()
+    {
+        return largestSkewedPartitionTaskDataSize;
+    }
+
     @JsonProperty
     public StageGcStatistics getGcInfo()
     {
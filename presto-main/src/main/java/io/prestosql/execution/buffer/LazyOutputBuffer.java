@@ -23,6 +23,7 @@ import io.prestosql.execution.StateMachine.StateChangeListener;
 import io.prestosql.execution.TaskId;
 import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
 import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.spi.exchange.ExchangeStorage;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -31,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -47,6 +49,7 @@ public class LazyOutputBuffer
         implements OutputBuffer
 {
     private final StateMachine<BufferState> state;
+    private final TaskId taskId;
     private final String taskInstanceId;
     private final DataSize maxBufferSize;
     private final Supplier<LocalMemoryContext> systemMemoryContextSupplier;
@@ -55,6 +58,13 @@ public class LazyOutputBuffer
     @GuardedBy("this")
     private OutputBuffer delegate;
 
+    @GuardedBy("this")
+    private ExchangeStorage exchangeStorage;
+    @GuardedBy("this")
+    private Executor spoolingWriteExecutor;
+    @GuardedBy("this")
+    private Consumer<Throwable> spoolingFailureListener;
+
     @GuardedBy("this")
     private final Set<OutputBufferId> abortedBuffers = new HashSet<>();
 
@@ -68,7 +78,7 @@ public class LazyOutputBuffer
             DataSize maxBufferSize,
             Supplier<LocalMemoryContext> systemMemoryContextSupplier)
     {
-        requireNonNull(taskId, "taskId is null");
+        this.taskId = requireNonNull(taskId, "taskId is null");
         this.taskInstanceId = requireNonNull(taskInstanceId, "taskInstanceId is null");
         this.executor = requireNonNull(executor, "executor is null");
         state = new StateMachine<>(taskId + "-buffer", executor, OPEN, TERMINAL_BUFFER_STATES);
@@ -144,6 +154,19 @@ public class LazyOutputBuffer
         return outputBuffer.getInfo();
     }
 
+    /**
+     * Writes the output to the exchange storage instead of buffering it in memory.
+     * Only has an effect before the output buffers are set.
+     */
+    public synchronized void enableSpooling(ExchangeStorage exchangeStorage, Executor writeExecutor, Consumer<Throwable> failureListener)
+    {
+        if (delegate == null) {
+            this.exchangeStorage = requireNonNull(exchangeStorage, "exchangeStorage is null");
+            this.spoolingWriteExecutor = requireNonNull(writeExecutor, "writeExecutor is null");
+            this.spoolingFailureListener = requireNonNull(failureListener, "failureListener is null");
+        }
+    }
+
     @Override
     public void setOutputBuffers(OutputBuffers newOutputBuffers)
     {
@@ -156,16 +179,31 @@ public class LazyOutputBuffer
                 if (state.get().isTerminal()) {
                     return;
                 }
-                switch (newOutputBuffers.getType()) {
-                    case PARTITIONED:
-                        delegate = new PartitionedOutputBuffer(taskInstanceId, state, newOutputBuffers, maxBufferSize, systemMemoryContextSupplier, executor);
-                        break;
-                    case BROADCAST:
-                        delegate = new BroadcastOutputBuffer(taskInstanceId, state, maxBufferSize, systemMemoryContextSupplier, executor);
-                        break;
-                    case ARBITRARY:
-                        delegate = new ArbitraryOutputBuffer(taskInstanceId, state, maxBufferSize, systemMemoryContextSupplier, executor);
-                        break;
+                if (exchangeStorage != null) {
+                    delegate = new SpoolingOutputBuffer(
+                            taskId,
+                            taskInstanceId,
+                            state,
+                            newOutputBuffers,
+                            maxBufferSize,
+                            systemMemoryContextSupplier,
+                            exchangeStorage,
+                            spoolingWriteExecutor,
+                            executor,
+                            spoolingFailureListener);
+                }
+                else {
+                    switch (newOutputBuffers.getType()) {
+                        case PARTITIONED:
+                            delegate = new PartitionedOutputBuffer(taskInstanceId, state, newOutputBuffers, maxBufferSize, systemMemoryContextSupplier, executor);
+                            break;
+                        case BROADCAST:
+                            delegate = new BroadcastOutputBuffer(taskInstanceId, state, maxBufferSize, systemMemoryContextSupplier, executor);
+                            break;
+                        case ARBITRARY:
+                            delegate = new ArbitraryOutputBuffer(taskInstanceId, state, maxBufferSize, systemMemoryContextSupplier, executor);
+                            break;
+                    }
                 }
 
                 // process pending aborts and reads outside of synchronized lock
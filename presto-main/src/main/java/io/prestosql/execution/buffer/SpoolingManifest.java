@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.execution.buffer;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.InputStreamSliceInput;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+import io.prestosql.execution.buffer.OutputBuffers.BufferType;
+import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.spi.exchange.ExchangeStorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.prestosql.execution.buffer.OutputBuffers.BROADCAST_PARTITION_ID;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.ARBITRARY;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.PARTITIONED;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Describes how the files of a committed task output directory are assigned to the output buffers.
+ * Partitioned buffers read the file of their partition, broadcast buffers all read the same file,
+ * and arbitrary buffers read every {@code bufferCount}-th page of the same file.
+ * The manifest also records the size of each file, which lets the coordinator see how the output
+ * of a task is distributed over the partitions before it is read.
+ */
+public final class SpoolingManifest
+{
+    public static final String MANIFEST_FILE_NAME = "manifest";
+
+    private final BufferType type;
+    private final int bufferCount;
+    private final List<Long> fileSizes;
+
+    public SpoolingManifest(BufferType type, int bufferCount, List<Long> fileSizes)
+    {
+        this.type = requireNonNull(type, "type is null");
+        checkArgument(bufferCount >= 0, "bufferCount is negative");
+        this.bufferCount = bufferCount;
+        this.fileSizes = ImmutableList.copyOf(requireNonNull(fileSizes, "fileSizes is null"));
+        checkArgument(this.fileSizes.size() == getFileCount(), "Expected %s file sizes, but got %s", getFileCount(), this.fileSizes.size());
+    }
+
+    public BufferType getType()
+    {
+        return type;
+    }
+
+    public int getBufferCount()
+    {
+        return bufferCount;
+    }
+
+    public int getFileCount()
+    {
+        return type == PARTITIONED ? bufferCount : 1;
+    }
+
+    public String getFileName(OutputBufferId bufferId)
+    {
+        return getFileName(getFileIndex(bufferId));
+    }
+
+    /**
+     * Returns the size in bytes of the file read by the given buffer.
+     */
+    public long getFileSize(OutputBufferId bufferId)
+    {
+        return fileSizes.get(getFileIndex(bufferId));
+    }
+
+    private int getFileIndex(OutputBufferId bufferId)
+    {
+        return type == PARTITIONED ? bufferId.getId() : BROADCAST_PARTITION_ID;
+    }
+
+    public boolean isPageSelected(OutputBufferId bufferId, long pageIndex)
+    {
+        return type != ARBITRARY || pageIndex % bufferCount == bufferId.getId();
+    }
+
+    public static String getFileName(int partition)
+    {
+        return partition + ".data";
+    }
+
+    public void serialize(SliceOutput output)
+    {
+        output.writeByte(type.ordinal());
+        output.writeInt(bufferCount);
+        for (long fileSize : fileSizes) {
+            output.writeLong(fileSize);
+        }
+    }
+
+    public static SpoolingManifest deserialize(SliceInput input)
+    {
+        BufferType type = BufferType.values()[input.readByte()];
+        int bufferCount = input.readInt();
+        ImmutableList.Builder<Long> fileSizes = ImmutableList.builder();
+        for (int file = 0; file < (type == PARTITIONED ? bufferCount : 1); file++) {
+            fileSizes.add(input.readLong());
+        }
+        return new SpoolingManifest(type, bufferCount, fileSizes.build());
+    }
+
+    /**
+     * @return the manifest of the given task directory, or empty if the output of the task has not been committed yet
+     */
+    public static Optional<SpoolingManifest> read(ExchangeStorage exchangeStorage, String taskDirectory)
+            throws IOException
+    {
+        Optional<InputStream> manifestInput = exchangeStorage.openFile(taskDirectory, MANIFEST_FILE_NAME);
+        if (!manifestInput.isPresent()) {
+            return Optional.empty();
+        }
+        try (SliceInput input = new InputStreamSliceInput(manifestInput.get())) {
+            return Optional.of(deserialize(input));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("type", type)
+                .add("bufferCount", bufferCount)
+                .add("fileSizes", fileSizes)
+                .toString();
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.execution.buffer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.log.Logger;
+import io.airlift.slice.OutputStreamSliceOutput;
+import io.airlift.slice.SliceOutput;
+import io.airlift.units.DataSize;
+import io.prestosql.execution.StateMachine;
+import io.prestosql.execution.StateMachine.StateChangeListener;
+import io.prestosql.execution.TaskId;
+import io.prestosql.execution.buffer.OutputBuffers.BufferType;
+import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.QueryId;
+import io.prestosql.spi.exchange.ExchangeStorage;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkState;
+import static io.prestosql.execution.buffer.BufferState.FAILED;
+import static io.prestosql.execution.buffer.BufferState.FINISHED;
+import static io.prestosql.execution.buffer.BufferState.FLUSHING;
+import static io.prestosql.execution.buffer.BufferState.NO_MORE_BUFFERS;
+import static io.prestosql.execution.buffer.BufferState.NO_MORE_PAGES;
+import static io.prestosql.execution.buffer.BufferState.OPEN;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.PARTITIONED;
+import static io.prestosql.execution.buffer.PagesSerdeUtil.writeSerializedPage;
+import static io.prestosql.execution.buffer.SpoolingManifest.MANIFEST_FILE_NAME;
+import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes the output of a task to an {@link ExchangeStorage} instead of keeping it in memory until
+ * it is read. The output of each attempt of a task is written to its own directory, which is committed
+ * to the task directory when all pages and output buffers are known. Readers only ever see the
+ * output of the first attempt which committed, so a failed task can be retried on another node
+ * without affecting the tasks which already read its output.
+ * <p>
+ * Pages are written by the write executor, so drivers never block on the storage. Pages which
+ * are not written yet are accounted in the system memory of the task, and {@link #isFull} blocks
+ * the drivers while they exceed the maximum buffer size.
+ * <p>
+ * Pages are read directly from the storage, so {@link #get} is not supported.
+ */
+public class SpoolingOutputBuffer
+        implements OutputBuffer
+{
+    private static final Logger log = Logger.get(SpoolingOutputBuffer.class);
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final StateMachine<BufferState> state;
+    private final OutputBufferMemoryManager memoryManager;
+    private final ExchangeStorage exchangeStorage;
+    private final Executor writeExecutor;
+    private final String attemptDirectory;
+    private final String taskDirectory;
+    private final Consumer<Throwable> failureListener;
+
+    @GuardedBy("this")
+    private OutputBuffers outputBuffers;
+    @GuardedBy("this")
+    private final Queue<PendingPages> pendingPages = new ArrayDeque<>();
+    @GuardedBy("this")
+    private boolean flushing;
+    @GuardedBy("this")
+    private boolean committing;
+
+    private final Object writeLock = new Object();
+    @GuardedBy("writeLock")
+    private final Map<Integer, SliceOutput> files = new HashMap<>();
+
+    private final AtomicLong totalPagesAdded = new AtomicLong();
+    private final AtomicLong totalRowsAdded = new AtomicLong();
+
+    public SpoolingOutputBuffer(
+            TaskId taskId,
+            String taskInstanceId,
+            StateMachine<BufferState> state,
+            OutputBuffers outputBuffers,
+            DataSize maxBufferSize,
+            Supplier<LocalMemoryContext> systemMemoryContextSupplier,
+            ExchangeStorage exchangeStorage,
+            Executor writeExecutor,
+            Executor notificationExecutor,
+            Consumer<Throwable> failureListener)
+    {
+        requireNonNull(taskId, "taskId is null");
+        requireNonNull(taskInstanceId, "taskInstanceId is null");
+        requireNonNull(maxBufferSize, "maxBufferSize is null");
+        this.state = requireNonNull(state, "state is null");
+        this.outputBuffers = requireNonNull(outputBuffers, "outputBuffers is null");
+        this.memoryManager = new OutputBufferMemoryManager(
+                maxBufferSize.toBytes(),
+                requireNonNull(systemMemoryContextSupplier, "systemMemoryContextSupplier is null"),
+                requireNonNull(notificationExecutor, "notificationExecutor is null"));
+        this.exchangeStorage = requireNonNull(exchangeStorage, "exchangeStorage is null");
+        this.writeExecutor = requireNonNull(writeExecutor, "writeExecutor is null");
+        this.failureListener = requireNonNull(failureListener, "failureListener is null");
+        this.taskDirectory = getTaskDirectory(taskId);
+        this.attemptDirectory = taskDirectory + "." + taskInstanceId;
+
+        if (outputBuffers.isNoMoreBufferIds()) {
+            state.compareAndSet(OPEN, NO_MORE_BUFFERS);
+        }
+    }
+
+    public static String getQueryDirectory(QueryId queryId)
+    {
+        return queryId.toString();
+    }
+
+    public static String getTaskDirectory(TaskId taskId)
+    {
+        return getQueryDirectory(taskId.getQueryId()) + "/" + taskId;
+    }
+
+    @Override
+    public void addStateChangeListener(StateChangeListener<BufferState> stateChangeListener)
+    {
+        state.addStateChangeListener(stateChangeListener);
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return state.get() == FINISHED;
+    }
+
+    @Override
+    public double getUtilization()
+    {
+        return memoryManager.getUtilization();
+    }
+
+    @Override
+    public boolean isOverutilized()
+    {
+        return memoryManager.isOverutilized();
+    }
+
+    @Override
+    public OutputBufferInfo getInfo()
+    {
+        BufferState state = this.state.get();
+        return new OutputBufferInfo(
+                "SPOOLING",
+                state,
+                state.canAddBuffers(),
+                state.canAddPages(),
+                memoryManager.getBufferedBytes(),
+                0,
+                totalRowsAdded.get(),
+                totalPagesAdded.get(),
+                ImmutableList.of());
+    }
+
+    @Override
+    public void setOutputBuffers(OutputBuffers newOutputBuffers)
+    {
+        requireNonNull(newOutputBuffers, "newOutputBuffers is null");
+
+        synchronized (this) {
+            // ignore buffers added after query finishes, which can happen when a query is canceled
+            // also ignore old versions, which is normal
+            if (state.get().isTerminal() || outputBuffers.getVersion() >= newOutputBuffers.getVersion()) {
+                return;
+            }
+            outputBuffers.checkValidTransition(newOutputBuffers);
+            outputBuffers = newOutputBuffers;
+        }
+
+        if (newOutputBuffers.isNoMoreBufferIds()) {
+            state.compareAndSet(OPEN, NO_MORE_BUFFERS);
+            state.compareAndSet(NO_MORE_PAGES, FLUSHING);
+        }
+        scheduleFlush();
+    }
+
+    @Override
+    public ListenableFuture<BufferResult> get(OutputBufferId bufferId, long token, DataSize maxSize)
+    {
+        throw new UnsupportedOperationException("The output of a spooling buffer must be read from the exchange storage");
+    }
+
+    @Override
+    public void acknowledge(OutputBufferId bufferId, long token)
+    {
+        // readers do not acknowledge spooled pages
+    }
+
+    @Override
+    public void abort(OutputBufferId bufferId)
+    {
+        // the output stays in the storage until the query is done, so that it can be read by retried tasks
+    }
+
+    @Override
+    public ListenableFuture<?> isFull()
+    {
+        return memoryManager.getBufferBlockedFuture();
+    }
+
+    @Override
+    public void enqueue(List<SerializedPage> pages)
+    {
+        enqueue(0, pages);
+    }
+
+    @Override
+    public void enqueue(int partition, List<SerializedPage> pages)
+    {
+        checkState(!Thread.holdsLock(this), "Cannot enqueue pages while holding a lock on this");
+        requireNonNull(pages, "pages is null");
+
+        synchronized (this) {
+            // ignore pages after "no more pages" is set
+            // this can happen with a limit query
+            if (!state.get().canAddPages()) {
+                return;
+            }
+            checkState(partition == 0 || outputBuffers.getType() == PARTITIONED, "Expected partition 0 for %s output buffer", outputBuffers.getType());
+
+            PendingPages newPages = new PendingPages(partition, pages);
+            memoryManager.updateMemoryUsage(newPages.getRetainedSizeInBytes());
+            pendingPages.add(newPages);
+        }
+
+        totalRowsAdded.addAndGet(pages.stream().mapToLong(SerializedPage::getPositionCount).sum());
+        totalPagesAdded.addAndGet(pages.size());
+        scheduleFlush();
+    }
+
+    @Override
+    public void setNoMorePages()
+    {
+        checkState(!Thread.holdsLock(this), "Cannot set no more pages while holding a lock on this");
+        state.compareAndSet(OPEN, NO_MORE_PAGES);
+        state.compareAndSet(NO_MORE_BUFFERS, FLUSHING);
+        memoryManager.setNoBlockOnFull();
+        scheduleFlush();
+    }
+
+    @Override
+    public void destroy()
+    {
+        // a committed buffer is already finished, so this only discards the output of an attempt
+        // which did not complete, e.g. because the query was canceled
+        if (state.setIf(FINISHED, oldState -> !oldState.isTerminal())) {
+            discard();
+        }
+    }
+
+    @Override
+    public void fail()
+    {
+        if (state.setIf(FAILED, oldState -> !oldState.isTerminal())) {
+            discard();
+        }
+    }
+
+    @Override
+    public long getPeakMemoryUsage()
+    {
+        return memoryManager.getPeakMemoryUsage();
+    }
+
+    private void scheduleFlush()
+    {
+        synchronized (this) {
+            if (flushing || (pendingPages.isEmpty() && state.get() != FLUSHING)) {
+                return;
+            }
+            flushing = true;
+        }
+        writeExecutor.execute(this::flush);
+    }
+
+    private void flush()
+    {
+        while (true) {
+            PendingPages pages;
+            synchronized (this) {
+                pages = pendingPages.poll();
+                if (pages == null) {
+                    // the output is committed once all pages are written and the output buffers are known
+                    if (state.get() != FLUSHING || committing) {
+                        flushing = false;
+                        return;
+                    }
+                    committing = true;
+                    break;
+                }
+            }
+
+            try {
+                write(pages);
+            }
+            catch (IOException | RuntimeException e) {
+                // no more pages are written, so the pending pages are released when the task fails
+                failureListener.accept(new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to write task output to exchange storage", e));
+                return;
+            }
+            finally {
+                memoryManager.updateMemoryUsage(-pages.getRetainedSizeInBytes());
+            }
+        }
+        commit();
+    }
+
+    private void write(PendingPages pages)
+            throws IOException
+    {
+        synchronized (writeLock) {
+            // the output of a failed or destroyed attempt has already been discarded
+            if (state.get().isTerminal()) {
+                return;
+            }
+            SliceOutput output = getFile(pages.getPartition());
+            for (SerializedPage page : pages.getPages()) {
+                writeSerializedPage(output, page);
+            }
+        }
+    }
+
+    private void commit()
+    {
+        try {
+            SpoolingManifest manifest;
+            synchronized (writeLock) {
+                OutputBuffers outputBuffers = getOutputBuffers();
+                BufferType type = outputBuffers.getType();
+                int bufferCount = outputBuffers.getBuffers().size();
+                int fileCount = type == PARTITIONED ? bufferCount : 1;
+                ImmutableList.Builder<Long> fileSizes = ImmutableList.builder();
+                for (int partition = 0; partition < fileCount; partition++) {
+                    fileSizes.add(getFile(partition).longSize());
+                }
+                for (SliceOutput output : files.values()) {
+                    output.close();
+                }
+                files.clear();
+                manifest = new SpoolingManifest(type, bufferCount, fileSizes.build());
+            }
+
+            try (SliceOutput output = new OutputStreamSliceOutput(exchangeStorage.createFile(attemptDirectory, MANIFEST_FILE_NAME))) {
+                manifest.serialize(output);
+            }
+
+            if (!exchangeStorage.commitDirectory(attemptDirectory, taskDirectory)) {
+                // another attempt of this task has already committed its output
+                exchangeStorage.removeDirectory(attemptDirectory);
+            }
+            state.setIf(FINISHED, oldState -> !oldState.isTerminal());
+            memoryManager.close();
+        }
+        catch (IOException | RuntimeException e) {
+            failureListener.accept(new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to commit task output to exchange storage", e));
+        }
+    }
+
+    private synchronized OutputBuffers getOutputBuffers()
+    {
+        return outputBuffers;
+    }
+
+    @GuardedBy("writeLock")
+    private SliceOutput getFile(int partition)
+            throws IOException
+    {
+        SliceOutput output = files.get(partition);
+        if (output == null) {
+            output = new OutputStreamSliceOutput(exchangeStorage.createFile(attemptDirectory, SpoolingManifest.getFileName(partition)), BUFFER_SIZE);
+            files.put(partition, output);
+        }
+        return output;
+    }
+
+    private void discard()
+    {
+        synchronized (this) {
+            pendingPages.clear();
+        }
+        memoryManager.setNoBlockOnFull();
+        memoryManager.close();
+
+        synchronized (writeLock) {
+            try {
+                for (SliceOutput output : files.values()) {
+                    output.close();
+                }
+                files.clear();
+                exchangeStorage.removeDirectory(attemptDirectory);
+            }
+            catch (IOException | RuntimeException e) {
+                log.warn(e, "Failed to remove task output directory %s", attemptDirectory);
+            }
+        }
+    }
+
+    private static class PendingPages
+    {
+        private final int partition;
+        private final List<SerializedPage> pages;
+        private final long retainedSizeInBytes;
+
+        public PendingPages(int partition, List<SerializedPage> pages)
+        {
+            this.partition = partition;
+            this.pages = ImmutableList.copyOf(requireNonNull(pages, "pages is null"));
+            this.retainedSizeInBytes = pages.stream().mapToLong(SerializedPage::getRetainedSizeInBytes).sum();
+        }
+
+        public int getPartition()
+        {
+            return partition;
+        }
+
+        public List<SerializedPage> getPages()
+        {
+            return pages;
+        }
+
+        public long getRetainedSizeInBytes()
+        {
+            return retainedSizeInBytes;
+        }
+    }
+}
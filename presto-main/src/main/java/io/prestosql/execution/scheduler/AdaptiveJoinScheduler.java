@@ -0,0 +1,302 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.execution.scheduler;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.log.Logger;
+import io.prestosql.Session;
+import io.prestosql.exchange.ExchangeStorageManager;
+import io.prestosql.execution.PartitionSlice;
+import io.prestosql.execution.RemoteTask;
+import io.prestosql.execution.SqlStageExecution;
+import io.prestosql.execution.StageInfo;
+import io.prestosql.execution.TaskId;
+import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.execution.buffer.SpoolingManifest;
+import io.prestosql.metadata.InternalNode;
+import io.prestosql.spi.exchange.ExchangeStorage;
+import io.prestosql.sql.planner.PlanFragment;
+import io.prestosql.sql.planner.plan.PlanFragmentId;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.util.concurrent.Futures.allAsList;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.prestosql.SystemSessionProperties.getJoinSkewFactor;
+import static io.prestosql.SystemSessionProperties.getJoinSkewMinPartitionSize;
+import static io.prestosql.SystemSessionProperties.isAdaptiveJoinReorderingEnabled;
+import static io.prestosql.SystemSessionProperties.isJoinSkewSplittingEnabled;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.PARTITIONED;
+import static io.prestosql.execution.buffer.SpoolingOutputBuffer.getTaskDirectory;
+import static io.prestosql.execution.scheduler.ScheduleResult.BlockedReason.WAITING_FOR_SOURCE;
+import static io.prestosql.sql.planner.AdaptiveJoinReordering.reorderJoins;
+import static io.prestosql.sql.planner.SkewedJoinSplitting.getSplittableProbeSources;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds back the scheduling of a stage until its source stages have finished, and then adapts
+ * the joins of the stage to the actual output of the source stages. The build side of the joins
+ * is chosen from the output size of the source stages, and partitions whose probe side is much
+ * larger than the others are split over multiple tasks, which each read the output of a subset
+ * of the probe side tasks and all of the build side.
+ */
+public class AdaptiveJoinScheduler
+        implements StageScheduler
+{
+    private static final Logger log = Logger.get(AdaptiveJoinScheduler.class);
+
+    private final Session session;
+    private final SqlStageExecution stage;
+    private final Set<SqlStageExecution> sourceStages;
+    private final List<InternalNode> partitionToNode;
+    private final ExchangeStorageManager exchangeStorageManager;
+    private final Map<PlanFragmentId, ListenableFuture<StageInfo>> sourceStageInfos;
+    private final ListenableFuture<List<StageInfo>> sourceStagesFinished;
+
+    public AdaptiveJoinScheduler(
+            Session session,
+            SqlStageExecution stage,
+            Set<SqlStageExecution> sourceStages,
+            List<InternalNode> partitionToNode,
+            ExchangeStorageManager exchangeStorageManager)
+    {
+        this.session = requireNonNull(session, "session is null");
+        this.stage = requireNonNull(stage, "stage is null");
+        this.sourceStages = ImmutableSet.copyOf(requireNonNull(sourceStages, "sourceStages is null"));
+        this.partitionToNode = ImmutableList.copyOf(requireNonNull(partitionToNode, "partitionToNode is null"));
+        this.exchangeStorageManager = requireNonNull(exchangeStorageManager, "exchangeStorageManager is null");
+
+        ImmutableMap.Builder<PlanFragmentId, ListenableFuture<StageInfo>> sourceStageInfos = ImmutableMap.builder();
+        for (SqlStageExecution sourceStage : this.sourceStages) {
+            SettableFuture<StageInfo> finalStageInfo = SettableFuture.create();
+            sourceStage.addFinalStageInfoListener(finalStageInfo::set);
+            sourceStageInfos.put(sourceStage.getFragment().getId(), finalStageInfo);
+        }
+        this.sourceStageInfos = sourceStageInfos.build();
+        this.sourceStagesFinished = allAsList(this.sourceStageInfos.values());
+    }
+
+    @Override
+    public ScheduleResult schedule()
+    {
+        if (!sourceStagesFinished.isDone()) {
+            return new ScheduleResult(false, ImmutableList.of(), sourceStagesFinished, WAITING_FOR_SOURCE, 0);
+        }
+
+        if (isAdaptiveJoinReorderingEnabled(session)) {
+            reorderJoinsOfStage();
+        }
+        Map<Integer, List<PartitionSlice>> partitionSlices = ImmutableMap.of();
+        if (isJoinSkewSplittingEnabled(session)) {
+            partitionSlices = splitSkewedPartitionsOfStage();
+        }
+
+        OptionalInt totalPartitions = OptionalInt.of(partitionToNode.size());
+        ImmutableList.Builder<RemoteTask> newTasks = ImmutableList.builder();
+        int nextTaskNumber = partitionToNode.size();
+        for (int partition = 0; partition < partitionToNode.size(); partition++) {
+            List<PartitionSlice> slices = partitionSlices.get(partition);
+            if (slices == null) {
+                stage.scheduleTask(partitionToNode.get(partition), partition, totalPartitions).ifPresent(newTasks::add);
+                continue;
+            }
+            // the first slice takes the place of the task of the partition, and the other slices are spread over the other nodes
+            for (int slice = 0; slice < slices.size(); slice++) {
+                int taskNumber = slice == 0 ? partition : nextTaskNumber++;
+                InternalNode node = partitionToNode.get((partition + slice) % partitionToNode.size());
+                stage.scheduleTask(node, taskNumber, slices.get(slice), totalPartitions).ifPresent(newTasks::add);
+            }
+        }
+        return new ScheduleResult(true, newTasks.build(), 0);
+    }
+
+    private void reorderJoinsOfStage()
+    {
+        ImmutableMap.Builder<PlanFragmentId, Long> sourceOutputSizes = ImmutableMap.builder();
+        for (Entry<PlanFragmentId, ListenableFuture<StageInfo>> entry : sourceStageInfos.entrySet()) {
+            sourceOutputSizes.put(entry.getKey(), getFutureValue(entry.getValue()).getStageStats().getOutputDataSize().toBytes());
+        }
+        Map<PlanFragmentId, Long> outputSizes = sourceOutputSizes.build();
+
+        PlanFragment fragment = stage.getFragment();
+        PlanFragment reorderedFragment = reorderJoins(session, fragment, outputSizes);
+        if (reorderedFragment != fragment) {
+            log.debug("Swapped join sides of stage %s based on the output size of its sources: %s", stage.getStageId(), outputSizes);
+            stage.replaceFragment(reorderedFragment);
+        }
+    }
+
+    private Map<Integer, List<PartitionSlice>> splitSkewedPartitionsOfStage()
+    {
+        Optional<Set<PlanNodeId>> probeSources = getSplittableProbeSources(stage.getFragment());
+        if (!probeSources.isPresent()) {
+            return ImmutableMap.of();
+        }
+        Set<PlanFragmentId> probeFragments = stage.getFragment().getRemoteSourceNodes().stream()
+                .filter(remoteSource -> probeSources.get().contains(remoteSource.getId()))
+                .flatMap(remoteSource -> remoteSource.getSourceFragmentIds().stream())
+                .collect(toImmutableSet());
+
+        // the size of each partition produced by the probe side tasks is recorded in their spooled output
+        int partitionCount = partitionToNode.size();
+        ExchangeStorage exchangeStorage = exchangeStorageManager.getExchangeStorage();
+        ImmutableMap.Builder<TaskId, long[]> taskPartitionSizes = ImmutableMap.builder();
+        for (SqlStageExecution sourceStage : sourceStages) {
+            if (!probeFragments.contains(sourceStage.getFragment().getId())) {
+                continue;
+            }
+            for (RemoteTask task : sourceStage.getAllTasks()) {
+                Optional<SpoolingManifest> manifest;
+                try {
+                    manifest = SpoolingManifest.read(exchangeStorage, getTaskDirectory(task.getTaskId()));
+                }
+                catch (IOException | RuntimeException e) {
+                    log.warn(e, "Failed to read the output manifest of task %s", task.getTaskId());
+                    return ImmutableMap.of();
+                }
+                if (!manifest.isPresent() || manifest.get().getType() != PARTITIONED || manifest.get().getBufferCount() != partitionCount) {
+                    return ImmutableMap.of();
+                }
+                long[] sizes = new long[partitionCount];
+                for (int partition = 0; partition < partitionCount; partition++) {
+                    sizes[partition] = manifest.get().getFileSize(new OutputBufferId(partition));
+                }
+                taskPartitionSizes.put(task.getTaskId(), sizes);
+            }
+        }
+        Map<TaskId, long[]> sizes = taskPartitionSizes.build();
+
+        Map<Integer, List<Set<TaskId>>> skewedPartitions = splitSkewedPartitions(
+                sizes,
+                partitionCount,
+                getJoinSkewFactor(session),
+                getJoinSkewMinPartitionSize(session).toBytes());
+        if (skewedPartitions.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        ImmutableMap.Builder<Integer, List<PartitionSlice>> partitionSlices = ImmutableMap.builder();
+        int skewedPartitionTasks = 0;
+        long largestPartitionSize = 0;
+        long largestPartitionTaskSize = 0;
+        for (Entry<Integer, List<Set<TaskId>>> entry : skewedPartitions.entrySet()) {
+            int partition = entry.getKey();
+            ImmutableList.Builder<PartitionSlice> slices = ImmutableList.builder();
+            long partitionSize = 0;
+            for (Set<TaskId> sourceTasks : entry.getValue()) {
+                long sliceSize = sourceTasks.stream()
+                        .mapToLong(taskId -> sizes.get(taskId)[partition])
+                        .sum();
+                partitionSize += sliceSize;
+                largestPartitionTaskSize = max(largestPartitionTaskSize, sliceSize);
+                slices.add(new PartitionSlice(partition, probeSources.get(), sourceTasks));
+            }
+            largestPartitionSize = max(largestPartitionSize, partitionSize);
+            skewedPartitionTasks += entry.getValue().size();
+            partitionSlices.put(partition, slices.build());
+        }
+        log.debug("Splitting skewed partitions of stage %s over %s tasks: %s", stage.getStageId(), skewedPartitionTasks, skewedPartitions.keySet());
+        stage.recordSkewedPartitions(skewedPartitions.size(), skewedPartitionTasks, largestPartitionSize, largestPartitionTaskSize);
+        return partitionSlices.build();
+    }
+
+    /**
+     * Finds the partitions which are larger than the minimum size and {@code skewFactor} times larger than
+     * the median partition, and divides the producers of each of them into groups of similar total size.
+     * A partition is split into as many groups as needed to bring it down to the size of the median partition,
+     * but not more than the number of producers with output for the partition, or the number of partitions.
+     *
+     * @param taskPartitionSizes the size of each partition produced by each task
+     * @return the groups of tasks for each skewed partition
+     */
+    @VisibleForTesting
+    static Map<Integer, List<Set<TaskId>>> splitSkewedPartitions(Map<TaskId, long[]> taskPartitionSizes, int partitionCount, long skewFactor, long minPartitionSize)
+    {
+        long[] partitionSizes = new long[partitionCount];
+        for (long[] sizes : taskPartitionSizes.values()) {
+            for (int partition = 0; partition < partitionCount; partition++) {
+                partitionSizes[partition] += sizes[partition];
+            }
+        }
+        long[] sortedSizes = partitionSizes.clone();
+        Arrays.sort(sortedSizes);
+        long medianSize = sortedSizes[partitionCount / 2];
+
+        ImmutableMap.Builder<Integer, List<Set<TaskId>>> skewedPartitions = ImmutableMap.builder();
+        for (int partition = 0; partition < partitionCount; partition++) {
+            long partitionSize = partitionSizes[partition];
+            if (partitionSize < minPartitionSize || partitionSize <= skewFactor * medianSize) {
+                continue;
+            }
+
+            int currentPartition = partition;
+            List<TaskId> producers = taskPartitionSizes.entrySet().stream()
+                    .filter(entry -> entry.getValue()[currentPartition] > 0)
+                    .sorted(Comparator.comparingLong((Entry<TaskId, long[]> entry) -> entry.getValue()[currentPartition]).reversed())
+                    .map(Entry::getKey)
+                    .collect(toImmutableList());
+            long targetSliceCount = (partitionSize + max(medianSize, 1) - 1) / max(medianSize, 1);
+            int sliceCount = (int) min(targetSliceCount, min(producers.size(), partitionCount));
+            if (sliceCount < 2) {
+                continue;
+            }
+
+            // assign the largest producers first, each to the group with the smallest total size
+            List<ImmutableSet.Builder<TaskId>> slices = new ArrayList<>();
+            long[] sliceSizes = new long[sliceCount];
+            for (int slice = 0; slice < sliceCount; slice++) {
+                slices.add(ImmutableSet.builder());
+            }
+            for (TaskId producer : producers) {
+                int smallest = 0;
+                for (int slice = 1; slice < sliceCount; slice++) {
+                    if (sliceSizes[slice] < sliceSizes[smallest]) {
+                        smallest = slice;
+                    }
+                }
+                slices.get(smallest).add(producer);
+                sliceSizes[smallest] += taskPartitionSizes.get(producer)[partition];
+            }
+            skewedPartitions.put(partition, slices.stream()
+                    .map(ImmutableSet.Builder::build)
+                    .collect(toImmutableList()));
+        }
+        return skewedPartitions.build();
+    }
+
+    @Override
+    public void close()
+    {
+        sourceStagesFinished.cancel(true);
+    }
+}
@@ -21,10 +21,12 @@ import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.concurrent.SetThreadName;
+import io.airlift.log.Logger;
 import io.airlift.stats.TimeStat;
 import io.airlift.units.Duration;
 import io.prestosql.Session;
 import io.prestosql.connector.CatalogName;
+import io.prestosql.exchange.ExchangeStorageManager;
 import io.prestosql.execution.BasicStageStats;
 import io.prestosql.execution.LocationFactory;
 import io.prestosql.execution.NodeTaskMap;
@@ -39,18 +41,27 @@ import io.prestosql.execution.StageState;
 import io.prestosql.execution.TaskStatus;
 import io.prestosql.execution.buffer.OutputBuffers;
 import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.execution.buffer.SpoolingOutputBuffer;
 import io.prestosql.failuredetector.FailureDetector;
 import io.prestosql.metadata.InternalNode;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.connector.ConnectorPartitionHandle;
+import io.prestosql.spi.predicate.Domain;
 import io.prestosql.split.SplitSource;
+import io.prestosql.sql.DynamicFilters;
+import io.prestosql.sql.planner.CoordinatorDynamicFiltersCollector;
 import io.prestosql.sql.planner.NodePartitionMap;
 import io.prestosql.sql.planner.NodePartitioningManager;
 import io.prestosql.sql.planner.PartitioningHandle;
+import io.prestosql.sql.planner.PlanFragment;
 import io.prestosql.sql.planner.StageExecutionPlan;
+import io.prestosql.sql.planner.plan.FilterNode;
 import io.prestosql.sql.planner.plan.PlanFragmentId;
+import io.prestosql.sql.planner.plan.PlanNode;
 import io.prestosql.sql.planner.plan.PlanNodeId;
+import io.prestosql.sql.planner.plan.TableScanNode;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -82,7 +93,13 @@ import static io.airlift.concurrent.MoreFutures.tryGetFutureValue;
 import static io.airlift.concurrent.MoreFutures.whenAnyComplete;
 import static io.airlift.http.client.HttpUriBuilder.uriBuilderFrom;
 import static io.prestosql.SystemSessionProperties.getConcurrentLifespansPerNode;
+import static io.prestosql.SystemSessionProperties.getTaskMaxRetries;
 import static io.prestosql.SystemSessionProperties.getWriterMinSize;
+import static io.prestosql.SystemSessionProperties.isAdaptiveJoinReorderingEnabled;
+import static io.prestosql.SystemSessionProperties.isEnableCoordinatorDynamicFiltersDistribution;
+import static io.prestosql.SystemSessionProperties.isEnableDynamicFiltering;
+import static io.prestosql.SystemSessionProperties.isJoinSkewSplittingEnabled;
+import static io.prestosql.SystemSessionProperties.isTaskRetryEnabled;
 import static io.prestosql.connector.CatalogName.isInternalSystemConnector;
 import static io.prestosql.execution.BasicStageStats.aggregateBasicStageStats;
 import static io.prestosql.execution.SqlStageExecution.createSqlStageExecution;
@@ -96,9 +113,14 @@ import static io.prestosql.execution.scheduler.SourcePartitionedScheduler.newSou
 import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.prestosql.spi.StandardErrorCode.NO_NODES_AVAILABLE;
 import static io.prestosql.spi.connector.NotPartitionedPartitionHandle.NOT_PARTITIONED;
+import static io.prestosql.sql.DynamicFilters.getProducedDynamicFilters;
+import static io.prestosql.sql.planner.AdaptiveJoinReordering.hasReorderableJoins;
+import static io.prestosql.sql.planner.SkewedJoinSplitting.getSplittableProbeSources;
+import static io.prestosql.sql.planner.SystemPartitioningHandle.COORDINATOR_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_BROADCAST_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SCALED_WRITER_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SOURCE_DISTRIBUTION;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
 import static io.prestosql.sql.planner.plan.ExchangeNode.Type.REPLICATE;
 import static io.prestosql.util.Failures.checkCondition;
 import static java.lang.String.format;
@@ -111,6 +133,8 @@ import static java.util.stream.Collectors.toSet;
 
 public class SqlQueryScheduler
 {
+    private static final Logger log = Logger.get(SqlQueryScheduler.class);
+
     private final QueryStateMachine queryStateMachine;
     private final ExecutionPolicy executionPolicy;
     private final Map<StageId, SqlStageExecution> stages;
@@ -120,6 +144,8 @@ public class SqlQueryScheduler
     private final Map<StageId, StageLinkage> stageLinkages;
     private final SplitSchedulerStats schedulerStats;
     private final boolean summarizeTaskInfo;
+    private final CoordinatorDynamicFiltersCollector dynamicFiltersCollector;
+    private final ExchangeStorageManager exchangeStorageManager;
     private final AtomicBoolean started = new AtomicBoolean();
 
     public static SqlQueryScheduler createSqlQueryScheduler(
@@ -138,7 +164,9 @@ public class SqlQueryScheduler
             OutputBuffers rootOutputBuffers,
             NodeTaskMap nodeTaskMap,
             ExecutionPolicy executionPolicy,
-            SplitSchedulerStats schedulerStats)
+            SplitSchedulerStats schedulerStats,
+            CoordinatorDynamicFiltersCollector dynamicFiltersCollector,
+            ExchangeStorageManager exchangeStorageManager)
     {
         SqlQueryScheduler sqlQueryScheduler = new SqlQueryScheduler(
                 queryStateMachine,
@@ -156,7 +184,9 @@ public class SqlQueryScheduler
                 rootOutputBuffers,
                 nodeTaskMap,
                 executionPolicy,
-                schedulerStats);
+                schedulerStats,
+                dynamicFiltersCollector,
+                exchangeStorageManager);
         sqlQueryScheduler.initialize();
         return sqlQueryScheduler;
     }
@@ -177,12 +207,16 @@ public class SqlQueryScheduler
             OutputBuffers rootOutputBuffers,
             NodeTaskMap nodeTaskMap,
             ExecutionPolicy executionPolicy,
-            SplitSchedulerStats schedulerStats)
+            SplitSchedulerStats schedulerStats,
+            CoordinatorDynamicFiltersCollector dynamicFiltersCollector,
+            ExchangeStorageManager exchangeStorageManager)
     {
         this.queryStateMachine = requireNonNull(queryStateMachine, "queryStateMachine is null");
         this.executionPolicy = requireNonNull(executionPolicy, "schedulerPolicyFactory is null");
         this.schedulerStats = requireNonNull(schedulerStats, "schedulerStats is null");
         this.summarizeTaskInfo = summarizeTaskInfo;
+        this.dynamicFiltersCollector = requireNonNull(dynamicFiltersCollector, "dynamicFiltersCollector is null");
+        this.exchangeStorageManager = requireNonNull(exchangeStorageManager, "exchangeStorageManager is null");
 
         // todo come up with a better way to build this, or eliminate this map
         ImmutableMap.Builder<StageId, StageScheduler> stageSchedulers = ImmutableMap.builder();
@@ -266,6 +300,79 @@ public class SqlQueryScheduler
         for (SqlStageExecution stage : stages.values()) {
             stage.addFinalStageInfoListener(status -> queryStateMachine.updateQueryInfo(Optional.ofNullable(getStageInfo())));
         }
+
+        Session session = queryStateMachine.getSession();
+        if (isEnableDynamicFiltering(session) && isEnableCoordinatorDynamicFiltersDistribution(session)) {
+            distributeDynamicFilters();
+        }
+
+        if (isTaskRetryEnabled(session)) {
+            queryStateMachine.addStateChangeListener(newState -> {
+                if (newState == QueryState.FINISHED) {
+                    // the output of the root stage is removed once it has been read by the client
+                    stages.values().stream()
+                            .filter(stage -> !stage.getStageId().equals(rootStageId))
+                            .flatMap(stage -> stage.getAllTasks().stream())
+                            .forEach(task -> removeSpooledOutput(SpoolingOutputBuffer.getTaskDirectory(task.getTaskId())));
+                }
+                else if (newState == QueryState.FAILED) {
+                    removeSpooledOutput(SpoolingOutputBuffer.getQueryDirectory(queryStateMachine.getQueryId()));
+                }
+            });
+        }
+    }
+
+    private void removeSpooledOutput(String directory)
+    {
+        try {
+            exchangeStorageManager.getExchangeStorage().removeDirectory(directory);
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn(e, "Failed to remove spooled output %s", directory);
+        }
+    }
+
+    private void distributeDynamicFilters()
+    {
+        Map<StageId, Set<String>> consumedDynamicFilters = stages.values().stream()
+                .collect(toImmutableMap(SqlStageExecution::getStageId, stage -> getConsumedDynamicFilters(stage.getFragment().getRoot())));
+
+        for (SqlStageExecution producer : stages.values()) {
+            Set<String> producedDynamicFilters = getProducedDynamicFilters(producer.getFragment().getRoot());
+            if (producedDynamicFilters.isEmpty()) {
+                continue;
+            }
+            producer.addDynamicFilterDomainsListener(domains -> {
+                // used for pruning splits of the probe-side table scans
+                dynamicFiltersCollector.addDomains(domains);
+                for (SqlStageExecution consumer : stages.values()) {
+                    Set<String> consumedIds = consumedDynamicFilters.get(consumer.getStageId());
+                    Map<String, Domain> consumedDomains = domains.entrySet().stream()
+                            .filter(entry -> consumedIds.contains(entry.getKey()))
+                            // an unconstrained domain does not filter anything
+                            .filter(entry -> !entry.getValue().isAll())
+                            .collect(toImmutableMap(Entry::getKey, Entry::getValue));
+                    consumer.addDynamicFilterDomains(consumedDomains);
+                }
+            });
+        }
+    }
+
+    private static Set<String> getConsumedDynamicFilters(PlanNode root)
+    {
+        return searchFrom(root)
+                .where(node -> node instanceof FilterNode && ((FilterNode) node).getSource() instanceof TableScanNode)
+                .<FilterNode>findAll()
+                .stream()
+                .flatMap(node -> DynamicFilters.extractDynamicFilters(node.getPredicate()).getDynamicConjuncts().stream())
+                .map(DynamicFilters.Descriptor::getId)
+                .collect(toImmutableSet());
+    }
+
+    private static boolean hasAdaptiveJoins(Session session, PlanFragment fragment)
+    {
+        return (isAdaptiveJoinReorderingEnabled(session) && hasReorderableJoins(fragment)) ||
+                (isJoinSkewSplittingEnabled(session) && getSplittableProbeSources(fragment).isPresent());
     }
 
     private static void updateQueryOutputLocations(QueryStateMachine queryStateMachine, OutputBufferId rootBufferId, Set<RemoteTask> tasks, boolean noMoreExchangeLocations)
@@ -309,9 +416,17 @@ public class SqlQueryScheduler
                 failureDetector,
                 schedulerStats);
 
+        if (isTaskRetryEnabled(session)
+                && !plan.getFragment().getPartitioning().equals(COORDINATOR_DISTRIBUTION)
+                && !plan.getFragment().getStageExecutionDescriptor().isStageGroupedExecution()) {
+            // the output of the tasks is spooled, so failed tasks can be rerun on other nodes
+            stage.enableTaskRetries(getTaskMaxRetries(session), nodeScheduler.createNodeSelector(Optional.empty()));
+        }
+
         stages.add(stage);
 
         Optional<int[]> bucketToPartition;
+        Optional<List<InternalNode>> adaptiveJoinNodes = Optional.empty();
         PartitioningHandle partitioningHandle = plan.getFragment().getPartitioning();
         if (partitioningHandle.equals(SOURCE_DISTRIBUTION)) {
             // nodes are selected dynamically based on the constraints of the splits and the system load
@@ -393,7 +508,13 @@ public class SqlQueryScheduler
                 List<InternalNode> partitionToNode = nodePartitionMap.getPartitionToNode();
                 // todo this should asynchronously wait a standard timeout period before failing
                 checkCondition(!partitionToNode.isEmpty(), NO_NODES_AVAILABLE, "No worker nodes available");
-                stageSchedulers.put(stageId, new FixedCountScheduler(stage, partitionToNode));
+                if (isTaskRetryEnabled(session) && hasAdaptiveJoins(session, plan.getFragment())) {
+                    // the source stages must be created before the stage can wait for them, see below
+                    adaptiveJoinNodes = Optional.of(partitionToNode);
+                }
+                else {
+                    stageSchedulers.put(stageId, new FixedCountScheduler(stage, partitionToNode));
+                }
                 bucketToPartition = Optional.of(nodePartitionMap.getBucketToPartition());
             }
         }
@@ -428,7 +549,12 @@ public class SqlQueryScheduler
             }
         });
 
-        stageLinkages.put(stageId, new StageLinkage(plan.getFragment().getId(), parent, childStages));
+        stageLinkages.put(stageId, new StageLinkage(stage, parent, childStages));
+
+        if (adaptiveJoinNodes.isPresent()) {
+            // the output of the child stages is spooled, so they can finish before this stage is scheduled
+            stageSchedulers.put(stageId, new AdaptiveJoinScheduler(session, stage, childStages, adaptiveJoinNodes.get(), exchangeStorageManager));
+        }
 
         if (partitioningHandle.equals(SCALED_WRITER_DISTRIBUTION)) {
             Supplier<Collection<TaskStatus>> sourceTasksProvider = () -> childStages.stream()
@@ -662,14 +788,16 @@ public class SqlQueryScheduler
 
     private static class StageLinkage
     {
+        private final SqlStageExecution currentStage;
         private final PlanFragmentId currentStageFragmentId;
         private final ExchangeLocationsConsumer parent;
         private final Set<OutputBufferManager> childOutputBufferManagers;
         private final Set<StageId> childStageIds;
 
-        public StageLinkage(PlanFragmentId fragmentId, ExchangeLocationsConsumer parent, Set<SqlStageExecution> children)
+        public StageLinkage(SqlStageExecution currentStage, ExchangeLocationsConsumer parent, Set<SqlStageExecution> children)
         {
-            this.currentStageFragmentId = fragmentId;
+            this.currentStage = currentStage;
+            this.currentStageFragmentId = currentStage.getFragment().getId();
             this.parent = parent;
             this.childOutputBufferManagers = children.stream()
                     .map(childStage -> {
@@ -725,8 +853,9 @@ public class SqlQueryScheduler
 
             if (!childOutputBufferManagers.isEmpty()) {
                 // Add an output buffer to the child stages for each new task
+                // tasks which process a slice of a skewed partition read the buffer of the partition
                 List<OutputBufferId> newOutputBuffers = newTasks.stream()
-                        .map(task -> new OutputBufferId(task.getTaskId().getId()))
+                        .map(task -> new OutputBufferId(currentStage.getSourceBufferId(task.getTaskId())))
                         .collect(toImmutableList());
                 for (OutputBufferManager child : childOutputBufferManagers) {
                     child.addOutputBuffers(newOutputBuffers, noMoreTasks);
@@ -13,15 +13,11 @@
  */
 package io.prestosql.operator;
 
-import io.airlift.slice.Slices;
-import io.airlift.slice.XxHash64;
 import io.prestosql.spi.Page;
 import org.openjdk.jol.info.ClassLayout;
 
-import java.util.Arrays;
 import java.util.List;
 
-import static io.airlift.slice.SizeOf.sizeOf;
 import static java.util.Objects.requireNonNull;
 
 public final class ArrayPositionLinks
@@ -32,20 +28,19 @@ public final class ArrayPositionLinks
     public static class FactoryBuilder
             implements PositionLinks.FactoryBuilder
     {
-        private final int[] positionLinks;
+        private final JoinHashIntArray positionLinks;
         private int size;
 
-        private FactoryBuilder(int size)
+        private FactoryBuilder(int size, boolean offHeap)
         {
-            positionLinks = new int[size];
-            Arrays.fill(positionLinks, -1);
+            positionLinks = new JoinHashIntArray(size, -1, offHeap);
         }
 
         @Override
         public int link(int left, int right)
         {
             size++;
-            positionLinks[left] = right;
+            positionLinks.set(left, right);
             return left;
         }
 
@@ -63,7 +58,7 @@ public final class ArrayPositionLinks
                 @Override
                 public long checksum()
                 {
-                    return XxHash64.hash(Slices.wrappedIntArray(positionLinks));
+                    return positionLinks.checksum();
                 }
             };
         }
@@ -73,18 +68,29 @@ public final class ArrayPositionLinks
         {
             return size;
         }
+
+        @Override
+        public void close()
+        {
+            positionLinks.free();
+        }
     }
 
-    private final int[] positionLinks;
+    private final JoinHashIntArray positionLinks;
 
-    private ArrayPositionLinks(int[] positionLinks)
+    private ArrayPositionLinks(JoinHashIntArray positionLinks)
     {
         this.positionLinks = requireNonNull(positionLinks, "positionLinks is null");
     }
 
     public static FactoryBuilder builder(int size)
     {
-        return new FactoryBuilder(size);
+        return builder(size, false);
+    }
+
+    public static FactoryBuilder builder(int size, boolean offHeap)
+    {
+        return new FactoryBuilder(size, offHeap);
     }
 
     @Override
@@ -96,12 +102,12 @@ public final class ArrayPositionLinks
     @Override
     public int next(int position, int probePosition, Page allProbeChannelsPage)
     {
-        return positionLinks[position];
+        return positionLinks.get(position);
     }
 
     @Override
     public long getSizeInBytes()
     {
-        return INSTANCE_SIZE + sizeOf(positionLinks);
+        return INSTANCE_SIZE + positionLinks.getRetainedSizeInBytes();
     }
 }
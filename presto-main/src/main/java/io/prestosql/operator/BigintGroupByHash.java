@@ -210,7 +210,7 @@ public class BigintGroupByHash
         return hashCapacity;
     }
 
-    private int putIfAbsent(int position, Block block)
+    private int putIfAbsent(int position, Block block, long value, long hash)
     {
         if (block.isNull(position)) {
             if (nullGroupId < 0) {
@@ -221,8 +221,7 @@ public class BigintGroupByHash
             return nullGroupId;
         }
 
-        long value = BIGINT.getLong(block, position);
-        long hashPosition = getHashPosition(value, mask);
+        long hashPosition = hash & mask;
 
         // look for an empty slot or a slot containing this key
         while (true) {
@@ -317,6 +316,29 @@ public class BigintGroupByHash
         return nextGroupId >= maxFill;
     }
 
+    private static long[] getValues(Block block)
+    {
+        int positionCount = block.getPositionCount();
+        long[] values = new long[positionCount];
+        boolean mayHaveNull = block.mayHaveNull();
+        for (int position = 0; position < positionCount; position++) {
+            if (!mayHaveNull || !block.isNull(position)) {
+                values[position] = BIGINT.getLong(block, position);
+            }
+        }
+        return values;
+    }
+
+    private static long[] getHashes(long[] values)
+    {
+        // the hashes do not depend on the capacity, so they stay valid when the table is rehashed
+        long[] hashes = new long[values.length];
+        for (int position = 0; position < values.length; position++) {
+            hashes[position] = murmurHash3(values[position]);
+        }
+        return hashes;
+    }
+
     private static long getHashPosition(long rawHash, int mask)
     {
         return murmurHash3(rawHash) & mask;
@@ -337,12 +359,17 @@ public class BigintGroupByHash
             implements Work<Void>
     {
         private final Block block;
+        private final long[] values;
+        private final long[] hashes;
 
         private int lastPosition;
 
         public AddPageWork(Block block)
         {
             this.block = requireNonNull(block, "block is null");
+            // read and hash the whole block before probing the table
+            this.values = getValues(block);
+            this.hashes = getHashes(values);
         }
 
         @Override
@@ -361,7 +388,7 @@ public class BigintGroupByHash
             // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
             while (lastPosition < positionCount && !needRehash()) {
                 // get the group for the current row
-                putIfAbsent(lastPosition, block);
+                putIfAbsent(lastPosition, block, values[lastPosition], hashes[lastPosition]);
                 lastPosition++;
             }
             return lastPosition == positionCount;
@@ -379,6 +406,8 @@ public class BigintGroupByHash
     {
         private final BlockBuilder blockBuilder;
         private final Block block;
+        private final long[] values;
+        private final long[] hashes;
 
         private boolean finished;
         private int lastPosition;
@@ -386,6 +415,9 @@ public class BigintGroupByHash
         public GetGroupIdsWork(Block block)
         {
             this.block = requireNonNull(block, "block is null");
+            // read and hash the whole block before probing the table
+            this.values = getValues(block);
+            this.hashes = getHashes(values);
             // we know the exact size required for the block
             this.blockBuilder = BIGINT.createFixedSizeBlockBuilder(block.getPositionCount());
         }
@@ -407,7 +439,7 @@ public class BigintGroupByHash
             // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
             while (lastPosition < positionCount && !needRehash()) {
                 // output the group id for this row
-                BIGINT.writeLong(blockBuilder, putIfAbsent(lastPosition, block));
+                BIGINT.writeLong(blockBuilder, putIfAbsent(lastPosition, block, values[lastPosition], hashes[lastPosition]));
                 lastPosition++;
             }
             return lastPosition == positionCount;
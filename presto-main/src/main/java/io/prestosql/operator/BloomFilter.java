@@ -0,0 +1,201 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.type.Type;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.Arrays;
+
+import static io.airlift.slice.SizeOf.sizeOf;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A compact, approximate representation of a set of non-null values, used by dynamic filters
+ * when the build side has too many distinct values to be described by a {@link io.prestosql.spi.predicate.Domain}.
+ * <p>
+ * {@link #mightContain} never returns {@code false} for a value added to the filter,
+ * but may return {@code true} for values which were not added. Values are hashed using
+ * {@link Type#hash}, so a filter may only be probed with values of the type it was built with.
+ */
+public final class BloomFilter
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(BloomFilter.class).instanceSize();
+    private static final int MIN_BITS = Long.SIZE;
+    private static final int HASH_FUNCTIONS = 3;
+
+    private final long[] bits;
+    private final int bitMask;
+
+    private BloomFilter(long[] bits)
+    {
+        this.bits = requireNonNull(bits, "bits is null");
+        this.bitMask = bits.length * Long.SIZE - 1;
+    }
+
+    public static Builder builder(long sizeInBytes)
+    {
+        return new Builder(sizeInBytes);
+    }
+
+    /**
+     * Returns the size of the bit array, which is the largest power of two not exceeding the requested size.
+     */
+    public int getSizeInBits()
+    {
+        return bitMask + 1;
+    }
+
+    public long getRetainedSizeInBytes()
+    {
+        return INSTANCE_SIZE + sizeOf(bits);
+    }
+
+    public boolean mightContain(Type type, Block block, int position)
+    {
+        if (block.isNull(position)) {
+            return false;
+        }
+        return mightContainHash(type.hash(block, position));
+    }
+
+    private boolean mightContainHash(long hash)
+    {
+        int hash1 = (int) hash;
+        int hash2 = secondHash(hash);
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = (hash1 + i * hash2) & bitMask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a filter matching the values matched by either of the filters.
+     */
+    public BloomFilter union(BloomFilter other)
+    {
+        checkCompatible(other);
+        long[] result = new long[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            result[i] = bits[i] | other.bits[i];
+        }
+        return new BloomFilter(result);
+    }
+
+    /**
+     * Returns a filter matching (a superset of) the values matched by both of the filters.
+     */
+    public BloomFilter intersect(BloomFilter other)
+    {
+        checkCompatible(other);
+        long[] result = new long[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            result[i] = bits[i] & other.bits[i];
+        }
+        return new BloomFilter(result);
+    }
+
+    private void checkCompatible(BloomFilter other)
+    {
+        requireNonNull(other, "other is null");
+        if (bits.length != other.bits.length) {
+            throw new IllegalArgumentException(format("Mismatched bloom filter sizes: %s vs %s", getSizeInBits(), other.getSizeInBits()));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BloomFilter other = (BloomFilter) o;
+        return Arrays.equals(bits, other.bits);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(bits);
+    }
+
+    @Override
+    public String toString()
+    {
+        return format("BloomFilter{sizeInBits=%s}", getSizeInBits());
+    }
+
+    private static int secondHash(long hash)
+    {
+        // Murmur3 finalizer, so that the two hashes are independent even for weak type hash functions.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        // An odd step visits distinct bits for each hash function.
+        return (int) (hash >>> 32) | 1;
+    }
+
+    public static final class Builder
+    {
+        private final long[] bits;
+        private final int bitMask;
+
+        private Builder(long sizeInBytes)
+        {
+            if (sizeInBytes <= 0) {
+                throw new IllegalArgumentException("sizeInBytes must be positive");
+            }
+            long sizeInBits = Math.min(sizeInBytes * Byte.SIZE, 1L << 30);
+            int bitCount = Math.max(Integer.highestOneBit((int) sizeInBits), MIN_BITS);
+            this.bits = new long[bitCount / Long.SIZE];
+            this.bitMask = bitCount - 1;
+        }
+
+        /**
+         * Adds the value at the given position. Null values are never matched by the filter, so they are ignored.
+         */
+        public Builder add(Type type, Block block, int position)
+        {
+            if (block.isNull(position)) {
+                return this;
+            }
+            long hash = type.hash(block, position);
+            int hash1 = (int) hash;
+            int hash2 = secondHash(hash);
+            for (int i = 0; i < HASH_FUNCTIONS; i++) {
+                int bit = (hash1 + i * hash2) & bitMask;
+                bits[bit >>> 6] |= 1L << bit;
+            }
+            return this;
+        }
+
+        public long getRetainedSizeInBytes()
+        {
+            return sizeOf(bits);
+        }
+
+        public BloomFilter build()
+        {
+            return new BloomFilter(bits.clone());
+        }
+    }
+}
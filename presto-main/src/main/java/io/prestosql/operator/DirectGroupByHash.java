@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import io.prestosql.array.LongBigArray;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PageBuilder;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.LongArrayBlock;
+import io.prestosql.spi.type.Type;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static it.unimi.dsi.fastutil.HashCommon.arraySize;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Group by hash for a single integer key with a small expected range of values. The group id of a value in the
+ * range is found with an array lookup at the offset of the value, so the values are never hashed or compared.
+ * Values outside of the range, which is only an estimate, are kept in an overflow hash map.
+ */
+public class DirectGroupByHash
+        implements GroupByHash
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(DirectGroupByHash.class).instanceSize();
+
+    private static final float OVERFLOW_FILL_RATIO = 0.75f;
+
+    private final Type type;
+    private final int channel;
+    private final boolean outputRawHash;
+    private final List<Type> types;
+    private final HashGenerator hashGenerator;
+
+    private final long minValue;
+    private final int[] groupIdsByValue;
+    private final Long2IntOpenHashMap overflowGroupIds = new Long2IntOpenHashMap();
+
+    // groupId for the null value
+    private int nullGroupId = -1;
+
+    // reverse index from the groupId back to the value and its raw hash
+    private final LongBigArray valuesByGroupId = new LongBigArray();
+    private final LongBigArray rawHashByGroupId = new LongBigArray();
+
+    private int nextGroupId;
+
+    public DirectGroupByHash(Type type, int channel, Optional<Integer> inputHashChannel, GroupByKeyRange keyRange)
+    {
+        this.type = requireNonNull(type, "type is null");
+        checkArgument(GroupByKeyRange.isSupportedType(type), "Unsupported type: %s", type);
+        checkArgument(channel >= 0, "channel must be at least zero");
+        requireNonNull(inputHashChannel, "inputHashChannel is null");
+        requireNonNull(keyRange, "keyRange is null");
+
+        this.channel = channel;
+        this.outputRawHash = inputHashChannel.isPresent();
+        this.types = outputRawHash ? ImmutableList.of(type, BIGINT) : ImmutableList.of(type);
+        this.hashGenerator = inputHashChannel.isPresent() ? new PrecomputedHashGenerator(inputHashChannel.get()) : new InterpretedHashGenerator(ImmutableList.of(type), new int[] {channel});
+
+        this.minValue = keyRange.getMin();
+        this.groupIdsByValue = new int[keyRange.size()];
+        Arrays.fill(groupIdsByValue, -1);
+        overflowGroupIds.defaultReturnValue(-1);
+    }
+
+    @Override
+    public long getEstimatedSize()
+    {
+        return INSTANCE_SIZE +
+                sizeOf(groupIdsByValue) +
+                (long) arraySize(overflowGroupIds.size(), OVERFLOW_FILL_RATIO) * (Long.BYTES + Integer.BYTES) +
+                valuesByGroupId.sizeOf() +
+                rawHashByGroupId.sizeOf();
+    }
+
+    @Override
+    public long getHashCollisions()
+    {
+        return 0;
+    }
+
+    @Override
+    public double getExpectedHashCollisions()
+    {
+        return 0;
+    }
+
+    @Override
+    public List<Type> getTypes()
+    {
+        return types;
+    }
+
+    @Override
+    public int getGroupCount()
+    {
+        return nextGroupId;
+    }
+
+    @Override
+    public void appendValuesTo(int groupId, PageBuilder pageBuilder, int outputChannelOffset)
+    {
+        checkArgument(groupId >= 0, "groupId is negative");
+        BlockBuilder blockBuilder = pageBuilder.getBlockBuilder(outputChannelOffset);
+        if (groupId == nullGroupId) {
+            blockBuilder.appendNull();
+        }
+        else {
+            type.writeLong(blockBuilder, valuesByGroupId.get(groupId));
+        }
+
+        if (outputRawHash) {
+            BIGINT.writeLong(pageBuilder.getBlockBuilder(outputChannelOffset + 1), rawHashByGroupId.get(groupId));
+        }
+    }
+
+    @Override
+    public Work<?> addPage(Page page)
+    {
+        return new AddPageWork(page);
+    }
+
+    @Override
+    public Work<GroupByIdBlock> getGroupIds(Page page)
+    {
+        return new GetGroupIdsWork(page);
+    }
+
+    @Override
+    public boolean contains(int position, Page page, int[] hashChannels)
+    {
+        Block block = page.getBlock(hashChannels[0]);
+        if (block.isNull(position)) {
+            return nullGroupId >= 0;
+        }
+        return getGroupId(type.getLong(block, position)) >= 0;
+    }
+
+    @Override
+    public long getRawHash(int groupId)
+    {
+        return rawHashByGroupId.get(groupId);
+    }
+
+    @VisibleForTesting
+    @Override
+    public int getCapacity()
+    {
+        return groupIdsByValue.length;
+    }
+
+    private int getGroupId(long value)
+    {
+        long offset = value - minValue;
+        if (offset >= 0 && offset < groupIdsByValue.length) {
+            return groupIdsByValue[(int) offset];
+        }
+        return overflowGroupIds.get(value);
+    }
+
+    private int putIfAbsent(int position, Page page, Block block)
+    {
+        if (block.isNull(position)) {
+            if (nullGroupId < 0) {
+                nullGroupId = addNewGroup(0, position, page);
+            }
+            return nullGroupId;
+        }
+
+        long value = type.getLong(block, position);
+        long offset = value - minValue;
+        if (offset >= 0 && offset < groupIdsByValue.length) {
+            int groupId = groupIdsByValue[(int) offset];
+            if (groupId < 0) {
+                groupId = addNewGroup(value, position, page);
+                groupIdsByValue[(int) offset] = groupId;
+            }
+            return groupId;
+        }
+
+        int groupId = overflowGroupIds.get(value);
+        if (groupId < 0) {
+            groupId = addNewGroup(value, position, page);
+            overflowGroupIds.put(value, groupId);
+        }
+        return groupId;
+    }
+
+    private int addNewGroup(long value, int position, Page page)
+    {
+        int groupId = nextGroupId++;
+        valuesByGroupId.ensureCapacity(nextGroupId);
+        valuesByGroupId.set(groupId, value);
+        rawHashByGroupId.ensureCapacity(nextGroupId);
+        rawHashByGroupId.set(groupId, hashGenerator.hashPosition(position, page));
+        return groupId;
+    }
+
+    private class AddPageWork
+            implements Work<Void>
+    {
+        private final Page page;
+        private final Block block;
+
+        private boolean finished;
+
+        public AddPageWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+            this.block = page.getBlock(channel);
+        }
+
+        @Override
+        public boolean process()
+        {
+            checkState(!finished);
+            // the group ids are looked up without rehashing, so the work never needs to yield
+            int positionCount = block.getPositionCount();
+            for (int position = 0; position < positionCount; position++) {
+                putIfAbsent(position, page, block);
+            }
+            finished = true;
+            return true;
+        }
+
+        @Override
+        public Void getResult()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class GetGroupIdsWork
+            implements Work<GroupByIdBlock>
+    {
+        private final Page page;
+        private final Block block;
+
+        private long[] groupIds;
+
+        public GetGroupIdsWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+            this.block = page.getBlock(channel);
+        }
+
+        @Override
+        public boolean process()
+        {
+            checkState(groupIds == null);
+            int positionCount = block.getPositionCount();
+            long[] groupIds = new long[positionCount];
+            for (int position = 0; position < positionCount; position++) {
+                groupIds[position] = putIfAbsent(position, page, block);
+            }
+            this.groupIds = groupIds;
+            return true;
+        }
+
+        @Override
+        public GroupByIdBlock getResult()
+        {
+            checkState(groupIds != null, "process has not yet finished");
+            return new GroupByIdBlock(nextGroupId, new LongArrayBlock(groupIds.length, Optional.empty(), groupIds));
+        }
+    }
+}
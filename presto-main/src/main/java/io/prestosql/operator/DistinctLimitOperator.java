@@ -14,29 +14,48 @@
 package io.prestosql.operator;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
 import static com.google.common.base.Verify.verifyNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.MoreFutures.checkSuccess;
 import static io.prestosql.SystemSessionProperties.isDictionaryAggregationEnabled;
 import static io.prestosql.operator.GroupByHash.createGroupByHash;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static java.util.Objects.requireNonNull;
 
 public class DistinctLimitOperator
         implements Operator
 {
+    // the input is spilled to this many partitions, each of which is later processed in memory on its own
+    private static final int SPILL_PARTITION_COUNT = 16;
+
     public static class DistinctLimitOperatorFactory
             implements OperatorFactory
     {
@@ -48,6 +67,8 @@ public class DistinctLimitOperator
         private final Optional<Integer> hashChannel;
         private boolean closed;
         private final JoinCompiler joinCompiler;
+        private final boolean spillEnabled;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
 
         public DistinctLimitOperatorFactory(
                 int operatorId,
@@ -57,6 +78,20 @@ public class DistinctLimitOperator
                 long limit,
                 Optional<Integer> hashChannel,
                 JoinCompiler joinCompiler)
+        {
+            this(operatorId, planNodeId, sourceTypes, distinctChannels, limit, hashChannel, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+        }
+
+        public DistinctLimitOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> sourceTypes,
+                List<Integer> distinctChannels,
+                long limit,
+                Optional<Integer> hashChannel,
+                JoinCompiler joinCompiler,
+                boolean spillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -67,6 +102,8 @@ public class DistinctLimitOperator
             this.limit = limit;
             this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
             this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+            this.spillEnabled = spillEnabled;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         }
 
         @Override
@@ -77,7 +114,7 @@ public class DistinctLimitOperator
             List<Type> distinctTypes = distinctChannels.stream()
                     .map(sourceTypes::get)
                     .collect(toImmutableList());
-            return new DistinctLimitOperator(operatorContext, distinctChannels, distinctTypes, limit, hashChannel, joinCompiler);
+            return new DistinctLimitOperator(operatorContext, distinctChannels, distinctTypes, limit, hashChannel, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
 
         @Override
@@ -89,12 +126,13 @@ public class DistinctLimitOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new DistinctLimitOperatorFactory(operatorId, planNodeId, sourceTypes, distinctChannels, limit, hashChannel, joinCompiler);
+            return new DistinctLimitOperatorFactory(operatorId, planNodeId, sourceTypes, distinctChannels, limit, hashChannel, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
     }
 
     private final OperatorContext operatorContext;
     private final LocalMemoryContext localUserMemoryContext;
+    private final LocalMemoryContext localRevocableMemoryContext;
 
     private Page inputPage;
     private long remainingLimit;
@@ -102,17 +140,43 @@ public class DistinctLimitOperator
     private boolean finishing;
 
     private final List<Integer> outputChannels;
-    private final GroupByHash groupByHash;
+    private final List<Type> distinctTypes;
+    private final Optional<Integer> hashChannel;
+    private final JoinCompiler joinCompiler;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
+    private GroupByHash groupByHash;
     private long nextDistinctId;
 
     // for yield when memory is not available
     private GroupByIdBlock groupByIds;
     private Work<GroupByIdBlock> unfinishedWork;
 
+    // the distinct values are revocable until they are spilled, after which all remaining input is spilled as well
+    private boolean memoryRevocable;
+    private Optional<PartitioningSpiller> distinctValuesSpiller = Optional.empty();
+    private Optional<PartitioningSpiller> inputSpiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = immediateFuture(null);
+    private Runnable finishMemoryRevoke = () -> {};
+    private Iterator<Page> spilledOutput;
+
     public DistinctLimitOperator(OperatorContext operatorContext, List<Integer> distinctChannels, List<Type> distinctTypes, long limit, Optional<Integer> hashChannel, JoinCompiler joinCompiler)
+    {
+        this(operatorContext, distinctChannels, distinctTypes, limit, hashChannel, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+    }
+
+    public DistinctLimitOperator(
+            OperatorContext operatorContext,
+            List<Integer> distinctChannels,
+            List<Type> distinctTypes,
+            long limit,
+            Optional<Integer> hashChannel,
+            JoinCompiler joinCompiler,
+            boolean spillEnabled,
+            PartitioningSpillerFactory partitioningSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.localRevocableMemoryContext = operatorContext.localRevocableMemoryContext();
         requireNonNull(distinctChannels, "distinctChannels is null");
         checkArgument(limit >= 0, "limit must be at least zero");
         requireNonNull(hashChannel, "hashChannel is null");
@@ -122,6 +186,12 @@ public class DistinctLimitOperator
                 .addAll(hashChannel.map(ImmutableList::of).orElse(ImmutableList.of()))
                 .build();
 
+        this.distinctTypes = ImmutableList.copyOf(requireNonNull(distinctTypes, "distinctTypes is null"));
+        this.hashChannel = hashChannel;
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+        this.memoryRevocable = spillEnabled;
+
         this.groupByHash = createGroupByHash(
                 distinctTypes,
                 Ints.toArray(distinctChannels),
@@ -148,7 +218,26 @@ public class DistinctLimitOperator
     @Override
     public boolean isFinished()
     {
-        return !hasUnfinishedInput() && (finishing || remainingLimit == 0);
+        if (hasUnfinishedInput()) {
+            return false;
+        }
+        if (remainingLimit == 0) {
+            return true;
+        }
+        if (inputSpiller.isPresent()) {
+            return finishing && spilledOutput != null && !spilledOutput.hasNext();
+        }
+        return finishing;
+    }
+
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        // we can block because of spilling the input
+        if (!spillInProgress.isDone()) {
+            return spillInProgress;
+        }
+        return NOT_BLOCKED;
     }
 
     @Override
@@ -161,6 +250,13 @@ public class DistinctLimitOperator
     public void addInput(Page page)
     {
         checkState(needsInput());
+        checkSuccess(spillInProgress, "spilling failed");
+
+        if (inputSpiller.isPresent()) {
+            // the distinct rows are selected when the spilled partitions are processed
+            spillInProgress = inputSpiller.get().partitionAndSpill(selectOutputChannels(page), partition -> true).getSpillingFuture();
+            return;
+        }
 
         inputPage = page;
         unfinishedWork = groupByHash.getGroupIds(page);
@@ -171,6 +267,21 @@ public class DistinctLimitOperator
     @Override
     public Page getOutput()
     {
+        if (!spillInProgress.isDone()) {
+            return null;
+        }
+        checkSuccess(spillInProgress, "spilling failed");
+
+        if (inputSpiller.isPresent()) {
+            if (!finishing || remainingLimit == 0) {
+                return null;
+            }
+            if (spilledOutput == null) {
+                spilledOutput = buildSpilledResult();
+            }
+            return spilledOutput.hasNext() ? spilledOutput.next() : null;
+        }
+
         if (unfinishedWork != null && !processUnfinishedWork()) {
             return null;
         }
@@ -180,8 +291,19 @@ public class DistinctLimitOperator
         }
 
         verifyNotNull(inputPage);
+        Page result = selectDistinctRows(selectOutputChannels(inputPage), groupByIds);
+
+        groupByIds = null;
+        inputPage = null;
+
+        updateMemoryReservation();
+        return result;
+    }
+
+    private Page selectDistinctRows(Page page, GroupByIdBlock groupByIds)
+    {
         int distinctCount = 0;
-        int[] distinctPositions = new int[inputPage.getPositionCount()];
+        int[] distinctPositions = new int[page.getPositionCount()];
         for (int position = 0; position < groupByIds.getPositionCount(); position++) {
             if (groupByIds.getGroupId(position) == nextDistinctId) {
                 distinctPositions[distinctCount] = position;
@@ -194,26 +316,134 @@ public class DistinctLimitOperator
                 }
             }
         }
-        Page result = maskToDistinctOutputPositions(distinctCount, distinctPositions);
 
-        groupByIds = null;
-        inputPage = null;
-
-        updateMemoryReservation();
+        Page result = null;
+        if (distinctCount > 0) {
+            result = page.getPositions(distinctPositions, 0, distinctCount);
+        }
         return result;
     }
 
-    private Page maskToDistinctOutputPositions(int distinctCount, int[] distinctPositions)
+    private Page selectOutputChannels(Page page)
     {
-        Page result = null;
-        if (distinctCount > 0) {
-            Block[] blocks = outputChannels.stream()
-                    .map(inputPage::getBlock)
-                    .map(block -> block.getPositions(distinctPositions, 0, distinctCount))
-                    .toArray(Block[]::new);
-            result = new Page(distinctCount, blocks);
+        Block[] blocks = outputChannels.stream()
+                .map(page::getBlock)
+                .toArray(Block[]::new);
+        return new Page(page.getPositionCount(), blocks);
+    }
+
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (!memoryRevocable || finishing || hasUnfinishedInput() || localRevocableMemoryContext.getBytes() == 0) {
+            // the distinct values of a partially processed page cannot be spilled
+            finishMemoryRevoke = () -> {};
+            return immediateFuture(null);
         }
-        return result;
+
+        // the distinct values and the input rows are both spilled in the output layout, and partitioned by the
+        // distinct values, because the hash stored for a distinct value is not necessarily the one of the hash channel
+        int[] distinctValuesChannels = IntStream.range(0, distinctTypes.size()).toArray();
+        HashGenerator hashGenerator = new InterpretedHashGenerator(distinctTypes, distinctValuesChannels);
+        distinctValuesSpiller = Optional.of(createSpiller(groupByHash.getTypes(), hashGenerator));
+        inputSpiller = Optional.of(createSpiller(groupByHash.getTypes(), hashGenerator));
+
+        // the distinct values seen so far have already been output, so they are needed to skip the spilled rows with these values
+        spillInProgress = spillPages(distinctValuesSpiller.get(), new GroupByHashValuesIterator(groupByHash));
+        finishMemoryRevoke = () -> {
+            memoryRevocable = false;
+            groupByHash = null;
+            updateMemoryReservation();
+        };
+        return spillInProgress;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        finishMemoryRevoke.run();
+        finishMemoryRevoke = () -> {};
+    }
+
+    private PartitioningSpiller createSpiller(List<Type> types, HashGenerator hashGenerator)
+    {
+        return partitioningSpillerFactory.create(
+                types,
+                new SpillPartitionFunction(hashGenerator, SPILL_PARTITION_COUNT),
+                operatorContext.getSpillContext().newLocalSpillContext(),
+                operatorContext.newAggregateSystemMemoryContext());
+    }
+
+    private static ListenableFuture<?> spillPages(PartitioningSpiller spiller, Iterator<Page> pages)
+    {
+        while (pages.hasNext()) {
+            ListenableFuture<?> spillingFuture = spiller.partitionAndSpill(pages.next(), partition -> true).getSpillingFuture();
+            if (!spillingFuture.isDone()) {
+                return Futures.transformAsync(spillingFuture, ignored -> spillPages(spiller, pages), directExecutor());
+            }
+            checkSuccess(spillingFuture, "spilling failed");
+        }
+        return immediateFuture(null);
+    }
+
+    private Iterator<Page> buildSpilledResult()
+    {
+        return Iterators.concat(new AbstractIterator<Iterator<Page>>()
+        {
+            private int partition;
+
+            @Override
+            protected Iterator<Page> computeNext()
+            {
+                if (partition == SPILL_PARTITION_COUNT) {
+                    groupByHash = null;
+                    updateMemoryReservation();
+                    distinctValuesSpiller.get().verifyAllPartitionsRead();
+                    inputSpiller.get().verifyAllPartitionsRead();
+                    return endOfData();
+                }
+                return buildPartitionResult(partition++);
+            }
+        });
+    }
+
+    private Iterator<Page> buildPartitionResult(int partition)
+    {
+        // all rows with the same distinct values are in the same partition, so each partition is processed on its own
+        groupByHash = null;
+        updateMemoryReservation();
+        groupByHash = createGroupByHash(
+                distinctTypes,
+                IntStream.range(0, distinctTypes.size()).toArray(),
+                hashChannel.map(channel -> distinctTypes.size()),
+                10_000,
+                isDictionaryAggregationEnabled(operatorContext.getSession()),
+                joinCompiler,
+                () -> {
+                    // the spilled rows are read without yielding
+                    updateMemoryReservation();
+                    return true;
+                });
+
+        // the distinct values which were output before spilling get the first group ids
+        Iterator<Page> distinctValues = distinctValuesSpiller.get().getSpilledPages(partition);
+        while (distinctValues.hasNext()) {
+            getGroupIds(distinctValues.next());
+        }
+        nextDistinctId = groupByHash.getGroupCount();
+
+        Iterator<Page> distinctRows = Iterators.transform(
+                inputSpiller.get().getSpilledPages(partition),
+                page -> remainingLimit == 0 ? null : selectDistinctRows(page, getGroupIds(page)));
+        return Iterators.filter(distinctRows, Objects::nonNull);
+    }
+
+    private GroupByIdBlock getGroupIds(Page page)
+    {
+        Work<GroupByIdBlock> work = groupByHash.getGroupIds(page);
+        verify(work.process(), "processing of spilled pages should not yield");
+        updateMemoryReservation();
+        return work.getResult();
     }
 
     private boolean processUnfinishedWork()
@@ -242,9 +472,16 @@ public class DistinctLimitOperator
     // The following implementation is a hybrid model, where the push model is going to call the pull model causing reentrancy
     private boolean updateMemoryReservation()
     {
+        long estimatedSize = groupByHash == null ? 0 : groupByHash.getEstimatedSize();
         // Operator/driver will be blocked on memory after we call localUserMemoryContext.setBytes().
         // If memory is not available, once we return, this operator will be blocked until memory is available.
-        localUserMemoryContext.setBytes(groupByHash.getEstimatedSize());
+        if (memoryRevocable) {
+            localRevocableMemoryContext.setBytes(estimatedSize);
+        }
+        else {
+            localRevocableMemoryContext.setBytes(0);
+            localUserMemoryContext.setBytes(estimatedSize);
+        }
         // If memory is not available, inform the caller that we cannot proceed for allocation.
         return operatorContext.isWaitingForMemory().isDone();
     }
@@ -254,4 +491,19 @@ public class DistinctLimitOperator
     {
         return groupByHash.getCapacity();
     }
+
+    @Override
+    public void close()
+    {
+        for (Optional<PartitioningSpiller> spiller : ImmutableList.of(distinctValuesSpiller, inputSpiller)) {
+            spiller.ifPresent(partitioningSpiller -> {
+                try {
+                    partitioningSpiller.close();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
 }
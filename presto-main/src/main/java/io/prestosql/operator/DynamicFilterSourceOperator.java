@@ -16,11 +16,13 @@ package io.prestosql.operator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.airlift.units.DataSize;
+import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.operator.aggregation.TypedSet;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.Range;
 import io.prestosql.spi.predicate.TupleDomain;
 import io.prestosql.spi.predicate.ValueSet;
 import io.prestosql.spi.type.Type;
@@ -30,6 +32,7 @@ import io.prestosql.sql.planner.plan.PlanNodeId;
 import javax.annotation.Nullable;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 
@@ -42,6 +45,14 @@ import static java.util.stream.Collectors.toSet;
  * This operator acts as a simple "pass-through" pipe, while saving its input pages.
  * The collected pages' value are used for creating a run-time filtering constraint (for probe-side table scan in an inner join).
  * We support only small build-side pages (which should be the case when using "broadcast" join).
+ * <p>
+ * If the build side turns out to be too large, the operator falls back to a [min, max] range of the collected
+ * values (for orderable types) and, if enabled, to a {@link BloomFilter} of the collected values.
+ * The Bloom filters are handed to their consumer before the predicate is handed to its consumer.
+ * They are only used by the table scans of the same task, while the consumers of the predicate
+ * outside of the task receive the range.
+ * <p>
+ * The collected values and the Bloom filters being built are accounted in the user memory of the operator.
  */
 public class DynamicFilterSourceOperator
         implements Operator
@@ -68,9 +79,11 @@ public class DynamicFilterSourceOperator
         private final int operatorId;
         private final PlanNodeId planNodeId;
         private final Consumer<TupleDomain<String>> dynamicPredicateConsumer;
+        private final Consumer<Map<String, BloomFilter>> bloomFiltersConsumer;
         private final List<Channel> channels;
         private final int maxFilterPositionsCount;
         private final DataSize maxFilterSize;
+        private final DataSize bloomFilterSize;
 
         private boolean closed;
 
@@ -78,20 +91,24 @@ public class DynamicFilterSourceOperator
                 int operatorId,
                 PlanNodeId planNodeId,
                 Consumer<TupleDomain<String>> dynamicPredicateConsumer,
+                Consumer<Map<String, BloomFilter>> bloomFiltersConsumer,
                 List<Channel> channels,
                 int maxFilterPositionsCount,
-                DataSize maxFilterSize)
+                DataSize maxFilterSize,
+                DataSize bloomFilterSize)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
             this.dynamicPredicateConsumer = requireNonNull(dynamicPredicateConsumer, "dynamicPredicateConsumer is null");
+            this.bloomFiltersConsumer = requireNonNull(bloomFiltersConsumer, "bloomFiltersConsumer is null");
             this.channels = requireNonNull(channels, "channels is null");
             verify(channels.stream().map(channel -> channel.filterId).collect(toSet()).size() == channels.size(),
                     "duplicate dynamic filters are not allowed");
             verify(channels.stream().map(channel -> channel.index).collect(toSet()).size() == channels.size(),
                     "duplicate channel indices are not allowed");
             this.maxFilterPositionsCount = maxFilterPositionsCount;
-            this.maxFilterSize = maxFilterSize;
+            this.maxFilterSize = requireNonNull(maxFilterSize, "maxFilterSize is null");
+            this.bloomFilterSize = requireNonNull(bloomFilterSize, "bloomFilterSize is null");
         }
 
         @Override
@@ -101,10 +118,12 @@ public class DynamicFilterSourceOperator
             return new DynamicFilterSourceOperator(
                     driverContext.addOperatorContext(operatorId, planNodeId, DynamicFilterSourceOperator.class.getSimpleName()),
                     dynamicPredicateConsumer,
+                    bloomFiltersConsumer,
                     channels,
                     planNodeId,
                     maxFilterPositionsCount,
-                    maxFilterSize);
+                    maxFilterSize,
+                    bloomFilterSize);
         }
 
         @Override
@@ -122,11 +141,14 @@ public class DynamicFilterSourceOperator
     }
 
     private final OperatorContext context;
+    private final LocalMemoryContext userMemoryContext;
     private boolean finished;
     private Page current;
     private final Consumer<TupleDomain<String>> dynamicPredicateConsumer;
+    private final Consumer<Map<String, BloomFilter>> bloomFiltersConsumer;
     private final int maxFilterPositionsCount;
     private final long maxFilterSizeInBytes;
+    private final long bloomFilterSizeInBytes;
 
     private final List<Channel> channels;
 
@@ -136,19 +158,32 @@ public class DynamicFilterSourceOperator
     @Nullable
     private TypedSet[] valueSets;
 
+    // Used instead of the value sets once the predicate becomes too large.
+    @Nullable
+    private Block[] minValues;
+    @Nullable
+    private Block[] maxValues;
+    @Nullable
+    private BloomFilter.Builder[] bloomFilterBuilders;
+
     private DynamicFilterSourceOperator(
             OperatorContext context,
             Consumer<TupleDomain<String>> dynamicPredicateConsumer,
+            Consumer<Map<String, BloomFilter>> bloomFiltersConsumer,
             List<Channel> channels,
             PlanNodeId planNodeId,
             int maxFilterPositionsCount,
-            DataSize maxFilterSize)
+            DataSize maxFilterSize,
+            DataSize bloomFilterSize)
     {
         this.context = requireNonNull(context, "context is null");
+        this.userMemoryContext = context.localUserMemoryContext();
         this.maxFilterPositionsCount = maxFilterPositionsCount;
         this.maxFilterSizeInBytes = maxFilterSize.toBytes();
+        this.bloomFilterSizeInBytes = bloomFilterSize.toBytes();
 
         this.dynamicPredicateConsumer = requireNonNull(dynamicPredicateConsumer, "dynamicPredicateConsumer is null");
+        this.bloomFiltersConsumer = requireNonNull(bloomFiltersConsumer, "bloomFiltersConsumer is null");
         this.channels = requireNonNull(channels, "channels is null");
 
         this.blockBuilders = new BlockBuilder[channels.size()];
@@ -184,10 +219,15 @@ public class DynamicFilterSourceOperator
         verify(!finished, "DynamicFilterSourceOperator: addInput() may not be called after finish()");
         current = page;
         if (valueSets == null) {
-            return;  // the predicate became too large.
+            // the predicate became too large.
+            Block[] blocks = new Block[channels.size()];
+            for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+                blocks[channelIndex] = page.getBlock(channels.get(channelIndex).index);
+            }
+            addApproximateValues(blocks);
+            return;
         }
 
-        // TODO: we should account for the memory used for collecting build-side values using MemoryContext
         long filterSizeInBytes = 0;
         int filterPositionsCount = 0;
         // Collect only the columns which are relevant for the JOIN.
@@ -203,16 +243,90 @@ public class DynamicFilterSourceOperator
         if (filterPositionsCount > maxFilterPositionsCount || filterSizeInBytes > maxFilterSizeInBytes) {
             // The whole filter (summed over all columns) contains too much values or exceeds maxFilterSizeInBytes.
             handleTooLargePredicate();
+            return;
         }
+        userMemoryContext.setBytes(filterSizeInBytes);
     }
 
     private void handleTooLargePredicate()
     {
-        // The resulting predicate is too large, allow all probe-side values to be read.
-        dynamicPredicateConsumer.accept(TupleDomain.all());
+        // The resulting predicate is too large, switch to collecting the range
+        // (and optionally a Bloom filter) of the build-side values.
+        minValues = new Block[channels.size()];
+        maxValues = new Block[channels.size()];
+        if (bloomFilterSizeInBytes > 0) {
+            bloomFilterBuilders = new BloomFilter.Builder[channels.size()];
+            for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+                bloomFilterBuilders[channelIndex] = BloomFilter.builder(bloomFilterSizeInBytes);
+            }
+        }
+        Block[] collectedValues = new Block[channels.size()];
+        for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+            collectedValues[channelIndex] = blockBuilders[channelIndex].build();
+        }
         // Drop references to collected values.
         valueSets = null;
         blockBuilders = null;
+        addApproximateValues(collectedValues);
+        userMemoryContext.setBytes(getApproximateValuesSizeInBytes());
+    }
+
+    private long getApproximateValuesSizeInBytes()
+    {
+        long sizeInBytes = 0;
+        if (bloomFilterBuilders != null) {
+            for (BloomFilter.Builder bloomFilterBuilder : bloomFilterBuilders) {
+                sizeInBytes += bloomFilterBuilder.getRetainedSizeInBytes();
+            }
+        }
+        return sizeInBytes;
+    }
+
+    private void addApproximateValues(Block[] blocks)
+    {
+        for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+            Channel channel = channels.get(channelIndex);
+            Block block = blocks[channelIndex];
+            updateRange(channelIndex, channel.type, block);
+            if (bloomFilterBuilders != null) {
+                BloomFilter.Builder bloomFilterBuilder = bloomFilterBuilders[channelIndex];
+                for (int position = 0; position < block.getPositionCount(); ++position) {
+                    bloomFilterBuilder.add(channel.type, block, position);
+                }
+            }
+        }
+    }
+
+    private void updateRange(int channelIndex, Type type, Block block)
+    {
+        if (!type.isOrderable()) {
+            return;
+        }
+        // Find the extreme positions of the block, and copy them only if they extend the current range.
+        int minPosition = -1;
+        int maxPosition = -1;
+        for (int position = 0; position < block.getPositionCount(); ++position) {
+            if (block.isNull(position)) {
+                continue;
+            }
+            if (minPosition < 0 || type.compareTo(block, position, block, minPosition) < 0) {
+                minPosition = position;
+            }
+            if (maxPosition < 0 || type.compareTo(block, position, block, maxPosition) > 0) {
+                maxPosition = position;
+            }
+        }
+        if (minPosition < 0) {
+            return;
+        }
+        Block min = minValues[channelIndex];
+        if (min == null || type.compareTo(block, minPosition, min, 0) < 0) {
+            minValues[channelIndex] = block.getSingleValueBlock(minPosition);
+        }
+        Block max = maxValues[channelIndex];
+        if (max == null || type.compareTo(block, maxPosition, max, 0) > 0) {
+            maxValues[channelIndex] = block.getSingleValueBlock(maxPosition);
+        }
     }
 
     @Override
@@ -232,7 +346,9 @@ public class DynamicFilterSourceOperator
         }
         finished = true;
         if (valueSets == null) {
-            return; // the predicate became too large.
+            // the predicate became too large.
+            publishApproximatePredicate();
+            return;
         }
 
         ImmutableMap.Builder<String, Domain> domainsBuilder = new ImmutableMap.Builder<>();
@@ -243,6 +359,7 @@ public class DynamicFilterSourceOperator
         }
         valueSets = null;
         blockBuilders = null;
+        userMemoryContext.setBytes(0);
         dynamicPredicateConsumer.accept(TupleDomain.withColumnDomains(domainsBuilder.build()));
     }
 
@@ -259,9 +376,60 @@ public class DynamicFilterSourceOperator
         return Domain.create(ValueSet.copyOf(type, values.build()), false);
     }
 
+    private void publishApproximatePredicate()
+    {
+        ImmutableMap.Builder<String, Domain> domainsBuilder = new ImmutableMap.Builder<>();
+        ImmutableMap.Builder<String, BloomFilter> bloomFiltersBuilder = new ImmutableMap.Builder<>();
+        boolean empty = false;
+        for (int channelIndex = 0; channelIndex < channels.size(); ++channelIndex) {
+            Channel channel = channels.get(channelIndex);
+            Block min = minValues[channelIndex];
+            Block max = maxValues[channelIndex];
+            if (min == null) {
+                // Only nulls were collected for an orderable type, or the type is not orderable.
+                if (channel.type.isOrderable()) {
+                    empty = true;
+                }
+                domainsBuilder.put(channel.filterId, Domain.notNull(channel.type));
+            }
+            else {
+                Range range = Range.range(
+                        channel.type,
+                        TypeUtils.readNativeValue(channel.type, min, 0),
+                        true,
+                        TypeUtils.readNativeValue(channel.type, max, 0),
+                        true);
+                domainsBuilder.put(channel.filterId, Domain.create(ValueSet.ofRanges(range), false));
+            }
+            if (bloomFilterBuilders != null) {
+                bloomFiltersBuilder.put(channel.filterId, bloomFilterBuilders[channelIndex].build());
+            }
+        }
+        minValues = null;
+        maxValues = null;
+        bloomFilterBuilders = null;
+        userMemoryContext.setBytes(0);
+        if (empty) {
+            // Inner and right join doesn't match rows with null key column values.
+            dynamicPredicateConsumer.accept(TupleDomain.none());
+            return;
+        }
+        bloomFiltersConsumer.accept(bloomFiltersBuilder.build());
+        dynamicPredicateConsumer.accept(TupleDomain.withColumnDomains(domainsBuilder.build()));
+    }
+
     @Override
     public boolean isFinished()
     {
         return current == null && finished;
     }
+
+    @Override
+    public void close()
+    {
+        valueSets = null;
+        blockBuilders = null;
+        bloomFilterBuilders = null;
+        userMemoryContext.setBytes(0);
+    }
 }
@@ -18,4 +18,12 @@ import io.prestosql.memory.context.LocalMemoryContext;
 public interface ExchangeClientSupplier
 {
     ExchangeClient get(LocalMemoryContext systemMemoryContext);
+
+    /**
+     * Returns a client which reads the output of the tasks committed to the exchange storage.
+     */
+    default ExchangeClient getSpooled(LocalMemoryContext systemMemoryContext)
+    {
+        throw new UnsupportedOperationException("Spooled exchange is not supported");
+    }
 }
@@ -49,6 +49,22 @@ public interface GroupByHash
             JoinCompiler joinCompiler,
             UpdateMemory updateMemory)
     {
+        return createGroupByHash(hashTypes, hashChannels, inputHashChannel, expectedSize, processDictionary, joinCompiler, updateMemory, Optional.empty());
+    }
+
+    static GroupByHash createGroupByHash(
+            List<? extends Type> hashTypes,
+            int[] hashChannels,
+            Optional<Integer> inputHashChannel,
+            int expectedSize,
+            boolean processDictionary,
+            JoinCompiler joinCompiler,
+            UpdateMemory updateMemory,
+            Optional<GroupByKeyRange> keyRange)
+    {
+        if (keyRange.isPresent() && hashTypes.size() == 1 && GroupByKeyRange.isSupportedType(hashTypes.get(0)) && hashChannels.length == 1) {
+            return new DirectGroupByHash(hashTypes.get(0), hashChannels[0], inputHashChannel, keyRange.get());
+        }
         if (hashTypes.size() == 1 && hashTypes.get(0).equals(BIGINT) && hashChannels.length == 1) {
             return new BigintGroupByHash(hashChannels[0], inputHashChannel.isPresent(), expectedSize, updateMemory);
         }
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.AbstractIterator;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PageBuilder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Returns the values of the groups of a {@link GroupByHash} in the order of their group ids,
+ * in the layout of {@link GroupByHash#getTypes()}.
+ */
+public class GroupByHashValuesIterator
+        extends AbstractIterator<Page>
+{
+    private final GroupByHash groupByHash;
+    private final PageBuilder pageBuilder;
+    private int groupId;
+
+    public GroupByHashValuesIterator(GroupByHash groupByHash)
+    {
+        this.groupByHash = requireNonNull(groupByHash, "groupByHash is null");
+        this.pageBuilder = new PageBuilder(groupByHash.getTypes());
+    }
+
+    @Override
+    protected Page computeNext()
+    {
+        if (groupId == groupByHash.getGroupCount()) {
+            return endOfData();
+        }
+
+        pageBuilder.reset();
+        while (!pageBuilder.isFull() && groupId < groupByHash.getGroupCount()) {
+            pageBuilder.declarePosition();
+            groupByHash.appendValuesTo(groupId, pageBuilder, 0);
+            groupId++;
+        }
+        return pageBuilder.build();
+    }
+}
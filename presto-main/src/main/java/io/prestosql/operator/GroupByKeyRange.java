@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.spi.type.Type;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.DateType.DATE;
+import static io.prestosql.spi.type.IntegerType.INTEGER;
+import static io.prestosql.spi.type.SmallintType.SMALLINT;
+import static io.prestosql.spi.type.TinyintType.TINYINT;
+
+/**
+ * The expected range of the values of a single integer group by key. The range is used to size the
+ * group id array of a {@link DirectGroupByHash}, values outside of it are still grouped correctly.
+ */
+public final class GroupByKeyRange
+{
+    public static final int MAX_RANGE_SIZE = 1 << 16;
+
+    private static final Set<Type> SUPPORTED_TYPES = ImmutableSet.of(TINYINT, SMALLINT, INTEGER, BIGINT, DATE);
+
+    private final long min;
+    private final long max;
+
+    public GroupByKeyRange(long min, long max)
+    {
+        checkArgument(min <= max, "min is greater than max");
+        checkArgument(max - min < MAX_RANGE_SIZE, "range of [%s, %s] is too large", min, max);
+        this.min = min;
+        this.max = max;
+    }
+
+    public static boolean isSupportedType(Type type)
+    {
+        return SUPPORTED_TYPES.contains(type);
+    }
+
+    /**
+     * Returns the range of all the values of the type, if it is small enough.
+     */
+    public static Optional<GroupByKeyRange> fromType(Type type)
+    {
+        if (type.equals(TINYINT)) {
+            return Optional.of(new GroupByKeyRange(Byte.MIN_VALUE, Byte.MAX_VALUE));
+        }
+        if (type.equals(SMALLINT)) {
+            return Optional.of(new GroupByKeyRange(Short.MIN_VALUE, Short.MAX_VALUE));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the range between the estimated low and high values of the key, if they are known and close enough.
+     */
+    public static Optional<GroupByKeyRange> fromStatistics(Type type, double lowValue, double highValue)
+    {
+        if (!isSupportedType(type) || !Double.isFinite(lowValue) || !Double.isFinite(highValue) || lowValue > highValue) {
+            return Optional.empty();
+        }
+        double min = Math.floor(lowValue);
+        double max = Math.ceil(highValue);
+        if (max - min >= MAX_RANGE_SIZE) {
+            return Optional.empty();
+        }
+        return Optional.of(new GroupByKeyRange((long) min, (long) max));
+    }
+
+    public long getMin()
+    {
+        return min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public int size()
+    {
+        return (int) (max - min + 1);
+    }
+
+    public boolean contains(long value)
+    {
+        return value >= min && value <= max;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        GroupByKeyRange that = (GroupByKeyRange) o;
+        return min == that.min && max == that.max;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(min, max);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("min", min)
+                .add("max", max)
+                .toString();
+    }
+}
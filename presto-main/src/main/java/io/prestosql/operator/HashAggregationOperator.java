@@ -20,14 +20,23 @@ import io.airlift.units.DataSize;
 import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.operator.aggregation.Accumulator;
 import io.prestosql.operator.aggregation.AccumulatorFactory;
+import io.prestosql.operator.aggregation.GroupedAccumulator;
+import io.prestosql.operator.aggregation.builder.FlatAccumulator;
+import io.prestosql.operator.aggregation.builder.FlatAggregation;
+import io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder;
 import io.prestosql.operator.aggregation.builder.HashAggregationBuilder;
 import io.prestosql.operator.aggregation.builder.InMemoryHashAggregationBuilder;
+import io.prestosql.operator.aggregation.builder.PartitionedSpillableHashAggregationBuilder;
 import io.prestosql.operator.aggregation.builder.SpillableHashAggregationBuilder;
 import io.prestosql.operator.scalar.CombineHashFunction;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.PageBuilder;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.LongArrayBlock;
 import io.prestosql.spi.type.BigintType;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpillerFactory;
 import io.prestosql.spiller.SpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
 import io.prestosql.sql.planner.plan.AggregationNode.Step;
@@ -37,10 +46,12 @@ import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static io.prestosql.operator.aggregation.builder.InMemoryHashAggregationBuilder.toTypes;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static io.prestosql.sql.planner.optimizations.HashGenerationOptimizer.INITIAL_HASH_VALUE;
 import static io.prestosql.type.TypeUtils.NULL_HASH_CODE;
 import static java.util.Objects.requireNonNull;
@@ -70,8 +81,14 @@ public class HashAggregationOperator
         private final DataSize memoryLimitForMerge;
         private final DataSize memoryLimitForMergeWithMemory;
         private final SpillerFactory spillerFactory;
+        private final boolean partitionedSpillEnabled;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
         private final JoinCompiler joinCompiler;
         private final boolean useSystemMemory;
+        private final Optional<PartialAggregationController> partialAggregationController;
+        private final Optional<List<FlatAggregation>> flatAggregations;
+        private final Optional<FlatAccumulator> flatAccumulator;
+        private final Optional<GroupByKeyRange> groupByKeyRange;
 
         private boolean closed;
 
@@ -129,8 +146,61 @@ public class HashAggregationOperator
                 boolean spillEnabled,
                 DataSize unspillMemoryLimit,
                 SpillerFactory spillerFactory,
+                boolean partitionedSpillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory,
                 JoinCompiler joinCompiler,
-                boolean useSystemMemory)
+                boolean useSystemMemory,
+                Optional<PartialAggregationController> partialAggregationController)
+        {
+            this(operatorId,
+                    planNodeId,
+                    groupByTypes,
+                    groupByChannels,
+                    globalAggregationGroupIds,
+                    step,
+                    produceDefaultOutput,
+                    accumulatorFactories,
+                    hashChannel,
+                    groupIdChannel,
+                    expectedGroups,
+                    maxPartialMemory,
+                    spillEnabled,
+                    unspillMemoryLimit,
+                    spillerFactory,
+                    partitionedSpillEnabled,
+                    partitioningSpillerFactory,
+                    joinCompiler,
+                    useSystemMemory,
+                    partialAggregationController,
+                    Optional.empty(),
+                    Optional.empty(),
+                    Optional.empty());
+        }
+
+        public HashAggregationOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> groupByTypes,
+                List<Integer> groupByChannels,
+                List<Integer> globalAggregationGroupIds,
+                Step step,
+                boolean produceDefaultOutput,
+                List<AccumulatorFactory> accumulatorFactories,
+                Optional<Integer> hashChannel,
+                Optional<Integer> groupIdChannel,
+                int expectedGroups,
+                Optional<DataSize> maxPartialMemory,
+                boolean spillEnabled,
+                DataSize unspillMemoryLimit,
+                SpillerFactory spillerFactory,
+                boolean partitionedSpillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory,
+                JoinCompiler joinCompiler,
+                boolean useSystemMemory,
+                Optional<PartialAggregationController> partialAggregationController,
+                Optional<List<FlatAggregation>> flatAggregations,
+                Optional<FlatAccumulator> flatAccumulator,
+                Optional<GroupByKeyRange> groupByKeyRange)
         {
             this(operatorId,
                     planNodeId,
@@ -148,8 +218,14 @@ public class HashAggregationOperator
                     unspillMemoryLimit,
                     DataSize.succinctBytes((long) (unspillMemoryLimit.toBytes() * MERGE_WITH_MEMORY_RATIO)),
                     spillerFactory,
+                    partitionedSpillEnabled,
+                    partitioningSpillerFactory,
                     joinCompiler,
-                    useSystemMemory);
+                    useSystemMemory,
+                    partialAggregationController,
+                    flatAggregations,
+                    flatAccumulator,
+                    groupByKeyRange);
         }
 
         @VisibleForTesting
@@ -172,6 +248,102 @@ public class HashAggregationOperator
                 SpillerFactory spillerFactory,
                 JoinCompiler joinCompiler,
                 boolean useSystemMemory)
+        {
+            this(operatorId,
+                    planNodeId,
+                    groupByTypes,
+                    groupByChannels,
+                    globalAggregationGroupIds,
+                    step,
+                    produceDefaultOutput,
+                    accumulatorFactories,
+                    hashChannel,
+                    groupIdChannel,
+                    expectedGroups,
+                    maxPartialMemory,
+                    spillEnabled,
+                    memoryLimitForMerge,
+                    memoryLimitForMergeWithMemory,
+                    spillerFactory,
+                    joinCompiler,
+                    useSystemMemory,
+                    Optional.empty());
+        }
+
+        @VisibleForTesting
+        HashAggregationOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> groupByTypes,
+                List<Integer> groupByChannels,
+                List<Integer> globalAggregationGroupIds,
+                Step step,
+                boolean produceDefaultOutput,
+                List<AccumulatorFactory> accumulatorFactories,
+                Optional<Integer> hashChannel,
+                Optional<Integer> groupIdChannel,
+                int expectedGroups,
+                Optional<DataSize> maxPartialMemory,
+                boolean spillEnabled,
+                DataSize memoryLimitForMerge,
+                DataSize memoryLimitForMergeWithMemory,
+                SpillerFactory spillerFactory,
+                JoinCompiler joinCompiler,
+                boolean useSystemMemory,
+                Optional<PartialAggregationController> partialAggregationController)
+        {
+            this(operatorId,
+                    planNodeId,
+                    groupByTypes,
+                    groupByChannels,
+                    globalAggregationGroupIds,
+                    step,
+                    produceDefaultOutput,
+                    accumulatorFactories,
+                    hashChannel,
+                    groupIdChannel,
+                    expectedGroups,
+                    maxPartialMemory,
+                    spillEnabled,
+                    memoryLimitForMerge,
+                    memoryLimitForMergeWithMemory,
+                    spillerFactory,
+                    false,
+                    unsupportedPartitioningSpillerFactory(),
+                    joinCompiler,
+                    useSystemMemory,
+                    partialAggregationController,
+                    Optional.empty(),
+                    Optional.empty(),
+                    Optional.empty());
+        }
+
+        @VisibleForTesting
+        HashAggregationOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> groupByTypes,
+                List<Integer> groupByChannels,
+                List<Integer> globalAggregationGroupIds,
+                Step step,
+                boolean produceDefaultOutput,
+                List<AccumulatorFactory> accumulatorFactories,
+                Optional<Integer> hashChannel,
+                Optional<Integer> groupIdChannel,
+                int expectedGroups,
+                Optional<DataSize> maxPartialMemory,
+                boolean spillEnabled,
+                DataSize memoryLimitForMerge,
+                DataSize memoryLimitForMergeWithMemory,
+                SpillerFactory spillerFactory,
+                boolean partitionedSpillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory,
+                JoinCompiler joinCompiler,
+                boolean useSystemMemory,
+                Optional<PartialAggregationController> partialAggregationController,
+                Optional<List<FlatAggregation>> flatAggregations,
+                Optional<FlatAccumulator> flatAccumulator,
+                Optional<GroupByKeyRange> groupByKeyRange)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -189,8 +361,14 @@ public class HashAggregationOperator
             this.memoryLimitForMerge = requireNonNull(memoryLimitForMerge, "memoryLimitForMerge is null");
             this.memoryLimitForMergeWithMemory = requireNonNull(memoryLimitForMergeWithMemory, "memoryLimitForMergeWithMemory is null");
             this.spillerFactory = requireNonNull(spillerFactory, "spillerFactory is null");
+            this.partitionedSpillEnabled = partitionedSpillEnabled;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
             this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
             this.useSystemMemory = useSystemMemory;
+            this.partialAggregationController = requireNonNull(partialAggregationController, "partialAggregationController is null");
+            this.flatAggregations = requireNonNull(flatAggregations, "flatAggregations is null").map(ImmutableList::copyOf);
+            this.flatAccumulator = requireNonNull(flatAccumulator, "flatAccumulator is null");
+            this.groupByKeyRange = requireNonNull(groupByKeyRange, "groupByKeyRange is null");
         }
 
         @Override
@@ -215,8 +393,14 @@ public class HashAggregationOperator
                     memoryLimitForMerge,
                     memoryLimitForMergeWithMemory,
                     spillerFactory,
+                    partitionedSpillEnabled,
+                    partitioningSpillerFactory,
                     joinCompiler,
-                    useSystemMemory);
+                    useSystemMemory,
+                    partialAggregationController,
+                    flatAggregations,
+                    flatAccumulator,
+                    groupByKeyRange);
             return hashAggregationOperator;
         }
 
@@ -246,8 +430,14 @@ public class HashAggregationOperator
                     memoryLimitForMerge,
                     memoryLimitForMergeWithMemory,
                     spillerFactory,
+                    partitionedSpillEnabled,
+                    partitioningSpillerFactory,
                     joinCompiler,
-                    useSystemMemory);
+                    useSystemMemory,
+                    partialAggregationController,
+                    flatAggregations,
+                    flatAccumulator,
+                    groupByKeyRange);
         }
     }
 
@@ -266,8 +456,14 @@ public class HashAggregationOperator
     private final DataSize memoryLimitForMerge;
     private final DataSize memoryLimitForMergeWithMemory;
     private final SpillerFactory spillerFactory;
+    private final boolean partitionedSpillEnabled;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
     private final JoinCompiler joinCompiler;
     private final boolean useSystemMemory;
+    private final Optional<PartialAggregationController> partialAggregationController;
+    private final Optional<List<FlatAggregation>> flatAggregations;
+    private final Optional<FlatAccumulator> flatAccumulator;
+    private final Optional<GroupByKeyRange> groupByKeyRange;
 
     private final List<Type> types;
     private final HashCollisionsCounter hashCollisionsCounter;
@@ -279,6 +475,12 @@ public class HashAggregationOperator
     private boolean finishing;
     private boolean finished;
 
+    // rows added to the current aggregation builder
+    private long aggregationInputRows;
+    // output of the partial aggregation once it passes rows through without aggregating them
+    private Page passThroughOutput;
+    private long passThroughPositions;
+
     // for yield when memory is not available
     private Work<?> unfinishedWork;
 
@@ -298,8 +500,14 @@ public class HashAggregationOperator
             DataSize memoryLimitForMerge,
             DataSize memoryLimitForMergeWithMemory,
             SpillerFactory spillerFactory,
+            boolean partitionedSpillEnabled,
+            PartitioningSpillerFactory partitioningSpillerFactory,
             JoinCompiler joinCompiler,
-            boolean useSystemMemory)
+            boolean useSystemMemory,
+            Optional<PartialAggregationController> partialAggregationController,
+            Optional<List<FlatAggregation>> flatAggregations,
+            Optional<FlatAccumulator> flatAccumulator,
+            Optional<GroupByKeyRange> groupByKeyRange)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         requireNonNull(step, "step is null");
@@ -321,10 +529,24 @@ public class HashAggregationOperator
         this.memoryLimitForMerge = requireNonNull(memoryLimitForMerge, "memoryLimitForMerge is null");
         this.memoryLimitForMergeWithMemory = requireNonNull(memoryLimitForMergeWithMemory, "memoryLimitForMergeWithMemory is null");
         this.spillerFactory = requireNonNull(spillerFactory, "spillerFactory is null");
+        this.partitionedSpillEnabled = partitionedSpillEnabled;
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
         this.hashCollisionsCounter = new HashCollisionsCounter(operatorContext);
-        operatorContext.setInfoSupplier(hashCollisionsCounter);
         this.useSystemMemory = useSystemMemory;
+        this.partialAggregationController = requireNonNull(partialAggregationController, "partialAggregationController is null");
+        checkArgument(!partialAggregationController.isPresent() || step == Step.PARTIAL, "partialAggregationController is only supported for partial aggregations");
+        this.flatAggregations = requireNonNull(flatAggregations, "flatAggregations is null");
+        checkArgument(!flatAggregations.isPresent() || flatAggregations.get().size() == accumulatorFactories.size(), "flatAggregations must match accumulatorFactories");
+        this.flatAccumulator = requireNonNull(flatAccumulator, "flatAccumulator is null");
+        checkArgument(!flatAccumulator.isPresent() || flatAggregations.isPresent(), "flatAccumulator requires flatAggregations");
+        this.groupByKeyRange = requireNonNull(groupByKeyRange, "groupByKeyRange is null");
+        if (partialAggregationController.isPresent()) {
+            operatorContext.setInfoSupplier(this::getInfo);
+        }
+        else {
+            operatorContext.setInfoSupplier(hashCollisionsCounter);
+        }
 
         this.memoryContext = operatorContext.localUserMemoryContext();
         if (useSystemMemory) {
@@ -350,13 +572,23 @@ public class HashAggregationOperator
         return finished;
     }
 
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        // the result of a spilled aggregation waits for the partitions which are still being spilled
+        if (outputPages != null && outputPages.isBlocked()) {
+            return outputPages.getBlockedFuture();
+        }
+        return NOT_BLOCKED;
+    }
+
     @Override
     public boolean needsInput()
     {
-        if (finishing || outputPages != null) {
+        if (finishing || outputPages != null || passThroughOutput != null) {
             return false;
         }
-        else if (aggregationBuilder != null && aggregationBuilder.isFull()) {
+        else if (aggregationBuilder != null && (aggregationBuilder.isFull() || isPartialAggregationDisabled())) {
             return false;
         }
         else {
@@ -372,9 +604,34 @@ public class HashAggregationOperator
         requireNonNull(page, "page is null");
         inputProcessed = true;
 
+        if (aggregationBuilder == null && isPartialAggregationDisabled()) {
+            passThroughOutput = aggregatePassThrough(page);
+            passThroughPositions += page.getPositionCount();
+            return;
+        }
+
         if (aggregationBuilder == null) {
             // TODO: We ignore spillEnabled here if any aggregate has ORDER BY clause or DISTINCT because they are not yet implemented for spilling.
-            if (step.isOutputPartial() || !spillEnabled || hasOrderBy() || hasDistinct()) {
+            if ((step.isOutputPartial() || !spillEnabled) && isFlatHashAggregation()) {
+                aggregationBuilder = new FlatHashAggregationBuilder(
+                        flatAggregations.get(),
+                        step,
+                        expectedGroups,
+                        groupByTypes,
+                        groupByChannels,
+                        hashChannel,
+                        maxPartialMemory,
+                        () -> {
+                            memoryContext.setBytes(((FlatHashAggregationBuilder) aggregationBuilder).getSizeInMemory());
+                            if (step.isOutputPartial() && maxPartialMemory.isPresent()) {
+                                // do not yield on memory for partial aggregations
+                                return true;
+                            }
+                            return operatorContext.isWaitingForMemory().isDone();
+                        },
+                        flatAccumulator);
+            }
+            else if (step.isOutputPartial() || !spillEnabled || hasOrderBy() || hasDistinct()) {
                 aggregationBuilder = new InMemoryHashAggregationBuilder(
                         accumulatorFactories,
                         step,
@@ -384,6 +641,7 @@ public class HashAggregationOperator
                         hashChannel,
                         operatorContext,
                         maxPartialMemory,
+                        Optional.empty(),
                         joinCompiler,
                         () -> {
                             memoryContext.setBytes(((InMemoryHashAggregationBuilder) aggregationBuilder).getSizeInMemory());
@@ -392,7 +650,22 @@ public class HashAggregationOperator
                                 return true;
                             }
                             return operatorContext.isWaitingForMemory().isDone();
-                        });
+                        },
+                        groupByKeyRange);
+            }
+            else if (partitionedSpillEnabled) {
+                verify(!useSystemMemory, "using system memory in spillable aggregations is not supported");
+                aggregationBuilder = new PartitionedSpillableHashAggregationBuilder(
+                        accumulatorFactories,
+                        step,
+                        expectedGroups,
+                        groupByTypes,
+                        groupByChannels,
+                        hashChannel,
+                        operatorContext,
+                        memoryLimitForMerge,
+                        partitioningSpillerFactory,
+                        joinCompiler);
             }
             else {
                 verify(!useSystemMemory, "using system memory in spillable aggregations is not supported");
@@ -417,6 +690,7 @@ public class HashAggregationOperator
         }
 
         // process the current page; save the unfinished work if we are waiting for memory
+        aggregationInputRows += page.getPositionCount();
         unfinishedWork = aggregationBuilder.processPage(page);
         if (unfinishedWork.process()) {
             unfinishedWork = null;
@@ -424,6 +698,53 @@ public class HashAggregationOperator
         aggregationBuilder.updateMemory();
     }
 
+    private boolean isFlatHashAggregation()
+    {
+        return flatAggregations.isPresent() && FlatHashAggregationBuilder.isSupported(groupByTypes, accumulatorFactories.size());
+    }
+
+    private boolean isPartialAggregationDisabled()
+    {
+        return partialAggregationController.isPresent() && partialAggregationController.get().isPartialAggregationDisabled();
+    }
+
+    /**
+     * Produces the intermediate state of each input row as if it was its own group, without hashing the group by keys.
+     */
+    private Page aggregatePassThrough(Page page)
+    {
+        int positionCount = page.getPositionCount();
+        Block[] blocks = new Block[types.size()];
+        int channel = 0;
+        for (int groupByChannel : groupByChannels) {
+            blocks[channel++] = page.getBlock(groupByChannel);
+        }
+        if (hashChannel.isPresent()) {
+            blocks[channel++] = page.getBlock(hashChannel.get());
+        }
+
+        long[] groupIds = new long[positionCount];
+        for (int position = 0; position < positionCount; position++) {
+            groupIds[position] = position;
+        }
+        GroupByIdBlock groupIdsBlock = new GroupByIdBlock(positionCount, new LongArrayBlock(positionCount, Optional.empty(), groupIds));
+        for (AccumulatorFactory accumulatorFactory : accumulatorFactories) {
+            GroupedAccumulator accumulator = accumulatorFactory.createGroupedAccumulator();
+            accumulator.addInput(groupIdsBlock, page);
+            BlockBuilder output = accumulator.getIntermediateType().createBlockBuilder(null, positionCount);
+            for (int groupId = 0; groupId < positionCount; groupId++) {
+                accumulator.evaluateIntermediate(groupId, output);
+            }
+            blocks[channel++] = output.build();
+        }
+        return new Page(positionCount, blocks);
+    }
+
+    private HashAggregationInfo getInfo()
+    {
+        return new HashAggregationInfo(hashCollisionsCounter.get(), isPartialAggregationDisabled(), passThroughPositions);
+    }
+
     private boolean hasOrderBy()
     {
         return accumulatorFactories.stream().anyMatch(AccumulatorFactory::hasOrderBy);
@@ -458,6 +779,12 @@ public class HashAggregationOperator
             return null;
         }
 
+        if (passThroughOutput != null) {
+            Page output = passThroughOutput;
+            passThroughOutput = null;
+            return output;
+        }
+
         // process unfinished work if one exists
         if (unfinishedWork != null) {
             boolean workDone = unfinishedWork.process();
@@ -482,11 +809,22 @@ public class HashAggregationOperator
                 }
             }
 
-            // only flush if we are finishing or the aggregation builder is full
-            if (!finishing && (aggregationBuilder == null || !aggregationBuilder.isFull())) {
+            // only flush if we are finishing, the aggregation builder is full, or the partial aggregation has been disabled
+            if (!finishing && (aggregationBuilder == null || !(aggregationBuilder.isFull() || isPartialAggregationDisabled()))) {
                 return null;
             }
 
+            if (partialAggregationController.isPresent()) {
+                // partial aggregations always use an in-memory aggregation builder
+                long groupCount;
+                if (aggregationBuilder instanceof FlatHashAggregationBuilder) {
+                    groupCount = ((FlatHashAggregationBuilder) aggregationBuilder).getGroupCount();
+                }
+                else {
+                    groupCount = ((InMemoryHashAggregationBuilder) aggregationBuilder).getGroupCount();
+                }
+                partialAggregationController.get().onFlush(aggregationInputRows, groupCount);
+            }
             outputPages = aggregationBuilder.buildResult();
         }
 
@@ -524,6 +862,7 @@ public class HashAggregationOperator
             // The reference must be set to null afterwards to avoid unaccounted memory.
             aggregationBuilder = null;
         }
+        aggregationInputRows = 0;
         memoryContext.setBytes(0);
     }
 
@@ -210,6 +210,8 @@ public class HashBuilderOperator
 
     private final boolean spillEnabled;
     private final SingleStreamSpillerFactory singleStreamSpillerFactory;
+    // set when the lookup source factory no longer accepts spilled partitions, the index is then kept in user memory
+    private boolean spillRejected;
 
     private final HashCollisionsCounter hashCollisionsCounter;
 
@@ -337,7 +339,7 @@ public class HashBuilderOperator
     {
         index.addPage(page);
 
-        if (spillEnabled) {
+        if (isMemoryRevocable()) {
             localRevocableMemoryContext.setBytes(index.getEstimatedSize().toBytes());
         }
         else {
@@ -361,6 +363,12 @@ public class HashBuilderOperator
     {
         checkState(spillEnabled, "Spill not enabled, no revokable memory should be reserved");
 
+        if (spillRejected || !lookupSourceFactory.isSpillAllowed()) {
+            rejectSpill();
+            finishMemoryRevoke = Optional.of(() -> {});
+            return immediateFuture(null);
+        }
+
         if (state == State.CONSUMING_INPUT) {
             long indexSizeBeforeCompaction = index.getEstimatedSize().toBytes();
             index.compact();
@@ -371,23 +379,30 @@ public class HashBuilderOperator
             }
 
             finishMemoryRevoke = Optional.of(() -> {
+                if (!lookupSourceFactory.setPartitionSpilledLookupSourceHandle(partitionIndex, spilledLookupSourceHandle)) {
+                    discardSpilledIndex();
+                    return;
+                }
                 index.clear();
                 localUserMemoryContext.setBytes(index.getEstimatedSize().toBytes());
                 localRevocableMemoryContext.setBytes(0);
-                lookupSourceFactory.setPartitionSpilledLookupSourceHandle(partitionIndex, spilledLookupSourceHandle);
                 state = State.SPILLING_INPUT;
             });
             return spillIndex();
         }
         if (state == State.LOOKUP_SOURCE_BUILT) {
             finishMemoryRevoke = Optional.of(() -> {
-                lookupSourceFactory.setPartitionSpilledLookupSourceHandle(partitionIndex, spilledLookupSourceHandle);
+                if (!lookupSourceFactory.setPartitionSpilledLookupSourceHandle(partitionIndex, spilledLookupSourceHandle)) {
+                    discardSpilledIndex();
+                    return;
+                }
                 lookupSourceNotNeeded = Optional.empty();
                 index.clear();
                 localUserMemoryContext.setBytes(index.getEstimatedSize().toBytes());
                 localRevocableMemoryContext.setBytes(0);
                 lookupSourceChecksum = OptionalLong.of(lookupSourceSupplier.checksum());
-                lookupSourceSupplier = null;
+                // the lookup source factory no longer supplies the spilled partition to the probe side
+                freeLookupSource();
                 state = State.INPUT_SPILLED;
             });
             return spillIndex();
@@ -411,6 +426,27 @@ public class HashBuilderOperator
         return getSpiller().spill(index.getPages());
     }
 
+    private void discardSpilledIndex()
+    {
+        // The index was spilled concurrently with the probe side finishing, so it has to stay in memory
+        getSpiller().close();
+        spiller = Optional.empty();
+        rejectSpill();
+    }
+
+    private void rejectSpill()
+    {
+        spillRejected = true;
+        long revocableBytes = localRevocableMemoryContext.getBytes();
+        localRevocableMemoryContext.setBytes(0);
+        localUserMemoryContext.setBytes(localUserMemoryContext.getBytes() + revocableBytes);
+    }
+
+    private boolean isMemoryRevocable()
+    {
+        return spillEnabled && !spillRejected;
+    }
+
     @Override
     public void finishMemoryRevoke()
     {
@@ -484,7 +520,7 @@ public class HashBuilderOperator
         }
 
         LookupSourceSupplier partition = buildLookupSource();
-        if (spillEnabled) {
+        if (isMemoryRevocable()) {
             localRevocableMemoryContext.setBytes(partition.get().getInMemorySizeInBytes());
         }
         else {
@@ -506,7 +542,7 @@ public class HashBuilderOperator
         index.clear();
         localRevocableMemoryContext.setBytes(0);
         localUserMemoryContext.setBytes(index.getEstimatedSize().toBytes());
-        lookupSourceSupplier = null;
+        freeLookupSource();
         close();
     }
 
@@ -580,10 +616,23 @@ public class HashBuilderOperator
 
         index.clear();
         localUserMemoryContext.setBytes(index.getEstimatedSize().toBytes());
+        freeLookupSource();
 
         close();
     }
 
+    /**
+     * Frees the memory of the lookup source which is not managed by the Java heap. Must only be called
+     * once the probe side no longer uses the lookup source, as it cannot be accessed afterwards.
+     */
+    private void freeLookupSource()
+    {
+        if (lookupSourceSupplier != null) {
+            lookupSourceSupplier.close();
+            lookupSourceSupplier = null;
+        }
+    }
+
     private LookupSourceSupplier buildLookupSource()
     {
         LookupSourceSupplier partition = index.createLookupSourceSupplier(operatorContext.getSession(), hashChannels, preComputedHashChannel, filterFunctionFactory, sortChannel, searchFunctionFactories, Optional.of(outputChannels));
@@ -618,6 +667,10 @@ public class HashBuilderOperator
         }
         // close() can be called in any state, due for example to query failure, and must clean resource up unconditionally
 
+        if (lookupSourceFactoryDestroyed.isDone()) {
+            freeLookupSource();
+        }
+        // otherwise the probe side might still use the lookup source, which is then freed once it is unreachable
         lookupSourceSupplier = null;
         state = State.CLOSED;
         finishMemoryRevoke = finishMemoryRevoke.map(ifPresent -> () -> {});
@@ -21,6 +21,17 @@ public interface HashGenerator
 {
     long hashPosition(int position, Page page);
 
+    /**
+     * Hashes the positions {@code [positionOffset, positionOffset + length)} of the page into {@code hashes},
+     * so that callers can hash a whole page before probing a hash table with the results.
+     */
+    default void hashPositions(Page page, int positionOffset, int length, long[] hashes)
+    {
+        for (int i = 0; i < length; i++) {
+            hashes[i] = hashPosition(positionOffset + i, page);
+        }
+    }
+
     default int getPartition(int partitionCount, int position, Page page)
     {
         long rawHash = hashPosition(position, page);
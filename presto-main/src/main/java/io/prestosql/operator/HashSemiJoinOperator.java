@@ -14,10 +14,12 @@
 package io.prestosql.operator;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.io.Closer;
 import com.google.common.util.concurrent.ListenableFuture;
-import io.prestosql.memory.context.AggregatedMemoryContext;
 import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.memory.context.MemoryTrackingContext;
+import io.prestosql.operator.PartitionedConsumption.Partition;
 import io.prestosql.operator.SetBuilderOperator.SetSupplier;
 import io.prestosql.operator.WorkProcessor.TransformationState;
 import io.prestosql.operator.WorkProcessorOperatorAdapter.AdapterWorkProcessorOperator;
@@ -26,22 +28,38 @@ import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpillerFactory;
+import io.prestosql.spiller.SpillContext;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 
 import javax.annotation.Nullable;
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Iterators.singletonIterator;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.Futures.transformAsync;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.MoreFutures.addSuccessCallback;
 import static io.airlift.concurrent.MoreFutures.checkSuccess;
+import static io.airlift.concurrent.MoreFutures.getDone;
 import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.prestosql.operator.SpilledChannelSet.createPartitionFunction;
 import static io.prestosql.operator.WorkProcessor.TransformationState.blocked;
 import static io.prestosql.operator.WorkProcessor.TransformationState.finished;
+import static io.prestosql.operator.WorkProcessor.TransformationState.needsMoreData;
 import static io.prestosql.operator.WorkProcessor.TransformationState.ofResult;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
+import static java.util.Collections.emptyIterator;
 import static java.util.Objects.requireNonNull;
 
 public class HashSemiJoinOperator
@@ -56,9 +74,26 @@ public class HashSemiJoinOperator
         private final List<Type> probeTypes;
         private final int probeJoinChannel;
         private final Optional<Integer> probeJoinHashChannel;
+        private final boolean spillEnabled;
+        private final OptionalInt probeOperatorsCount;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
         private boolean closed;
 
         public HashSemiJoinOperatorFactory(int operatorId, PlanNodeId planNodeId, SetSupplier setSupplier, List<? extends Type> probeTypes, int probeJoinChannel, Optional<Integer> probeJoinHashChannel)
+        {
+            this(operatorId, planNodeId, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, false, OptionalInt.empty(), unsupportedPartitioningSpillerFactory());
+        }
+
+        public HashSemiJoinOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                SetSupplier setSupplier,
+                List<? extends Type> probeTypes,
+                int probeJoinChannel,
+                Optional<Integer> probeJoinHashChannel,
+                boolean spillEnabled,
+                OptionalInt probeOperatorsCount,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -67,6 +102,9 @@ public class HashSemiJoinOperator
             checkArgument(probeJoinChannel >= 0, "probeJoinChannel is negative");
             this.probeJoinChannel = probeJoinChannel;
             this.probeJoinHashChannel = probeJoinHashChannel;
+            this.spillEnabled = spillEnabled;
+            this.probeOperatorsCount = requireNonNull(probeOperatorsCount, "probeOperatorsCount is null");
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         }
 
         @Override
@@ -86,13 +124,13 @@ public class HashSemiJoinOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new HashSemiJoinOperatorFactory(operatorId, planNodeId, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel);
+            return new HashSemiJoinOperatorFactory(operatorId, planNodeId, setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, spillEnabled, probeOperatorsCount, partitioningSpillerFactory);
         }
 
         @Override
         public AdapterWorkProcessorOperator create(ProcessorContext processorContext)
         {
-            return new HashSemiJoinOperator(Optional.empty(), setSupplier, probeJoinChannel, probeJoinHashChannel, processorContext.getMemoryTrackingContext());
+            return new HashSemiJoinOperator(Optional.empty(), setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, spillEnabled, probeOperatorsCount, partitioningSpillerFactory, processorContext);
         }
 
         @Override
@@ -116,26 +154,38 @@ public class HashSemiJoinOperator
         @Override
         public WorkProcessorOperator create(ProcessorContext processorContext, WorkProcessor<Page> sourcePages)
         {
-            return new HashSemiJoinOperator(Optional.of(sourcePages), setSupplier, probeJoinChannel, probeJoinHashChannel, processorContext.getMemoryTrackingContext());
+            return new HashSemiJoinOperator(Optional.of(sourcePages), setSupplier, probeTypes, probeJoinChannel, probeJoinHashChannel, spillEnabled, probeOperatorsCount, partitioningSpillerFactory, processorContext);
         }
     }
 
     private final WorkProcessor<Page> pages;
     private final PageBuffer pageBuffer = new PageBuffer();
+    private final SemiJoinPages semiJoinPages;
 
     public HashSemiJoinOperator(
             Optional<WorkProcessor<Page>> sourcePages,
             SetSupplier channelSetFuture,
+            List<Type> probeTypes,
             int probeJoinChannel,
             Optional<Integer> probeHashChannel,
-            MemoryTrackingContext memoryTrackingContext)
+            boolean spillEnabled,
+            OptionalInt probeOperatorsCount,
+            PartitioningSpillerFactory partitioningSpillerFactory,
+            ProcessorContext processorContext)
     {
+        requireNonNull(processorContext, "processorContext is null");
+        semiJoinPages = new SemiJoinPages(
+                channelSetFuture,
+                probeTypes,
+                probeJoinChannel,
+                probeHashChannel,
+                spillEnabled,
+                probeOperatorsCount,
+                partitioningSpillerFactory,
+                processorContext.getSpillContext(),
+                processorContext.getMemoryTrackingContext());
         pages = sourcePages.orElse(pageBuffer.pages())
-                .transform(new SemiJoinPages(
-                        channelSetFuture,
-                        probeJoinChannel,
-                        probeHashChannel,
-                        requireNonNull(memoryTrackingContext, "memoryTrackingContext is null").aggregateUserMemoryContext()));
+                .transform(semiJoinPages);
     }
 
     @Override
@@ -166,47 +216,172 @@ public class HashSemiJoinOperator
     public void close()
             throws Exception
     {
+        semiJoinPages.close();
     }
 
     private static class SemiJoinPages
             implements WorkProcessor.Transformation<Page, Page>
     {
         private final int probeJoinChannel;
-        private final ListenableFuture<ChannelSet> channelSetFuture;
+        private final SetSupplier setSupplier;
         private final Optional<Integer> probeHashChannel;
         private final LocalMemoryContext localMemoryContext;
 
+        // when the set is spilled, the probe side is spilled to the same partitions, which are then probed one at a time
+        private final List<Type> probeTypes;
+        private final boolean spillEnabled;
+        private final OptionalInt probeOperatorsCount;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
+        private final SpillContext spillContext;
+        private final MemoryTrackingContext memoryTrackingContext;
+
         @Nullable
         private ChannelSet channelSet;
 
-        public SemiJoinPages(SetSupplier channelSetFuture, int probeJoinChannel, Optional<Integer> probeHashChannel, AggregatedMemoryContext aggregatedMemoryContext)
+        @Nullable
+        private SpilledChannelSet spilledChannelSet;
+        private Optional<PartitioningSpiller> spiller = Optional.empty();
+        private ListenableFuture<?> spillInProgress = immediateFuture(null);
+        @Nullable
+        private ListenableFuture<PartitionedConsumption<ChannelSet>> partitionedConsumption;
+        @Nullable
+        private Iterator<Partition<ChannelSet>> partitions;
+        @Nullable
+        private Partition<ChannelSet> currentPartition;
+        @Nullable
+        private Iterator<Page> unspilledInputPages;
+        private boolean finished;
+
+        public SemiJoinPages(
+                SetSupplier setSupplier,
+                List<Type> probeTypes,
+                int probeJoinChannel,
+                Optional<Integer> probeHashChannel,
+                boolean spillEnabled,
+                OptionalInt probeOperatorsCount,
+                PartitioningSpillerFactory partitioningSpillerFactory,
+                SpillContext spillContext,
+                MemoryTrackingContext memoryTrackingContext)
         {
             checkArgument(probeJoinChannel >= 0, "probeJoinChannel is negative");
 
-            this.channelSetFuture = requireNonNull(channelSetFuture, "hashProvider is null").getChannelSet();
+            this.setSupplier = requireNonNull(setSupplier, "hashProvider is null");
+            this.probeTypes = ImmutableList.copyOf(requireNonNull(probeTypes, "probeTypes is null"));
             this.probeJoinChannel = probeJoinChannel;
             this.probeHashChannel = requireNonNull(probeHashChannel, "hashChannel is null");
-            this.localMemoryContext = requireNonNull(aggregatedMemoryContext, "aggregatedMemoryContext is null").newLocalMemoryContext(SemiJoinPages.class.getSimpleName());
+            this.spillEnabled = spillEnabled;
+            this.probeOperatorsCount = requireNonNull(probeOperatorsCount, "probeOperatorsCount is null");
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+            this.spillContext = requireNonNull(spillContext, "spillContext is null");
+            this.memoryTrackingContext = requireNonNull(memoryTrackingContext, "memoryTrackingContext is null");
+            this.localMemoryContext = memoryTrackingContext.aggregateUserMemoryContext().newLocalMemoryContext(SemiJoinPages.class.getSimpleName());
         }
 
         @Override
         public TransformationState<Page> process(Page inputPage)
         {
-            if (inputPage == null) {
+            if (inputPage == null && !spillEnabled) {
                 return finished();
             }
 
-            if (channelSet == null) {
-                if (!channelSetFuture.isDone()) {
-                    // This will materialize page but it shouldn't matter for the first page
-                    localMemoryContext.setBytes(inputPage.getSizeInBytes());
-                    return blocked(channelSetFuture);
+            if (channelSet == null && spilledChannelSet == null) {
+                ListenableFuture<?> setBuilt = setSupplier.whenSetBuilt();
+                if (!setBuilt.isDone()) {
+                    if (inputPage != null) {
+                        // This will materialize page but it shouldn't matter for the first page
+                        localMemoryContext.setBytes(inputPage.getSizeInBytes());
+                    }
+                    // with spilling, the probe operators wait for the set even without input, as they take part in probing a spilled set
+                    return blocked(setBuilt);
                 }
-                checkSuccess(channelSetFuture, "ChannelSet building failed");
-                channelSet = getFutureValue(channelSetFuture);
                 localMemoryContext.setBytes(0);
+                if (setSupplier.getSpilledChannelSet().isDone()) {
+                    spilledChannelSet = getDone(setSupplier.getSpilledChannelSet());
+                }
+                else {
+                    checkSuccess(setSupplier.getChannelSet(), "ChannelSet building failed");
+                    channelSet = getFutureValue(setSupplier.getChannelSet());
+                }
+            }
+
+            if (spilledChannelSet != null) {
+                return processSpilled(inputPage);
+            }
+
+            if (inputPage == null) {
+                finished = true;
+                return finished();
+            }
+            return ofResult(semiJoin(inputPage, channelSet, channelSet.isEmpty(), channelSet.containsNull()));
+        }
+
+        private TransformationState<Page> processSpilled(@Nullable Page inputPage)
+        {
+            if (!spillInProgress.isDone()) {
+                return blocked(spillInProgress);
+            }
+            checkSuccess(spillInProgress, "spilling failed");
+
+            if (inputPage != null) {
+                // the rows are probed when the set of their partition is loaded
+                spillInProgress = getSpiller().partitionAndSpill(inputPage, partition -> true).getSpillingFuture();
+                return needsMoreData();
+            }
+
+            if (partitionedConsumption == null) {
+                partitionedConsumption = spilledChannelSet.finishProbeOperator(probeOperatorsCount);
+            }
+            if (!partitionedConsumption.isDone()) {
+                return blocked(partitionedConsumption);
             }
+            if (partitions == null) {
+                partitions = getDone(partitionedConsumption).beginConsumption();
+            }
+
+            while (true) {
+                if (currentPartition != null) {
+                    ListenableFuture<ChannelSet> partitionSet = currentPartition.load();
+                    if (!partitionSet.isDone()) {
+                        return blocked(partitionSet);
+                    }
+                    if (unspilledInputPages == null) {
+                        int partition = currentPartition.number();
+                        unspilledInputPages = spiller.map(spiller -> spiller.getSpilledPages(partition))
+                                .orElse(emptyIterator());
+                    }
+                    if (unspilledInputPages.hasNext()) {
+                        // the empty set and the null value are properties of the whole set, not of the partition
+                        Page page = semiJoin(unspilledInputPages.next(), getDone(partitionSet), spilledChannelSet.isEmpty(), spilledChannelSet.containsNull());
+                        return ofResult(page, false);
+                    }
+                    unspilledInputPages = null;
+                    currentPartition.release();
+                    currentPartition = null;
+                }
+
+                if (!partitions.hasNext()) {
+                    spiller.ifPresent(PartitioningSpiller::verifyAllPartitionsRead);
+                    finished = true;
+                    return finished();
+                }
+                currentPartition = partitions.next();
+            }
+        }
+
+        private PartitioningSpiller getSpiller()
+        {
+            if (!spiller.isPresent()) {
+                spiller = Optional.of(partitioningSpillerFactory.create(
+                        probeTypes,
+                        createPartitionFunction(setSupplier.getType(), probeJoinChannel),
+                        spillContext.newLocalSpillContext(),
+                        memoryTrackingContext.newAggregateSystemMemoryContext()));
+            }
+            return spiller.get();
+        }
 
+        private Page semiJoin(Page inputPage, ChannelSet channelSet, boolean setEmpty, boolean setContainsNull)
+        {
             // create the block builder for the new boolean column
             // we know the exact size required for the block
             BlockBuilder blockBuilder = BOOLEAN.createFixedSizeBlockBuilder(inputPage.getPositionCount());
@@ -217,7 +392,7 @@ public class HashSemiJoinOperator
             // update hashing strategy to use probe cursor
             for (int position = 0; position < inputPage.getPositionCount(); position++) {
                 if (probeJoinPage.getBlock(0).isNull(position)) {
-                    if (channelSet.isEmpty()) {
+                    if (setEmpty) {
                         BOOLEAN.writeBoolean(blockBuilder, false);
                     }
                     else {
@@ -233,7 +408,7 @@ public class HashSemiJoinOperator
                     else {
                         contains = channelSet.contains(position, probeJoinPage);
                     }
-                    if (!contains && channelSet.containsNull()) {
+                    if (!contains && setContainsNull) {
                         blockBuilder.appendNull();
                     }
                     else {
@@ -242,7 +417,57 @@ public class HashSemiJoinOperator
                 }
             }
             // add the new boolean column to the page
-            return ofResult(inputPage.appendColumn(blockBuilder.build()));
+            return inputPage.appendColumn(blockBuilder.build());
+        }
+
+        public void close()
+                throws IOException
+        {
+            if (spillEnabled && !finished && channelSet == null) {
+                releasePartitions();
+            }
+            try (Closer closer = Closer.create()) {
+                spiller.ifPresent(closer::register);
+            }
+        }
+
+        /**
+         * Releases the partitions of a spilled set which were not probed by this operator, as the other probe
+         * operators can only move on to the next partition once all of them have released the current one.
+         */
+        private void releasePartitions()
+        {
+            if (partitions != null) {
+                Iterator<Partition<ChannelSet>> remainingPartitions = partitions;
+                if (currentPartition != null) {
+                    remainingPartitions = Iterators.concat(singletonIterator(currentPartition), partitions);
+                }
+                releasePartitions(remainingPartitions);
+                return;
+            }
+
+            ListenableFuture<PartitionedConsumption<ChannelSet>> consumption = partitionedConsumption;
+            if (consumption == null) {
+                // the other probe operators wait for this operator to finish its input, if the set is spilled
+                consumption = transformAsync(setSupplier.getSpilledChannelSet(), spilledSet -> spilledSet.finishProbeOperator(probeOperatorsCount), directExecutor());
+            }
+            addSuccessCallback(consumption, value -> releasePartitions(value.beginConsumption()));
+        }
+
+        private static void releasePartitions(Iterator<Partition<ChannelSet>> partitions)
+        {
+            while (partitions.hasNext()) {
+                Partition<ChannelSet> partition = partitions.next();
+                ListenableFuture<ChannelSet> partitionSet = partition.load();
+                if (!partitionSet.isDone()) {
+                    addSuccessCallback(partitionSet, ignored -> {
+                        partition.release();
+                        releasePartitions(partitions);
+                    });
+                    return;
+                }
+                partition.release();
+            }
         }
     }
 }
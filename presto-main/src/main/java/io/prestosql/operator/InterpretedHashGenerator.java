@@ -21,6 +21,7 @@ import io.prestosql.spi.type.Type;
 import io.prestosql.sql.planner.optimizations.HashGenerationOptimizer;
 import io.prestosql.type.TypeUtils;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.IntFunction;
 
@@ -52,6 +53,20 @@ public class InterpretedHashGenerator
         return hashPosition(position, page::getBlock);
     }
 
+    @Override
+    public void hashPositions(Page page, int positionOffset, int length, long[] hashes)
+    {
+        // hash one column at a time, so the type of the inner loop does not change
+        Arrays.fill(hashes, 0, length, HashGenerationOptimizer.INITIAL_HASH_VALUE);
+        for (int i = 0; i < hashChannels.length; i++) {
+            Type type = hashChannelTypes.get(i);
+            Block block = page.getBlock(hashChannels[i]);
+            for (int j = 0; j < length; j++) {
+                hashes[j] = CombineHashFunction.getHash(hashes[j], TypeUtils.hashPosition(type, block, positionOffset + j));
+            }
+        }
+    }
+
     public long hashPosition(int position, IntFunction<Block> blockProvider)
     {
         long result = HashGenerationOptimizer.INITIAL_HASH_VALUE;
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import io.prestosql.util.DirectMemory;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static io.airlift.slice.SizeOf.sizeOf;
+
+/**
+ * Fixed size array of bytes used by the join hash tables, either on the Java heap or in direct memory.
+ *
+ * @see JoinHashIntArray
+ */
+public final class JoinHashByteArray
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(JoinHashByteArray.class).instanceSize();
+
+    @Nullable
+    private final byte[] array;
+    @Nullable
+    private final DirectMemory memory;
+    private final int length;
+
+    public JoinHashByteArray(int length, boolean offHeap)
+    {
+        checkArgument(length >= 0, "length is negative");
+        this.length = length;
+        if (!offHeap) {
+            array = new byte[length];
+            memory = null;
+            return;
+        }
+
+        array = null;
+        memory = new DirectMemory(length);
+        memory.fill((byte) 0);
+    }
+
+    public byte get(int index)
+    {
+        if (array != null) {
+            return array[index];
+        }
+        checkElementIndex(index, length);
+        return memory.getByte(index);
+    }
+
+    public void set(int index, byte value)
+    {
+        if (array != null) {
+            array[index] = value;
+            return;
+        }
+        checkElementIndex(index, length);
+        memory.setByte(index, value);
+    }
+
+    public long getRetainedSizeInBytes()
+    {
+        if (array != null) {
+            return INSTANCE_SIZE + sizeOf(array);
+        }
+        return INSTANCE_SIZE + memory.getSize();
+    }
+
+    /**
+     * Frees the direct memory of the array. The array must not be used afterwards.
+     */
+    public void free()
+    {
+        if (memory != null) {
+            memory.free();
+        }
+    }
+}
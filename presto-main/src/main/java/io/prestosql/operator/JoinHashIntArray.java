@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import io.prestosql.util.DirectMemory;
+import org.openjdk.jol.info.ClassLayout;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static io.airlift.slice.SizeOf.SIZE_OF_INT;
+import static io.airlift.slice.SizeOf.sizeOf;
+
+/**
+ * Fixed size array of ints used by the join hash tables, either on the Java heap or in direct memory.
+ * Direct memory must be freed with {@link #free} once the lookup sources using the array are released.
+ */
+public final class JoinHashIntArray
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(JoinHashIntArray.class).instanceSize();
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    @Nullable
+    private final int[] array;
+    @Nullable
+    private final DirectMemory memory;
+    private final int length;
+
+    public JoinHashIntArray(int length, int initialValue, boolean offHeap)
+    {
+        checkArgument(length >= 0, "length is negative");
+        this.length = length;
+        if (!offHeap) {
+            array = new int[length];
+            Arrays.fill(array, initialValue);
+            memory = null;
+            return;
+        }
+
+        array = null;
+        memory = new DirectMemory((long) length * SIZE_OF_INT);
+        if (initialValue == 0 || initialValue == -1) {
+            memory.fill((byte) initialValue);
+        }
+        else {
+            for (int index = 0; index < length; index++) {
+                set(index, initialValue);
+            }
+        }
+    }
+
+    public int get(int index)
+    {
+        if (array != null) {
+            return array[index];
+        }
+        checkElementIndex(index, length);
+        return memory.getInt((long) index * SIZE_OF_INT);
+    }
+
+    public void set(int index, int value)
+    {
+        if (array != null) {
+            array[index] = value;
+            return;
+        }
+        checkElementIndex(index, length);
+        memory.setInt((long) index * SIZE_OF_INT, value);
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    public long getRetainedSizeInBytes()
+    {
+        if (array != null) {
+            return INSTANCE_SIZE + sizeOf(array);
+        }
+        return INSTANCE_SIZE + memory.getSize();
+    }
+
+    public long checksum()
+    {
+        if (array != null) {
+            return XxHash64.hash(Slices.wrappedIntArray(array));
+        }
+        XxHash64 hash = new XxHash64();
+        byte[] buffer = new byte[(int) Math.min(memory.getSize(), CHECKSUM_BUFFER_SIZE)];
+        for (long offset = 0; offset < memory.getSize(); offset += buffer.length) {
+            int chunkLength = (int) Math.min(memory.getSize() - offset, buffer.length);
+            memory.getBytes(offset, buffer, chunkLength);
+            hash.update(Slices.wrappedBuffer(buffer, 0, chunkLength));
+        }
+        return hash.hash();
+    }
+
+    /**
+     * Frees the direct memory of the array. The array must not be used afterwards.
+     */
+    public void free()
+    {
+        if (memory != null) {
+            memory.free();
+        }
+    }
+}
@@ -26,6 +26,9 @@ import java.util.Optional;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static io.prestosql.SystemSessionProperties.isFastInequalityJoin;
+import static io.prestosql.SystemSessionProperties.isJoinBloomFilterEnabled;
+import static io.prestosql.SystemSessionProperties.isJoinHashOffHeapEnabled;
+import static io.prestosql.SystemSessionProperties.isRadixPartitionedJoinEnabled;
 import static io.prestosql.operator.JoinUtils.channelsToPages;
 import static java.util.Objects.requireNonNull;
 
@@ -36,6 +39,7 @@ public class JoinHashSupplier
     private final PagesHash pagesHash;
     private final LongArrayList addresses;
     private final List<Page> pages;
+    private final PositionLinks.FactoryBuilder positionLinksFactoryBuilder;
     private final Optional<PositionLinks.Factory> positionLinks;
     private final Optional<JoinFilterFunctionFactory> filterFunctionFactory;
     private final List<JoinFilterFunctionFactory> searchFunctionFactories;
@@ -56,7 +60,7 @@ public class JoinHashSupplier
         requireNonNull(channels, "pages is null");
         requireNonNull(pagesHashStrategy, "pagesHashStrategy is null");
 
-        PositionLinks.FactoryBuilder positionLinksFactoryBuilder;
+        boolean offHeap = isJoinHashOffHeapEnabled(session);
         if (sortChannel.isPresent() &&
                 isFastInequalityJoin(session)) {
             checkArgument(filterFunctionFactory.isPresent(), "filterFunctionFactory not set while sortChannel set");
@@ -66,11 +70,11 @@ public class JoinHashSupplier
                     addresses);
         }
         else {
-            positionLinksFactoryBuilder = ArrayPositionLinks.builder(addresses.size());
+            positionLinksFactoryBuilder = ArrayPositionLinks.builder(addresses.size(), offHeap);
         }
 
         this.pages = channelsToPages(channels);
-        this.pagesHash = new PagesHash(addresses, pagesHashStrategy, positionLinksFactoryBuilder);
+        this.pagesHash = new PagesHash(addresses, pagesHashStrategy, positionLinksFactoryBuilder, offHeap, isJoinBloomFilterEnabled(session), isRadixPartitionedJoinEnabled(session));
         this.positionLinks = positionLinksFactoryBuilder.isEmpty() ? Optional.empty() : Optional.of(positionLinksFactoryBuilder.build());
     }
 
@@ -92,6 +96,13 @@ public class JoinHashSupplier
         return positionLinks.map(PositionLinks.Factory::checksum).orElse(0L);
     }
 
+    @Override
+    public void close()
+    {
+        pagesHash.free();
+        positionLinksFactoryBuilder.close();
+    }
+
     @Override
     public JoinHash get()
     {
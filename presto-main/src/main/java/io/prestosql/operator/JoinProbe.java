@@ -15,10 +15,14 @@ package io.prestosql.operator;
 
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
+import io.prestosql.spi.type.Type;
+
+import javax.annotation.Nullable;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.stream.IntStream;
 
 import static io.prestosql.spi.type.BigintType.BIGINT;
 
@@ -29,17 +33,27 @@ public class JoinProbe
         private final int[] probeOutputChannels;
         private final List<Integer> probeJoinChannels;
         private final OptionalInt probeHashChannel;
+        private final Optional<HashGenerator> probeHashGenerator;
 
         public JoinProbeFactory(int[] probeOutputChannels, List<Integer> probeJoinChannels, OptionalInt probeHashChannel)
+        {
+            this(probeOutputChannels, probeJoinChannels, probeHashChannel, Optional.empty());
+        }
+
+        public JoinProbeFactory(int[] probeOutputChannels, List<Integer> probeJoinChannels, OptionalInt probeHashChannel, Optional<List<Type>> probeJoinChannelTypes)
         {
             this.probeOutputChannels = probeOutputChannels;
             this.probeJoinChannels = probeJoinChannels;
             this.probeHashChannel = probeHashChannel;
+            // the generator hashes the probe page, which only contains the join channels
+            this.probeHashGenerator = probeJoinChannelTypes
+                    .filter(types -> !probeHashChannel.isPresent())
+                    .map(types -> new InterpretedHashGenerator(types, IntStream.range(0, probeJoinChannels.size()).toArray()));
         }
 
         public JoinProbe createJoinProbe(Page page)
         {
-            return new JoinProbe(probeOutputChannels, page, probeJoinChannels, probeHashChannel);
+            return new JoinProbe(probeOutputChannels, page, probeJoinChannels, probeHashChannel, probeHashGenerator);
         }
     }
 
@@ -49,10 +63,18 @@ public class JoinProbe
     private final Page page;
     private final Page probePage;
     private final Optional<Block> probeHashBlock;
+    @Nullable
+    private final long[] probeRawHashes;
+
+    // join positions of all the rows of the page, for lookup sources which prefer batch lookups
+    @Nullable
+    private LookupSource batchLookupSource;
+    @Nullable
+    private long[] batchJoinPositions;
 
     private int position = -1;
 
-    private JoinProbe(int[] probeOutputChannels, Page page, List<Integer> probeJoinChannels, OptionalInt probeHashChannel)
+    private JoinProbe(int[] probeOutputChannels, Page page, List<Integer> probeJoinChannels, OptionalInt probeHashChannel, Optional<HashGenerator> probeHashGenerator)
     {
         this.probeOutputChannels = probeOutputChannels;
         this.positionCount = page.getPositionCount();
@@ -64,6 +86,14 @@ public class JoinProbe
         this.page = page;
         this.probePage = new Page(page.getPositionCount(), probeBlocks);
         this.probeHashBlock = probeHashChannel.isPresent() ? Optional.of(page.getBlock(probeHashChannel.getAsInt())) : Optional.empty();
+        if (probeHashGenerator.isPresent()) {
+            // hash all the probe rows before looking them up, instead of hashing each row in the lookup source
+            probeRawHashes = new long[positionCount];
+            probeHashGenerator.get().hashPositions(probePage, 0, positionCount, probeRawHashes);
+        }
+        else {
+            probeRawHashes = null;
+        }
     }
 
     public int[] getOutputChannels()
@@ -82,13 +112,46 @@ public class JoinProbe
         if (currentRowContainsNull()) {
             return -1;
         }
+        if (lookupSource.isBatchLookupPreferred() && (probeHashBlock.isPresent() || probeRawHashes != null)) {
+            if (batchLookupSource != lookupSource) {
+                lookupBatch(lookupSource);
+            }
+            return batchJoinPositions[position];
+        }
         if (probeHashBlock.isPresent()) {
             long rawHash = BIGINT.getLong(probeHashBlock.get(), position);
             return lookupSource.getJoinPosition(position, probePage, page, rawHash);
         }
+        if (probeRawHashes != null) {
+            return lookupSource.getJoinPosition(position, probePage, page, probeRawHashes[position]);
+        }
         return lookupSource.getJoinPosition(position, probePage, page);
     }
 
+    private void lookupBatch(LookupSource lookupSource)
+    {
+        long[] rawHashes = probeRawHashes;
+        if (rawHashes == null) {
+            rawHashes = new long[positionCount];
+            for (int i = 0; i < positionCount; i++) {
+                rawHashes[i] = BIGINT.getLong(probeHashBlock.get(), i);
+            }
+        }
+
+        int[] positions = new int[positionCount];
+        int count = 0;
+        for (int i = 0; i < positionCount; i++) {
+            if (!rowContainsNull(i)) {
+                positions[count] = i;
+                count++;
+            }
+        }
+
+        batchJoinPositions = new long[positionCount];
+        lookupSource.getJoinPositions(positions, count, probePage, page, rawHashes, batchJoinPositions);
+        batchLookupSource = lookupSource;
+    }
+
     public int getPosition()
     {
         return position;
@@ -100,6 +163,11 @@ public class JoinProbe
     }
 
     private boolean currentRowContainsNull()
+    {
+        return rowContainsNull(position);
+    }
+
+    private boolean rowContainsNull(int position)
     {
         for (Block probeBlock : probeBlocks) {
             if (probeBlock.isNull(position)) {
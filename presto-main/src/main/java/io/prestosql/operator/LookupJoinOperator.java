@@ -26,6 +26,9 @@ import io.prestosql.operator.WorkProcessor.TransformationState;
 import io.prestosql.operator.WorkProcessorOperatorAdapter.AdapterWorkProcessorOperator;
 import io.prestosql.operator.exchange.LocalPartitionGenerator;
 import io.prestosql.spi.Page;
+import io.prestosql.spi.PageBuilder;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.RunLengthEncodedBlock;
 import io.prestosql.spi.type.Type;
 import io.prestosql.spiller.PartitioningSpiller;
 import io.prestosql.spiller.PartitioningSpiller.PartitioningSpillResult;
@@ -50,6 +53,7 @@ import static io.airlift.concurrent.MoreFutures.addSuccessCallback;
 import static io.airlift.concurrent.MoreFutures.checkSuccess;
 import static io.airlift.concurrent.MoreFutures.getDone;
 import static io.prestosql.operator.LookupJoinOperators.JoinType.FULL_OUTER;
+import static io.prestosql.operator.LookupJoinOperators.JoinType.LOOKUP_OUTER;
 import static io.prestosql.operator.LookupJoinOperators.JoinType.PROBE_OUTER;
 import static io.prestosql.operator.Operator.NOT_BLOCKED;
 import static io.prestosql.operator.WorkProcessor.TransformationState.blocked;
@@ -70,6 +74,7 @@ public class LookupJoinOperator
     private final JoinStatisticsCounter statisticsCounter;
 
     public LookupJoinOperator(List<Type> probeTypes,
+            List<Type> probeOutputTypes,
             List<Type> buildOutputTypes,
             JoinType joinType,
             LookupSourceFactory lookupSourceFactory,
@@ -83,6 +88,7 @@ public class LookupJoinOperator
     {
         this.statisticsCounter = new JoinStatisticsCounter(joinType);
         this.joinProcessor = new JoinProcessor(probeTypes,
+                probeOutputTypes,
                 buildOutputTypes,
                 joinType,
                 lookupSourceFactory,
@@ -140,6 +146,7 @@ public class LookupJoinOperator
             implements Transformation<Page, Page>
     {
         private final List<Type> probeTypes;
+        private final List<Type> probeOutputTypes;
         private final JoinProbeFactory joinProbeFactory;
         private final Runnable afterClose;
         private final OptionalInt lookupJoinsCount;
@@ -150,8 +157,10 @@ public class LookupJoinOperator
         private final JoinStatisticsCounter statisticsCounter;
 
         private final LookupJoinPageBuilder pageBuilder;
+        private final PageBuilder outerPageBuilder;
 
         private final boolean probeOnOuterSide;
+        private final boolean lookupOnOuterSide;
 
         private final ListenableFuture<LookupSourceProvider> lookupSourceProviderFuture;
         private LookupSourceProvider lookupSourceProvider;
@@ -181,12 +190,14 @@ public class LookupJoinOperator
         private Optional<Partition<Supplier<LookupSource>>> currentPartition = Optional.empty();
         private Optional<ListenableFuture<Supplier<LookupSource>>> unspilledLookupSource = Optional.empty();
         private Iterator<Page> unspilledInputPages = emptyIterator();
+        private Optional<OuterPositionIterator> unspilledOuterPositions = Optional.empty();
         private final DriverYieldSignal yieldSignal;
         private final SpillContext spillContext;
         private final MemoryTrackingContext memoryTrackingContext;
 
         public JoinProcessor(
                 List<Type> probeTypes,
+                List<Type> probeOutputTypes,
                 List<Type> buildOutputTypes,
                 JoinType joinType,
                 LookupSourceFactory lookupSourceFactory,
@@ -201,10 +212,12 @@ public class LookupJoinOperator
                 MemoryTrackingContext memoryTrackingContext)
         {
             this.probeTypes = ImmutableList.copyOf(requireNonNull(probeTypes, "probeTypes is null"));
+            this.probeOutputTypes = ImmutableList.copyOf(requireNonNull(probeOutputTypes, "probeOutputTypes is null"));
 
             requireNonNull(joinType, "joinType is null");
             // Cannot use switch case here, because javac will synthesize an inner class and cause IllegalAccessError
             probeOnOuterSide = joinType == PROBE_OUTER || joinType == FULL_OUTER;
+            lookupOnOuterSide = joinType == LOOKUP_OUTER || joinType == FULL_OUTER;
 
             this.joinProbeFactory = requireNonNull(joinProbeFactory, "joinProbeFactory is null");
             this.afterClose = requireNonNull(afterClose, "afterClose is null");
@@ -217,6 +230,7 @@ public class LookupJoinOperator
             this.statisticsCounter = statisticsCounter;
 
             this.pageBuilder = new LookupJoinPageBuilder(buildOutputTypes);
+            this.outerPageBuilder = new PageBuilder(buildOutputTypes);
             this.yieldSignal = requireNonNull(yieldSignal, "yieldSignal is null");
             this.spillContext = requireNonNull(spillContext, "spillContext is null");
             this.memoryTrackingContext = requireNonNull(memoryTrackingContext, "memoryTrackingContext is null");
@@ -452,15 +466,17 @@ public class LookupJoinOperator
                 return;
             }
 
+            if (!releaseCurrentPartition()) {
+                return;
+            }
+
             if (lookupPartitions.hasNext()) {
-                currentPartition.ifPresent(Partition::release);
                 currentPartition = Optional.of(lookupPartitions.next());
                 unspilledLookupSource = Optional.of(currentPartition.get().load());
 
                 return;
             }
 
-            currentPartition.ifPresent(Partition::release);
             if (lookupSourceProvider != null) {
                 // There are no more partitions to process, so clean up everything
                 lookupSourceProvider.close();
@@ -470,6 +486,78 @@ public class LookupJoinOperator
             finished = true;
         }
 
+        /**
+         * Releases the current partition. When lookup is on the outer side of the join, the last operator releasing the partition
+         * first produces the rows of the partition which were not matched by any probe row, as the partition is disposed once released.
+         *
+         * @return whether the current partition was released
+         */
+        private boolean releaseCurrentPartition()
+        {
+            if (!currentPartition.isPresent()) {
+                return true;
+            }
+            Partition<Supplier<LookupSource>> partition = currentPartition.get();
+
+            if (!lookupOnOuterSide) {
+                partition.release();
+                currentPartition = Optional.empty();
+                return true;
+            }
+
+            if (!unspilledOuterPositions.isPresent()) {
+                if (!partition.releaseUnlessLast()) {
+                    currentPartition = Optional.empty();
+                    return true;
+                }
+                unspilledOuterPositions = Optional.of(lookupSourceFactory.getOuterPositionIterator(partition.number()));
+            }
+
+            boolean outerPositionsFinished = buildOuterPage(unspilledOuterPositions.get());
+            if (!outerPositionsFinished) {
+                return false;
+            }
+            unspilledOuterPositions = Optional.empty();
+            partition.finishRelease();
+            currentPartition = Optional.empty();
+            return true;
+        }
+
+        /**
+         * Produce a page of lookup rows with nulls on the probe side.
+         *
+         * @return whether all outer positions have been produced
+         */
+        private boolean buildOuterPage(OuterPositionIterator outerPositions)
+        {
+            verify(outputPage == null);
+
+            boolean outerPositionsFinished = false;
+            while (!outerPageBuilder.isFull()) {
+                outerPositionsFinished = !outerPositions.appendToNext(outerPageBuilder, 0);
+                if (outerPositionsFinished) {
+                    break;
+                }
+                outerPageBuilder.declarePosition();
+            }
+
+            if (!outerPageBuilder.isEmpty()) {
+                int positionCount = outerPageBuilder.getPositionCount();
+                Page buildPage = outerPageBuilder.build();
+                outerPageBuilder.reset();
+
+                Block[] blocks = new Block[probeOutputTypes.size() + buildPage.getChannelCount()];
+                for (int channel = 0; channel < probeOutputTypes.size(); channel++) {
+                    blocks[channel] = RunLengthEncodedBlock.create(probeOutputTypes.get(channel), null, positionCount);
+                }
+                for (int channel = 0; channel < buildPage.getChannelCount(); channel++) {
+                    blocks[probeOutputTypes.size() + channel] = buildPage.getBlock(channel);
+                }
+                outputPage = new Page(positionCount, blocks);
+            }
+            return outerPositionsFinished;
+        }
+
         private void processProbe()
         {
             verifyNotNull(probe);
@@ -594,6 +682,7 @@ public class LookupJoinOperator
                 closer.register(afterClose::run);
 
                 closer.register(pageBuilder::reset);
+                closer.register(outerPageBuilder::reset);
                 closer.register(() -> Optional.ofNullable(lookupSourceProvider).ifPresent(LookupSourceProvider::close));
                 spiller.ifPresent(closer::register);
             }
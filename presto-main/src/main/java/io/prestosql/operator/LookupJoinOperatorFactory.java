@@ -42,6 +42,7 @@ public class LookupJoinOperatorFactory
     private final int operatorId;
     private final PlanNodeId planNodeId;
     private final List<Type> probeTypes;
+    private final List<Type> probeOutputTypes;
     private final List<Type> buildOutputTypes;
     private final JoinType joinType;
     private final JoinProbeFactory joinProbeFactory;
@@ -70,6 +71,7 @@ public class LookupJoinOperatorFactory
         this.operatorId = operatorId;
         this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
         this.probeTypes = ImmutableList.copyOf(requireNonNull(probeTypes, "probeTypes is null"));
+        this.probeOutputTypes = ImmutableList.copyOf(requireNonNull(probeOutputTypes, "probeOutputTypes is null"));
         this.buildOutputTypes = ImmutableList.copyOf(requireNonNull(buildOutputTypes, "buildOutputTypes is null"));
         this.joinType = requireNonNull(joinType, "joinType is null");
         this.joinProbeFactory = requireNonNull(joinProbeFactory, "joinProbeFactory is null");
@@ -115,6 +117,7 @@ public class LookupJoinOperatorFactory
         operatorId = other.operatorId;
         planNodeId = other.planNodeId;
         probeTypes = other.probeTypes;
+        probeOutputTypes = other.probeOutputTypes;
         buildOutputTypes = other.buildOutputTypes;
         joinType = other.joinType;
         joinProbeFactory = other.joinProbeFactory;
@@ -154,6 +157,7 @@ public class LookupJoinOperatorFactory
         joinBridgeManager.probeOperatorCreated(processorContext.getLifespan());
         return new LookupJoinOperator(
                 probeTypes,
+                probeOutputTypes,
                 buildOutputTypes,
                 joinType,
                 lookupSourceFactory,
@@ -208,6 +212,7 @@ public class LookupJoinOperatorFactory
         joinBridgeManager.probeOperatorCreated(processorContext.getLifespan());
         return new LookupJoinOperator(
                 probeTypes,
+                probeOutputTypes,
                 buildOutputTypes,
                 joinType,
                 lookupSourceFactory,
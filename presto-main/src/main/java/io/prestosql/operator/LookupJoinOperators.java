@@ -84,6 +84,9 @@ public class LookupJoinOperators
         List<Type> probeOutputChannelTypes = probeOutputChannels.stream()
                 .map(probeTypes::get)
                 .collect(toImmutableList());
+        List<Type> probeJoinChannelTypes = probeJoinChannel.stream()
+                .map(probeTypes::get)
+                .collect(toImmutableList());
 
         return new LookupJoinOperatorFactory(
                 operatorId,
@@ -93,7 +96,7 @@ public class LookupJoinOperators
                 probeOutputChannelTypes,
                 lookupSourceFactoryManager.getBuildOutputTypes(),
                 joinType,
-                new JoinProbeFactory(probeOutputChannels.stream().mapToInt(i -> i).toArray(), probeJoinChannel, probeHashChannel),
+                new JoinProbeFactory(probeOutputChannels.stream().mapToInt(i -> i).toArray(), probeJoinChannel, probeHashChannel, Optional.of(probeJoinChannelTypes)),
                 totalOperatorsCount,
                 probeJoinChannel,
                 probeHashChannel,
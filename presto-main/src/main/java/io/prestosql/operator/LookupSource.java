@@ -36,6 +36,27 @@ public interface LookupSource
 
     long getJoinPosition(int position, Page hashChannelsPage, Page allChannelsPage);
 
+    /**
+     * Whether looking up all the rows of a probe page at once with {@link #getJoinPositions} is
+     * faster than looking them up one at a time.
+     */
+    default boolean isBatchLookupPreferred()
+    {
+        return false;
+    }
+
+    /**
+     * Looks up the rows at the given positions of the page and stores the join position of each row
+     * at its position in {@code joinPositions}.
+     */
+    default void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, long[] rawHashes, long[] joinPositions)
+    {
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            joinPositions[position] = getJoinPosition(position, hashChannelsPage, allChannelsPage, rawHashes[position]);
+        }
+    }
+
     long getNextJoinPosition(long currentJoinPosition, int probePosition, Page allProbeChannelsPage);
 
     void appendTo(long position, PageBuilder pageBuilder, int outputChannelOffset);
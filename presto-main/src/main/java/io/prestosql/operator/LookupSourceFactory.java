@@ -51,6 +51,15 @@ public interface LookupSourceFactory
     @Override
     OuterPositionIterator getOuterPositionIterator();
 
+    /**
+     * Returns the positions of an unspilled partition which were not matched by any probe row.
+     * Can be called only for outer lookup sources, after the partition was released by all the consumers of {@link #finishProbeOperator}.
+     */
+    default OuterPositionIterator getOuterPositionIterator(int partition)
+    {
+        throw new UnsupportedOperationException();
+    }
+
     // this is only here for the index lookup source
     default void setTaskContext(TaskContext taskContext) {}
 
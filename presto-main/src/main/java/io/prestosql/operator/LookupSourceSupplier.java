@@ -26,4 +26,10 @@ public interface LookupSourceSupplier
      * @return checksum of this entity for heuristic checking equivalence of two instances
      */
     long checksum();
+
+    /**
+     * Frees the memory of the lookup sources which is not managed by the Java heap.
+     * Must only be called once none of the supplied lookup sources is used anymore.
+     */
+    default void close() {}
 }
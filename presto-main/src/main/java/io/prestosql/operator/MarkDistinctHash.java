@@ -21,6 +21,7 @@ import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.type.Type;
 import io.prestosql.sql.gen.JoinCompiler;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,6 +49,19 @@ public class MarkDistinctHash
         return groupByHash.getEstimatedSize();
     }
 
+    public List<Type> getTypes()
+    {
+        return groupByHash.getTypes();
+    }
+
+    /**
+     * Returns the distinct values marked so far, followed by their hash if the input has a precomputed hash channel.
+     */
+    public Iterator<Page> getDistinctValues()
+    {
+        return new GroupByHashValuesIterator(groupByHash);
+    }
+
     public Work<Block> markDistinctRows(Page page)
     {
         return new TransformWork<>(
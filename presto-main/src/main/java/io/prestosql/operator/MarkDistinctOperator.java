@@ -14,27 +14,45 @@
 package io.prestosql.operator;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.MoreFutures.checkSuccess;
 import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static java.util.Objects.requireNonNull;
 
 public class MarkDistinctOperator
         implements Operator
 {
+    // the input is spilled to this many partitions, each of which is later processed in memory on its own
+    private static final int SPILL_PARTITION_COUNT = 16;
+
     public static class MarkDistinctOperatorFactory
             implements OperatorFactory
     {
@@ -44,6 +62,8 @@ public class MarkDistinctOperator
         private final List<Integer> markDistinctChannels;
         private final List<Type> types;
         private final JoinCompiler joinCompiler;
+        private final boolean spillEnabled;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
         private boolean closed;
 
         public MarkDistinctOperatorFactory(
@@ -53,6 +73,19 @@ public class MarkDistinctOperator
                 Collection<Integer> markDistinctChannels,
                 Optional<Integer> hashChannel,
                 JoinCompiler joinCompiler)
+        {
+            this(operatorId, planNodeId, sourceTypes, markDistinctChannels, hashChannel, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+        }
+
+        public MarkDistinctOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                List<? extends Type> sourceTypes,
+                Collection<Integer> markDistinctChannels,
+                Optional<Integer> hashChannel,
+                JoinCompiler joinCompiler,
+                boolean spillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -64,6 +97,8 @@ public class MarkDistinctOperator
                     .addAll(sourceTypes)
                     .add(BOOLEAN)
                     .build();
+            this.spillEnabled = spillEnabled;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         }
 
         @Override
@@ -71,7 +106,7 @@ public class MarkDistinctOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, MarkDistinctOperator.class.getSimpleName());
-            return new MarkDistinctOperator(operatorContext, types, markDistinctChannels, hashChannel, joinCompiler);
+            return new MarkDistinctOperator(operatorContext, types, markDistinctChannels, hashChannel, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
 
         @Override
@@ -83,13 +118,21 @@ public class MarkDistinctOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new MarkDistinctOperatorFactory(operatorId, planNodeId, types.subList(0, types.size() - 1), markDistinctChannels, hashChannel, joinCompiler);
+            return new MarkDistinctOperatorFactory(operatorId, planNodeId, types.subList(0, types.size() - 1), markDistinctChannels, hashChannel, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
     }
 
     private final OperatorContext operatorContext;
-    private final MarkDistinctHash markDistinctHash;
+    private final List<Type> sourceTypes;
+    private final List<Type> distinctTypes;
+    private final List<Integer> markDistinctChannels;
+    private final Optional<Integer> hashChannel;
+    private final JoinCompiler joinCompiler;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
     private final LocalMemoryContext localUserMemoryContext;
+    private final LocalMemoryContext localRevocableMemoryContext;
+
+    private MarkDistinctHash markDistinctHash;
 
     private Page inputPage;
     private boolean finishing;
@@ -97,7 +140,27 @@ public class MarkDistinctOperator
     // for yield when memory is not available
     private Work<Block> unfinishedWork;
 
+    // the distinct values are revocable until they are spilled, after which all remaining input is spilled as well
+    private boolean memoryRevocable;
+    private Optional<PartitioningSpiller> distinctValuesSpiller = Optional.empty();
+    private Optional<PartitioningSpiller> inputSpiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = immediateFuture(null);
+    private Runnable finishMemoryRevoke = () -> {};
+    private Iterator<Page> spilledOutput;
+
     public MarkDistinctOperator(OperatorContext operatorContext, List<Type> types, List<Integer> markDistinctChannels, Optional<Integer> hashChannel, JoinCompiler joinCompiler)
+    {
+        this(operatorContext, types, markDistinctChannels, hashChannel, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+    }
+
+    public MarkDistinctOperator(
+            OperatorContext operatorContext,
+            List<Type> types,
+            List<Integer> markDistinctChannels,
+            Optional<Integer> hashChannel,
+            JoinCompiler joinCompiler,
+            boolean spillEnabled,
+            PartitioningSpillerFactory partitioningSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
 
@@ -108,8 +171,16 @@ public class MarkDistinctOperator
         for (int channel : markDistinctChannels) {
             distinctTypes.add(types.get(channel));
         }
-        this.markDistinctHash = new MarkDistinctHash(operatorContext.getSession(), distinctTypes.build(), Ints.toArray(markDistinctChannels), hashChannel, joinCompiler, this::updateMemoryReservation);
+        this.sourceTypes = ImmutableList.copyOf(types.subList(0, types.size() - 1));
+        this.distinctTypes = distinctTypes.build();
+        this.markDistinctChannels = ImmutableList.copyOf(markDistinctChannels);
+        this.hashChannel = hashChannel;
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+        this.memoryRevocable = spillEnabled;
         this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.localRevocableMemoryContext = operatorContext.localRevocableMemoryContext();
+        this.markDistinctHash = new MarkDistinctHash(operatorContext.getSession(), this.distinctTypes, Ints.toArray(markDistinctChannels), hashChannel, joinCompiler, this::updateMemoryReservation);
     }
 
     @Override
@@ -127,7 +198,23 @@ public class MarkDistinctOperator
     @Override
     public boolean isFinished()
     {
-        return finishing && !hasUnfinishedInput();
+        if (!finishing || hasUnfinishedInput()) {
+            return false;
+        }
+        if (inputSpiller.isPresent()) {
+            return spilledOutput != null && !spilledOutput.hasNext();
+        }
+        return true;
+    }
+
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        // we can block because of spilling the input
+        if (!spillInProgress.isDone()) {
+            return spillInProgress;
+        }
+        return NOT_BLOCKED;
     }
 
     @Override
@@ -141,6 +228,13 @@ public class MarkDistinctOperator
     {
         requireNonNull(page, "page is null");
         checkState(needsInput());
+        checkSuccess(spillInProgress, "spilling failed");
+
+        if (inputSpiller.isPresent()) {
+            // the rows are marked when the spilled partitions are processed
+            spillInProgress = inputSpiller.get().partitionAndSpill(page, partition -> true).getSpillingFuture();
+            return;
+        }
 
         inputPage = page;
 
@@ -151,6 +245,21 @@ public class MarkDistinctOperator
     @Override
     public Page getOutput()
     {
+        if (!spillInProgress.isDone()) {
+            return null;
+        }
+        checkSuccess(spillInProgress, "spilling failed");
+
+        if (inputSpiller.isPresent()) {
+            if (!finishing) {
+                return null;
+            }
+            if (spilledOutput == null) {
+                spilledOutput = markSpilledInput();
+            }
+            return spilledOutput.hasNext() ? spilledOutput.next() : null;
+        }
+
         if (unfinishedWork == null) {
             return null;
         }
@@ -169,6 +278,129 @@ public class MarkDistinctOperator
         return outputPage;
     }
 
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (!memoryRevocable || finishing || hasUnfinishedInput() || localRevocableMemoryContext.getBytes() == 0) {
+            // the distinct values of a partially processed page cannot be spilled
+            finishMemoryRevoke = () -> {};
+            return immediateFuture(null);
+        }
+
+        // the spilled distinct values and input rows are both partitioned by the distinct values, because the
+        // precomputed hash stored for a distinct value is not necessarily the one of the input hash channel
+        int[] distinctValuesChannels = IntStream.range(0, distinctTypes.size()).toArray();
+        distinctValuesSpiller = Optional.of(createSpiller(markDistinctHash.getTypes(), new InterpretedHashGenerator(distinctTypes, distinctValuesChannels)));
+        inputSpiller = Optional.of(createSpiller(sourceTypes, new InterpretedHashGenerator(distinctTypes, markDistinctChannels)));
+
+        // the distinct values seen so far are needed to mark the spilled rows of their partition
+        spillInProgress = spillPages(distinctValuesSpiller.get(), markDistinctHash.getDistinctValues());
+        finishMemoryRevoke = () -> {
+            memoryRevocable = false;
+            markDistinctHash = null;
+            updateMemoryReservation();
+        };
+        return spillInProgress;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        finishMemoryRevoke.run();
+        finishMemoryRevoke = () -> {};
+    }
+
+    private PartitioningSpiller createSpiller(List<Type> types, HashGenerator hashGenerator)
+    {
+        return partitioningSpillerFactory.create(
+                types,
+                new SpillPartitionFunction(hashGenerator, SPILL_PARTITION_COUNT),
+                operatorContext.getSpillContext().newLocalSpillContext(),
+                operatorContext.newAggregateSystemMemoryContext());
+    }
+
+    private static ListenableFuture<?> spillPages(PartitioningSpiller spiller, Iterator<Page> pages)
+    {
+        while (pages.hasNext()) {
+            ListenableFuture<?> spillingFuture = spiller.partitionAndSpill(pages.next(), partition -> true).getSpillingFuture();
+            if (!spillingFuture.isDone()) {
+                return Futures.transformAsync(spillingFuture, ignored -> spillPages(spiller, pages), directExecutor());
+            }
+            checkSuccess(spillingFuture, "spilling failed");
+        }
+        return immediateFuture(null);
+    }
+
+    private Iterator<Page> markSpilledInput()
+    {
+        return Iterators.concat(new AbstractIterator<Iterator<Page>>()
+        {
+            private int partition;
+
+            @Override
+            protected Iterator<Page> computeNext()
+            {
+                if (partition == SPILL_PARTITION_COUNT) {
+                    // the last partition is no longer needed
+                    markDistinctHash = null;
+                    updateMemoryReservation();
+                    distinctValuesSpiller.get().verifyAllPartitionsRead();
+                    inputSpiller.get().verifyAllPartitionsRead();
+                    return endOfData();
+                }
+                return markSpilledPartition(partition++);
+            }
+        });
+    }
+
+    private Iterator<Page> markSpilledPartition(int partition)
+    {
+        // all rows with the same distinct values are in the same partition, so each partition is marked on its own
+        int[] distinctValuesChannels = IntStream.range(0, distinctTypes.size()).toArray();
+        Optional<Integer> distinctValuesHashChannel = hashChannel.map(channel -> distinctTypes.size());
+        markDistinctHash = null;
+        updateMemoryReservation();
+        markDistinctHash = new MarkDistinctHash(
+                operatorContext.getSession(),
+                distinctTypes,
+                distinctValuesChannels,
+                distinctValuesHashChannel,
+                joinCompiler,
+                () -> {
+                    // the spilled rows are read without yielding
+                    updateMemoryReservation();
+                    return true;
+                });
+
+        // rows with the distinct values which were seen before spilling are not distinct anymore
+        Iterator<Page> distinctValues = distinctValuesSpiller.get().getSpilledPages(partition);
+        while (distinctValues.hasNext()) {
+            markDistinctRows(distinctValues.next());
+        }
+
+        return Iterators.transform(
+                inputSpiller.get().getSpilledPages(partition),
+                page -> page.appendColumn(markDistinctRows(getDistinctValues(page))));
+    }
+
+    private Block markDistinctRows(Page distinctValues)
+    {
+        Work<Block> work = markDistinctHash.markDistinctRows(distinctValues);
+        verify(work.process(), "processing of spilled pages should not yield");
+        updateMemoryReservation();
+        return work.getResult();
+    }
+
+    private Page getDistinctValues(Page page)
+    {
+        Block[] blocks = new Block[markDistinctChannels.size() + (hashChannel.isPresent() ? 1 : 0)];
+        for (int i = 0; i < markDistinctChannels.size(); i++) {
+            blocks[i] = page.getBlock(markDistinctChannels.get(i));
+        }
+        hashChannel.ifPresent(channel -> blocks[markDistinctChannels.size()] = page.getBlock(channel));
+        return new Page(page.getPositionCount(), blocks);
+    }
+
     private boolean hasUnfinishedInput()
     {
         return inputPage != null || unfinishedWork != null;
@@ -184,9 +416,16 @@ public class MarkDistinctOperator
     // The following implementation is a hybrid model, where the push model is going to call the pull model causing reentrancy
     private boolean updateMemoryReservation()
     {
+        long estimatedSize = markDistinctHash == null ? 0 : markDistinctHash.getEstimatedSize();
         // Operator/driver will be blocked on memory after we call localUserMemoryContext.setBytes().
         // If memory is not available, once we return, this operator will be blocked until memory is available.
-        localUserMemoryContext.setBytes(markDistinctHash.getEstimatedSize());
+        if (memoryRevocable) {
+            localRevocableMemoryContext.setBytes(estimatedSize);
+        }
+        else {
+            localRevocableMemoryContext.setBytes(0);
+            localUserMemoryContext.setBytes(estimatedSize);
+        }
         // If memory is not available, inform the caller that we cannot proceed for allocation.
         return operatorContext.isWaitingForMemory().isDone();
     }
@@ -196,4 +435,19 @@ public class MarkDistinctOperator
     {
         return markDistinctHash.getCapacity();
     }
+
+    @Override
+    public void close()
+    {
+        for (Optional<PartitioningSpiller> spiller : ImmutableList.of(distinctValuesSpiller, inputSpiller)) {
+            spiller.ifPresent(partitioningSpiller -> {
+                try {
+                    partitioningSpiller.close();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.airlift.units.DataSize;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PrestoException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streams the sorted pages of the build side of a merge join to the probe side. Once the probe side
+ * is running, the build side is blocked while more than a few megabytes of pages are buffered, so the
+ * join needs memory only for the buffer and the build rows of the current key.
+ * <p>
+ * The build side is never blocked before the probe side is running, because the driver of the probe
+ * side may not be started while the drivers of the build side are waiting. The pages buffered until
+ * then are accounted in the user memory of the task.
+ */
+@ThreadSafe
+public final class MergeJoinBridge
+        implements JoinBridge
+{
+    private static final long MAX_BUFFERED_BYTES = new DataSize(4, MEGABYTE).toBytes();
+
+    private final SettableFuture<?> buildFinished = SettableFuture.create();
+    private final LocalMemoryContext memoryContext;
+
+    @GuardedBy("this")
+    private final Queue<Page> pages = new ArrayDeque<>();
+    @GuardedBy("this")
+    private long bufferedBytes;
+    @GuardedBy("this")
+    private SettableFuture<?> notEmpty = SettableFuture.create();
+    @GuardedBy("this")
+    @Nullable
+    private SettableFuture<?> notFull;
+    @GuardedBy("this")
+    private boolean sinkCreated;
+    @GuardedBy("this")
+    private boolean probeCreated;
+    @GuardedBy("this")
+    private boolean probeFinished;
+
+    public MergeJoinBridge(LocalMemoryContext memoryContext)
+    {
+        this.memoryContext = requireNonNull(memoryContext, "memoryContext is null");
+    }
+
+    public synchronized void sinkCreated()
+    {
+        checkSingleStream(sinkCreated);
+        sinkCreated = true;
+    }
+
+    public synchronized void noMoreSinks()
+    {
+        if (!sinkCreated) {
+            noMorePages();
+        }
+    }
+
+    /**
+     * @return a future which completes when the build side can add more pages
+     */
+    public synchronized ListenableFuture<?> addPage(Page page)
+    {
+        if (probeFinished || page.getPositionCount() == 0) {
+            return immediateFuture(null);
+        }
+        pages.add(page);
+        bufferedBytes += page.getRetainedSizeInBytes();
+        memoryContext.setBytes(bufferedBytes);
+        notEmpty.set(null);
+
+        if (!probeCreated || bufferedBytes < MAX_BUFFERED_BYTES) {
+            return immediateFuture(null);
+        }
+        if (notFull == null) {
+            notFull = SettableFuture.create();
+        }
+        return notFull;
+    }
+
+    public synchronized void noMorePages()
+    {
+        buildFinished.set(null);
+        notEmpty.set(null);
+    }
+
+    public synchronized void probeCreated()
+    {
+        checkSingleStream(probeCreated);
+        probeCreated = true;
+    }
+
+    public synchronized void noMoreProbes()
+    {
+        if (!probeCreated) {
+            probeFinished();
+        }
+    }
+
+    /**
+     * @return the next page of the build side, or null if no page is available
+     */
+    @Nullable
+    public synchronized Page pollPage()
+    {
+        Page page = pages.poll();
+        if (page == null) {
+            if (notEmpty.isDone() && !buildFinished.isDone()) {
+                notEmpty = SettableFuture.create();
+            }
+            return null;
+        }
+        bufferedBytes -= page.getRetainedSizeInBytes();
+        memoryContext.setBytes(bufferedBytes);
+        if (notFull != null && bufferedBytes < MAX_BUFFERED_BYTES) {
+            notFull.set(null);
+            notFull = null;
+        }
+        return page;
+    }
+
+    /**
+     * @return a future which completes when a page is available or the build side is finished
+     */
+    public synchronized ListenableFuture<?> getNotEmptyFuture()
+    {
+        return notEmpty;
+    }
+
+    /**
+     * @return whether all the pages of the build side were consumed
+     */
+    public synchronized boolean isBuildConsumed()
+    {
+        return pages.isEmpty() && buildFinished.isDone();
+    }
+
+    /**
+     * Called when the probe side will not read more pages, to release the build side.
+     */
+    public synchronized void probeFinished()
+    {
+        probeFinished = true;
+        pages.clear();
+        bufferedBytes = 0;
+        memoryContext.close();
+        if (notFull != null) {
+            notFull.set(null);
+            notFull = null;
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        probeFinished();
+    }
+
+    @Override
+    public ListenableFuture<?> whenBuildFinishes()
+    {
+        return buildFinished;
+    }
+
+    @Override
+    public OuterPositionIterator getOuterPositionIterator()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private static void checkSingleStream(boolean alreadyCreated)
+    {
+        if (alreadyCreated) {
+            // the sort order only holds within a single stream of each side
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Merge join expects a single sorted stream on each side of the join");
+        }
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.prestosql.execution.Lifespan;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PageBuilder;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.type.Type;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Inner join of two inputs which are both sorted in ascending order on the join keys. The probe
+ * rows come from the pipeline of the operator and the build rows are streamed through a
+ * {@link MergeJoinBridge}, so only the build rows of the current key are kept in memory.
+ * Rows with a null key never match, so they are skipped on both sides, wherever the sort
+ * order puts them.
+ */
+public class MergeJoinOperator
+        implements Operator
+{
+    public static class MergeJoinOperatorFactory
+            implements OperatorFactory
+    {
+        private final int operatorId;
+        private final PlanNodeId planNodeId;
+        private final JoinBridgeManager<MergeJoinBridge> mergeJoinBridgeManager;
+        private final List<Type> probeTypes;
+        private final List<Integer> probeJoinChannels;
+        private final List<Integer> probeOutputChannels;
+        private final List<Type> buildTypes;
+        private final List<Integer> buildJoinChannels;
+        private final List<Integer> buildOutputChannels;
+        private boolean closed;
+
+        public MergeJoinOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                JoinBridgeManager<MergeJoinBridge> mergeJoinBridgeManager,
+                List<Type> probeTypes,
+                List<Integer> probeJoinChannels,
+                List<Integer> probeOutputChannels,
+                List<Type> buildTypes,
+                List<Integer> buildJoinChannels,
+                List<Integer> buildOutputChannels)
+        {
+            this.operatorId = operatorId;
+            this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
+            this.mergeJoinBridgeManager = requireNonNull(mergeJoinBridgeManager, "mergeJoinBridgeManager is null");
+            this.probeTypes = ImmutableList.copyOf(requireNonNull(probeTypes, "probeTypes is null"));
+            this.probeJoinChannels = ImmutableList.copyOf(requireNonNull(probeJoinChannels, "probeJoinChannels is null"));
+            this.probeOutputChannels = ImmutableList.copyOf(requireNonNull(probeOutputChannels, "probeOutputChannels is null"));
+            this.buildTypes = ImmutableList.copyOf(requireNonNull(buildTypes, "buildTypes is null"));
+            this.buildJoinChannels = ImmutableList.copyOf(requireNonNull(buildJoinChannels, "buildJoinChannels is null"));
+            this.buildOutputChannels = ImmutableList.copyOf(requireNonNull(buildOutputChannels, "buildOutputChannels is null"));
+            checkArgument(!probeJoinChannels.isEmpty(), "probeJoinChannels is empty");
+            checkArgument(probeJoinChannels.size() == buildJoinChannels.size(), "probeJoinChannels and buildJoinChannels must have the same size");
+            mergeJoinBridgeManager.incrementProbeFactoryCount();
+        }
+
+        @Override
+        public Operator createOperator(DriverContext driverContext)
+        {
+            checkState(!closed, "Factory is already closed");
+            Lifespan lifespan = driverContext.getLifespan();
+            MergeJoinBridge mergeJoinBridge = mergeJoinBridgeManager.getJoinBridge(lifespan);
+            mergeJoinBridge.probeCreated();
+
+            OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, MergeJoinOperator.class.getSimpleName());
+
+            mergeJoinBridgeManager.probeOperatorCreated(lifespan);
+            return new MergeJoinOperator(
+                    operatorContext,
+                    mergeJoinBridge,
+                    probeTypes,
+                    probeJoinChannels,
+                    probeOutputChannels,
+                    buildTypes,
+                    buildJoinChannels,
+                    buildOutputChannels,
+                    () -> mergeJoinBridgeManager.probeOperatorClosed(lifespan));
+        }
+
+        @Override
+        public void noMoreOperators()
+        {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            mergeJoinBridgeManager.probeOperatorFactoryClosedForAllLifespans();
+        }
+
+        @Override
+        public void noMoreOperators(Lifespan lifespan)
+        {
+            // release the build side of a lifespan without probe rows
+            mergeJoinBridgeManager.getJoinBridge(lifespan).noMoreProbes();
+            mergeJoinBridgeManager.probeOperatorFactoryClosed(lifespan);
+        }
+
+        @Override
+        public OperatorFactory duplicate()
+        {
+            return new MergeJoinOperatorFactory(
+                    operatorId,
+                    planNodeId,
+                    mergeJoinBridgeManager,
+                    probeTypes,
+                    probeJoinChannels,
+                    probeOutputChannels,
+                    buildTypes,
+                    buildJoinChannels,
+                    buildOutputChannels);
+        }
+    }
+
+    private enum MatchResult
+    {
+        MATCH, NO_MATCH, BLOCKED
+    }
+
+    private final OperatorContext operatorContext;
+    private final LocalMemoryContext localUserMemoryContext;
+    private final MergeJoinBridge mergeJoinBridge;
+    private final Runnable afterClose;
+
+    private final List<Type> keyTypes;
+    private final int[] probeJoinChannels;
+    private final int[] probeOutputChannels;
+    private final List<Type> probeOutputTypes;
+    private final int[] buildJoinChannels;
+    private final int[] buildOutputChannels;
+    private final List<Type> buildOutputTypes;
+    private final PageBuilder pageBuilder;
+
+    private ListenableFuture<?> blocked = NOT_BLOCKED;
+    private boolean finishing;
+    private boolean closed;
+
+    @Nullable
+    private Page probe;
+    private int probePosition;
+
+    // next unread row of the build side
+    @Nullable
+    private Page build;
+    private int buildPosition;
+    private boolean buildConsumed;
+
+    // build rows with the same key, which is the smallest build key that is not less than the current probe key
+    private final List<Page> groupPages = new ArrayList<>();
+    private final IntArrayList groupPositions = new IntArrayList();
+    private long groupRetainedSizeInBytes;
+    private boolean groupComplete;
+
+    // when the current probe row matches the group, the index of the next group row to output
+    private int groupOutputIndex = -1;
+
+    private MergeJoinOperator(
+            OperatorContext operatorContext,
+            MergeJoinBridge mergeJoinBridge,
+            List<Type> probeTypes,
+            List<Integer> probeJoinChannels,
+            List<Integer> probeOutputChannels,
+            List<Type> buildTypes,
+            List<Integer> buildJoinChannels,
+            List<Integer> buildOutputChannels,
+            Runnable afterClose)
+    {
+        this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
+        this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.mergeJoinBridge = requireNonNull(mergeJoinBridge, "mergeJoinBridge is null");
+        this.afterClose = requireNonNull(afterClose, "afterClose is null");
+
+        this.keyTypes = probeJoinChannels.stream()
+                .map(probeTypes::get)
+                .collect(toImmutableList());
+        this.probeJoinChannels = Ints.toArray(probeJoinChannels);
+        this.probeOutputChannels = Ints.toArray(probeOutputChannels);
+        this.probeOutputTypes = probeOutputChannels.stream()
+                .map(probeTypes::get)
+                .collect(toImmutableList());
+        this.buildJoinChannels = Ints.toArray(buildJoinChannels);
+        this.buildOutputChannels = Ints.toArray(buildOutputChannels);
+        this.buildOutputTypes = buildOutputChannels.stream()
+                .map(buildTypes::get)
+                .collect(toImmutableList());
+        this.pageBuilder = new PageBuilder(ImmutableList.<Type>builder()
+                .addAll(probeOutputTypes)
+                .addAll(buildOutputTypes)
+                .build());
+    }
+
+    @Override
+    public OperatorContext getOperatorContext()
+    {
+        return operatorContext;
+    }
+
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        return blocked;
+    }
+
+    @Override
+    public boolean needsInput()
+    {
+        return !finishing && probe == null;
+    }
+
+    @Override
+    public void addInput(Page page)
+    {
+        requireNonNull(page, "page is null");
+        checkState(needsInput(), "Operator does not need input");
+
+        if (page.getPositionCount() == 0 || (buildConsumed && groupPositions.isEmpty())) {
+            // no build rows are left to match
+            return;
+        }
+        probe = page;
+        probePosition = 0;
+    }
+
+    @Override
+    public Page getOutput()
+    {
+        if (probe != null && blocked.isDone()) {
+            processProbe();
+        }
+        localUserMemoryContext.setBytes(pageBuilder.getRetainedSizeInBytes() + groupRetainedSizeInBytes);
+
+        if (pageBuilder.isFull() || (probe == null && !pageBuilder.isEmpty())) {
+            Page output = pageBuilder.build();
+            pageBuilder.reset();
+            return output;
+        }
+        return null;
+    }
+
+    @Override
+    public void finish()
+    {
+        finishing = true;
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return finishing && probe == null && pageBuilder.isEmpty();
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        probe = null;
+        build = null;
+        groupPages.clear();
+        groupPositions.clear();
+        groupRetainedSizeInBytes = 0;
+        localUserMemoryContext.setBytes(0);
+        mergeJoinBridge.probeFinished();
+        afterClose.run();
+    }
+
+    private void processProbe()
+    {
+        while (probePosition < probe.getPositionCount()) {
+            if (pageBuilder.isFull()) {
+                return;
+            }
+
+            if (groupOutputIndex >= 0) {
+                // the current probe row matches the group
+                while (groupOutputIndex < groupPositions.size() && !pageBuilder.isFull()) {
+                    appendRow(groupPages.get(groupOutputIndex), groupPositions.getInt(groupOutputIndex));
+                    groupOutputIndex++;
+                }
+                if (groupOutputIndex < groupPositions.size()) {
+                    return;
+                }
+                groupOutputIndex = -1;
+                probePosition++;
+                continue;
+            }
+
+            if (rowContainsNull(probe, probeJoinChannels, probePosition)) {
+                probePosition++;
+                continue;
+            }
+
+            MatchResult result = findGroup();
+            if (result == MatchResult.BLOCKED) {
+                return;
+            }
+            if (result == MatchResult.MATCH) {
+                groupOutputIndex = 0;
+                continue;
+            }
+            if (buildConsumed && groupPositions.isEmpty()) {
+                // no build rows are left to match
+                break;
+            }
+            probePosition++;
+        }
+        probe = null;
+    }
+
+    /**
+     * Advances the build side to the group of rows with the smallest key which is not less than the key of the current probe row.
+     */
+    private MatchResult findGroup()
+    {
+        while (true) {
+            if (!groupPositions.isEmpty()) {
+                int comparison = compareToProbe(groupPages.get(0), groupPositions.getInt(0));
+                if (comparison > 0) {
+                    return MatchResult.NO_MATCH;
+                }
+                if (comparison == 0) {
+                    if (!groupComplete && !completeGroup()) {
+                        return MatchResult.BLOCKED;
+                    }
+                    return MatchResult.MATCH;
+                }
+                // the rest of the group, if any, is skipped by the loop below
+                clearGroup();
+            }
+
+            if (!loadBuildRow()) {
+                return buildConsumed ? MatchResult.NO_MATCH : MatchResult.BLOCKED;
+            }
+            if (rowContainsNull(build, buildJoinChannels, buildPosition) || compareToProbe(build, buildPosition) < 0) {
+                buildPosition++;
+                continue;
+            }
+            addToGroup(build, buildPosition);
+            buildPosition++;
+            groupComplete = false;
+        }
+    }
+
+    /**
+     * @return false if blocked on the build side
+     */
+    private boolean completeGroup()
+    {
+        Page groupPage = groupPages.get(0);
+        int groupPosition = groupPositions.getInt(0);
+        while (loadBuildRow()) {
+            if (rowContainsNull(build, buildJoinChannels, buildPosition) || !keysEqual(groupPage, groupPosition, build, buildPosition)) {
+                groupComplete = true;
+                return true;
+            }
+            addToGroup(build, buildPosition);
+            buildPosition++;
+        }
+        if (buildConsumed) {
+            groupComplete = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a build row is available at the build position
+     */
+    private boolean loadBuildRow()
+    {
+        while (build == null || buildPosition >= build.getPositionCount()) {
+            build = null;
+            if (buildConsumed) {
+                return false;
+            }
+            Page page = mergeJoinBridge.pollPage();
+            if (page == null) {
+                if (mergeJoinBridge.isBuildConsumed()) {
+                    buildConsumed = true;
+                }
+                else {
+                    blocked = mergeJoinBridge.getNotEmptyFuture();
+                }
+                return false;
+            }
+            build = page;
+            buildPosition = 0;
+        }
+        return true;
+    }
+
+    private void addToGroup(Page page, int position)
+    {
+        if (groupPages.isEmpty() || groupPages.get(groupPages.size() - 1) != page) {
+            groupRetainedSizeInBytes += page.getRetainedSizeInBytes();
+        }
+        groupPages.add(page);
+        groupPositions.add(position);
+    }
+
+    private void clearGroup()
+    {
+        groupPages.clear();
+        groupPositions.clear();
+        groupRetainedSizeInBytes = 0;
+        groupComplete = false;
+    }
+
+    private void appendRow(Page buildPage, int position)
+    {
+        pageBuilder.declarePosition();
+        for (int i = 0; i < probeOutputChannels.length; i++) {
+            probeOutputTypes.get(i).appendTo(probe.getBlock(probeOutputChannels[i]), probePosition, pageBuilder.getBlockBuilder(i));
+        }
+        int offset = probeOutputChannels.length;
+        for (int i = 0; i < buildOutputChannels.length; i++) {
+            buildOutputTypes.get(i).appendTo(buildPage.getBlock(buildOutputChannels[i]), position, pageBuilder.getBlockBuilder(offset + i));
+        }
+    }
+
+    private int compareToProbe(Page buildPage, int position)
+    {
+        for (int i = 0; i < probeJoinChannels.length; i++) {
+            Block buildBlock = buildPage.getBlock(buildJoinChannels[i]);
+            Block probeBlock = probe.getBlock(probeJoinChannels[i]);
+            int comparison = keyTypes.get(i).compareTo(buildBlock, position, probeBlock, probePosition);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private boolean keysEqual(Page leftPage, int leftPosition, Page rightPage, int rightPosition)
+    {
+        for (int i = 0; i < buildJoinChannels.length; i++) {
+            Block leftBlock = leftPage.getBlock(buildJoinChannels[i]);
+            Block rightBlock = rightPage.getBlock(buildJoinChannels[i]);
+            if (!keyTypes.get(i).equalTo(leftBlock, leftPosition, rightBlock, rightPosition)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean rowContainsNull(Page page, int[] channels, int position)
+    {
+        for (int channel : channels) {
+            if (page.getBlock(channel).isNull(position)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -276,6 +276,14 @@ public class MultiChannelGroupByHash
         return putIfAbsent(position, page, rawHash);
     }
 
+    private long[] hashPage(Page page)
+    {
+        // hash all the positions before probing, instead of interleaving hashing with the table lookups
+        long[] rawHashes = new long[page.getPositionCount()];
+        hashGenerator.hashPositions(page, 0, page.getPositionCount(), rawHashes);
+        return rawHashes;
+    }
+
     private int putIfAbsent(int position, Page page, long rawHash)
     {
         int hashPosition = (int) getHashPosition(rawHash, mask);
@@ -565,12 +573,14 @@ public class MultiChannelGroupByHash
             implements Work<Void>
     {
         private final Page page;
+        private final long[] rawHashes;
 
         private int lastPosition;
 
         public AddNonDictionaryPageWork(Page page)
         {
             this.page = requireNonNull(page, "page is null");
+            this.rawHashes = hashPage(page);
         }
 
         @Override
@@ -589,7 +599,7 @@ public class MultiChannelGroupByHash
             // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
             while (lastPosition < positionCount && !needRehash()) {
                 // get the group for the current row
-                putIfAbsent(lastPosition, page);
+                putIfAbsent(lastPosition, page, rawHashes[lastPosition]);
                 lastPosition++;
             }
             return lastPosition == positionCount;
@@ -695,6 +705,7 @@ public class MultiChannelGroupByHash
     {
         private final BlockBuilder blockBuilder;
         private final Page page;
+        private final long[] rawHashes;
 
         private boolean finished;
         private int lastPosition;
@@ -702,6 +713,7 @@ public class MultiChannelGroupByHash
         public GetNonDictionaryGroupIdsWork(Page page)
         {
             this.page = requireNonNull(page, "page is null");
+            this.rawHashes = hashPage(page);
             // we know the exact size required for the block
             this.blockBuilder = BIGINT.createFixedSizeBlockBuilder(page.getPositionCount());
         }
@@ -723,7 +735,7 @@ public class MultiChannelGroupByHash
             // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
             while (lastPosition < positionCount && !needRehash()) {
                 // output the group id for this row
-                BIGINT.writeLong(blockBuilder, putIfAbsent(lastPosition, page));
+                BIGINT.writeLong(blockBuilder, putIfAbsent(lastPosition, page, rawHashes[lastPosition]));
                 lastPosition++;
             }
             return lastPosition == positionCount;
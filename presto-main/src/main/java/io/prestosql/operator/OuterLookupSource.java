@@ -20,6 +20,7 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -33,7 +34,16 @@ public final class OuterLookupSource
 {
     public static TrackingLookupSourceSupplier createOuterLookupSourceSupplier(Supplier<LookupSource> lookupSourceSupplier)
     {
-        return new OuterLookupSourceSupplier(lookupSourceSupplier);
+        return new OuterLookupSourceSupplier(lookupSourceSupplier, Optional.empty());
+    }
+
+    /**
+     * Creates a supplier which also treats the given positions as visited, e.g. the positions of a spilled partition
+     * which were visited before the partition was spilled.
+     */
+    public static TrackingLookupSourceSupplier createOuterLookupSourceSupplier(Supplier<LookupSource> lookupSourceSupplier, boolean[] visitedPositions)
+    {
+        return new OuterLookupSourceSupplier(lookupSourceSupplier, Optional.of(visitedPositions));
     }
 
     private final LookupSource lookupSource;
@@ -87,6 +97,18 @@ public final class OuterLookupSource
         return lookupSource.getJoinPosition(position, hashChannelsPage, allChannelsPage);
     }
 
+    @Override
+    public boolean isBatchLookupPreferred()
+    {
+        return lookupSource.isBatchLookupPreferred();
+    }
+
+    @Override
+    public void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, long[] rawHashes, long[] joinPositions)
+    {
+        lookupSource.getJoinPositions(positions, positionCount, hashChannelsPage, allChannelsPage, rawHashes, joinPositions);
+    }
+
     @Override
     public long getNextJoinPosition(long currentJoinPosition, int probePosition, Page allProbeChannelsPage)
     {
@@ -151,10 +173,10 @@ public final class OuterLookupSource
         private final Supplier<LookupSource> lookupSourceSupplier;
         private final OuterPositionTracker outerPositionTracker;
 
-        public OuterLookupSourceSupplier(Supplier<LookupSource> lookupSourceSupplier)
+        public OuterLookupSourceSupplier(Supplier<LookupSource> lookupSourceSupplier, Optional<boolean[]> visitedPositions)
         {
             this.lookupSourceSupplier = requireNonNull(lookupSourceSupplier, "lookupSourceSupplier is null");
-            this.outerPositionTracker = new OuterPositionTracker(lookupSourceSupplier);
+            this.outerPositionTracker = new OuterPositionTracker(lookupSourceSupplier, visitedPositions);
         }
 
         @Override
@@ -181,12 +203,14 @@ public final class OuterLookupSource
         @GuardedBy("this")
         private boolean finished;
 
-        public OuterPositionTracker(Supplier<LookupSource> lookupSourceSupplier)
+        public OuterPositionTracker(Supplier<LookupSource> lookupSourceSupplier, Optional<boolean[]> visitedPositions)
         {
             this.lookupSourceSupplier = lookupSourceSupplier;
 
             try (LookupSource lookupSource = lookupSourceSupplier.get()) {
-                this.visitedPositions = new boolean[toIntExact(lookupSource.getJoinPositionCount())];
+                int positionCount = toIntExact(lookupSource.getJoinPositionCount());
+                visitedPositions.ifPresent(positions -> checkArgument(positions.length == positionCount, "Expected %s visited positions, but got %s", positionCount, positions.length));
+                this.visitedPositions = visitedPositions.orElseGet(() -> new boolean[positionCount]);
             }
         }
 
@@ -20,7 +20,7 @@ import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.openjdk.jol.info.ClassLayout;
 
-import java.util.Arrays;
+import javax.annotation.Nullable;
 
 import static io.airlift.slice.SizeOf.sizeOf;
 import static io.airlift.units.DataSize.Unit.KILOBYTE;
@@ -35,25 +35,41 @@ public final class PagesHash
 {
     private static final int INSTANCE_SIZE = ClassLayout.parseClass(PagesHash.class).instanceSize();
     private static final DataSize CACHE_SIZE = new DataSize(128, KILOBYTE);
+    // In radix partitioned mode, the table is split into sub-tables whose key and tag arrays
+    // are about the size of an L2 cache, so that probes grouped by partition stay in the cache.
+    private static final int PARTITION_SLOTS = 32 * 1024;
+    private static final int MAX_PARTITION_BITS = 12;
     private final LongArrayList addresses;
     private final PagesHashStrategy pagesHashStrategy;
 
     private final int channelCount;
     private final int mask;
-    private final int[] key;
+    // Offset of the sub-table and mask of the slots within it for each radix partition,
+    // or null when the table is not partitioned
+    @Nullable
+    private final int[] partitionOffsets;
+    @Nullable
+    private final int[] partitionMasks;
+    private final int partitionShift;
+    private final JoinHashIntArray key;
     private final long size;
 
-    // Native array of hashes for faster collisions resolution compared
-    // to accessing values in blocks. We use bytes to reduce memory foot print
-    // and there is no performance gain from storing full hashes
-    private final byte[] positionToHashes;
+    // Tag of the hash of the key in each slot, which resolves most collisions without
+    // loading the key position and comparing values in blocks. A zero tag marks an empty
+    // slot, so probing a run of slots reads only this array.
+    private final JoinHashByteArray slotTags;
+    @Nullable
+    private final JoinBloomFilter bloomFilter;
     private final long hashCollisions;
     private final double expectedHashCollisions;
 
     public PagesHash(
             LongArrayList addresses,
             PagesHashStrategy pagesHashStrategy,
-            PositionLinks.FactoryBuilder positionLinks)
+            PositionLinks.FactoryBuilder positionLinks,
+            boolean offHeap,
+            boolean bloomFilterEnabled,
+            boolean radixPartitioned)
     {
         this.addresses = requireNonNull(addresses, "addresses is null");
         this.pagesHashStrategy = requireNonNull(pagesHashStrategy, "pagesHashStrategy is null");
@@ -61,12 +77,23 @@ public final class PagesHash
 
         // reserve memory for the arrays
         int hashSize = HashCommon.arraySize(addresses.size(), 0.75f);
+        int partitionBits = radixPartitioned ? getPartitionBits(hashSize) : 0;
+        if (partitionBits > 0) {
+            partitionShift = Long.SIZE - partitionBits;
+            partitionOffsets = new int[1 << partitionBits];
+            partitionMasks = new int[1 << partitionBits];
+            hashSize = sizePartitions(partitionShift, partitionOffsets, partitionMasks);
+        }
+        else {
+            partitionShift = 0;
+            partitionOffsets = null;
+            partitionMasks = null;
+        }
 
         mask = hashSize - 1;
-        key = new int[hashSize];
-        Arrays.fill(key, -1);
-
-        positionToHashes = new byte[addresses.size()];
+        key = new JoinHashIntArray(hashSize, -1, offHeap);
+        slotTags = new JoinHashByteArray(hashSize, offHeap);
+        bloomFilter = bloomFilterEnabled ? new JoinBloomFilter(addresses.size()) : null;
 
         // We will process addresses in batches, to save memory on array of hashes.
         int positionsInStep = Math.min(addresses.size() + 1, (int) CACHE_SIZE.toBytes() / Integer.SIZE);
@@ -85,7 +112,6 @@ public final class PagesHash
                 int realPosition = position + stepBeginPosition;
                 long hash = readHashPosition(realPosition);
                 positionToFullHashes[position] = hash;
-                positionToHashes[realPosition] = (byte) hash;
             }
 
             // index pages
@@ -96,34 +122,85 @@ public final class PagesHash
                 }
 
                 long hash = positionToFullHashes[position];
-                int pos = getHashPosition(hash, mask);
+                long mixedHash = mixHash(hash);
+                int offset = 0;
+                int partitionMask = mask;
+                if (partitionOffsets != null) {
+                    int partition = (int) (mixedHash >>> partitionShift);
+                    offset = partitionOffsets[partition];
+                    partitionMask = partitionMasks[partition];
+                }
+                int slot = (int) (mixedHash & partitionMask);
+                byte tag = getTag(hash);
+                if (bloomFilter != null) {
+                    bloomFilter.put(hash);
+                }
 
                 // look for an empty slot or a slot containing this key
-                while (key[pos] != -1) {
-                    int currentKey = key[pos];
-                    if (((byte) hash) == positionToHashes[currentKey] && positionEqualsPositionIgnoreNulls(currentKey, realPosition)) {
-                        // found a slot for this key
-                        // link the new key position to the current key position
-                        realPosition = positionLinks.link(realPosition, currentKey);
-
-                        // key[pos] updated outside of this loop
-                        break;
+                byte slotTag;
+                while ((slotTag = slotTags.get(offset + slot)) != 0) {
+                    if (slotTag == tag) {
+                        int currentKey = key.get(offset + slot);
+                        if (positionEqualsPositionIgnoreNulls(currentKey, realPosition)) {
+                            // found a slot for this key
+                            // link the new key position to the current key position
+                            realPosition = positionLinks.link(realPosition, currentKey);
+
+                            // key[pos] updated outside of this loop
+                            break;
+                        }
                     }
-                    // increment position and mask to handler wrap around
-                    pos = (pos + 1) & mask;
+                    // increment position and mask to handle wrap around within the partition
+                    slot = (slot + 1) & partitionMask;
                     hashCollisionsLocal++;
                 }
 
-                key[pos] = realPosition;
+                key.set(offset + slot, realPosition);
+                slotTags.set(offset + slot, tag);
             }
         }
 
         size = sizeOf(addresses.elements()) + pagesHashStrategy.getSizeInBytes() +
-                sizeOf(key) + sizeOf(positionToHashes);
+                key.getRetainedSizeInBytes() + slotTags.getRetainedSizeInBytes() +
+                (bloomFilter == null ? 0 : bloomFilter.getRetainedSizeInBytes()) +
+                (partitionOffsets == null ? 0 : sizeOf(partitionOffsets) + sizeOf(partitionMasks));
         hashCollisions = hashCollisionsLocal;
         expectedHashCollisions = estimateNumberOfHashCollisions(addresses.size(), hashSize);
     }
 
+    private static int getPartitionBits(int hashSize)
+    {
+        if (hashSize <= PARTITION_SLOTS) {
+            return 0;
+        }
+        return Math.min(Integer.numberOfTrailingZeros(hashSize / PARTITION_SLOTS), MAX_PARTITION_BITS);
+    }
+
+    /**
+     * Counts the rows of each radix partition and lays out a power of 2 sub-table for each of them.
+     *
+     * @return the total number of slots
+     */
+    private int sizePartitions(int partitionShift, int[] partitionOffsets, int[] partitionMasks)
+    {
+        // duplicate keys are counted too, so the sub-tables are never too small
+        int[] partitionRows = new int[partitionOffsets.length];
+        for (int position = 0; position < addresses.size(); position++) {
+            if (!isPositionNull(position)) {
+                partitionRows[(int) (mixHash(readHashPosition(position)) >>> partitionShift)]++;
+            }
+        }
+
+        long offset = 0;
+        for (int partition = 0; partition < partitionOffsets.length; partition++) {
+            int partitionSize = HashCommon.arraySize(partitionRows[partition], 0.75f);
+            partitionOffsets[partition] = toIntExact(offset);
+            partitionMasks[partition] = partitionSize - 1;
+            offset += partitionSize;
+        }
+        return toIntExact(offset);
+    }
+
     public final int getChannelCount()
     {
         return channelCount;
@@ -139,6 +216,15 @@ public final class PagesHash
         return INSTANCE_SIZE + size;
     }
 
+    /**
+     * Frees the direct memory of an off-heap hash table. The hash table must not be used afterwards.
+     */
+    public void free()
+    {
+        key.free();
+        slotTags.free();
+    }
+
     public long getHashCollisions()
     {
         return hashCollisions;
@@ -156,18 +242,79 @@ public final class PagesHash
 
     public int getAddressIndex(int rightPosition, Page hashChannelsPage, long rawHash)
     {
-        int pos = getHashPosition(rawHash, mask);
+        if (bloomFilter != null && !bloomFilter.mightContain(rawHash)) {
+            return -1;
+        }
 
-        while (key[pos] != -1) {
-            if (positionEqualsCurrentRowIgnoreNulls(key[pos], (byte) rawHash, rightPosition, hashChannelsPage)) {
-                return key[pos];
+        long mixedHash = mixHash(rawHash);
+        int offset = 0;
+        int partitionMask = mask;
+        if (partitionOffsets != null) {
+            int partition = (int) (mixedHash >>> partitionShift);
+            offset = partitionOffsets[partition];
+            partitionMask = partitionMasks[partition];
+        }
+        int slot = (int) (mixedHash & partitionMask);
+        byte tag = getTag(rawHash);
+
+        byte slotTag;
+        while ((slotTag = slotTags.get(offset + slot)) != 0) {
+            if (slotTag == tag) {
+                int currentKey = key.get(offset + slot);
+                if (positionEqualsCurrentRowIgnoreNulls(currentKey, rightPosition, hashChannelsPage)) {
+                    return currentKey;
+                }
             }
-            // increment position and mask to handler wrap around
-            pos = (pos + 1) & mask;
+            // increment position and mask to handle wrap around within the partition
+            slot = (slot + 1) & partitionMask;
         }
         return -1;
     }
 
+    public boolean isRadixPartitioned()
+    {
+        return partitionOffsets != null;
+    }
+
+    /**
+     * Looks up the rows at the given positions of the page and stores the address index of each row
+     * at its position in {@code addressIndexes}. In radix partitioned mode the rows are looked up
+     * grouped by partition, so that the probes of each sub-table are done while it is in the cache.
+     */
+    public void getAddressIndexes(int[] positions, int positionCount, Page hashChannelsPage, long[] rawHashes, int[] addressIndexes)
+    {
+        if (partitionOffsets == null) {
+            for (int i = 0; i < positionCount; i++) {
+                int position = positions[i];
+                addressIndexes[position] = getAddressIndex(position, hashChannelsPage, rawHashes[position]);
+            }
+            return;
+        }
+
+        // counting sort of the positions by partition
+        int[] partitionStarts = new int[partitionOffsets.length + 1];
+        for (int i = 0; i < positionCount; i++) {
+            partitionStarts[getPartition(rawHashes[positions[i]]) + 1]++;
+        }
+        for (int partition = 1; partition < partitionStarts.length; partition++) {
+            partitionStarts[partition] += partitionStarts[partition - 1];
+        }
+        int[] sortedPositions = new int[positionCount];
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            sortedPositions[partitionStarts[getPartition(rawHashes[position])]++] = position;
+        }
+
+        for (int position : sortedPositions) {
+            addressIndexes[position] = getAddressIndex(position, hashChannelsPage, rawHashes[position]);
+        }
+    }
+
+    private int getPartition(long rawHash)
+    {
+        return (int) (mixHash(rawHash) >>> partitionShift);
+    }
+
     public void appendTo(long position, PageBuilder pageBuilder, int outputChannelOffset)
     {
         long pageAddress = addresses.getLong(toIntExact(position));
@@ -195,12 +342,8 @@ public final class PagesHash
         return pagesHashStrategy.hashPosition(blockIndex, blockPosition);
     }
 
-    private boolean positionEqualsCurrentRowIgnoreNulls(int leftPosition, byte rawHash, int rightPosition, Page rightPage)
+    private boolean positionEqualsCurrentRowIgnoreNulls(int leftPosition, int rightPosition, Page rightPage)
     {
-        if (positionToHashes[leftPosition] != rawHash) {
-            return false;
-        }
-
         long pageAddress = addresses.getLong(leftPosition);
         int blockIndex = decodeSliceIndex(pageAddress);
         int blockPosition = decodePosition(pageAddress);
@@ -221,7 +364,13 @@ public final class PagesHash
         return pagesHashStrategy.positionEqualsPositionIgnoreNulls(leftBlockIndex, leftBlockPosition, rightBlockIndex, rightBlockPosition);
     }
 
-    private static int getHashPosition(long rawHash, long mask)
+    private static byte getTag(long rawHash)
+    {
+        // the highest bit is always set, so the tag of a used slot is never zero
+        return (byte) (rawHash | 0x80);
+    }
+
+    private static long mixHash(long rawHash)
     {
         // Avalanches the bits of a long integer by applying the finalisation step of MurmurHash3.
         //
@@ -236,6 +385,6 @@ public final class PagesHash
         rawHash *= 0xc4ceb9fe1a85ec53L;
         rawHash ^= rawHash >>> 33;
 
-        return (int) (rawHash & mask);
+        return rawHash;
     }
 }
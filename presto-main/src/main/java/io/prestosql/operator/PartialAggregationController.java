@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides when partial aggregations should stop aggregating, because they do not reduce the number of rows
+ * enough to pay for building their hash tables. It is shared by the operators of a pipeline, so that all
+ * drivers of a task switch to passing rows through once enough rows have been aggregated.
+ */
+@ThreadSafe
+public class PartialAggregationController
+{
+    private final long minRows;
+    private final double uniqueRowsRatioThreshold;
+
+    @GuardedBy("this")
+    private long totalRows;
+    @GuardedBy("this")
+    private long totalUniqueRows;
+    private volatile boolean partialAggregationDisabled;
+
+    public PartialAggregationController(long minRows, double uniqueRowsRatioThreshold)
+    {
+        checkArgument(minRows >= 0, "minRows is negative");
+        checkArgument(uniqueRowsRatioThreshold >= 0, "uniqueRowsRatioThreshold is negative");
+        this.minRows = minRows;
+        this.uniqueRowsRatioThreshold = uniqueRowsRatioThreshold;
+    }
+
+    public boolean isPartialAggregationDisabled()
+    {
+        return partialAggregationDisabled;
+    }
+
+    /**
+     * Records the number of input rows and groups of a flushed partial aggregation.
+     */
+    public synchronized void onFlush(long rows, long uniqueRows)
+    {
+        if (partialAggregationDisabled) {
+            return;
+        }
+        totalRows += rows;
+        totalUniqueRows += uniqueRows;
+        if (totalRows >= minRows && totalUniqueRows > totalRows * uniqueRowsRatioThreshold) {
+            partialAggregationDisabled = true;
+        }
+    }
+}
@@ -146,13 +146,30 @@ public final class PartitionedConsumption<T>
         }
 
         public synchronized void release()
+        {
+            if (releaseUnlessLast()) {
+                finishRelease();
+            }
+        }
+
+        /**
+         * Releases the partition, unless the caller is the last consumer to release it. In that case the partition
+         * is still available to the caller, who has to call {@link #finishRelease()} when done with it.
+         *
+         * @return whether the caller is the last consumer to release the partition
+         */
+        public synchronized boolean releaseUnlessLast()
         {
             checkState(loaded.isDone());
             pendingReleases--;
             checkState(pendingReleases >= 0);
-            if (pendingReleases == 0) {
-                released.set(null);
-            }
+            return pendingReleases == 0;
+        }
+
+        public synchronized void finishRelease()
+        {
+            checkState(pendingReleases == 0, "Partition not released by all consumers");
+            released.set(null);
         }
     }
 }
@@ -32,6 +32,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verify;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static java.lang.Integer.numberOfTrailingZeros;
@@ -44,27 +45,7 @@ public class PartitionedLookupSource
     public static TrackingLookupSourceSupplier createPartitionedLookupSourceSupplier(List<Supplier<LookupSource>> partitions, List<Type> hashChannelTypes, boolean outer)
     {
         if (outer) {
-            OuterPositionTracker.Factory outerPositionTrackerFactory = new OuterPositionTracker.Factory(partitions);
-
-            return new TrackingLookupSourceSupplier()
-            {
-                @Override
-                public LookupSource getLookupSource()
-                {
-                    return new PartitionedLookupSource(
-                            partitions.stream()
-                                    .map(Supplier::get)
-                                    .collect(toImmutableList()),
-                            hashChannelTypes,
-                            Optional.of(outerPositionTrackerFactory.create()));
-                }
-
-                @Override
-                public OuterPositionIterator getOuterPositionIterator()
-                {
-                    return outerPositionTrackerFactory.getOuterPositionIterator();
-                }
-            };
+            return createPartitionedLookupSourceSupplier(partitions, hashChannelTypes, new boolean[partitions.size()][]);
         }
         else {
             return TrackingLookupSourceSupplier.nonTracking(
@@ -77,10 +58,41 @@ public class PartitionedLookupSource
         }
     }
 
+    /**
+     * Creates an outer lookup source supplier, which tracks the visited positions of each partition in {@code visitedPositions}.
+     * Positions of a partition are allocated when missing, so that the visited positions of the partitions can be
+     * retained when the supplier is re-created after some of its partitions were spilled.
+     */
+    public static TrackingLookupSourceSupplier createPartitionedLookupSourceSupplier(List<Supplier<LookupSource>> partitions, List<Type> hashChannelTypes, boolean[][] visitedPositions)
+    {
+        OuterPositionTracker.Factory outerPositionTrackerFactory = new OuterPositionTracker.Factory(partitions, visitedPositions);
+
+        return new TrackingLookupSourceSupplier()
+        {
+            @Override
+            public LookupSource getLookupSource()
+            {
+                return new PartitionedLookupSource(
+                        partitions.stream()
+                                .map(Supplier::get)
+                                .collect(toImmutableList()),
+                        hashChannelTypes,
+                        Optional.of(outerPositionTrackerFactory.create()));
+            }
+
+            @Override
+            public OuterPositionIterator getOuterPositionIterator()
+            {
+                return outerPositionTrackerFactory.getOuterPositionIterator();
+            }
+        };
+    }
+
     private final LookupSource[] lookupSources;
     private final LocalPartitionGenerator partitionGenerator;
     private final int partitionMask;
     private final int shiftSize;
+    private final boolean batchLookupPreferred;
     @Nullable
     private final OuterPositionTracker outerPositionTracker;
 
@@ -100,6 +112,7 @@ public class PartitionedLookupSource
 
         this.partitionMask = lookupSources.size() - 1;
         this.shiftSize = numberOfTrailingZeros(lookupSources.size()) + 1;
+        this.batchLookupPreferred = lookupSources.stream().anyMatch(LookupSource::isBatchLookupPreferred);
         this.outerPositionTracker = outerPositionTracker.orElse(null);
     }
 
@@ -147,6 +160,46 @@ public class PartitionedLookupSource
         return encodePartitionedJoinPosition(partition, toIntExact(joinPosition));
     }
 
+    @Override
+    public boolean isBatchLookupPreferred()
+    {
+        return batchLookupPreferred;
+    }
+
+    @Override
+    public void getJoinPositions(int[] positions, int positionCount, Page hashChannelsPage, Page allChannelsPage, long[] rawHashes, long[] joinPositions)
+    {
+        // group the positions by partition, so that each partition looks up its rows in one batch
+        int[] partitionStarts = new int[lookupSources.length + 1];
+        for (int i = 0; i < positionCount; i++) {
+            partitionStarts[partitionGenerator.getPartition(rawHashes[positions[i]]) + 1]++;
+        }
+        for (int partition = 1; partition < partitionStarts.length; partition++) {
+            partitionStarts[partition] += partitionStarts[partition - 1];
+        }
+        int[] partitionPositions = new int[positionCount];
+        int[] nextPartitionPosition = Arrays.copyOf(partitionStarts, lookupSources.length);
+        for (int i = 0; i < positionCount; i++) {
+            int position = positions[i];
+            partitionPositions[nextPartitionPosition[partitionGenerator.getPartition(rawHashes[position])]++] = position;
+        }
+
+        for (int partition = 0; partition < lookupSources.length; partition++) {
+            int start = partitionStarts[partition];
+            int count = partitionStarts[partition + 1] - start;
+            if (count == 0) {
+                continue;
+            }
+            int[] subsetPositions = Arrays.copyOfRange(partitionPositions, start, start + count);
+            lookupSources[partition].getJoinPositions(subsetPositions, count, hashChannelsPage, allChannelsPage, rawHashes, joinPositions);
+            for (int position : subsetPositions) {
+                if (joinPositions[position] >= 0) {
+                    joinPositions[position] = encodePartitionedJoinPosition(partition, toIntExact(joinPositions[position]));
+                }
+            }
+        }
+    }
+
     @Override
     public long getNextJoinPosition(long currentJoinPosition, int probePosition, Page allProbeChannelsPage)
     {
@@ -281,17 +334,21 @@ public class PartitionedLookupSource
             private final AtomicBoolean finished = new AtomicBoolean();
             private final AtomicLong referenceCount = new AtomicLong();
 
-            public Factory(List<Supplier<LookupSource>> partitions)
+            public Factory(List<Supplier<LookupSource>> partitions, boolean[][] visitedPositions)
             {
                 this.lookupSources = partitions.stream()
                         .map(Supplier::get)
                         .toArray(LookupSource[]::new);
 
-                visitedPositions = Arrays.stream(this.lookupSources)
-                        .map(LookupSource::getJoinPositionCount)
-                        .map(Math::toIntExact)
-                        .map(boolean[]::new)
-                        .toArray(boolean[][]::new);
+                checkArgument(visitedPositions.length == lookupSources.length, "visitedPositions must have an entry for each partition");
+                for (int partition = 0; partition < lookupSources.length; partition++) {
+                    int positionCount = toIntExact(lookupSources[partition].getJoinPositionCount());
+                    if (visitedPositions[partition] == null) {
+                        visitedPositions[partition] = new boolean[positionCount];
+                    }
+                    verify(visitedPositions[partition].length == positionCount, "Visited positions do not match the partition %s", partition);
+                }
+                this.visitedPositions = visitedPositions;
             }
 
             public OuterPositionTracker create()
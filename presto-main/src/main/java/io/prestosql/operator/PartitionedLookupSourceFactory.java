@@ -31,6 +31,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -47,7 +48,6 @@ import static com.google.common.util.concurrent.Futures.nonCancellationPropagati
 import static com.google.common.util.concurrent.Futures.transform;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static io.prestosql.operator.OuterLookupSource.createOuterLookupSourceSupplier;
-import static io.prestosql.operator.PartitionedLookupSource.createPartitionedLookupSourceSupplier;
 import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
 
@@ -82,6 +82,20 @@ public final class PartitionedLookupSourceFactory
     @GuardedBy("lock")
     private TrackingLookupSourceSupplier lookupSourceSupplier;
 
+    /**
+     * Visited positions of the partitions of an outer lookup source, retained when {@link #lookupSourceSupplier} is re-created.
+     */
+    @GuardedBy("lock")
+    private final boolean[][] visitedPositions;
+
+    /**
+     * Positions of an outer lookup source which were visited before their partition was spilled.
+     */
+    @GuardedBy("lock")
+    private final Map<Integer, boolean[]> spilledVisitedPositions = new HashMap<>();
+
+    private final Map<Integer, TrackingLookupSourceSupplier> unspilledLookupSourceSuppliers = new ConcurrentHashMap<>();
+
     @GuardedBy("lock")
     private final List<SettableFuture<LookupSourceProvider>> lookupSourceFutures = new ArrayList<>();
 
@@ -112,6 +126,7 @@ public final class PartitionedLookupSourceFactory
         this.hashChannelTypes = ImmutableList.copyOf(hashChannelTypes);
         checkArgument(partitionCount > 0);
         this.partitions = (Supplier<LookupSource>[]) new Supplier<?>[partitionCount];
+        this.visitedPositions = new boolean[partitionCount][];
         this.outer = outer;
         spilledLookupSource = new SpilledLookupSource(outputTypes.size());
     }
@@ -198,7 +213,25 @@ public final class PartitionedLookupSourceFactory
         return partitionsNoLongerNeeded;
     }
 
-    public void setPartitionSpilledLookupSourceHandle(int partitionIndex, SpilledLookupSourceHandle spilledLookupSourceHandle)
+    /**
+     * Partitions of an outer lookup source can be spilled only until the first probe operator finishes. Otherwise
+     * the spilled partition might not be unspilled, and its unmatched positions would be lost.
+     */
+    public boolean isSpillAllowed()
+    {
+        lock.readLock().lock();
+        try {
+            return !outer || finishedProbeOperators == 0;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether the partition was set as spilled; false when spilling is no longer allowed, see {@link #isSpillAllowed()}
+     */
+    public boolean setPartitionSpilledLookupSourceHandle(int partitionIndex, SpilledLookupSourceHandle spilledLookupSourceHandle)
     {
         requireNonNull(spilledLookupSourceHandle, "spilledLookupSourceHandle is null");
 
@@ -208,7 +241,11 @@ public final class PartitionedLookupSourceFactory
         try {
             if (destroyed.isDone()) {
                 spilledLookupSourceHandle.dispose();
-                return;
+                return true;
+            }
+
+            if (outer && finishedProbeOperators > 0) {
+                return false;
             }
 
             checkState(!spilledPartitions.containsKey(partitionIndex), "Partition already set as spilled");
@@ -232,10 +269,14 @@ public final class PartitionedLookupSourceFactory
                  * and to prevent probe side accessing the partition.
                  */
                 verify(!completed, "lookupSourceSupplier already exist when completing");
-                verify(!outer, "It is not possible to reset lookupSourceSupplier which is tracking for outer join");
                 verify(partitions.length > 1, "Spill occurred when only one partition");
-                lookupSourceSupplier = createPartitionedLookupSourceSupplier(ImmutableList.copyOf(partitions), hashChannelTypes, outer);
+                // closing the cached lookup sources also commits the positions visited so far
                 closeCachedLookupSources();
+                if (outer) {
+                    spilledVisitedPositions.put(partitionIndex, visitedPositions[partitionIndex]);
+                    visitedPositions[partitionIndex] = null;
+                }
+                lookupSourceSupplier = createPartitionedLookupSourceSupplier(ImmutableList.copyOf(partitions));
             }
             else {
                 verify(suppliedLookupSources.isEmpty(), "There are cached LookupSources even though lookupSourceSupplier does not exist");
@@ -248,6 +289,16 @@ public final class PartitionedLookupSourceFactory
         if (completed) {
             supplyLookupSources();
         }
+        return true;
+    }
+
+    @GuardedBy("lock")
+    private TrackingLookupSourceSupplier createPartitionedLookupSourceSupplier(List<Supplier<LookupSource>> partitions)
+    {
+        if (outer) {
+            return PartitionedLookupSource.createPartitionedLookupSourceSupplier(partitions, hashChannelTypes, visitedPositions);
+        }
+        return PartitionedLookupSource.createPartitionedLookupSourceSupplier(partitions, hashChannelTypes, false);
     }
 
     private void supplyLookupSources()
@@ -267,7 +318,7 @@ public final class PartitionedLookupSourceFactory
 
             if (partitionsSet != 1) {
                 List<Supplier<LookupSource>> partitions = ImmutableList.copyOf(this.partitions);
-                this.lookupSourceSupplier = createPartitionedLookupSourceSupplier(partitions, hashChannelTypes, outer);
+                this.lookupSourceSupplier = createPartitionedLookupSourceSupplier(partitions);
             }
             else if (outer) {
                 this.lookupSourceSupplier = createOuterLookupSourceSupplier(partitions[0]);
@@ -316,8 +367,10 @@ public final class PartitionedLookupSourceFactory
 
             finishedProbeOperators++;
             if (finishedProbeOperators == operatorsCount) {
-                // We can dispose partitions now since as right outer is not supported with spill
-                freePartitions();
+                if (!outer) {
+                    // We can dispose partitions now, the partitions of an outer lookup source are still needed for the outer positions
+                    freePartitions();
+                }
                 verify(!partitionedConsumption.isDone());
                 partitionedConsumption.set(new PartitionedConsumption<>(
                         partitionedConsumptionParticipants.getAsInt(),
@@ -335,14 +388,41 @@ public final class PartitionedLookupSourceFactory
 
     private ListenableFuture<Supplier<LookupSource>> loadSpilledLookupSource(int partitionNumber)
     {
-        return getSpilledLookupSourceHandle(partitionNumber).getLookupSource();
+        ListenableFuture<Supplier<LookupSource>> lookupSource = getSpilledLookupSourceHandle(partitionNumber).getLookupSource();
+        if (!outer) {
+            return lookupSource;
+        }
+
+        Optional<boolean[]> visitedPositions = getSpilledVisitedPositions(partitionNumber);
+        return transform(
+                lookupSource,
+                partition -> {
+                    TrackingLookupSourceSupplier lookupSourceSupplier = visitedPositions
+                            .map(positions -> createOuterLookupSourceSupplier(partition, positions))
+                            .orElseGet(() -> createOuterLookupSourceSupplier(partition));
+                    unspilledLookupSourceSuppliers.put(partitionNumber, lookupSourceSupplier);
+                    return lookupSourceSupplier::getLookupSource;
+                },
+                directExecutor());
     }
 
     private void disposeSpilledLookupSource(int partitionNumber)
     {
+        unspilledLookupSourceSuppliers.remove(partitionNumber);
         getSpilledLookupSourceHandle(partitionNumber).dispose();
     }
 
+    private Optional<boolean[]> getSpilledVisitedPositions(int partitionNumber)
+    {
+        lock.writeLock().lock();
+        try {
+            return Optional.ofNullable(spilledVisitedPositions.remove(partitionNumber));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     private SpilledLookupSourceHandle getSpilledLookupSourceHandle(int partitionNumber)
     {
         lock.readLock().lock();
@@ -371,6 +451,15 @@ public final class PartitionedLookupSourceFactory
         return lookupSourceSupplier.getOuterPositionIterator();
     }
 
+    @Override
+    public OuterPositionIterator getOuterPositionIterator(int partition)
+    {
+        checkState(outer, "Not an outer lookup source");
+        TrackingLookupSourceSupplier lookupSourceSupplier = unspilledLookupSourceSuppliers.get(partition);
+        checkState(lookupSourceSupplier != null, "Partition %s is not unspilled", partition);
+        return lookupSourceSupplier.getOuterPositionIterator();
+    }
+
     @Override
     public void destroy()
     {
@@ -378,6 +467,8 @@ public final class PartitionedLookupSourceFactory
         try {
             freePartitions();
             spilledPartitions.values().forEach(SpilledLookupSourceHandle::dispose);
+            spilledVisitedPositions.clear();
+            unspilledLookupSourceSuppliers.clear();
 
             // Setting destroyed must be last because it's a part of the state exposed by isDestroyed() without synchronization.
             destroyed.set(null);
@@ -396,6 +487,7 @@ public final class PartitionedLookupSourceFactory
         try {
             // Remove out references to partitions to actually free memory
             Arrays.fill(partitions, null);
+            Arrays.fill(visitedPositions, null);
             lookupSourceSupplier = null;
             closeCachedLookupSources();
         }
@@ -57,6 +57,11 @@ public interface PositionLinks
         {
             return size() == 0;
         }
+
+        /**
+         * Frees the memory of the links. Must only be called once the built position links are no longer used.
+         */
+        default void close() {}
     }
 
     interface Factory
@@ -15,21 +15,36 @@ package io.prestosql.operator;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.operator.ChannelSet.ChannelSetBuilder;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.MoreFutures.checkSuccess;
+import static io.airlift.concurrent.MoreFutures.whenAnyComplete;
+import static io.prestosql.operator.SpilledChannelSet.SPILL_PARTITION_COUNT;
+import static io.prestosql.operator.SpilledChannelSet.createPartitionFunction;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static java.util.Objects.requireNonNull;
 
 @ThreadSafe
@@ -40,6 +55,8 @@ public class SetBuilderOperator
     {
         private final Type type;
         private final SettableFuture<ChannelSet> channelSetFuture = SettableFuture.create();
+        private final SettableFuture<SpilledChannelSet> spilledChannelSetFuture = SettableFuture.create();
+        private final ListenableFuture<?> setBuilt = whenAnyComplete(ImmutableList.of(channelSetFuture, spilledChannelSetFuture));
 
         public SetSupplier(Type type)
         {
@@ -56,11 +73,30 @@ public class SetBuilderOperator
             return channelSetFuture;
         }
 
+        /**
+         * Returns the set if it was spilled while it was built. Only one of this future and the future of {@link #getChannelSet()} completes.
+         */
+        public ListenableFuture<SpilledChannelSet> getSpilledChannelSet()
+        {
+            return spilledChannelSetFuture;
+        }
+
+        public ListenableFuture<?> whenSetBuilt()
+        {
+            return setBuilt;
+        }
+
         void setChannelSet(ChannelSet channelSet)
         {
             boolean wasSet = channelSetFuture.set(requireNonNull(channelSet, "channelSet is null"));
             checkState(wasSet, "ChannelSet already set");
         }
+
+        void setSpilledChannelSet(SpilledChannelSet spilledChannelSet)
+        {
+            boolean wasSet = spilledChannelSetFuture.set(requireNonNull(spilledChannelSet, "spilledChannelSet is null"));
+            checkState(wasSet, "SpilledChannelSet already set");
+        }
     }
 
     public static class SetBuilderOperatorFactory
@@ -74,6 +110,8 @@ public class SetBuilderOperator
         private final int expectedPositions;
         private boolean closed;
         private final JoinCompiler joinCompiler;
+        private final boolean spillEnabled;
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
 
         public SetBuilderOperatorFactory(
                 int operatorId,
@@ -83,6 +121,20 @@ public class SetBuilderOperator
                 Optional<Integer> hashChannel,
                 int expectedPositions,
                 JoinCompiler joinCompiler)
+        {
+            this(operatorId, planNodeId, type, setChannel, hashChannel, expectedPositions, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+        }
+
+        public SetBuilderOperatorFactory(
+                int operatorId,
+                PlanNodeId planNodeId,
+                Type type,
+                int setChannel,
+                Optional<Integer> hashChannel,
+                int expectedPositions,
+                JoinCompiler joinCompiler,
+                boolean spillEnabled,
+                PartitioningSpillerFactory partitioningSpillerFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -92,6 +144,8 @@ public class SetBuilderOperator
             this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
             this.expectedPositions = expectedPositions;
             this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+            this.spillEnabled = spillEnabled;
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
         }
 
         public SetSupplier getSetProvider()
@@ -104,7 +158,7 @@ public class SetBuilderOperator
         {
             checkState(!closed, "Factory is already closed");
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId, SetBuilderOperator.class.getSimpleName());
-            return new SetBuilderOperator(operatorContext, setProvider, setChannel, hashChannel, expectedPositions, joinCompiler);
+            return new SetBuilderOperator(operatorContext, setProvider, setChannel, hashChannel, expectedPositions, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
 
         @Override
@@ -116,7 +170,7 @@ public class SetBuilderOperator
         @Override
         public OperatorFactory duplicate()
         {
-            return new SetBuilderOperatorFactory(operatorId, planNodeId, setProvider.getType(), setChannel, hashChannel, expectedPositions, joinCompiler);
+            return new SetBuilderOperatorFactory(operatorId, planNodeId, setProvider.getType(), setChannel, hashChannel, expectedPositions, joinCompiler, spillEnabled, partitioningSpillerFactory);
         }
     }
 
@@ -124,14 +178,35 @@ public class SetBuilderOperator
     private final SetSupplier setSupplier;
     private final int setChannel;
     private final Optional<Integer> hashChannel;
+    private final Optional<Integer> channelSetHashChannel;
+    private final int expectedPositions;
+    private final JoinCompiler joinCompiler;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
+    private final LocalMemoryContext localUserMemoryContext;
+    private final LocalMemoryContext localRevocableMemoryContext;
 
-    private final ChannelSetBuilder channelSetBuilder;
+    @Nullable
+    private ChannelSetBuilder channelSetBuilder;
 
     private boolean finished;
 
     @Nullable
     private Work<?> unfinishedWork;  // The pending work for current page.
 
+    // the values are revocable until they are spilled, after which all remaining input is spilled as well
+    private boolean memoryRevocable;
+    private Optional<PartitioningSpiller> spiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = immediateFuture(null);
+    private Runnable finishMemoryRevoke = () -> {};
+    private boolean empty = true;
+    private boolean containsNull;
+
+    // once all input is spilled, the partitions of the set are loaded one at a time for the probe operators
+    private Optional<SpilledChannelSet> spilledChannelSet = Optional.empty();
+    private int unspillingPartition;
+    @Nullable
+    private Iterator<Page> unspilledValues;
+
     public SetBuilderOperator(
             OperatorContext operatorContext,
             SetSupplier setSupplier,
@@ -139,6 +214,19 @@ public class SetBuilderOperator
             Optional<Integer> hashChannel,
             int expectedPositions,
             JoinCompiler joinCompiler)
+    {
+        this(operatorContext, setSupplier, setChannel, hashChannel, expectedPositions, joinCompiler, false, unsupportedPartitioningSpillerFactory());
+    }
+
+    public SetBuilderOperator(
+            OperatorContext operatorContext,
+            SetSupplier setSupplier,
+            int setChannel,
+            Optional<Integer> hashChannel,
+            int expectedPositions,
+            JoinCompiler joinCompiler,
+            boolean spillEnabled,
+            PartitioningSpillerFactory partitioningSpillerFactory)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.setSupplier = requireNonNull(setSupplier, "setProvider is null");
@@ -146,13 +234,25 @@ public class SetBuilderOperator
 
         this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
         // Set builder is has a single channel which goes in channel 0, if hash is present, add a hachBlock to channel 1
-        Optional<Integer> channelSetHashChannel = hashChannel.isPresent() ? Optional.of(1) : Optional.empty();
-        this.channelSetBuilder = new ChannelSetBuilder(
+        this.channelSetHashChannel = hashChannel.isPresent() ? Optional.of(1) : Optional.empty();
+        this.expectedPositions = expectedPositions;
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+        this.memoryRevocable = spillEnabled;
+        this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.localRevocableMemoryContext = operatorContext.localRevocableMemoryContext();
+        this.channelSetBuilder = createChannelSetBuilder(memoryRevocable ? localRevocableMemoryContext : localUserMemoryContext);
+    }
+
+    private ChannelSetBuilder createChannelSetBuilder(LocalMemoryContext localMemoryContext)
+    {
+        return new ChannelSetBuilder(
                 setSupplier.getType(),
                 channelSetHashChannel,
                 expectedPositions,
-                requireNonNull(operatorContext, "operatorContext is null"),
-                requireNonNull(joinCompiler, "joinCompiler is null"));
+                operatorContext,
+                joinCompiler,
+                localMemoryContext);
     }
 
     @Override
@@ -164,9 +264,29 @@ public class SetBuilderOperator
     @Override
     public void finish()
     {
-        if (finished) {
+        if (finished || !spillInProgress.isDone()) {
             return;
         }
+        checkSuccess(spillInProgress, "spilling failed");
+        // finish a spill which has already completed
+        finishMemoryRevoke();
+
+        if (spiller.isPresent()) {
+            if (!spilledChannelSet.isPresent()) {
+                spilledChannelSet = Optional.of(new SpilledChannelSet(empty, containsNull));
+                setSupplier.setSpilledChannelSet(spilledChannelSet.get());
+            }
+            unspillRequestedPartitions();
+            return;
+        }
+
+        if (memoryRevocable) {
+            // the set is kept in memory until it is probed, so its memory can no longer be revoked
+            memoryRevocable = false;
+            long revocableBytes = localRevocableMemoryContext.getBytes();
+            localRevocableMemoryContext.setBytes(0);
+            localUserMemoryContext.setBytes(revocableBytes);
+        }
 
         ChannelSet channelSet = channelSetBuilder.build();
         setSupplier.setChannelSet(channelSet);
@@ -174,19 +294,79 @@ public class SetBuilderOperator
         finished = true;
     }
 
+    private void unspillRequestedPartitions()
+    {
+        SpilledChannelSet spilledSet = spilledChannelSet.get();
+        while (unspillingPartition < SPILL_PARTITION_COUNT) {
+            if (unspilledValues == null) {
+                if (channelSetBuilder != null) {
+                    // the set of the partition is kept in memory until all probe operators have released it
+                    if (!spilledSet.getPartitionReleased(unspillingPartition).isDone()) {
+                        return;
+                    }
+                    channelSetBuilder = null;
+                    localUserMemoryContext.setBytes(0);
+                    unspillingPartition++;
+                    continue;
+                }
+                if (!spilledSet.getPartitionRequested(unspillingPartition).isDone()) {
+                    return;
+                }
+                channelSetBuilder = createChannelSetBuilder(localUserMemoryContext);
+                unspilledValues = spiller.get().getSpilledPages(unspillingPartition);
+            }
+
+            if (unfinishedWork != null && !processUnfinishedWork()) {
+                return;
+            }
+            while (unspilledValues.hasNext()) {
+                unfinishedWork = channelSetBuilder.addPage(unspilledValues.next());
+                if (!processUnfinishedWork()) {
+                    return;
+                }
+            }
+            unspilledValues = null;
+
+            ChannelSet channelSet = channelSetBuilder.build();
+            spilledSet.setPartition(unspillingPartition, channelSet);
+            operatorContext.recordOutput(channelSet.getEstimatedSizeInBytes(), channelSet.size());
+        }
+
+        // all partitions have been probed
+        spiller.get().verifyAllPartitionsRead();
+        finished = true;
+    }
+
     @Override
     public boolean isFinished()
     {
         return finished;
     }
 
+    @Override
+    public ListenableFuture<?> isBlocked()
+    {
+        // we can block because of self-triggered spill
+        if (!spillInProgress.isDone()) {
+            return spillInProgress;
+        }
+        if (spilledChannelSet.isPresent() && !finished && unspilledValues == null) {
+            // wait for the probe operators to request the next partition, or to release the current one
+            if (channelSetBuilder == null) {
+                return spilledChannelSet.get().getPartitionRequested(unspillingPartition);
+            }
+            return spilledChannelSet.get().getPartitionReleased(unspillingPartition);
+        }
+        return NOT_BLOCKED;
+    }
+
     @Override
     public boolean needsInput()
     {
         // Since SetBuilderOperator doesn't produce any output, the getOutput()
         // method may never be called. We need to handle any unfinished work
         // before addInput() can be called again.
-        return !finished && (unfinishedWork == null || processUnfinishedWork());
+        return !finished && !spilledChannelSet.isPresent() && (unfinishedWork == null || processUnfinishedWork());
     }
 
     @Override
@@ -194,20 +374,84 @@ public class SetBuilderOperator
     {
         requireNonNull(page, "page is null");
         checkState(!isFinished(), "Operator is already finished");
+        checkSuccess(spillInProgress, "spilling failed");
 
         Block sourceBlock = page.getBlock(setChannel);
         Page sourcePage = hashChannel.isPresent() ? new Page(sourceBlock, page.getBlock(hashChannel.get())) : new Page(sourceBlock);
 
+        if (spiller.isPresent()) {
+            // the values are added to the set of their partition when it is loaded
+            updateSpilledValues(sourceBlock);
+            spillInProgress = spiller.get().partitionAndSpill(sourcePage, partition -> true).getSpillingFuture();
+            return;
+        }
+
         unfinishedWork = channelSetBuilder.addPage(sourcePage);
         processUnfinishedWork();
     }
 
+    private void updateSpilledValues(Block values)
+    {
+        if (values.getPositionCount() > 0) {
+            empty = false;
+        }
+        for (int position = 0; !containsNull && values.mayHaveNull() && position < values.getPositionCount(); position++) {
+            containsNull = values.isNull(position);
+        }
+    }
+
     @Override
     public Page getOutput()
     {
         return null;
     }
 
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (!memoryRevocable || finished || unfinishedWork != null || localRevocableMemoryContext.getBytes() == 0) {
+            // the values of a partially processed page cannot be spilled
+            finishMemoryRevoke = () -> {};
+            return immediateFuture(null);
+        }
+
+        empty = channelSetBuilder.size() == 0;
+        containsNull = channelSetBuilder.containsNull();
+        spiller = Optional.of(partitioningSpillerFactory.create(
+                channelSetBuilder.getTypes(),
+                createPartitionFunction(setSupplier.getType(), 0),
+                operatorContext.getSpillContext().newLocalSpillContext(),
+                operatorContext.newAggregateSystemMemoryContext()));
+
+        // the probe side is spilled to the same partitions, which are then probed one at a time
+        spillInProgress = spillPages(spiller.get(), channelSetBuilder.getValues());
+        finishMemoryRevoke = () -> {
+            memoryRevocable = false;
+            channelSetBuilder = null;
+            localRevocableMemoryContext.setBytes(0);
+        };
+        return spillInProgress;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        finishMemoryRevoke.run();
+        finishMemoryRevoke = () -> {};
+    }
+
+    private static ListenableFuture<?> spillPages(PartitioningSpiller spiller, Iterator<Page> pages)
+    {
+        while (pages.hasNext()) {
+            ListenableFuture<?> spillingFuture = spiller.partitionAndSpill(pages.next(), partition -> true).getSpillingFuture();
+            if (!spillingFuture.isDone()) {
+                return Futures.transformAsync(spillingFuture, ignored -> spillPages(spiller, pages), directExecutor());
+            }
+            checkSuccess(spillingFuture, "spilling failed");
+        }
+        return immediateFuture(null);
+    }
+
     private boolean processUnfinishedWork()
     {
         // Processes the unfinishedWork for this page by adding the data to the hash table. If this page
@@ -227,4 +471,17 @@ public class SetBuilderOperator
     {
         return channelSetBuilder.getCapacity();
     }
+
+    @Override
+    public void close()
+    {
+        spiller.ifPresent(partitioningSpiller -> {
+            try {
+                partitioningSpiller.close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import io.airlift.slice.XxHash64;
+import io.prestosql.operator.exchange.LocalPartitionGenerator;
+import io.prestosql.spi.Page;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Assigns rows to spill partitions by the hash of their grouping channels.
+ * <p>
+ * The input of an operator usually comes from a single partition of a local exchange, which is chosen by
+ * the low bits of the same hash in {@link LocalPartitionGenerator}, so the spill partition is taken from
+ * the high bits to spread the rows over all spill partitions.
+ * <p>
+ * A spill partition which is too large can be split again with a function of the next level, which
+ * takes the partition from the following bits of the hash.
+ */
+public class SpillPartitionFunction
+        implements PartitionFunction
+{
+    private final HashGenerator hashGenerator;
+    private final int partitionCount;
+    private final int hashMask;
+    private final int hashShift;
+
+    public SpillPartitionFunction(HashGenerator hashGenerator, int partitionCount)
+    {
+        this(hashGenerator, partitionCount, 0);
+    }
+
+    public SpillPartitionFunction(HashGenerator hashGenerator, int partitionCount, int level)
+    {
+        this.hashGenerator = requireNonNull(hashGenerator, "hashGenerator is null");
+        checkArgument(Integer.bitCount(partitionCount) == 1, "partitionCount must be a power of 2");
+        checkArgument(level >= 0, "level is negative");
+        int partitionBits = Integer.numberOfTrailingZeros(partitionCount);
+        this.partitionCount = partitionCount;
+        this.hashMask = partitionCount - 1;
+        this.hashShift = Integer.SIZE + level * partitionBits;
+        checkArgument(hashShift + partitionBits <= Long.SIZE, "Level %s is too high for %s partitions", level, partitionCount);
+    }
+
+    @Override
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    @Override
+    public int getPartition(Page page, int position)
+    {
+        long rawHash = hashGenerator.hashPosition(position, page);
+        return (int) (XxHash64.hash(Long.reverse(rawHash)) >>> hashShift) & hashMask;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.prestosql.spi.type.Type;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A semi join set which was spilled by {@link SetBuilderOperator}, partitioned by the hash of the values.
+ * <p>
+ * The probe operators spill their input to the same partitions. Once all of them have finished their
+ * input, the partitions are probed one at a time: the set builder loads the values of a partition into
+ * memory when the probe operators request it, and drops them once all probe operators have released it.
+ */
+@ThreadSafe
+public final class SpilledChannelSet
+{
+    // the set is spilled to this many partitions, each of which is later loaded into memory on its own
+    static final int SPILL_PARTITION_COUNT = 16;
+
+    private final boolean empty;
+    private final boolean containsNull;
+
+    private final List<SettableFuture<?>> partitionsRequested;
+    @GuardedBy("this")
+    private final List<SettableFuture<ChannelSet>> partitions;
+    private final List<SettableFuture<?>> partitionsReleased;
+
+    @GuardedBy("this")
+    private int finishedProbeOperators;
+    private final SettableFuture<PartitionedConsumption<ChannelSet>> partitionedConsumption = SettableFuture.create();
+
+    SpilledChannelSet(boolean empty, boolean containsNull)
+    {
+        this.empty = empty;
+        this.containsNull = containsNull;
+
+        ImmutableList.Builder<SettableFuture<?>> partitionsRequested = ImmutableList.builder();
+        ImmutableList.Builder<SettableFuture<?>> partitionsReleased = ImmutableList.builder();
+        this.partitions = new ArrayList<>(SPILL_PARTITION_COUNT);
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            partitionsRequested.add(SettableFuture.create());
+            partitions.add(SettableFuture.create());
+            partitionsReleased.add(SettableFuture.create());
+        }
+        this.partitionsRequested = partitionsRequested.build();
+        this.partitionsReleased = partitionsReleased.build();
+    }
+
+    /**
+     * Returns the function which assigns the rows of a page to the partitions of the set by the value in the given channel.
+     */
+    static PartitionFunction createPartitionFunction(Type type, int channel)
+    {
+        // the values are hashed directly, so that the partitions do not depend on the precomputed hash channels of the set and the probe side
+        return new SpillPartitionFunction(new InterpretedHashGenerator(ImmutableList.of(type), new int[] {channel}), SPILL_PARTITION_COUNT);
+    }
+
+    /**
+     * Returns whether the whole set is empty, as the partitions of a non empty set can be empty.
+     */
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    /**
+     * Returns whether the whole set contains null, as the null value is in one of its partitions only.
+     */
+    public boolean containsNull()
+    {
+        return containsNull;
+    }
+
+    /**
+     * Called by each probe operator once its input has been spilled. The returned partitions can be probed
+     * once all probe operators have finished their input.
+     */
+    public synchronized ListenableFuture<PartitionedConsumption<ChannelSet>> finishProbeOperator(OptionalInt probeOperatorsCount)
+    {
+        int operatorsCount = probeOperatorsCount
+                .orElseThrow(() -> new IllegalStateException("A fixed distribution is required for SEMI JOIN when spilling is enabled"));
+        checkState(finishedProbeOperators < operatorsCount, "%s probe operators finished out of %s declared", finishedProbeOperators + 1, operatorsCount);
+
+        finishedProbeOperators++;
+        if (finishedProbeOperators == operatorsCount) {
+            partitionedConsumption.set(new PartitionedConsumption<>(
+                    operatorsCount,
+                    IntStream.range(0, SPILL_PARTITION_COUNT).boxed().collect(toImmutableList()),
+                    this::loadPartition,
+                    this::releasePartition));
+        }
+        return partitionedConsumption;
+    }
+
+    private synchronized ListenableFuture<ChannelSet> loadPartition(int partition)
+    {
+        partitionsRequested.get(partition).set(null);
+        return partitions.get(partition);
+    }
+
+    private synchronized void releasePartition(int partition)
+    {
+        // let the memory go
+        partitions.set(partition, null);
+        partitionsReleased.get(partition).set(null);
+    }
+
+    ListenableFuture<?> getPartitionRequested(int partition)
+    {
+        return partitionsRequested.get(partition);
+    }
+
+    synchronized void setPartition(int partition, ChannelSet channelSet)
+    {
+        requireNonNull(channelSet, "channelSet is null");
+        checkState(partitionsRequested.get(partition).isDone(), "Partition %s was not requested", partition);
+        boolean wasSet = partitions.get(partition).set(channelSet);
+        checkState(wasSet, "Partition %s already set", partition);
+    }
+
+    ListenableFuture<?> getPartitionReleased(int partition)
+    {
+        return partitionsReleased.get(partition);
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.InputStreamSliceInput;
+import io.airlift.slice.SliceInput;
+import io.airlift.units.DataSize;
+import io.prestosql.execution.TaskId;
+import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.execution.buffer.SerializedPage;
+import io.prestosql.execution.buffer.SpoolingManifest;
+import io.prestosql.spi.exchange.ExchangeStorage;
+import org.joda.time.DateTime;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.prestosql.execution.buffer.PagesSerdeUtil.readSerializedPages;
+import static io.prestosql.execution.buffer.SpoolingOutputBuffer.getTaskDirectory;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Reads the pages of an output buffer from the output of the task committed to the {@link ExchangeStorage}.
+ * The task and the buffer are identified by the location of the buffer on the worker, but the worker
+ * itself is never contacted, so the pages can be read even if the worker failed after committing.
+ */
+@ThreadSafe
+public final class SpoolingPageBufferClient
+        implements PageBufferClient
+{
+    private static final long MIN_POLL_DELAY_MILLIS = 10;
+    private static final long MAX_POLL_DELAY_MILLIS = 1000;
+
+    private final ExchangeStorage exchangeStorage;
+    private final DataSize maxResponseSize;
+    private final URI location;
+    private final String taskDirectory;
+    private final OutputBufferId bufferId;
+    private final ClientCallback clientCallback;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    @GuardedBy("this")
+    private boolean closed;
+    @GuardedBy("this")
+    private boolean scheduled;
+    @GuardedBy("this")
+    private boolean reading;
+    @GuardedBy("this")
+    private boolean completed;
+    @GuardedBy("this")
+    private long pollDelayMillis;
+    @GuardedBy("this")
+    private DateTime lastUpdate = DateTime.now();
+    @GuardedBy("this")
+    private long rowsReceived;
+    @GuardedBy("this")
+    private int pagesReceived;
+    @GuardedBy("this")
+    private int requestsScheduled;
+    @GuardedBy("this")
+    private int requestsCompleted;
+    @GuardedBy("this")
+    private int requestsFailed;
+
+    // only accessed by the reading thread
+    private SpoolingManifest manifest;
+    private SliceInput input;
+    private Iterator<SerializedPage> pages;
+    private long pageIndex;
+
+    public SpoolingPageBufferClient(
+            ExchangeStorage exchangeStorage,
+            DataSize maxResponseSize,
+            URI location,
+            ClientCallback clientCallback,
+            ScheduledExecutorService scheduler,
+            Executor executor)
+    {
+        this.exchangeStorage = requireNonNull(exchangeStorage, "exchangeStorage is null");
+        this.maxResponseSize = requireNonNull(maxResponseSize, "maxResponseSize is null");
+        this.location = requireNonNull(location, "location is null");
+        this.clientCallback = requireNonNull(clientCallback, "clientCallback is null");
+        this.scheduler = requireNonNull(scheduler, "scheduler is null");
+        this.executor = requireNonNull(executor, "executor is null");
+
+        // the location of a buffer is .../v1/task/{taskId}/results/{bufferId}
+        String[] path = location.getPath().split("/");
+        checkArgument(path.length >= 3 && path[path.length - 2].equals("results"), "Invalid output buffer location: %s", location);
+        this.taskDirectory = getTaskDirectory(TaskId.valueOf(path[path.length - 3]));
+        this.bufferId = OutputBufferId.fromString(path[path.length - 1]);
+    }
+
+    @Override
+    public synchronized PageBufferClientStatus getStatus()
+    {
+        String state;
+        if (closed) {
+            state = "closed";
+        }
+        else if (reading) {
+            state = "running";
+        }
+        else if (scheduled) {
+            state = "scheduled";
+        }
+        else if (completed) {
+            state = "completed";
+        }
+        else {
+            state = "queued";
+        }
+
+        return new PageBufferClientStatus(
+                location,
+                state,
+                lastUpdate,
+                rowsReceived,
+                pagesReceived,
+                OptionalLong.empty(),
+                OptionalInt.empty(),
+                requestsScheduled,
+                requestsCompleted,
+                requestsFailed,
+                reading ? "reading" : "not scheduled");
+    }
+
+    @Override
+    public synchronized void scheduleRequest()
+    {
+        if (closed || completed || scheduled) {
+            return;
+        }
+        scheduled = true;
+        requestsScheduled++;
+        lastUpdate = DateTime.now();
+
+        // wait before polling the storage again for the output of a task which has not been committed yet
+        scheduler.schedule(() -> executor.execute(this::readPages), pollDelayMillis, MILLISECONDS);
+    }
+
+    @Override
+    public void close()
+    {
+        SliceInput input;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lastUpdate = DateTime.now();
+            input = reading ? null : this.input;
+        }
+        // if the pages are being read, the reading thread closes the input
+        if (input != null) {
+            input.close();
+        }
+    }
+
+    private void readPages()
+    {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            reading = true;
+        }
+
+        List<SerializedPage> result;
+        boolean finished;
+        try {
+            if (pages == null && !openBuffer()) {
+                synchronized (this) {
+                    pollDelayMillis = Math.min(Math.max(pollDelayMillis * 2, MIN_POLL_DELAY_MILLIS), MAX_POLL_DELAY_MILLIS);
+                }
+                requestComplete(ImmutableList.of(), false);
+                return;
+            }
+
+            ImmutableList.Builder<SerializedPage> selectedPages = ImmutableList.builder();
+            long bytes = 0;
+            while (bytes < maxResponseSize.toBytes() && pages.hasNext()) {
+                SerializedPage page = pages.next();
+                if (manifest.isPageSelected(bufferId, pageIndex)) {
+                    selectedPages.add(page);
+                    bytes += page.getSizeInBytes();
+                }
+                pageIndex++;
+            }
+            result = selectedPages.build();
+            finished = !pages.hasNext();
+            if (finished) {
+                input.close();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                requestsFailed++;
+                scheduled = false;
+                reading = false;
+                lastUpdate = DateTime.now();
+                if (closed) {
+                    return;
+                }
+            }
+            clientCallback.clientFailed(this, new PageTransportErrorException(format("Error reading spooled output for %s", location), e));
+            return;
+        }
+        requestComplete(result, finished);
+    }
+
+    /**
+     * @return false if the output of the task has not been committed yet
+     */
+    private boolean openBuffer()
+            throws IOException
+    {
+        Optional<SpoolingManifest> committedManifest = SpoolingManifest.read(exchangeStorage, taskDirectory);
+        if (!committedManifest.isPresent()) {
+            return false;
+        }
+        manifest = committedManifest.get();
+
+        String fileName = manifest.getFileName(bufferId);
+        Optional<InputStream> dataInput = exchangeStorage.openFile(taskDirectory, fileName);
+        if (!dataInput.isPresent()) {
+            throw new IOException(format("File %s is missing in %s", fileName, taskDirectory));
+        }
+        input = new InputStreamSliceInput(dataInput.get());
+        pages = readSerializedPages(input);
+        return true;
+    }
+
+    private void requestComplete(List<SerializedPage> pages, boolean finished)
+    {
+        boolean closeInput;
+        synchronized (this) {
+            requestsCompleted++;
+            rowsReceived += pages.stream().mapToLong(SerializedPage::getPositionCount).sum();
+            pagesReceived += pages.size();
+            scheduled = false;
+            reading = false;
+            completed = finished;
+            lastUpdate = DateTime.now();
+            closeInput = closed && input != null;
+        }
+        if (closeInput) {
+            input.close();
+            return;
+        }
+
+        if (!pages.isEmpty() && !clientCallback.addPages(this, pages)) {
+            return;
+        }
+        if (finished) {
+            clientCallback.clientFinished(this);
+        }
+        else {
+            clientCallback.requestComplete(this);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("location", location)
+                .toString();
+    }
+}
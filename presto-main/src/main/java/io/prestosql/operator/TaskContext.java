@@ -15,6 +15,7 @@ package io.prestosql.operator;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.AtomicDouble;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -32,14 +33,17 @@ import io.prestosql.memory.QueryContext;
 import io.prestosql.memory.QueryContextVisitor;
 import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.memory.context.MemoryTrackingContext;
+import io.prestosql.spi.predicate.Domain;
 import org.joda.time.DateTime;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import java.util.List;
+import java.util.Map;
 import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
@@ -86,6 +90,11 @@ public class TaskContext
 
     private final List<PipelineContext> pipelineContexts = new CopyOnWriteArrayList<>();
 
+    // domains of the dynamic filters produced by this task, which are reported to the coordinator
+    private final Map<String, Domain> collectedDynamicFilterDomains = new ConcurrentHashMap<>();
+    // domains of the dynamic filters produced by other tasks of the query, as distributed by the coordinator
+    private final Map<String, Domain> dynamicFilterDomains = new ConcurrentHashMap<>();
+
     private final boolean perOperatorCpuTimerEnabled;
     private final boolean cpuTimerEnabled;
 
@@ -266,6 +275,36 @@ public class TaskContext
         completedDriverGroups.add(driverGroup);
     }
 
+    /**
+     * Returns the build-side domains of dynamic filters which were collected by this task
+     * and have no consumers within the task.
+     */
+    public Map<String, Domain> getCollectedDynamicFilterDomains()
+    {
+        return ImmutableMap.copyOf(collectedDynamicFilterDomains);
+    }
+
+    public void collectDynamicFilterDomains(Map<String, Domain> domains)
+    {
+        requireNonNull(domains, "domains is null");
+        collectedDynamicFilterDomains.putAll(domains);
+    }
+
+    /**
+     * Returns the domains of dynamic filters which were merged by the coordinator
+     * from the build-side domains collected by other tasks of the query.
+     */
+    public Map<String, Domain> getDynamicFilterDomains()
+    {
+        return ImmutableMap.copyOf(dynamicFilterDomains);
+    }
+
+    public void addDynamicFilterDomains(Map<String, Domain> domains)
+    {
+        requireNonNull(domains, "domains is null");
+        dynamicFilterDomains.putAll(domains);
+    }
+
     public List<PipelineContext> getPipelineContexts()
     {
         return pipelineContexts;
@@ -288,6 +327,11 @@ public class TaskContext
         return taskMemoryContext.localSystemMemoryContext();
     }
 
+    public LocalMemoryContext newUserMemoryContext(String allocationTag)
+    {
+        return taskMemoryContext.newUserMemoryContext(allocationTag);
+    }
+
     public void moreMemoryAvailable()
     {
         pipelineContexts.forEach(PipelineContext::moreMemoryAvailable);
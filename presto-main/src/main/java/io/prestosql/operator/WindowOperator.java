@@ -627,6 +627,12 @@ public class WindowOperator
 
         TransformationState<WorkProcessor<PagesIndexWithHashStrategies>> fullGroupBuffered()
         {
+            if (spiller.isPresent() && localRevocableMemoryContext.getBytes() > 0) {
+                // Spill the last run too, so that only the current partition of the merged runs has to be kept in memory
+                spillingWhenConvertingRevocableMemory = true;
+                return TransformationState.blocked(spill());
+            }
+
             // Convert revocable memory to user memory as inMemoryPagesIndexWithHashStrategies holds on to memory so we no longer can revoke
             if (localRevocableMemoryContext.getBytes() > 0) {
                 long currentRevocableBytes = localRevocableMemoryContext.getBytes();
@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import io.prestosql.spi.block.Block;
+
+/**
+ * Adds the input rows of a page to the inline aggregation states of a {@link FlatHashAggregationBuilder}.
+ * An implementation is specific to the layout of the rows, i.e. to the number of group by keys and to
+ * the list of aggregations, and holds no other state, so it can be shared by all operators with that layout.
+ */
+public interface FlatAccumulator
+{
+    /**
+     * Adds positions {@code [0, positionCount)} of the input blocks to the rows of their groups.
+     *
+     * @param segments the rows of the groups
+     * @param groupIds the group of each position
+     * @param inputBlocks the input block of each aggregation, or null for count(*)
+     */
+    void accumulate(long[][] segments, int[] groupIds, Block[] inputBlocks, int positionCount);
+}
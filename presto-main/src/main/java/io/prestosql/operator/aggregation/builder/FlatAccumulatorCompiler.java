@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import io.airlift.bytecode.BytecodeBlock;
+import io.airlift.bytecode.BytecodeNode;
+import io.airlift.bytecode.ClassDefinition;
+import io.airlift.bytecode.MethodDefinition;
+import io.airlift.bytecode.Parameter;
+import io.airlift.bytecode.Scope;
+import io.airlift.bytecode.Variable;
+import io.airlift.bytecode.control.ForLoop;
+import io.airlift.bytecode.control.IfStatement;
+import io.airlift.bytecode.expression.BytecodeExpression;
+import io.airlift.log.Logger;
+import io.prestosql.operator.aggregation.builder.FlatAggregation.Kind;
+import io.prestosql.spi.block.Block;
+import io.prestosql.sql.gen.CacheStatsMBean;
+import io.prestosql.sql.gen.CallSiteBinder;
+import io.prestosql.sql.planner.plan.AggregationNode.Step;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import java.util.List;
+import java.util.Objects;
+
+import static io.airlift.bytecode.Access.FINAL;
+import static io.airlift.bytecode.Access.PUBLIC;
+import static io.airlift.bytecode.Access.a;
+import static io.airlift.bytecode.Parameter.arg;
+import static io.airlift.bytecode.ParameterizedType.type;
+import static io.airlift.bytecode.expression.BytecodeExpressions.add;
+import static io.airlift.bytecode.expression.BytecodeExpressions.bitwiseAnd;
+import static io.airlift.bytecode.expression.BytecodeExpressions.constantInt;
+import static io.airlift.bytecode.expression.BytecodeExpressions.constantLong;
+import static io.airlift.bytecode.expression.BytecodeExpressions.invokeStatic;
+import static io.airlift.bytecode.expression.BytecodeExpressions.lessThan;
+import static io.airlift.bytecode.expression.BytecodeExpressions.multiply;
+import static io.airlift.bytecode.expression.BytecodeExpressions.not;
+import static io.airlift.bytecode.expression.BytecodeExpressions.shiftRight;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.FLAGS_OFFSET;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.SEGMENT_MASK;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.SEGMENT_SHIFT;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getHasValueFlag;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getRowSize;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getStateOffsets;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static io.prestosql.util.CompilerUtils.defineClass;
+import static io.prestosql.util.CompilerUtils.makeClassName;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Generates a {@link FlatAccumulator} which updates all aggregations of a row layout in one loop over
+ * the positions of a page. The offsets of the states and flags are constants of the generated code and
+ * every aggregation is a straight line call of its update function, so unlike {@link InterpretedFlatAccumulator}
+ * there is no dispatch on the kind of the aggregation for each position.
+ */
+public class FlatAccumulatorCompiler
+{
+    private static final Logger log = Logger.get(FlatAccumulatorCompiler.class);
+
+    private final LoadingCache<FlatAccumulatorCacheKey, FlatAccumulator> flatAccumulators = CacheBuilder.newBuilder()
+            .recordStats()
+            .maximumSize(1000)
+            .build(CacheLoader.from(key -> internalCompileFlatAccumulator(key.getKeyCount(), key.getAggregations(), key.isInputRaw())));
+
+    @Managed
+    @Nested
+    public CacheStatsMBean getFlatAccumulatorsStats()
+    {
+        return new CacheStatsMBean(flatAccumulators);
+    }
+
+    public FlatAccumulator compileFlatAccumulator(int keyCount, List<FlatAggregation> aggregations, Step step)
+    {
+        requireNonNull(aggregations, "aggregations is null");
+        requireNonNull(step, "step is null");
+
+        return flatAccumulators.getUnchecked(new FlatAccumulatorCacheKey(keyCount, aggregations, step.isInputRaw()));
+    }
+
+    @VisibleForTesting
+    public FlatAccumulator internalCompileFlatAccumulator(int keyCount, List<FlatAggregation> aggregations, boolean inputRaw)
+    {
+        try {
+            return compileFlatAccumulatorClass(keyCount, aggregations, inputRaw).getConstructor().newInstance();
+        }
+        catch (Throwable e) {
+            log.error(e, "Error compiling accumulator for aggregations %s", aggregations);
+            return new InterpretedFlatAccumulator(keyCount, aggregations, inputRaw);
+        }
+    }
+
+    private Class<? extends FlatAccumulator> compileFlatAccumulatorClass(int keyCount, List<FlatAggregation> aggregations, boolean inputRaw)
+    {
+        CallSiteBinder callSiteBinder = new CallSiteBinder();
+
+        ClassDefinition classDefinition = new ClassDefinition(
+                a(PUBLIC, FINAL),
+                makeClassName("FlatAccumulator"),
+                type(Object.class),
+                type(FlatAccumulator.class));
+
+        classDefinition.declareDefaultConstructor(a(PUBLIC));
+        generateAccumulate(classDefinition, keyCount, aggregations, inputRaw);
+
+        return defineClass(classDefinition, FlatAccumulator.class, callSiteBinder.getBindings(), getClass().getClassLoader());
+    }
+
+    private static void generateAccumulate(ClassDefinition classDefinition, int keyCount, List<FlatAggregation> aggregations, boolean inputRaw)
+    {
+        Parameter segments = arg("segments", long[][].class);
+        Parameter groupIds = arg("groupIds", int[].class);
+        Parameter inputBlocks = arg("inputBlocks", Block[].class);
+        Parameter positionCount = arg("positionCount", int.class);
+        MethodDefinition method = classDefinition.declareMethod(a(PUBLIC), "accumulate", type(void.class), segments, groupIds, inputBlocks, positionCount);
+        Scope scope = method.getScope();
+        BytecodeBlock body = method.getBody();
+
+        Variable position = scope.declareVariable(int.class, "position");
+        Variable groupId = scope.declareVariable(int.class, "groupId");
+        Variable segment = scope.declareVariable(long[].class, "segment");
+        Variable offset = scope.declareVariable(int.class, "offset");
+
+        int rowSize = getRowSize(keyCount, aggregations);
+        BytecodeBlock loopBody = new BytecodeBlock()
+                .append(groupId.set(groupIds.getElement(position)))
+                .append(segment.set(segments.getElement(shiftRight(groupId, constantInt(SEGMENT_SHIFT)))))
+                .append(offset.set(multiply(bitwiseAnd(groupId, constantInt(SEGMENT_MASK)), constantInt(rowSize))));
+
+        int[] stateOffsets = getStateOffsets(keyCount, aggregations);
+        for (int i = 0; i < aggregations.size(); i++) {
+            FlatAggregation aggregation = aggregations.get(i);
+            BytecodeExpression stateIndex = add(offset, constantInt(stateOffsets[i]));
+            if (!aggregation.getInputChannel().isPresent()) {
+                loopBody.append(invokeStatic(FlatAccumulatorFunctions.class, "count", void.class, segment, stateIndex));
+                continue;
+            }
+
+            Variable block = scope.declareVariable(Block.class, "block" + i);
+            body.append(block.set(inputBlocks.getElement(constantInt(i))));
+            loopBody.append(new IfStatement()
+                    .condition(not(block.invoke("isNull", boolean.class, position)))
+                    .ifTrue(generateUpdate(aggregation, inputRaw, segment, stateIndex, add(offset, constantInt(FLAGS_OFFSET)), getHasValueFlag(keyCount, i), block, position)));
+        }
+
+        body.append(new ForLoop()
+                .initialize(position.set(constantInt(0)))
+                .condition(lessThan(position, positionCount))
+                .update(position.increment())
+                .body(loopBody));
+        body.ret();
+    }
+
+    private static BytecodeNode generateUpdate(
+            FlatAggregation aggregation,
+            boolean inputRaw,
+            Variable segment,
+            BytecodeExpression stateIndex,
+            BytecodeExpression flagsIndex,
+            long hasValueFlag,
+            Variable block,
+            Variable position)
+    {
+        Kind kind = aggregation.getKind();
+        if (kind == Kind.COUNT && inputRaw) {
+            // the counted values can be of any type
+            return invokeStatic(FlatAccumulatorFunctions.class, "count", void.class, segment, stateIndex);
+        }
+
+        // bigint and double blocks both store the raw bits of the value as a long
+        BytecodeExpression value = block.invoke("getLong", long.class, position, constantInt(0));
+        String valueSuffix = aggregation.getValueType().equals(DOUBLE) ? "Double" : "Bigint";
+        switch (kind) {
+            case COUNT:
+                // the intermediate state of a count is the count itself
+                return invokeStatic(FlatAccumulatorFunctions.class, "addCount", void.class, segment, stateIndex, value);
+            case SUM:
+                return invokeStatic(FlatAccumulatorFunctions.class, "sum" + valueSuffix, void.class, segment, stateIndex, flagsIndex, constantLong(hasValueFlag), value);
+            case MIN:
+                return invokeStatic(FlatAccumulatorFunctions.class, "min" + valueSuffix, void.class, segment, stateIndex, flagsIndex, constantLong(hasValueFlag), value);
+            case MAX:
+                return invokeStatic(FlatAccumulatorFunctions.class, "max" + valueSuffix, void.class, segment, stateIndex, flagsIndex, constantLong(hasValueFlag), value);
+            case AVERAGE:
+                return invokeStatic(FlatAccumulatorFunctions.class, "average" + valueSuffix, void.class, segment, stateIndex, value);
+            default:
+                throw new UnsupportedOperationException("Unsupported aggregation: " + kind);
+        }
+    }
+
+    private static final class FlatAccumulatorCacheKey
+    {
+        private final int keyCount;
+        private final List<FlatAggregation> aggregations;
+        private final boolean inputRaw;
+
+        private FlatAccumulatorCacheKey(int keyCount, List<FlatAggregation> aggregations, boolean inputRaw)
+        {
+            this.keyCount = keyCount;
+            this.aggregations = ImmutableList.copyOf(aggregations);
+            this.inputRaw = inputRaw;
+        }
+
+        public int getKeyCount()
+        {
+            return keyCount;
+        }
+
+        public List<FlatAggregation> getAggregations()
+        {
+            return aggregations;
+        }
+
+        public boolean isInputRaw()
+        {
+            return inputRaw;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(keyCount, aggregations, inputRaw);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            FlatAccumulatorCacheKey other = (FlatAccumulatorCacheKey) obj;
+            return this.keyCount == other.keyCount &&
+                    Objects.equals(this.aggregations, other.aggregations) &&
+                    this.inputRaw == other.inputRaw;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import static io.prestosql.type.BigintOperators.add;
+import static java.lang.Double.doubleToLongBits;
+import static java.lang.Double.longBitsToDouble;
+
+/**
+ * Updates of a single inline aggregation state, used by {@link InterpretedFlatAccumulator} and by the
+ * accumulators generated by {@link FlatAccumulatorCompiler}. Values are passed as the long which the
+ * bigint or double block stores. The methods are public, so the generated classes can call them.
+ */
+public final class FlatAccumulatorFunctions
+{
+    private FlatAccumulatorFunctions() {}
+
+    public static void count(long[] segment, int stateIndex)
+    {
+        segment[stateIndex]++;
+    }
+
+    public static void addCount(long[] segment, int stateIndex, long count)
+    {
+        segment[stateIndex] += count;
+    }
+
+    public static void sumBigint(long[] segment, int stateIndex, int flagsIndex, long hasValueFlag, long value)
+    {
+        segment[stateIndex] = add(segment[stateIndex], value);
+        segment[flagsIndex] |= hasValueFlag;
+    }
+
+    public static void sumDouble(long[] segment, int stateIndex, int flagsIndex, long hasValueFlag, long value)
+    {
+        segment[stateIndex] = doubleToLongBits(longBitsToDouble(segment[stateIndex]) + longBitsToDouble(value));
+        segment[flagsIndex] |= hasValueFlag;
+    }
+
+    public static void minBigint(long[] segment, int stateIndex, int flagsIndex, long hasValueFlag, long value)
+    {
+        if ((segment[flagsIndex] & hasValueFlag) == 0 || value < segment[stateIndex]) {
+            segment[stateIndex] = value;
+        }
+        segment[flagsIndex] |= hasValueFlag;
+    }
+
+    public static void minDouble(long[] segment, int stateIndex, int flagsIndex, long hasValueFlag, long value)
+    {
+        if ((segment[flagsIndex] & hasValueFlag) == 0 || longBitsToDouble(value) < longBitsToDouble(segment[stateIndex])) {
+            segment[stateIndex] = value;
+        }
+        segment[flagsIndex] |= hasValueFlag;
+    }
+
+    public static void maxBigint(long[] segment, int stateIndex, int flagsIndex, long hasValueFlag, long value)
+    {
+        if ((segment[flagsIndex] & hasValueFlag) == 0 || value > segment[stateIndex]) {
+            segment[stateIndex] = value;
+        }
+        segment[flagsIndex] |= hasValueFlag;
+    }
+
+    public static void maxDouble(long[] segment, int stateIndex, int flagsIndex, long hasValueFlag, long value)
+    {
+        if ((segment[flagsIndex] & hasValueFlag) == 0 || longBitsToDouble(value) > longBitsToDouble(segment[stateIndex])) {
+            segment[stateIndex] = value;
+        }
+        segment[flagsIndex] |= hasValueFlag;
+    }
+
+    /**
+     * The state of an average is the sum of the values as a double, followed by their count.
+     */
+    public static void averageBigint(long[] segment, int stateIndex, long value)
+    {
+        segment[stateIndex] = doubleToLongBits(longBitsToDouble(segment[stateIndex]) + value);
+        segment[stateIndex + 1]++;
+    }
+
+    public static void averageDouble(long[] segment, int stateIndex, long value)
+    {
+        segment[stateIndex] = doubleToLongBits(longBitsToDouble(segment[stateIndex]) + longBitsToDouble(value));
+        segment[stateIndex + 1]++;
+    }
+}
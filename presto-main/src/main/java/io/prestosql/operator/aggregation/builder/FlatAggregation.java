@@ -0,0 +1,175 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import io.prestosql.operator.aggregation.InternalAggregationFunction;
+import io.prestosql.spi.type.Type;
+import io.prestosql.sql.planner.plan.AggregationNode.Step;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An aggregation with a fixed size state, which {@link FlatHashAggregationBuilder} can keep
+ * inline in the rows of its hash table instead of in a separate grouped accumulator.
+ */
+public final class FlatAggregation
+{
+    public enum Kind
+    {
+        COUNT,
+        SUM,
+        MIN,
+        MAX,
+        AVERAGE,
+    }
+
+    private final Kind kind;
+    private final Type valueType;
+    private final OptionalInt inputChannel;
+
+    public FlatAggregation(Kind kind, Type valueType, OptionalInt inputChannel)
+    {
+        this.kind = requireNonNull(kind, "kind is null");
+        this.valueType = requireNonNull(valueType, "valueType is null");
+        this.inputChannel = requireNonNull(inputChannel, "inputChannel is null");
+    }
+
+    /**
+     * Returns the flat form of the aggregation, if it exists for the function and step. Only count, and
+     * sum, min, max and avg of bigint or double have one. When the step consumes or produces intermediate
+     * state, the intermediate type of the function must be the type of the flat state, so avg and
+     * sum of bigint only have a flat form in single step aggregations.
+     */
+    public static Optional<FlatAggregation> create(InternalAggregationFunction function, List<Integer> inputChannels, Step step)
+    {
+        requireNonNull(function, "function is null");
+        requireNonNull(inputChannels, "inputChannels is null");
+        requireNonNull(step, "step is null");
+
+        Kind kind;
+        Type valueType;
+        List<Type> parameterTypes = function.getParameterTypes();
+        switch (function.name()) {
+            case "count":
+                kind = Kind.COUNT;
+                valueType = BIGINT;
+                break;
+            case "sum":
+                kind = Kind.SUM;
+                valueType = getOnlyValueType(parameterTypes);
+                break;
+            case "min":
+                kind = Kind.MIN;
+                valueType = getOnlyValueType(parameterTypes);
+                break;
+            case "max":
+                kind = Kind.MAX;
+                valueType = getOnlyValueType(parameterTypes);
+                break;
+            case "avg":
+                kind = Kind.AVERAGE;
+                valueType = getOnlyValueType(parameterTypes);
+                break;
+            default:
+                return Optional.empty();
+        }
+        if (valueType == null || inputChannels.size() != (step.isInputRaw() ? parameterTypes.size() : 1)) {
+            return Optional.empty();
+        }
+        if ((!step.isInputRaw() || step.isOutputPartial()) && (kind == Kind.AVERAGE || !function.getIntermediateType().equals(valueType))) {
+            return Optional.empty();
+        }
+
+        OptionalInt inputChannel = inputChannels.isEmpty() ? OptionalInt.empty() : OptionalInt.of(inputChannels.get(0));
+        return Optional.of(new FlatAggregation(kind, valueType, inputChannel));
+    }
+
+    private static Type getOnlyValueType(List<Type> parameterTypes)
+    {
+        if (parameterTypes.size() != 1) {
+            return null;
+        }
+        Type type = parameterTypes.get(0);
+        if (!type.equals(BIGINT) && !type.equals(DOUBLE)) {
+            return null;
+        }
+        return type;
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    /**
+     * Type of the values which are summed or compared, which is bigint for a count.
+     */
+    public Type getValueType()
+    {
+        return valueType;
+    }
+
+    /**
+     * Channel of the aggregated values, or of the intermediate state when the input is not raw.
+     * Empty for count(*).
+     */
+    public OptionalInt getInputChannel()
+    {
+        return inputChannel;
+    }
+
+    public Type getOutputType()
+    {
+        return kind == Kind.AVERAGE ? DOUBLE : valueType;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FlatAggregation that = (FlatAggregation) o;
+        return kind == that.kind &&
+                valueType.equals(that.valueType) &&
+                inputChannel.equals(that.inputChannel);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(kind, valueType, inputChannel);
+    }
+
+    @Override
+    public String toString()
+    {
+        return toStringHelper(this)
+                .add("kind", kind)
+                .add("valueType", valueType)
+                .add("inputChannel", inputChannel)
+                .toString();
+    }
+}
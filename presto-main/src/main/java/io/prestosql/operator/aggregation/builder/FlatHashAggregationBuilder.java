@@ -0,0 +1,542 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.DataSize;
+import io.prestosql.operator.HashCollisionsCounter;
+import io.prestosql.operator.HashGenerator;
+import io.prestosql.operator.InterpretedHashGenerator;
+import io.prestosql.operator.UpdateMemory;
+import io.prestosql.operator.Work;
+import io.prestosql.operator.WorkProcessor;
+import io.prestosql.operator.WorkProcessor.ProcessState;
+import io.prestosql.operator.aggregation.builder.FlatAggregation.Kind;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PageBuilder;
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.type.Type;
+import io.prestosql.sql.planner.plan.AggregationNode.Step;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntIterators;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.slice.SizeOf.sizeOf;
+import static io.prestosql.spi.StandardErrorCode.GENERIC_INSUFFICIENT_RESOURCES;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.DateType.DATE;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static io.prestosql.spi.type.IntegerType.INTEGER;
+import static io.prestosql.spi.type.SmallintType.SMALLINT;
+import static io.prestosql.spi.type.TinyintType.TINYINT;
+import static io.prestosql.util.HashCollisionsEstimator.estimateNumberOfHashCollisions;
+import static it.unimi.dsi.fastutil.HashCommon.arraySize;
+import static it.unimi.dsi.fastutil.HashCommon.murmurHash3;
+import static java.lang.Double.longBitsToDouble;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hash aggregation which keeps each group in one fixed width row of longs: the raw hash, a word of
+ * flags, the group by keys and the states of the aggregations. Looking up the group of an input row
+ * and updating its aggregations touches a single row, instead of the group by hash and a separate
+ * big array for every accumulator.
+ * <p>
+ * Only group by keys of integral types and the aggregations described by {@link FlatAggregation}
+ * are supported. The flags word holds a null flag for each key and a "has value" flag for each
+ * aggregation, so there can be at most 64 of them together.
+ * <p>
+ * The groups of all rows of a page are looked up first, and then a {@link FlatAccumulator} updates
+ * the states of all aggregations in a single pass over the page. {@link FlatAccumulatorCompiler}
+ * generates one for the layout of the rows, so that pass has no per aggregation dispatch.
+ */
+public class FlatHashAggregationBuilder
+        implements HashAggregationBuilder
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(FlatHashAggregationBuilder.class).instanceSize();
+    private static final float FILL_RATIO = 0.75f;
+    private static final Set<Type> KEY_TYPES = ImmutableSet.of(BIGINT, INTEGER, SMALLINT, TINYINT, DATE);
+
+    // rows are allocated in segments, so growing the table never copies the rows
+    static final int SEGMENT_SHIFT = 10;
+    private static final int ROWS_PER_SEGMENT = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK = ROWS_PER_SEGMENT - 1;
+
+    private static final int HASH_OFFSET = 0;
+    static final int FLAGS_OFFSET = 1;
+    private static final int KEYS_OFFSET = 2;
+
+    private final Type[] keyTypes;
+    private final int[] keyChannels;
+    private final Optional<Integer> hashChannel;
+    private final HashGenerator hashGenerator;
+    private final List<FlatAggregation> aggregations;
+    private final Kind[] kinds;
+    private final boolean[] doubleValues;
+    private final int[] stateOffsets;
+    private final int rowSize;
+    private final FlatAccumulator accumulator;
+    private final boolean partial;
+    private final OptionalLong maxPartialMemory;
+    private final UpdateMemory updateMemory;
+
+    private long[][] segments = new long[0][];
+    private long segmentsSizeInBytes;
+    private int groupCount;
+
+    private int hashCapacity;
+    private int maxFill;
+    private int mask;
+    private int[] groupIdsByHash;
+
+    private long hashCollisions;
+    private double expectedHashCollisions;
+    private long preallocatedMemoryInBytes;
+    private boolean full;
+
+    public FlatHashAggregationBuilder(
+            List<FlatAggregation> aggregations,
+            Step step,
+            int expectedGroups,
+            List<Type> groupByTypes,
+            List<Integer> groupByChannels,
+            Optional<Integer> hashChannel,
+            Optional<DataSize> maxPartialMemory,
+            UpdateMemory updateMemory,
+            Optional<FlatAccumulator> accumulator)
+    {
+        this.aggregations = ImmutableList.copyOf(requireNonNull(aggregations, "aggregations is null"));
+        requireNonNull(step, "step is null");
+        requireNonNull(groupByTypes, "groupByTypes is null");
+        checkArgument(isSupported(groupByTypes, aggregations.size()), "Unsupported group by types %s for %s aggregations", groupByTypes, aggregations.size());
+        checkArgument(groupByTypes.size() == groupByChannels.size(), "groupByTypes and groupByChannels must have the same size");
+
+        this.keyTypes = groupByTypes.toArray(new Type[0]);
+        this.keyChannels = Ints.toArray(groupByChannels);
+        this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
+        this.hashGenerator = new InterpretedHashGenerator(groupByTypes, keyChannels);
+        boolean inputRaw = step.isInputRaw();
+        this.partial = step.isOutputPartial();
+        this.maxPartialMemory = requireNonNull(maxPartialMemory, "maxPartialMemory is null").map(dataSize -> OptionalLong.of(dataSize.toBytes())).orElseGet(OptionalLong::empty);
+        this.updateMemory = requireNonNull(updateMemory, "updateMemory is null");
+
+        this.kinds = new Kind[aggregations.size()];
+        this.doubleValues = new boolean[aggregations.size()];
+        for (int i = 0; i < aggregations.size(); i++) {
+            FlatAggregation aggregation = aggregations.get(i);
+            checkArgument(aggregation.getKind() != Kind.AVERAGE || (inputRaw && !partial), "Average is only supported in single step aggregations");
+            kinds[i] = aggregation.getKind();
+            doubleValues[i] = aggregation.getValueType().equals(DOUBLE);
+        }
+        this.stateOffsets = getStateOffsets(keyTypes.length, aggregations);
+        this.rowSize = getRowSize(keyTypes.length, aggregations);
+        this.accumulator = requireNonNull(accumulator, "accumulator is null")
+                .orElseGet(() -> new InterpretedFlatAccumulator(keyTypes.length, aggregations, inputRaw));
+
+        hashCapacity = arraySize(expectedGroups, FILL_RATIO);
+        maxFill = calculateMaxFill(hashCapacity);
+        mask = hashCapacity - 1;
+        groupIdsByHash = new int[hashCapacity];
+        Arrays.fill(groupIdsByHash, -1);
+    }
+
+    public static boolean isSupported(List<? extends Type> groupByTypes, int aggregationCount)
+    {
+        return KEY_TYPES.containsAll(groupByTypes) && groupByTypes.size() + aggregationCount <= Long.SIZE;
+    }
+
+    static int[] getStateOffsets(int keyCount, List<FlatAggregation> aggregations)
+    {
+        int[] stateOffsets = new int[aggregations.size()];
+        int offset = KEYS_OFFSET + keyCount;
+        for (int i = 0; i < aggregations.size(); i++) {
+            stateOffsets[i] = offset;
+            offset += getStateSize(aggregations.get(i));
+        }
+        return stateOffsets;
+    }
+
+    static int getRowSize(int keyCount, List<FlatAggregation> aggregations)
+    {
+        return KEYS_OFFSET + keyCount + aggregations.stream()
+                .mapToInt(FlatHashAggregationBuilder::getStateSize)
+                .sum();
+    }
+
+    static long getHasValueFlag(int keyCount, int aggregation)
+    {
+        // the flags of the keys come first
+        return 1L << (keyCount + aggregation);
+    }
+
+    private static int getStateSize(FlatAggregation aggregation)
+    {
+        // the state of an average is the sum and the count of the values
+        return aggregation.getKind() == Kind.AVERAGE ? 2 : 1;
+    }
+
+    @Override
+    public Work<?> processPage(Page page)
+    {
+        return new AddPageWork(page);
+    }
+
+    @Override
+    public WorkProcessor<Page> buildResult()
+    {
+        IntIterator groupIds = IntIterators.fromTo(0, groupCount);
+        PageBuilder pageBuilder = new PageBuilder(buildTypes());
+        return WorkProcessor.create(() -> {
+            if (!groupIds.hasNext()) {
+                return ProcessState.finished();
+            }
+
+            pageBuilder.reset();
+            while (!pageBuilder.isFull() && groupIds.hasNext()) {
+                appendRow(groupIds.nextInt(), pageBuilder);
+            }
+            return ProcessState.ofResult(pageBuilder.build());
+        });
+    }
+
+    public List<Type> buildTypes()
+    {
+        ImmutableList.Builder<Type> types = ImmutableList.builder();
+        types.add(keyTypes);
+        if (hashChannel.isPresent()) {
+            types.add(BIGINT);
+        }
+        for (FlatAggregation aggregation : aggregations) {
+            types.add(aggregation.getOutputType());
+        }
+        return types.build();
+    }
+
+    @Override
+    public boolean isFull()
+    {
+        return full;
+    }
+
+    @Override
+    public void updateMemory()
+    {
+        updateMemory.update();
+    }
+
+    public long getSizeInMemory()
+    {
+        long sizeInMemory = INSTANCE_SIZE +
+                sizeOf(groupIdsByHash) +
+                sizeOf(segments) +
+                segmentsSizeInBytes +
+                preallocatedMemoryInBytes;
+        if (partial && maxPartialMemory.isPresent()) {
+            full = sizeInMemory > maxPartialMemory.getAsLong();
+        }
+        return sizeInMemory;
+    }
+
+    public long getGroupCount()
+    {
+        return groupCount;
+    }
+
+    @Override
+    public void recordHashCollisions(HashCollisionsCounter hashCollisionsCounter)
+    {
+        hashCollisionsCounter.recordHashCollision(hashCollisions, expectedHashCollisions + estimateNumberOfHashCollisions(groupCount, hashCapacity));
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        throw new UnsupportedOperationException("startMemoryRevoke not supported for FlatHashAggregationBuilder");
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        throw new UnsupportedOperationException("finishMemoryRevoke not supported for FlatHashAggregationBuilder");
+    }
+
+    private int putIfAbsent(Page page, Block[] keyBlocks, Block hashBlock, int position)
+    {
+        long rawHash = hashBlock != null ? BIGINT.getLong(hashBlock, position) : hashGenerator.hashPosition(position, page);
+        int hashPosition = getHashPosition(rawHash, mask);
+        while (groupIdsByHash[hashPosition] != -1) {
+            int groupId = groupIdsByHash[hashPosition];
+            if (rowMatches(groupId, rawHash, keyBlocks, position)) {
+                return groupId;
+            }
+            hashPosition = (hashPosition + 1) & mask;
+            hashCollisions++;
+        }
+
+        int groupId = addGroup(rawHash, keyBlocks, position);
+        groupIdsByHash[hashPosition] = groupId;
+
+        // increase capacity, if necessary
+        if (needRehash()) {
+            tryRehash();
+        }
+        return groupId;
+    }
+
+    private boolean rowMatches(int groupId, long rawHash, Block[] keyBlocks, int position)
+    {
+        long[] segment = segments[groupId >> SEGMENT_SHIFT];
+        int offset = (groupId & SEGMENT_MASK) * rowSize;
+        if (segment[offset + HASH_OFFSET] != rawHash) {
+            return false;
+        }
+        long flags = segment[offset + FLAGS_OFFSET];
+        for (int i = 0; i < keyBlocks.length; i++) {
+            boolean isNull = keyBlocks[i].isNull(position);
+            if (isNull != ((flags & (1L << i)) != 0)) {
+                return false;
+            }
+            if (!isNull && segment[offset + KEYS_OFFSET + i] != keyTypes[i].getLong(keyBlocks[i], position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addGroup(long rawHash, Block[] keyBlocks, int position)
+    {
+        int groupId = groupCount;
+        int segmentIndex = groupId >> SEGMENT_SHIFT;
+        if (segmentIndex == segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(segments.length * 2, 8));
+        }
+        if (segments[segmentIndex] == null) {
+            segments[segmentIndex] = new long[ROWS_PER_SEGMENT * rowSize];
+            segmentsSizeInBytes += sizeOf(segments[segmentIndex]);
+        }
+
+        long[] segment = segments[segmentIndex];
+        int offset = (groupId & SEGMENT_MASK) * rowSize;
+        segment[offset + HASH_OFFSET] = rawHash;
+        long flags = 0;
+        for (int i = 0; i < keyBlocks.length; i++) {
+            if (keyBlocks[i].isNull(position)) {
+                flags |= 1L << i;
+            }
+            else {
+                segment[offset + KEYS_OFFSET + i] = keyTypes[i].getLong(keyBlocks[i], position);
+            }
+        }
+        segment[offset + FLAGS_OFFSET] = flags;
+        groupCount++;
+        return groupId;
+    }
+
+    private void appendRow(int groupId, PageBuilder pageBuilder)
+    {
+        long[] segment = segments[groupId >> SEGMENT_SHIFT];
+        int offset = (groupId & SEGMENT_MASK) * rowSize;
+        long flags = segment[offset + FLAGS_OFFSET];
+
+        pageBuilder.declarePosition();
+        int channel = 0;
+        for (; channel < keyTypes.length; channel++) {
+            BlockBuilder output = pageBuilder.getBlockBuilder(channel);
+            if ((flags & (1L << channel)) != 0) {
+                output.appendNull();
+            }
+            else {
+                keyTypes[channel].writeLong(output, segment[offset + KEYS_OFFSET + channel]);
+            }
+        }
+        if (hashChannel.isPresent()) {
+            BIGINT.writeLong(pageBuilder.getBlockBuilder(channel++), segment[offset + HASH_OFFSET]);
+        }
+
+        for (int i = 0; i < kinds.length; i++, channel++) {
+            BlockBuilder output = pageBuilder.getBlockBuilder(channel);
+            long state = segment[offset + stateOffsets[i]];
+            boolean hasValue = (flags & getHasValueFlag(keyTypes.length, i)) != 0;
+            switch (kinds[i]) {
+                case COUNT:
+                    BIGINT.writeLong(output, state);
+                    break;
+                case SUM:
+                case MIN:
+                case MAX:
+                    if (!hasValue) {
+                        output.appendNull();
+                    }
+                    else if (doubleValues[i]) {
+                        DOUBLE.writeDouble(output, longBitsToDouble(state));
+                    }
+                    else {
+                        BIGINT.writeLong(output, state);
+                    }
+                    break;
+                case AVERAGE:
+                    long count = segment[offset + stateOffsets[i] + 1];
+                    if (count == 0) {
+                        output.appendNull();
+                    }
+                    else {
+                        DOUBLE.writeDouble(output, longBitsToDouble(state) / count);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unsupported aggregation: " + kinds[i]);
+            }
+        }
+    }
+
+    private long getRawHash(int groupId)
+    {
+        return segments[groupId >> SEGMENT_SHIFT][(groupId & SEGMENT_MASK) * rowSize + HASH_OFFSET];
+    }
+
+    private boolean needRehash()
+    {
+        return groupCount >= maxFill;
+    }
+
+    private boolean tryRehash()
+    {
+        long newCapacityLong = hashCapacity * 2L;
+        if (newCapacityLong > Integer.MAX_VALUE) {
+            throw new PrestoException(GENERIC_INSUFFICIENT_RESOURCES, "Size of hash table cannot exceed 1 billion entries");
+        }
+        int newCapacity = toIntExact(newCapacityLong);
+
+        // An estimate of how much extra memory is needed before we can go ahead and expand the hash table.
+        // This includes the new capacity for groupIdsByHash and the rows of the groups which fit into it.
+        preallocatedMemoryInBytes = (newCapacity - hashCapacity) * (long) Integer.BYTES +
+                (calculateMaxFill(newCapacity) - maxFill) * (long) rowSize * Long.BYTES;
+        if (!updateMemory.update()) {
+            // reserved memory but has exceeded the limit
+            return false;
+        }
+        preallocatedMemoryInBytes = 0;
+
+        expectedHashCollisions += estimateNumberOfHashCollisions(groupCount, hashCapacity);
+
+        int newMask = newCapacity - 1;
+        int[] newGroupIdsByHash = new int[newCapacity];
+        Arrays.fill(newGroupIdsByHash, -1);
+        for (int groupId = 0; groupId < groupCount; groupId++) {
+            int hashPosition = getHashPosition(getRawHash(groupId), newMask);
+            while (newGroupIdsByHash[hashPosition] != -1) {
+                hashPosition = (hashPosition + 1) & newMask;
+                hashCollisions++;
+            }
+            newGroupIdsByHash[hashPosition] = groupId;
+        }
+
+        this.mask = newMask;
+        this.hashCapacity = newCapacity;
+        this.maxFill = calculateMaxFill(newCapacity);
+        this.groupIdsByHash = newGroupIdsByHash;
+        return true;
+    }
+
+    private static int getHashPosition(long rawHash, int mask)
+    {
+        return (int) (murmurHash3(rawHash) & mask);
+    }
+
+    private static int calculateMaxFill(int hashSize)
+    {
+        checkArgument(hashSize > 0, "hashSize must be greater than 0");
+        int maxFill = (int) Math.ceil(hashSize * FILL_RATIO);
+        if (maxFill == hashSize) {
+            maxFill--;
+        }
+        checkArgument(hashSize > maxFill, "hashSize must be larger than maxFill");
+        return maxFill;
+    }
+
+    private class AddPageWork
+            implements Work<Void>
+    {
+        private final Page page;
+        private final Block[] keyBlocks;
+        private final Block hashBlock;
+        private final Block[] inputBlocks;
+        private final int[] groupIds;
+
+        private int lastPosition;
+
+        public AddPageWork(Page page)
+        {
+            this.page = requireNonNull(page, "page is null");
+            this.keyBlocks = new Block[keyChannels.length];
+            for (int i = 0; i < keyChannels.length; i++) {
+                keyBlocks[i] = page.getBlock(keyChannels[i]);
+            }
+            this.hashBlock = hashChannel.map(page::getBlock).orElse(null);
+            this.inputBlocks = new Block[aggregations.size()];
+            for (int i = 0; i < aggregations.size(); i++) {
+                int aggregation = i;
+                aggregations.get(i).getInputChannel().ifPresent(channel -> inputBlocks[aggregation] = page.getBlock(channel));
+            }
+            this.groupIds = new int[page.getPositionCount()];
+        }
+
+        @Override
+        public boolean process()
+        {
+            int positionCount = page.getPositionCount();
+
+            // needRehash() == false indicates we have reached capacity boundary and a rehash is needed.
+            // We can only proceed if tryRehash() successfully did a rehash.
+            if (needRehash() && !tryRehash()) {
+                return false;
+            }
+
+            // putIfAbsent will rehash automatically if rehash is needed, unless there isn't enough memory to do so.
+            // Therefore needRehash will not generally return true even if we have just crossed the capacity boundary.
+            while (lastPosition < positionCount && !needRehash()) {
+                groupIds[lastPosition] = putIfAbsent(page, keyBlocks, hashBlock, lastPosition);
+                lastPosition++;
+            }
+            if (lastPosition < positionCount) {
+                return false;
+            }
+
+            // the rows of all groups exist now, so the states are updated in a single pass over the page
+            accumulator.accumulate(segments, groupIds, inputBlocks, positionCount);
+            return true;
+        }
+
+        @Override
+        public Void getResult()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import io.airlift.units.DataSize;
 import io.prestosql.array.IntBigArray;
 import io.prestosql.operator.GroupByHash;
 import io.prestosql.operator.GroupByIdBlock;
+import io.prestosql.operator.GroupByKeyRange;
 import io.prestosql.operator.HashCollisionsCounter;
 import io.prestosql.operator.OperatorContext;
 import io.prestosql.operator.TransformWork;
@@ -100,6 +101,34 @@ public class InMemoryHashAggregationBuilder
             Optional<Integer> overwriteIntermediateChannelOffset,
             JoinCompiler joinCompiler,
             UpdateMemory updateMemory)
+    {
+        this(accumulatorFactories,
+                step,
+                expectedGroups,
+                groupByTypes,
+                groupByChannels,
+                hashChannel,
+                operatorContext,
+                maxPartialMemory,
+                overwriteIntermediateChannelOffset,
+                joinCompiler,
+                updateMemory,
+                Optional.empty());
+    }
+
+    public InMemoryHashAggregationBuilder(
+            List<AccumulatorFactory> accumulatorFactories,
+            Step step,
+            int expectedGroups,
+            List<Type> groupByTypes,
+            List<Integer> groupByChannels,
+            Optional<Integer> hashChannel,
+            OperatorContext operatorContext,
+            Optional<DataSize> maxPartialMemory,
+            Optional<Integer> overwriteIntermediateChannelOffset,
+            JoinCompiler joinCompiler,
+            UpdateMemory updateMemory,
+            Optional<GroupByKeyRange> groupByKeyRange)
     {
         this.groupByHash = createGroupByHash(
                 groupByTypes,
@@ -108,7 +137,8 @@ public class InMemoryHashAggregationBuilder
                 expectedGroups,
                 isDictionaryAggregationEnabled(operatorContext.getSession()),
                 joinCompiler,
-                updateMemory);
+                updateMemory,
+                groupByKeyRange);
         this.partial = step.isOutputPartial();
         this.maxPartialMemory = maxPartialMemory.map(dataSize -> OptionalLong.of(dataSize.toBytes())).orElseGet(OptionalLong::empty);
         this.updateMemory = requireNonNull(updateMemory, "updateMemory is null");
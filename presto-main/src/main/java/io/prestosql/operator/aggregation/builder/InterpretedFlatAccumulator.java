@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.operator.aggregation.builder.FlatAggregation.Kind;
+import io.prestosql.spi.block.Block;
+
+import java.util.List;
+
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.addCount;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.averageBigint;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.averageDouble;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.count;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.maxBigint;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.maxDouble;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.minBigint;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.minDouble;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.sumBigint;
+import static io.prestosql.operator.aggregation.builder.FlatAccumulatorFunctions.sumDouble;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.FLAGS_OFFSET;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.SEGMENT_MASK;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.SEGMENT_SHIFT;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getHasValueFlag;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getRowSize;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getStateOffsets;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static java.util.Objects.requireNonNull;
+
+final class InterpretedFlatAccumulator
+        implements FlatAccumulator
+{
+    private final Kind[] kinds;
+    private final boolean[] doubleValues;
+    private final int[] stateOffsets;
+    private final long[] hasValueFlags;
+    private final boolean inputRaw;
+    private final int rowSize;
+
+    public InterpretedFlatAccumulator(int keyCount, List<FlatAggregation> aggregations, boolean inputRaw)
+    {
+        requireNonNull(aggregations, "aggregations is null");
+        aggregations = ImmutableList.copyOf(aggregations);
+
+        this.kinds = new Kind[aggregations.size()];
+        this.doubleValues = new boolean[aggregations.size()];
+        this.hasValueFlags = new long[aggregations.size()];
+        for (int i = 0; i < aggregations.size(); i++) {
+            kinds[i] = aggregations.get(i).getKind();
+            doubleValues[i] = aggregations.get(i).getValueType().equals(DOUBLE);
+            hasValueFlags[i] = getHasValueFlag(keyCount, i);
+        }
+        this.stateOffsets = getStateOffsets(keyCount, aggregations);
+        this.inputRaw = inputRaw;
+        this.rowSize = getRowSize(keyCount, aggregations);
+    }
+
+    @Override
+    public void accumulate(long[][] segments, int[] groupIds, Block[] inputBlocks, int positionCount)
+    {
+        for (int position = 0; position < positionCount; position++) {
+            int groupId = groupIds[position];
+            long[] segment = segments[groupId >> SEGMENT_SHIFT];
+            int offset = (groupId & SEGMENT_MASK) * rowSize;
+            for (int i = 0; i < inputBlocks.length; i++) {
+                accumulate(segment, offset, i, inputBlocks[i], position);
+            }
+        }
+    }
+
+    private void accumulate(long[] segment, int offset, int aggregation, Block block, int position)
+    {
+        int stateIndex = offset + stateOffsets[aggregation];
+        if (block == null) {
+            // count(*)
+            count(segment, stateIndex);
+            return;
+        }
+        if (block.isNull(position)) {
+            return;
+        }
+        if (kinds[aggregation] == Kind.COUNT && inputRaw) {
+            // the counted values can be of any type
+            count(segment, stateIndex);
+            return;
+        }
+
+        // bigint and double blocks both store the raw bits of the value as a long
+        long value = block.getLong(position, 0);
+        int flagsIndex = offset + FLAGS_OFFSET;
+        long hasValueFlag = hasValueFlags[aggregation];
+        boolean doubleValue = doubleValues[aggregation];
+        switch (kinds[aggregation]) {
+            case COUNT:
+                // the intermediate state of a count is the count itself
+                addCount(segment, stateIndex, value);
+                break;
+            case SUM:
+                if (doubleValue) {
+                    sumDouble(segment, stateIndex, flagsIndex, hasValueFlag, value);
+                }
+                else {
+                    sumBigint(segment, stateIndex, flagsIndex, hasValueFlag, value);
+                }
+                break;
+            case MIN:
+                if (doubleValue) {
+                    minDouble(segment, stateIndex, flagsIndex, hasValueFlag, value);
+                }
+                else {
+                    minBigint(segment, stateIndex, flagsIndex, hasValueFlag, value);
+                }
+                break;
+            case MAX:
+                if (doubleValue) {
+                    maxDouble(segment, stateIndex, flagsIndex, hasValueFlag, value);
+                }
+                else {
+                    maxBigint(segment, stateIndex, flagsIndex, hasValueFlag, value);
+                }
+                break;
+            case AVERAGE:
+                if (doubleValue) {
+                    averageDouble(segment, stateIndex, value);
+                }
+                else {
+                    averageBigint(segment, stateIndex, value);
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported aggregation: " + kinds[aggregation]);
+        }
+    }
+}
@@ -0,0 +1,660 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.DataSize;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.operator.HashCollisionsCounter;
+import io.prestosql.operator.HashGenerator;
+import io.prestosql.operator.InterpretedHashGenerator;
+import io.prestosql.operator.OperatorContext;
+import io.prestosql.operator.PartitionFunction;
+import io.prestosql.operator.PrecomputedHashGenerator;
+import io.prestosql.operator.SpillPartitionFunction;
+import io.prestosql.operator.Work;
+import io.prestosql.operator.WorkProcessor;
+import io.prestosql.operator.WorkProcessor.ProcessState;
+import io.prestosql.operator.aggregation.AccumulatorFactory;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpiller.PartitioningSpillResult;
+import io.prestosql.spiller.PartitioningSpillerFactory;
+import io.prestosql.sql.gen.JoinCompiler;
+import io.prestosql.sql.planner.plan.AggregationNode;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.MoreFutures.checkSuccess;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.prestosql.operator.Operator.NOT_BLOCKED;
+import static io.prestosql.operator.WorkProcessor.ProcessState.Type.FINISHED;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Spills the groups of an aggregation in partitions of the group by hash, instead of as sorted runs
+ * which have to be merged.
+ * <p>
+ * Every partition is aggregated by its own {@link InMemoryHashAggregationBuilder}. When memory is revoked,
+ * the partitions which were spilled before and the largest of the other partitions are spilled, until at
+ * least half of the revocable memory is released. When producing the result, the partitions which were
+ * never spilled are produced from memory, and each spilled partition is aggregated again on its own.
+ * A spilled partition which does not fit in the memory limit for merging is split again by other bits
+ * of the group by hash.
+ */
+public class PartitionedSpillableHashAggregationBuilder
+        implements HashAggregationBuilder
+{
+    private static final int SPILL_PARTITION_COUNT = 16;
+    // limits the splitting of partitions which cannot be split, e.g. because of a single large group
+    private static final int MAX_SPILL_LEVEL = 2;
+
+    private final List<AccumulatorFactory> accumulatorFactories;
+    private final AggregationNode.Step step;
+    private final int expectedGroups;
+    private final List<Type> groupByTypes;
+    private final List<Integer> groupByChannels;
+    private final Optional<Integer> hashChannel;
+    private final OperatorContext operatorContext;
+    private final LocalMemoryContext localUserMemoryContext;
+    private final LocalMemoryContext localRevocableMemoryContext;
+    private final long memoryLimitForMerge;
+    private final PartitioningSpillerFactory partitioningSpillerFactory;
+    private final JoinCompiler joinCompiler;
+
+    private final PartitionFunction inputPartitionFunction;
+    private final HashGenerator intermediateHashGenerator;
+    private final List<Type> intermediateTypes;
+
+    private final InMemoryHashAggregationBuilder[] partitionBuilders = new InMemoryHashAggregationBuilder[SPILL_PARTITION_COUNT];
+    private final boolean[] spilledPartitions = new boolean[SPILL_PARTITION_COUNT];
+    private final long emptyPartitionBuilderSize;
+    private Optional<PartitioningSpiller> spiller = Optional.empty();
+    private ListenableFuture<?> spillInProgress = immediateFuture(null);
+
+    // aggregates a spilled partition while producing the result
+    @Nullable
+    private InMemoryHashAggregationBuilder mergingBuilder;
+    // spillers of spilled partitions which were split again while producing the result
+    private final List<PartitioningSpiller> mergeSpillers = new ArrayList<>();
+
+    private long hashCollisions;
+    private double expectedHashCollisions;
+    private boolean producingOutput;
+
+    public PartitionedSpillableHashAggregationBuilder(
+            List<AccumulatorFactory> accumulatorFactories,
+            AggregationNode.Step step,
+            int expectedGroups,
+            List<Type> groupByTypes,
+            List<Integer> groupByChannels,
+            Optional<Integer> hashChannel,
+            OperatorContext operatorContext,
+            DataSize memoryLimitForMerge,
+            PartitioningSpillerFactory partitioningSpillerFactory,
+            JoinCompiler joinCompiler)
+    {
+        this.accumulatorFactories = ImmutableList.copyOf(requireNonNull(accumulatorFactories, "accumulatorFactories is null"));
+        this.step = requireNonNull(step, "step is null");
+        this.expectedGroups = expectedGroups;
+        this.groupByTypes = ImmutableList.copyOf(requireNonNull(groupByTypes, "groupByTypes is null"));
+        this.groupByChannels = ImmutableList.copyOf(requireNonNull(groupByChannels, "groupByChannels is null"));
+        this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
+        this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
+        this.localUserMemoryContext = operatorContext.localUserMemoryContext();
+        this.localRevocableMemoryContext = operatorContext.localRevocableMemoryContext();
+        this.memoryLimitForMerge = memoryLimitForMerge.toBytes();
+        this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory, "partitioningSpillerFactory is null");
+        this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
+
+        // the spilled pages have the layout of the intermediate result, with the group by channels first
+        if (hashChannel.isPresent()) {
+            this.inputPartitionFunction = new SpillPartitionFunction(new PrecomputedHashGenerator(hashChannel.get()), SPILL_PARTITION_COUNT);
+            this.intermediateHashGenerator = new PrecomputedHashGenerator(groupByTypes.size());
+        }
+        else {
+            this.inputPartitionFunction = new SpillPartitionFunction(new InterpretedHashGenerator(this.groupByTypes, this.groupByChannels), SPILL_PARTITION_COUNT);
+            this.intermediateHashGenerator = new InterpretedHashGenerator(this.groupByTypes, IntStream.range(0, groupByTypes.size()).toArray());
+        }
+
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            partitionBuilders[partition] = createPartitionBuilder();
+        }
+        this.emptyPartitionBuilderSize = partitionBuilders[0].getSizeInMemory();
+        this.intermediateTypes = ImmutableList.copyOf(partitionBuilders[0].buildIntermediateTypes());
+    }
+
+    @Override
+    public Work<?> processPage(Page page)
+    {
+        checkState(hasPreviousSpillCompletedSuccessfully(), "Previous spill hasn't yet finished");
+        // partition builders are constructed with non yielding UpdateMemory instance.
+        // Therefore the processing of the returned Work should always be true.
+        // It is not possible to spill during processing of a page.
+        Page[] partitionPages = partitionPage(page);
+        ImmutableList.Builder<Work<?>> works = ImmutableList.builder();
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            if (partitionPages[partition] != null) {
+                works.add(partitionBuilders[partition].processPage(partitionPages[partition]));
+            }
+        }
+        return new PartitionedPageWork(works.build());
+    }
+
+    private Page[] partitionPage(Page page)
+    {
+        int positionCount = page.getPositionCount();
+        int[] positionPartitions = new int[positionCount];
+        int[] partitionSizes = new int[SPILL_PARTITION_COUNT];
+        for (int position = 0; position < positionCount; position++) {
+            int partition = inputPartitionFunction.getPartition(page, position);
+            positionPartitions[position] = partition;
+            partitionSizes[partition]++;
+        }
+
+        int[][] partitionPositions = new int[SPILL_PARTITION_COUNT][];
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            partitionPositions[partition] = new int[partitionSizes[partition]];
+        }
+        int[] partitionOffsets = new int[SPILL_PARTITION_COUNT];
+        for (int position = 0; position < positionCount; position++) {
+            int partition = positionPartitions[position];
+            partitionPositions[partition][partitionOffsets[partition]] = position;
+            partitionOffsets[partition]++;
+        }
+
+        Page[] partitionPages = new Page[SPILL_PARTITION_COUNT];
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            if (partitionSizes[partition] == positionCount) {
+                partitionPages[partition] = page;
+            }
+            else if (partitionSizes[partition] > 0) {
+                partitionPages[partition] = page.getPositions(partitionPositions[partition], 0, partitionSizes[partition]);
+            }
+        }
+        return partitionPages;
+    }
+
+    @Override
+    public void updateMemory()
+    {
+        checkState(spillInProgress.isDone());
+
+        long sizeInMemory = getSizeInMemory();
+        if (producingOutput) {
+            localRevocableMemoryContext.setBytes(0);
+            localUserMemoryContext.setBytes(sizeInMemory);
+        }
+        else {
+            long emptyPartitionBuildersSize = emptyPartitionBuilderSize * SPILL_PARTITION_COUNT;
+            localUserMemoryContext.setBytes(emptyPartitionBuildersSize);
+            localRevocableMemoryContext.setBytes(sizeInMemory - emptyPartitionBuildersSize);
+        }
+    }
+
+    private long getSizeInMemory()
+    {
+        long sizeInMemory = 0;
+        for (InMemoryHashAggregationBuilder partitionBuilder : partitionBuilders) {
+            if (partitionBuilder != null) {
+                sizeInMemory += partitionBuilder.getSizeInMemory();
+            }
+        }
+        if (mergingBuilder != null) {
+            sizeInMemory += mergingBuilder.getSizeInMemory();
+        }
+        return sizeInMemory;
+    }
+
+    private boolean updateMemoryWithoutYield()
+    {
+        // the partition builders never yield, as memory is released by spilling whole partitions instead
+        updateMemory();
+        return true;
+    }
+
+    @Override
+    public void recordHashCollisions(HashCollisionsCounter hashCollisionsCounter)
+    {
+        for (InMemoryHashAggregationBuilder partitionBuilder : partitionBuilders) {
+            if (partitionBuilder != null) {
+                hashCollisions += partitionBuilder.getHashCollisions();
+                expectedHashCollisions += partitionBuilder.getExpectedHashCollisions();
+            }
+        }
+        hashCollisionsCounter.recordHashCollision(hashCollisions, expectedHashCollisions);
+        hashCollisions = 0;
+        expectedHashCollisions = 0;
+    }
+
+    @Override
+    public boolean isFull()
+    {
+        return false;
+    }
+
+    private boolean hasPreviousSpillCompletedSuccessfully()
+    {
+        if (spillInProgress.isDone()) {
+            // check for exception from previous spill for early failure
+            getFutureValue(spillInProgress);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (producingOutput) {
+            // all revocable memory has been released in buildResult method
+            verify(localRevocableMemoryContext.getBytes() == 0);
+            return NOT_BLOCKED;
+        }
+
+        return spillToDisk(selectPartitionsToSpill());
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        updateMemory();
+    }
+
+    private boolean[] selectPartitionsToSpill()
+    {
+        boolean[] partitionsToSpill = new boolean[SPILL_PARTITION_COUNT];
+        long[] revocableSizes = new long[SPILL_PARTITION_COUNT];
+        long totalRevocableSize = 0;
+        long spilledSize = 0;
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            revocableSizes[partition] = partitionBuilders[partition].getSizeInMemory() - emptyPartitionBuilderSize;
+            totalRevocableSize += revocableSizes[partition];
+            // spilled partitions are read back from disk anyway, so the rows aggregated since the previous spill are spilled first
+            if (spilledPartitions[partition] && partitionBuilders[partition].getGroupCount() > 0) {
+                partitionsToSpill[partition] = true;
+                spilledSize += revocableSizes[partition];
+            }
+        }
+
+        while (spilledSize * 2 < totalRevocableSize) {
+            int largestPartition = -1;
+            for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+                if (!partitionsToSpill[partition] && partitionBuilders[partition].getGroupCount() > 0 &&
+                        (largestPartition == -1 || revocableSizes[partition] > revocableSizes[largestPartition])) {
+                    largestPartition = partition;
+                }
+            }
+            if (largestPartition == -1) {
+                break;
+            }
+            partitionsToSpill[largestPartition] = true;
+            spilledSize += revocableSizes[largestPartition];
+        }
+        return partitionsToSpill;
+    }
+
+    @Override
+    public WorkProcessor<Page> buildResult()
+    {
+        checkState(hasPreviousSpillCompletedSuccessfully(), "Previous spill hasn't yet finished");
+        producingOutput = true;
+
+        // Convert revocable memory to user memory as returned WorkProcessor holds on to memory so we no longer can revoke.
+        boolean spillAllPartitions = false;
+        if (localRevocableMemoryContext.getBytes() > 0) {
+            long currentRevocableBytes = localRevocableMemoryContext.getBytes();
+            localRevocableMemoryContext.setBytes(0);
+            if (!localUserMemoryContext.trySetBytes(localUserMemoryContext.getBytes() + currentRevocableBytes)) {
+                // the reservation may fail even though the same amount of memory was just released, so all partitions are spilled instead
+                localRevocableMemoryContext.setBytes(currentRevocableBytes);
+                spillAllPartitions = true;
+            }
+        }
+
+        // the remaining rows of spilled partitions are spilled as well, so that each spilled partition is aggregated from disk on its own
+        boolean[] partitionsToSpill = new boolean[SPILL_PARTITION_COUNT];
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            partitionsToSpill[partition] = (spillAllPartitions || spilledPartitions[partition]) && partitionBuilders[partition].getGroupCount() > 0;
+        }
+        ListenableFuture<?> spillFuture = spillToDisk(partitionsToSpill);
+
+        return WorkProcessor.flatten(WorkProcessor.create(new WorkProcessor.Process<WorkProcessor<Page>>()
+        {
+            private Iterator<Integer> partitions;
+
+            @Override
+            public ProcessState<WorkProcessor<Page>> process()
+            {
+                if (partitions == null) {
+                    if (!spillFuture.isDone()) {
+                        return ProcessState.blocked(spillFuture);
+                    }
+                    checkSuccess(spillFuture, "spilling failed");
+                    partitions = getResultPartitions();
+                }
+                if (!partitions.hasNext()) {
+                    return ProcessState.finished();
+                }
+                return ProcessState.ofResult(buildPartitionResult(partitions.next()));
+            }
+        }));
+    }
+
+    private Iterator<Integer> getResultPartitions()
+    {
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            if (spilledPartitions[partition]) {
+                releasePartitionBuilder(partition);
+            }
+        }
+
+        // partitions which were not spilled are produced first, so that their memory is released before the spilled partitions are read back
+        ImmutableList.Builder<Integer> partitions = ImmutableList.builder();
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            if (!spilledPartitions[partition]) {
+                partitions.add(partition);
+            }
+        }
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            if (spilledPartitions[partition]) {
+                partitions.add(partition);
+            }
+        }
+        return partitions.build().iterator();
+    }
+
+    private WorkProcessor<Page> buildPartitionResult(int partition)
+    {
+        if (spilledPartitions[partition]) {
+            return mergeSpilledPages(spiller.get().getSpilledPages(partition), 0);
+        }
+        return partitionBuilders[partition].buildResult()
+                .withProcessStateMonitor(state -> {
+                    if (state.getType() == FINISHED) {
+                        releasePartitionBuilder(partition);
+                    }
+                });
+    }
+
+    /**
+     * Aggregates the spilled pages of a partition of the given level. If the partition does not fit in the memory limit
+     * for merging, it is split further by the partitions of the next level.
+     */
+    private WorkProcessor<Page> mergeSpilledPages(Iterator<Page> spilledPages, int level)
+    {
+        return WorkProcessor.flatten(WorkProcessor.create(new SpilledPartitionMerge(spilledPages, level)));
+    }
+
+    @Override
+    public void close()
+    {
+        try (Closer closer = Closer.create()) {
+            for (InMemoryHashAggregationBuilder partitionBuilder : partitionBuilders) {
+                if (partitionBuilder != null) {
+                    closer.register(partitionBuilder::close);
+                }
+            }
+            if (mergingBuilder != null) {
+                closer.register(mergingBuilder::close);
+            }
+            spiller.ifPresent(closer::register);
+            mergeSpillers.forEach(closer::register);
+            closer.register(() -> localUserMemoryContext.setBytes(0));
+            closer.register(() -> localRevocableMemoryContext.setBytes(0));
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ListenableFuture<?> spillToDisk(boolean[] partitionsToSpill)
+    {
+        checkState(hasPreviousSpillCompletedSuccessfully(), "Previous spill hasn't yet finished");
+
+        ImmutableList.Builder<Iterator<Page>> spilledPages = ImmutableList.builder();
+        for (int partition = 0; partition < SPILL_PARTITION_COUNT; partition++) {
+            if (partitionsToSpill[partition]) {
+                InMemoryHashAggregationBuilder partitionBuilder = partitionBuilders[partition];
+                partitionBuilder.setOutputPartial();
+                spilledPages.add(partitionBuilder.buildResult().iterator());
+                spilledPartitions[partition] = true;
+                // the content of the builder is spilled by the spilling thread, and a new builder aggregates the following input
+                releasePartitionBuilder(partition);
+                partitionBuilders[partition] = createPartitionBuilder();
+            }
+        }
+        List<Iterator<Page>> pages = spilledPages.build();
+        if (pages.isEmpty()) {
+            return NOT_BLOCKED;
+        }
+
+        if (!spiller.isPresent()) {
+            spiller = Optional.of(createSpiller(0));
+        }
+        spillInProgress = spillPages(spiller.get(), Iterators.concat(pages.iterator()), partition -> partitionsToSpill[partition]);
+        return spillInProgress;
+    }
+
+    private static ListenableFuture<?> spillPages(PartitioningSpiller spiller, Iterator<Page> pages, IntPredicate partitionsToSpill)
+    {
+        while (pages.hasNext()) {
+            PartitioningSpillResult result = spiller.partitionAndSpill(pages.next(), partitionsToSpill);
+            verify(result.getRetained().getPositionCount() == 0, "Rows of a partition which is not spilled were retained");
+            ListenableFuture<?> spillingFuture = result.getSpillingFuture();
+            if (!spillingFuture.isDone()) {
+                return Futures.transformAsync(spillingFuture, ignored -> spillPages(spiller, pages, partitionsToSpill), directExecutor());
+            }
+            checkSuccess(spillingFuture, "spilling failed");
+        }
+        return immediateFuture(null);
+    }
+
+    private PartitioningSpiller createSpiller(int level)
+    {
+        return partitioningSpillerFactory.create(
+                intermediateTypes,
+                new SpillPartitionFunction(intermediateHashGenerator, SPILL_PARTITION_COUNT, level),
+                operatorContext.getSpillContext().newLocalSpillContext(),
+                operatorContext.newAggregateSystemMemoryContext());
+    }
+
+    private InMemoryHashAggregationBuilder createPartitionBuilder()
+    {
+        return new InMemoryHashAggregationBuilder(
+                accumulatorFactories,
+                step,
+                getExpectedGroups(0),
+                groupByTypes,
+                groupByChannels,
+                hashChannel,
+                operatorContext,
+                Optional.of(DataSize.succinctBytes(0)),
+                joinCompiler,
+                this::updateMemoryWithoutYield);
+    }
+
+    private InMemoryHashAggregationBuilder createMergingBuilder(int level)
+    {
+        List<Integer> groupByPartialChannels = IntStream.range(0, groupByTypes.size()).boxed().collect(toImmutableList());
+        // the intermediate states follow the group by channels and the hash channel
+        int overwriteIntermediateChannelOffset = groupByTypes.size() + (hashChannel.isPresent() ? 1 : 0);
+        return new InMemoryHashAggregationBuilder(
+                accumulatorFactories,
+                AggregationNode.Step.partialInput(step),
+                getExpectedGroups(level),
+                groupByTypes,
+                groupByPartialChannels,
+                hashChannel.map(channel -> groupByTypes.size()),
+                operatorContext,
+                Optional.of(DataSize.succinctBytes(0)),
+                Optional.of(overwriteIntermediateChannelOffset),
+                joinCompiler,
+                this::updateMemoryWithoutYield);
+    }
+
+    private int getExpectedGroups(int level)
+    {
+        // the groups are split over all partitions of every level
+        int groups = expectedGroups;
+        for (int i = 0; i <= level; i++) {
+            groups /= SPILL_PARTITION_COUNT;
+        }
+        return max(groups, 1);
+    }
+
+    private void releasePartitionBuilder(int partition)
+    {
+        InMemoryHashAggregationBuilder partitionBuilder = requireNonNull(partitionBuilders[partition], "partitionBuilder is null");
+        hashCollisions += partitionBuilder.getHashCollisions();
+        expectedHashCollisions += partitionBuilder.getExpectedHashCollisions();
+        partitionBuilder.close();
+        partitionBuilders[partition] = null;
+        if (producingOutput) {
+            updateMemory();
+        }
+    }
+
+    private void releaseMergingBuilder()
+    {
+        hashCollisions += mergingBuilder.getHashCollisions();
+        expectedHashCollisions += mergingBuilder.getExpectedHashCollisions();
+        mergingBuilder.close();
+        mergingBuilder = null;
+        updateMemory();
+    }
+
+    private class SpilledPartitionMerge
+            implements WorkProcessor.Process<WorkProcessor<Page>>
+    {
+        private final Iterator<Page> spilledPages;
+        private final int level;
+
+        @Nullable
+        private PartitioningSpiller splitSpiller;
+        @Nullable
+        private ListenableFuture<?> splitFuture;
+        private boolean finished;
+
+        public SpilledPartitionMerge(Iterator<Page> spilledPages, int level)
+        {
+            this.spilledPages = requireNonNull(spilledPages, "spilledPages is null");
+            this.level = level;
+        }
+
+        @Override
+        public ProcessState<WorkProcessor<Page>> process()
+        {
+            if (finished) {
+                return ProcessState.finished();
+            }
+
+            if (splitFuture == null) {
+                verify(mergingBuilder == null, "Previous spilled partition has not been released");
+                mergingBuilder = createMergingBuilder(level);
+                while (spilledPages.hasNext()) {
+                    Work<?> work = mergingBuilder.processPage(spilledPages.next());
+                    verify(work.process(), "processing of spilled pages should not yield");
+                    updateMemory();
+
+                    if (level < MAX_SPILL_LEVEL && memoryLimitForMerge > 0 && mergingBuilder.getSizeInMemory() > memoryLimitForMerge) {
+                        startSplit();
+                        break;
+                    }
+                }
+            }
+
+            if (splitFuture == null) {
+                finished = true;
+                return ProcessState.ofResult(mergingBuilder.buildResult()
+                        .withProcessStateMonitor(state -> {
+                            if (state.getType() == FINISHED) {
+                                releaseMergingBuilder();
+                            }
+                        }));
+            }
+
+            if (!splitFuture.isDone()) {
+                return ProcessState.blocked(splitFuture);
+            }
+            checkSuccess(splitFuture, "spilling failed");
+            releaseMergingBuilder();
+            finished = true;
+            PartitioningSpiller partitionSpiller = splitSpiller;
+            return ProcessState.ofResult(WorkProcessor.flatten(WorkProcessor.fromIterable(IntStream.range(0, SPILL_PARTITION_COUNT).boxed().collect(toImmutableList()))
+                    .map(partition -> mergeSpilledPages(partitionSpiller.getSpilledPages(partition), level + 1))));
+        }
+
+        private void startSplit()
+        {
+            splitSpiller = createSpiller(level + 1);
+            mergeSpillers.add(splitSpiller);
+
+            // spill the rows which were already aggregated, followed by the remaining spilled pages of the partition
+            mergingBuilder.setOutputPartial();
+            splitFuture = spillPages(splitSpiller, Iterators.concat(mergingBuilder.buildResult().iterator(), spilledPages), partition -> true);
+        }
+    }
+
+    private static class PartitionedPageWork
+            implements Work<Void>
+    {
+        private final List<Work<?>> partitionWorks;
+        private int nextPartitionWork;
+
+        public PartitionedPageWork(List<Work<?>> partitionWorks)
+        {
+            this.partitionWorks = requireNonNull(partitionWorks, "partitionWorks is null");
+        }
+
+        @Override
+        public boolean process()
+        {
+            while (nextPartitionWork < partitionWorks.size()) {
+                if (!partitionWorks.get(nextPartitionWork).process()) {
+                    return false;
+                }
+                nextPartitionWork++;
+            }
+            return true;
+        }
+
+        @Override
+        public Void getResult()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
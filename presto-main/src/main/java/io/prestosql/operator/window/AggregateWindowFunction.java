@@ -21,6 +21,7 @@ import io.prestosql.operator.aggregation.InternalAggregationFunction;
 import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.function.WindowFunction;
 import io.prestosql.spi.function.WindowIndex;
+import io.prestosql.spi.type.FixedWidthType;
 
 import java.util.List;
 import java.util.Optional;
@@ -35,9 +36,12 @@ public class AggregateWindowFunction
     private final List<Integer> argumentChannels;
     private final AccumulatorFactory accumulatorFactory;
     private final boolean accumulatorHasRemoveInput;
+    private final Optional<FixedWidthType> segmentTreeIntermediateType;
 
     private WindowIndex windowIndex;
+    private boolean segmentTreeSupported;
     private Accumulator accumulator;
+    private WindowAggregationSegmentTree segmentTree;
     private int currentStart;
     private int currentEnd;
 
@@ -46,12 +50,22 @@ public class AggregateWindowFunction
         this.argumentChannels = ImmutableList.copyOf(argumentChannels);
         this.accumulatorFactory = function.bind(createArgs(function), Optional.empty());
         this.accumulatorHasRemoveInput = accumulatorFactory.hasRemoveInput();
+        // the tree is not accounted in the memory of the window operator, so it is limited to states of a fixed
+        // size, and to partitions small enough to bound the size of the tree
+        if (!accumulatorHasRemoveInput && function.isDecomposable() && function.getIntermediateType() instanceof FixedWidthType) {
+            this.segmentTreeIntermediateType = Optional.of((FixedWidthType) function.getIntermediateType());
+        }
+        else {
+            this.segmentTreeIntermediateType = Optional.empty();
+        }
     }
 
     @Override
     public void reset(WindowIndex windowIndex)
     {
         this.windowIndex = windowIndex;
+        this.segmentTree = null;
+        this.segmentTreeSupported = segmentTreeIntermediateType.isPresent() && WindowAggregationSegmentTree.fitsInMemory(windowIndex.size(), segmentTreeIntermediateType.get());
         resetAccumulator();
     }
 
@@ -107,6 +121,18 @@ public class AggregateWindowFunction
             }
         }
 
+        if (segmentTreeSupported && currentStart >= 0 && frameStart > currentStart && (frameEnd - frameStart + 1) >= WindowAggregationSegmentTree.MIN_FRAME_SIZE) {
+            // The frame moved: combine the pre-aggregated states of the frame, instead of accumulating all of its rows again
+            if (segmentTree == null) {
+                segmentTree = new WindowAggregationSegmentTree(accumulatorFactory, argumentChannels, windowIndex);
+            }
+            accumulator = accumulatorFactory.createAccumulator();
+            segmentTree.accumulate(accumulator, frameStart, frameEnd);
+            currentStart = frameStart;
+            currentEnd = frameEnd;
+            return;
+        }
+
         // We couldn't or didn't want to modify the accumulation: instead, discard the current accumulation and start fresh.
         resetAccumulator();
         accumulate(frameStart, frameEnd);
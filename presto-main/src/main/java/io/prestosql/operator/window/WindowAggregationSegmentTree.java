@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.window;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
+import io.prestosql.operator.aggregation.Accumulator;
+import io.prestosql.operator.aggregation.AccumulatorFactory;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.function.WindowIndex;
+import io.prestosql.spi.type.FixedWidthType;
+import io.prestosql.spi.type.Type;
+
+import java.util.List;
+
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tree of intermediate aggregation states over the rows of a window partition. The aggregation
+ * of any frame is computed by combining O(log n) states of the tree, and accumulating the rows
+ * at the edges of the frame which do not fill a leaf. This is used for aggregations which can
+ * combine intermediate states of a fixed width but cannot remove input, when the frame moves
+ * instead of growing.
+ */
+final class WindowAggregationSegmentTree
+{
+    // The rows of a leaf are aggregated into a single state, which keeps the tree a small
+    // fraction of the partition size, at the cost of accumulating up to two leaves of rows per frame
+    private static final int LEAF_SIZE = 16;
+
+    // Smaller frames are cheaper to accumulate row by row
+    static final int MIN_FRAME_SIZE = 4 * LEAF_SIZE;
+
+    // The tree is not accounted in the memory of the window operator, so larger partitions
+    // accumulate the rows of every frame instead
+    private static final long MAX_SIZE_IN_BYTES = new DataSize(16, MEGABYTE).toBytes();
+
+    private final AccumulatorFactory accumulatorFactory;
+    private final List<Integer> argumentChannels;
+    private final WindowIndex windowIndex;
+
+    // Position i of level 0 is the state of the rows of leaf i, and position i of level n
+    // combines the positions 2 * i and 2 * i + 1 of level n - 1
+    private final List<Block> levels;
+
+    private final int[] rightNodeLevels;
+    private final int[] rightNodePositions;
+
+    WindowAggregationSegmentTree(AccumulatorFactory accumulatorFactory, List<Integer> argumentChannels, WindowIndex windowIndex)
+    {
+        this.accumulatorFactory = requireNonNull(accumulatorFactory, "accumulatorFactory is null");
+        this.argumentChannels = ImmutableList.copyOf(requireNonNull(argumentChannels, "argumentChannels is null"));
+        this.windowIndex = requireNonNull(windowIndex, "windowIndex is null");
+        this.levels = buildLevels();
+        this.rightNodeLevels = new int[levels.size()];
+        this.rightNodePositions = new int[levels.size()];
+    }
+
+    /**
+     * Returns true if the tree of a partition of the given number of rows fits in the
+     * memory allowed for it.
+     */
+    static boolean fitsInMemory(int rowCount, FixedWidthType intermediateType)
+    {
+        long leafCount = (rowCount + LEAF_SIZE - 1L) / LEAF_SIZE;
+        // a binary tree has less than twice as many nodes as leaves
+        return 2 * leafCount * intermediateType.getFixedSize() <= MAX_SIZE_IN_BYTES;
+    }
+
+    private List<Block> buildLevels()
+    {
+        Type intermediateType = accumulatorFactory.createAccumulator().getIntermediateType();
+        ImmutableList.Builder<Block> levels = ImmutableList.builder();
+
+        int rowCount = windowIndex.size();
+        int leafCount = (rowCount + LEAF_SIZE - 1) / LEAF_SIZE;
+        BlockBuilder leaves = intermediateType.createBlockBuilder(null, leafCount);
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            Accumulator accumulator = accumulatorFactory.createAccumulator();
+            accumulator.addInput(windowIndex, argumentChannels, leaf * LEAF_SIZE, min((leaf + 1) * LEAF_SIZE, rowCount) - 1);
+            accumulator.evaluateIntermediate(leaves);
+        }
+        Block level = leaves.build();
+        levels.add(level);
+
+        while (level.getPositionCount() > 1) {
+            int childCount = level.getPositionCount();
+            int parentCount = (childCount + 1) / 2;
+            BlockBuilder parents = intermediateType.createBlockBuilder(null, parentCount);
+            for (int parent = 0; parent < parentCount; parent++) {
+                Accumulator accumulator = accumulatorFactory.createAccumulator();
+                accumulator.addIntermediate(level.getRegion(2 * parent, min(2, childCount - 2 * parent)));
+                accumulator.evaluateIntermediate(parents);
+            }
+            level = parents.build();
+            levels.add(level);
+        }
+        return levels.build();
+    }
+
+    /**
+     * Adds the rows from start to end (inclusive) to the accumulator, in the order of the partition.
+     */
+    void accumulate(Accumulator accumulator, int start, int end)
+    {
+        int firstLeaf = (start + LEAF_SIZE - 1) / LEAF_SIZE;
+        int endLeaf = (end + 1) / LEAF_SIZE;
+        if (firstLeaf >= endLeaf) {
+            // the rows do not cover a whole leaf
+            accumulator.addInput(windowIndex, argumentChannels, start, end);
+            return;
+        }
+
+        if (start < firstLeaf * LEAF_SIZE) {
+            accumulator.addInput(windowIndex, argumentChannels, start, firstLeaf * LEAF_SIZE - 1);
+        }
+
+        // Walk up the tree from the leaves, adding the nodes at the left edge of the range as they are
+        // found, and keeping the nodes at the right edge to add them after, in the order of the rows
+        int rightNodeCount = 0;
+        int low = firstLeaf;
+        int high = endLeaf;
+        for (int level = 0; low < high; level++) {
+            if ((low & 1) == 1) {
+                addNode(accumulator, level, low);
+                low++;
+            }
+            if ((high & 1) == 1) {
+                high--;
+                rightNodeLevels[rightNodeCount] = level;
+                rightNodePositions[rightNodeCount] = high;
+                rightNodeCount++;
+            }
+            low >>= 1;
+            high >>= 1;
+        }
+        for (int i = rightNodeCount - 1; i >= 0; i--) {
+            addNode(accumulator, rightNodeLevels[i], rightNodePositions[i]);
+        }
+
+        if (endLeaf * LEAF_SIZE <= end) {
+            accumulator.addInput(windowIndex, argumentChannels, endLeaf * LEAF_SIZE, end);
+        }
+    }
+
+    private void addNode(Accumulator accumulator, int level, int position)
+    {
+        accumulator.addIntermediate(levels.get(level).getRegion(position, 1));
+    }
+}
@@ -22,7 +22,9 @@ import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import io.prestosql.Session;
 import io.prestosql.client.QueryResults;
+import io.prestosql.exchange.ExchangeStorageManager;
 import io.prestosql.execution.QueryManager;
+import io.prestosql.execution.buffer.SpoolingOutputBuffer;
 import io.prestosql.memory.context.SimpleLocalMemoryContext;
 import io.prestosql.operator.ExchangeClient;
 import io.prestosql.operator.ExchangeClientSupplier;
@@ -49,6 +51,7 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Map.Entry;
@@ -63,6 +66,7 @@ import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static io.airlift.concurrent.Threads.threadsNamed;
 import static io.airlift.jaxrs.AsyncResponseHandler.bindAsyncResponse;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static io.prestosql.SystemSessionProperties.isTaskRetryEnabled;
 import static io.prestosql.client.PrestoHeaders.PRESTO_ADDED_PREPARE;
 import static io.prestosql.client.PrestoHeaders.PRESTO_CLEAR_SESSION;
 import static io.prestosql.client.PrestoHeaders.PRESTO_CLEAR_TRANSACTION_ID;
@@ -94,6 +98,7 @@ public class ExecutingStatementResource
 
     private final QueryManager queryManager;
     private final ExchangeClientSupplier exchangeClientSupplier;
+    private final ExchangeStorageManager exchangeStorageManager;
     private final BlockEncodingSerde blockEncodingSerde;
     private final BoundedExecutor responseExecutor;
     private final ScheduledExecutorService timeoutExecutor;
@@ -105,12 +110,14 @@ public class ExecutingStatementResource
     public ExecutingStatementResource(
             QueryManager queryManager,
             ExchangeClientSupplier exchangeClientSupplier,
+            ExchangeStorageManager exchangeStorageManager,
             BlockEncodingSerde blockEncodingSerde,
             @ForStatementResource BoundedExecutor responseExecutor,
             @ForStatementResource ScheduledExecutorService timeoutExecutor)
     {
         this.queryManager = requireNonNull(queryManager, "queryManager is null");
         this.exchangeClientSupplier = requireNonNull(exchangeClientSupplier, "exchangeClientSupplier is null");
+        this.exchangeStorageManager = requireNonNull(exchangeStorageManager, "exchangeStorageManager is null");
         this.blockEncodingSerde = requireNonNull(blockEncodingSerde, "blockEncodingSerde is null");
         this.responseExecutor = requireNonNull(responseExecutor, "responseExecutor is null");
         this.timeoutExecutor = requireNonNull(timeoutExecutor, "timeoutExecutor is null");
@@ -126,6 +133,7 @@ public class ExecutingStatementResource
                             catch (NoSuchElementException e) {
                                 // query is no longer registered
                                 queries.remove(entry.getKey());
+                                removeSpooledOutput(entry.getValue());
                             }
                         }
                     }
@@ -138,6 +146,21 @@ public class ExecutingStatementResource
                 MILLISECONDS);
     }
 
+    private void removeSpooledOutput(Query query)
+    {
+        // the output of the other stages is removed by the scheduler when the query completes,
+        // but the output of the root stage is kept until the results have been read
+        if (!isTaskRetryEnabled(query.getSession())) {
+            return;
+        }
+        try {
+            exchangeStorageManager.getExchangeStorage().removeDirectory(SpoolingOutputBuffer.getQueryDirectory(query.getQueryId()));
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn(e, "Failed to remove spooled output of query %s", query.getQueryId());
+        }
+    }
+
     @PreDestroy
     public void stop()
     {
@@ -190,7 +213,8 @@ public class ExecutingStatementResource
         }
 
         query = queries.computeIfAbsent(queryId, id -> {
-            ExchangeClient exchangeClient = exchangeClientSupplier.get(new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), ExecutingStatementResource.class.getSimpleName()));
+            SimpleLocalMemoryContext memoryContext = new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), ExecutingStatementResource.class.getSimpleName());
+            ExchangeClient exchangeClient = isTaskRetryEnabled(session) ? exchangeClientSupplier.getSpooled(memoryContext) : exchangeClientSupplier.get(memoryContext);
             return Query.create(
                     session,
                     querySlug,
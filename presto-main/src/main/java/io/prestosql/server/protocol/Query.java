@@ -241,6 +241,11 @@ class Query
         return queryId;
     }
 
+    public Session getSession()
+    {
+        return session;
+    }
+
     public boolean isSlugValid(String slug, long token)
     {
         return this.slug.isValid(EXECUTING_QUERY, slug, token);
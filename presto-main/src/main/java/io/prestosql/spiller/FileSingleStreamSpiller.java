@@ -19,7 +19,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.io.Closer;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
 import io.airlift.slice.InputStreamSliceInput;
 import io.airlift.slice.OutputStreamSliceOutput;
 import io.airlift.slice.SliceOutput;
@@ -38,17 +37,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Iterators.concat;
+import static com.google.common.collect.Iterators.transform;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
 import static io.prestosql.execution.buffer.PagesSerdeUtil.writeSerializedPage;
 import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.prestosql.spiller.FileSingleStreamSpillerFactory.SPILL_FILE_PREFIX;
 import static io.prestosql.spiller.FileSingleStreamSpillerFactory.SPILL_FILE_SUFFIX;
+import static java.lang.System.nanoTime;
 import static java.nio.file.StandardOpenOption.APPEND;
+import static java.util.Collections.emptyIterator;
 import static java.util.Objects.requireNonNull;
 
 @NotThreadSafe
@@ -65,23 +69,34 @@ public class FileSingleStreamSpiller
     private final SpillContext localSpillContext;
     private final LocalMemoryContext memoryContext;
 
-    private final ListeningExecutorService executor;
+    private final SpillPathExecutor executor;
+    private final long readAheadSize;
+    private final InMemorySpillBuffer inMemoryBuffer;
 
+    // kept open between the spills, so that they are appended to the same buffered stream
+    private SliceOutput output;
+    // once a page does not fit into the in-memory buffer, all the following pages are written to disk to keep their order
+    private boolean spillingToDisk;
     private boolean writable = true;
     private long spilledPagesInMemorySize;
     private ListenableFuture<?> spillInProgress = Futures.immediateFuture(null);
 
-    public FileSingleStreamSpiller(
+    FileSingleStreamSpiller(
             PagesSerde serde,
-            ListeningExecutorService executor,
-            Path spillPath,
+            SpillPathExecutor executor,
             SpillerStats spillerStats,
             SpillContext spillContext,
             LocalMemoryContext memoryContext,
-            Optional<SpillCipher> spillCipher)
+            Optional<SpillCipher> spillCipher,
+            long readAheadSize,
+            SpillSpaceTracker inMemorySpillSpaceTracker)
     {
         this.serde = requireNonNull(serde, "serde is null");
         this.executor = requireNonNull(executor, "executor is null");
+        checkArgument(readAheadSize >= 0, "readAheadSize is negative");
+        this.readAheadSize = readAheadSize;
+        this.inMemoryBuffer = new InMemorySpillBuffer(inMemorySpillSpaceTracker);
+        this.spillingToDisk = inMemorySpillSpaceTracker.getMaxBytes() == 0;
         this.spillerStats = requireNonNull(spillerStats, "spillerStats is null");
         this.localSpillContext = spillContext.newLocalSpillContext();
         this.memoryContext = requireNonNull(memoryContext, "memoryContext is null");
@@ -100,11 +115,13 @@ public class FileSingleStreamSpiller
         // middle of execution when close() is called (note that this applies to both readPages() and writePages() methods).
         this.memoryContext.setBytes(BUFFER_SIZE);
         try {
-            this.targetFile = closer.register(new FileHolder(Files.createTempFile(spillPath, SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX)));
+            this.targetFile = closer.register(new FileHolder(Files.createTempFile(executor.getPath(), SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX)));
         }
         catch (IOException e) {
             throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to create spill file", e);
         }
+        closer.register(this::closeOutput);
+        closer.register(inMemoryBuffer::close);
     }
 
     @Override
@@ -132,43 +149,116 @@ public class FileSingleStreamSpiller
     @Override
     public ListenableFuture<List<Page>> getAllSpilledPages()
     {
-        return executor.submit(() -> ImmutableList.copyOf(getSpilledPages()));
+        return executor.submit(() -> {
+            checkNoSpillInProgress();
+            return readAllPages();
+        });
     }
 
     private void writePages(Iterator<Page> pageIterator)
     {
         checkState(writable, "Spilling no longer allowed. The spiller has been made non-writable on first read for subsequent reads to be consistent");
-        try (SliceOutput output = new OutputStreamSliceOutput(targetFile.newOutputStream(APPEND), BUFFER_SIZE)) {
+        long start = nanoTime();
+        long writtenBytes = 0;
+        try {
             while (pageIterator.hasNext()) {
                 Page page = pageIterator.next();
                 spilledPagesInMemorySize += page.getSizeInBytes();
                 SerializedPage serializedPage = serde.serialize(page);
                 long pageSize = serializedPage.getSizeInBytes();
+                if (!spillingToDisk) {
+                    if (inMemoryBuffer.tryAdd(serializedPage)) {
+                        spillerStats.addToTotalInMemorySpilledBytes(pageSize);
+                        continue;
+                    }
+                    spillingToDisk = true;
+                }
+                if (output == null) {
+                    output = new OutputStreamSliceOutput(targetFile.newOutputStream(APPEND), BUFFER_SIZE);
+                }
                 localSpillContext.updateBytes(pageSize);
                 spillerStats.addToTotalSpilledBytes(pageSize);
                 writeSerializedPage(output, serializedPage);
+                writtenBytes += pageSize;
+            }
+            if (output != null) {
+                output.flush();
             }
         }
         catch (UncheckedIOException | IOException e) {
             throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to spill pages", e);
         }
+        finally {
+            executor.getStats().recordWrite(writtenBytes, nanoTime() - start);
+        }
     }
 
     private Iterator<Page> readPages()
+    {
+        InputStream input = openSpillFile();
+        InputStreamSliceInput sliceInput = new InputStreamSliceInput(input, BUFFER_SIZE);
+        Iterator<Page> pages = PagesSerdeUtil.readPages(serde, sliceInput);
+        if (readAheadSize > 0) {
+            pages = new ReadAheadIterator(pages, sliceInput);
+        }
+        // the pages kept in memory were spilled before the pages on disk
+        return concat(transform(inMemoryBuffer.getPages(), serde::deserialize), closeWhenExhausted(pages, input));
+    }
+
+    private List<Page> readAllPages()
+    {
+        InputStream input = openSpillFile();
+        InputStreamSliceInput sliceInput = new InputStreamSliceInput(input, BUFFER_SIZE);
+        ImmutableList.Builder<Page> pages = ImmutableList.builder();
+        pages.addAll(transform(inMemoryBuffer.getPages(), serde::deserialize));
+        pages.addAll(readBatch(PagesSerdeUtil.readPages(serde, sliceInput), sliceInput, Long.MAX_VALUE));
+        try {
+            input.close();
+        }
+        catch (IOException e) {
+            throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to read spilled pages", e);
+        }
+        return pages.build();
+    }
+
+    private InputStream openSpillFile()
     {
         checkState(writable, "Repeated reads are disallowed to prevent potential resource leaks");
         writable = false;
 
         try {
-            InputStream input = closer.register(targetFile.newInputStream());
-            Iterator<Page> pages = PagesSerdeUtil.readPages(serde, new InputStreamSliceInput(input, BUFFER_SIZE));
-            return closeWhenExhausted(pages, input);
+            closeOutput();
+            return closer.register(targetFile.newInputStream());
         }
         catch (IOException e) {
             throw new PrestoException(GENERIC_INTERNAL_ERROR, "Failed to read spilled pages", e);
         }
     }
 
+    private List<Page> readBatch(Iterator<Page> pages, InputStreamSliceInput sliceInput, long maxBatchSize)
+    {
+        long start = nanoTime();
+        long startPosition = sliceInput.position();
+        ImmutableList.Builder<Page> batch = ImmutableList.builder();
+        long batchSize = 0;
+        while (batchSize < maxBatchSize && pages.hasNext()) {
+            Page page = pages.next();
+            batchSize += page.getRetainedSizeInBytes();
+            batch.add(page);
+        }
+        executor.getStats().recordRead(sliceInput.position() - startPosition, nanoTime() - start);
+        return batch.build();
+    }
+
+    private void closeOutput()
+            throws IOException
+    {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
     @Override
     public void close()
     {
@@ -187,6 +277,52 @@ public class FileSingleStreamSpiller
         checkState(spillInProgress.isDone(), "spill in progress");
     }
 
+    /**
+     * Reads the next pages of the spill file on the spill path executor, while the previously read pages are consumed.
+     * At most one read is in flight at a time, and each read stops once it has read {@code readAheadSize} bytes.
+     */
+    private class ReadAheadIterator
+            extends AbstractIterator<Page>
+    {
+        private final Iterator<Page> pages;
+        private final InputStreamSliceInput sliceInput;
+
+        private Iterator<Page> currentBatch = emptyIterator();
+        private ListenableFuture<List<Page>> nextBatch;
+
+        public ReadAheadIterator(Iterator<Page> pages, InputStreamSliceInput sliceInput)
+        {
+            this.pages = requireNonNull(pages, "pages is null");
+            this.sliceInput = requireNonNull(sliceInput, "sliceInput is null");
+        }
+
+        @Override
+        protected Page computeNext()
+        {
+            if (!currentBatch.hasNext()) {
+                if (nextBatch == null) {
+                    nextBatch = readNextBatch();
+                }
+                List<Page> batch = getFutureValue(nextBatch);
+                if (batch.isEmpty()) {
+                    nextBatch = null;
+                    memoryContext.setBytes(BUFFER_SIZE);
+                    return endOfData();
+                }
+                nextBatch = readNextBatch();
+                memoryContext.setBytes(BUFFER_SIZE + batch.stream().mapToLong(Page::getRetainedSizeInBytes).sum());
+                currentBatch = batch.iterator();
+            }
+            return currentBatch.next();
+        }
+
+        private ListenableFuture<List<Page>> readNextBatch()
+        {
+            // the next read is submitted only once the previous one is done, so the pages are never read concurrently
+            return executor.submit(() -> readBatch(pages, sliceInput, readAheadSize));
+        }
+    }
+
     private static <T> Iterator<T> closeWhenExhausted(Iterator<T> iterator, Closeable resource)
     {
         requireNonNull(iterator, "iterator is null");
@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.Inject;
 import io.airlift.log.Logger;
+import io.airlift.units.DataSize;
 import io.prestosql.execution.buffer.PagesSerde;
 import io.prestosql.execution.buffer.PagesSerdeFactory;
 import io.prestosql.memory.context.LocalMemoryContext;
@@ -41,9 +42,14 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
 import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static io.prestosql.spi.StandardErrorCode.OUT_OF_SPILL_SPACE;
 import static io.prestosql.sql.analyzer.FeaturesConfig.SPILLER_SPILL_PATH;
 import static java.lang.String.format;
@@ -71,28 +77,30 @@ public class FileSingleStreamSpillerFactory
     private static final String SPILL_FILE_GLOB = "spill*.bin";
     private static final Duration SPILL_PATH_HEALTH_EXPIRY_INTERVAL = Duration.ofMinutes(5);
 
-    private final ListeningExecutorService executor;
     private final PagesSerdeFactory serdeFactory;
     private final List<Path> spillPaths;
+    private final List<SpillPathExecutor> spillPathExecutors;
     private final SpillerStats spillerStats;
     private final double maxUsedSpaceThreshold;
     private final boolean spillEncryptionEnabled;
+    private final long readAheadSize;
+    private final SpillSpaceTracker inMemorySpillSpaceTracker;
     private int roundRobinIndex;
     private final LoadingCache<Path, Boolean> spillPathHealthCache;
 
     @Inject
-    public FileSingleStreamSpillerFactory(Metadata metadata, SpillerStats spillerStats, FeaturesConfig featuresConfig, NodeSpillConfig nodeSpillConfig)
+    public FileSingleStreamSpillerFactory(Metadata metadata, SpillerStats spillerStats, FeaturesConfig featuresConfig, NodeSpillConfig nodeSpillConfig, LocalSpillManager localSpillManager)
     {
         this(
-                listeningDecorator(newFixedThreadPool(
-                        requireNonNull(featuresConfig, "featuresConfig is null").getSpillerThreads(),
-                        daemonThreadsNamed("binary-spiller-%s"))),
+                createSpillPathExecutors(requireNonNull(featuresConfig, "featuresConfig is null").getSpillerThreads()),
                 requireNonNull(metadata, "metadata is null").getBlockEncodingSerde(),
                 spillerStats,
                 requireNonNull(featuresConfig, "featuresConfig is null").getSpillerSpillPaths(),
                 requireNonNull(featuresConfig, "featuresConfig is null").getSpillMaxUsedSpaceThreshold(),
                 requireNonNull(nodeSpillConfig, "nodeSpillConfig is null").isSpillCompressionEnabled(),
-                requireNonNull(nodeSpillConfig, "nodeSpillConfig is null").isSpillEncryptionEnabled());
+                requireNonNull(nodeSpillConfig, "nodeSpillConfig is null").isSpillEncryptionEnabled(),
+                requireNonNull(featuresConfig, "featuresConfig is null").getSpillerReadAheadSize(),
+                requireNonNull(localSpillManager, "localSpillManager is null").getInMemorySpillSpaceTracker());
     }
 
     @VisibleForTesting
@@ -105,8 +113,57 @@ public class FileSingleStreamSpillerFactory
             boolean spillCompressionEnabled,
             boolean spillEncryptionEnabled)
     {
-        this.serdeFactory = new PagesSerdeFactory(blockEncodingSerde, spillCompressionEnabled);
-        this.executor = requireNonNull(executor, "executor is null");
+        this(
+                executor,
+                blockEncodingSerde,
+                spillerStats,
+                spillPaths,
+                maxUsedSpaceThreshold,
+                spillCompressionEnabled,
+                spillEncryptionEnabled,
+                new DataSize(1, MEGABYTE),
+                new SpillSpaceTracker(new DataSize(0, BYTE)));
+    }
+
+    @VisibleForTesting
+    public FileSingleStreamSpillerFactory(
+            ListeningExecutorService executor,
+            BlockEncodingSerde blockEncodingSerde,
+            SpillerStats spillerStats,
+            List<Path> spillPaths,
+            double maxUsedSpaceThreshold,
+            boolean spillCompressionEnabled,
+            boolean spillEncryptionEnabled,
+            DataSize readAheadSize,
+            SpillSpaceTracker inMemorySpillSpaceTracker)
+    {
+        this(
+                path -> requireNonNull(executor, "executor is null"),
+                blockEncodingSerde,
+                spillerStats,
+                spillPaths,
+                maxUsedSpaceThreshold,
+                spillCompressionEnabled,
+                spillEncryptionEnabled,
+                readAheadSize,
+                inMemorySpillSpaceTracker);
+    }
+
+    private FileSingleStreamSpillerFactory(
+            Function<Path, ListeningExecutorService> executorFactory,
+            BlockEncodingSerde blockEncodingSerde,
+            SpillerStats spillerStats,
+            List<Path> spillPaths,
+            double maxUsedSpaceThreshold,
+            boolean spillCompressionEnabled,
+            boolean spillEncryptionEnabled,
+            DataSize readAheadSize,
+            SpillSpaceTracker inMemorySpillSpaceTracker)
+    {
+        requireNonNull(executorFactory, "executorFactory is null");
+        this.inMemorySpillSpaceTracker = requireNonNull(inMemorySpillSpaceTracker, "inMemorySpillSpaceTracker is null");
+        // the pages kept in memory are always compressed, as are the pages which overflow from memory to disk
+        this.serdeFactory = new PagesSerdeFactory(blockEncodingSerde, spillCompressionEnabled || inMemorySpillSpaceTracker.getMaxBytes() > 0);
         this.spillerStats = requireNonNull(spillerStats, "spillerStats cannot be null");
         requireNonNull(spillPaths, "spillPaths is null");
         this.spillPaths = ImmutableList.copyOf(spillPaths);
@@ -121,8 +178,12 @@ public class FileSingleStreamSpillerFactory
                 throw new IllegalArgumentException(format("spill path %s is not accessible, it must be +rwx; adjust %s config property or filesystem permissions", path, SPILLER_SPILL_PATH));
             }
         });
+        this.spillPathExecutors = this.spillPaths.stream()
+                .map(path -> new SpillPathExecutor(path, executorFactory.apply(path), spillerStats.getSpillPathStats(path)))
+                .collect(toImmutableList());
         this.maxUsedSpaceThreshold = maxUsedSpaceThreshold;
         this.spillEncryptionEnabled = spillEncryptionEnabled;
+        this.readAheadSize = requireNonNull(readAheadSize, "readAheadSize is null").toBytes();
         this.roundRobinIndex = 0;
 
         this.spillPathHealthCache = CacheBuilder.newBuilder()
@@ -130,6 +191,12 @@ public class FileSingleStreamSpillerFactory
             .build(CacheLoader.from(path -> isAccessible(path) && isSeeminglyHealthy(path)));
     }
 
+    private static Function<Path, ListeningExecutorService> createSpillPathExecutors(int spillerThreads)
+    {
+        AtomicInteger spillPathIndex = new AtomicInteger();
+        return path -> listeningDecorator(newFixedThreadPool(spillerThreads, daemonThreadsNamed("binary-spiller-" + spillPathIndex.getAndIncrement() + "-%s")));
+    }
+
     @PostConstruct
     public void cleanupOldSpillFiles()
     {
@@ -139,7 +206,7 @@ public class FileSingleStreamSpillerFactory
     @PreDestroy
     public void destroy()
     {
-        executor.shutdownNow();
+        spillPathExecutors.forEach(SpillPathExecutor::shutdownNow);
     }
 
     private static void cleanupOldSpillFiles(Path path)
@@ -168,20 +235,33 @@ public class FileSingleStreamSpillerFactory
             spillCipher = Optional.of(new AesSpillCipher());
         }
         PagesSerde serde = serdeFactory.createPagesSerdeForSpill(spillCipher);
-        return new FileSingleStreamSpiller(serde, executor, getNextSpillPath(), spillerStats, spillContext, memoryContext, spillCipher);
+        return new FileSingleStreamSpiller(serde, getNextSpillPath(), spillerStats, spillContext, memoryContext, spillCipher, readAheadSize, inMemorySpillSpaceTracker);
     }
 
-    private synchronized Path getNextSpillPath()
+    /**
+     * Picks the healthy spill path with enough free space which has the fewest writes and reads queued.
+     * The paths with the same number of queued writes and reads are picked in a round-robin fashion.
+     */
+    private synchronized SpillPathExecutor getNextSpillPath()
     {
-        int spillPathsCount = spillPaths.size();
+        int spillPathsCount = spillPathExecutors.size();
+        SpillPathExecutor selected = null;
+        int selectedIndex = -1;
         for (int i = 0; i < spillPathsCount; ++i) {
             int pathIndex = (roundRobinIndex + i) % spillPathsCount;
-            Path path = spillPaths.get(pathIndex);
-            if (hasEnoughDiskSpace(path) && spillPathHealthCache.getUnchecked(path)) {
-                roundRobinIndex = (roundRobinIndex + i + 1) % spillPathsCount;
-                return path;
+            SpillPathExecutor spillPath = spillPathExecutors.get(pathIndex);
+            if (selected != null && spillPath.getQueuedTasks() >= selected.getQueuedTasks()) {
+                continue;
+            }
+            if (hasEnoughDiskSpace(spillPath.getPath()) && spillPathHealthCache.getUnchecked(spillPath.getPath())) {
+                selected = spillPath;
+                selectedIndex = pathIndex;
             }
         }
+        if (selected != null) {
+            roundRobinIndex = (selectedIndex + 1) % spillPathsCount;
+            return selected;
+        }
         if (spillPaths.isEmpty()) {
             throw new PrestoException(OUT_OF_SPILL_SPACE, "No spill paths configured");
         }
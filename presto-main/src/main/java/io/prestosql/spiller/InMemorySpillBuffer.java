@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.spiller;
+
+import com.google.common.collect.AbstractIterator;
+import io.airlift.slice.Slices;
+import io.prestosql.execution.buffer.PageCodecMarker.MarkerSet;
+import io.prestosql.execution.buffer.SerializedPage;
+import io.prestosql.util.DirectMemory;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the serialized pages of a spiller off-heap, as long as they fit into the space shared by all spillers of the node.
+ * The off-heap memory is freed together with the space when the buffer is closed.
+ */
+@ThreadSafe
+final class InMemorySpillBuffer
+{
+    private final SpillSpaceTracker spaceTracker;
+
+    @GuardedBy("this")
+    private final List<BufferedPage> pages = new ArrayList<>();
+    @GuardedBy("this")
+    private long reservedBytes;
+    @GuardedBy("this")
+    private boolean closed;
+
+    public InMemorySpillBuffer(SpillSpaceTracker spaceTracker)
+    {
+        this.spaceTracker = requireNonNull(spaceTracker, "spaceTracker is null");
+    }
+
+    /**
+     * Copies the page off-heap, unless there is not enough space left for it.
+     *
+     * @return whether the page was added to the buffer
+     */
+    public synchronized boolean tryAdd(SerializedPage page)
+    {
+        // the spiller can be closed while its pages are being written
+        if (closed || !spaceTracker.tryReserve(page.getSizeInBytes())) {
+            return false;
+        }
+        reservedBytes += page.getSizeInBytes();
+
+        DirectMemory memory = new DirectMemory(page.getSizeInBytes());
+        memory.setBytes(0, page.getSlice());
+        pages.add(new BufferedPage(memory, page));
+        return true;
+    }
+
+    public synchronized long getSizeInBytes()
+    {
+        return reservedBytes;
+    }
+
+    /**
+     * Returns on-heap copies of the pages, as {@link io.prestosql.execution.buffer.PagesSerde} can only deserialize on-heap pages.
+     * The pages are copied as they are iterated.
+     */
+    public synchronized Iterator<SerializedPage> getPages()
+    {
+        checkState(!closed, "buffer is closed");
+        int pageCount = pages.size();
+        return new AbstractIterator<SerializedPage>()
+        {
+            private int position;
+
+            @Override
+            protected SerializedPage computeNext()
+            {
+                if (position == pageCount) {
+                    return endOfData();
+                }
+                return getPage(position++);
+            }
+        };
+    }
+
+    private synchronized SerializedPage getPage(int position)
+    {
+        // the memory of the pages is freed when the buffer is closed
+        checkState(!closed, "buffer is closed");
+        return pages.get(position).toSerializedPage();
+    }
+
+    public synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pages.forEach(BufferedPage::free);
+        pages.clear();
+        spaceTracker.free(reservedBytes);
+        reservedBytes = 0;
+    }
+
+    private static class BufferedPage
+    {
+        private final DirectMemory memory;
+        private final byte pageCodecMarkers;
+        private final int positionCount;
+        private final int uncompressedSizeInBytes;
+
+        public BufferedPage(DirectMemory memory, SerializedPage page)
+        {
+            this.memory = requireNonNull(memory, "memory is null");
+            this.pageCodecMarkers = page.getPageCodecMarkers();
+            this.positionCount = page.getPositionCount();
+            this.uncompressedSizeInBytes = page.getUncompressedSizeInBytes();
+        }
+
+        public SerializedPage toSerializedPage()
+        {
+            byte[] bytes = new byte[toIntExact(memory.getSize())];
+            memory.getBytes(0, bytes, bytes.length);
+            return new SerializedPage(Slices.wrappedBuffer(bytes), MarkerSet.fromByteValue(pageCodecMarkers), positionCount, uncompressedSizeInBytes);
+        }
+
+        public void free()
+        {
+            memory.free();
+        }
+    }
+}
@@ -20,16 +20,26 @@ import static java.util.Objects.requireNonNull;
 public final class LocalSpillManager
 {
     private final SpillSpaceTracker spillSpaceTracker;
+    private final SpillSpaceTracker inMemorySpillSpaceTracker;
 
     @Inject
     public LocalSpillManager(NodeSpillConfig config)
     {
         requireNonNull(config, "config is null");
         spillSpaceTracker = new SpillSpaceTracker(config.getMaxSpillPerNode());
+        inMemorySpillSpaceTracker = new SpillSpaceTracker(config.getMaxInMemorySpillPerNode());
     }
 
     public SpillSpaceTracker getSpillSpaceTracker()
     {
         return spillSpaceTracker;
     }
+
+    /**
+     * Tracks the spilled pages kept in memory by the spillers, which do not count towards {@link #getSpillSpaceTracker()}.
+     */
+    public SpillSpaceTracker getInMemorySpillSpaceTracker()
+    {
+        return inMemorySpillSpaceTracker;
+    }
 }
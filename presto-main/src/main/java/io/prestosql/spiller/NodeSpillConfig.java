@@ -14,6 +14,7 @@
 package io.prestosql.spiller;
 
 import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
 import io.airlift.configuration.LegacyConfig;
 import io.airlift.units.DataSize;
 
@@ -23,6 +24,7 @@ public class NodeSpillConfig
 {
     private DataSize maxSpillPerNode = new DataSize(100, DataSize.Unit.GIGABYTE);
     private DataSize queryMaxSpillPerNode = new DataSize(100, DataSize.Unit.GIGABYTE);
+    private DataSize maxInMemorySpillPerNode = new DataSize(0, DataSize.Unit.BYTE);
 
     private boolean spillCompressionEnabled;
     private boolean spillEncryptionEnabled;
@@ -55,6 +57,20 @@ public class NodeSpillConfig
         return this;
     }
 
+    @NotNull
+    public DataSize getMaxInMemorySpillPerNode()
+    {
+        return maxInMemorySpillPerNode;
+    }
+
+    @Config("max-in-memory-spill-per-node")
+    @ConfigDescription("Size of the off-heap buffer shared by all queries, which keeps the compressed spilled pages before they overflow to disk")
+    public NodeSpillConfig setMaxInMemorySpillPerNode(DataSize maxInMemorySpillPerNode)
+    {
+        this.maxInMemorySpillPerNode = maxInMemorySpillPerNode;
+        return this;
+    }
+
     public boolean isSpillCompressionEnabled()
     {
         return spillCompressionEnabled;
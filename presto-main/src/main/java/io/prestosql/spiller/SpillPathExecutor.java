@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.spiller;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs the file I/O of the spillers writing to a single spill path, and keeps track
+ * of how many of their writes and reads are queued or running.
+ */
+final class SpillPathExecutor
+{
+    private final Path path;
+    private final ListeningExecutorService executor;
+    private final SpillPathStats stats;
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+
+    SpillPathExecutor(Path path, ListeningExecutorService executor, SpillPathStats stats)
+    {
+        this.path = requireNonNull(path, "path is null");
+        this.executor = requireNonNull(executor, "executor is null");
+        this.stats = requireNonNull(stats, "stats is null");
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public SpillPathStats getStats()
+    {
+        return stats;
+    }
+
+    public int getQueuedTasks()
+    {
+        return queuedTasks.get();
+    }
+
+    public <T> ListenableFuture<T> submit(Callable<T> task)
+    {
+        queuedTasks.incrementAndGet();
+        try {
+            // decremented by the task itself, so that the task is no longer counted once its future is done
+            return executor.submit(() -> {
+                try {
+                    return task.call();
+                }
+                finally {
+                    queuedTasks.decrementAndGet();
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            queuedTasks.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public ListenableFuture<?> submit(Runnable task)
+    {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public void shutdownNow()
+    {
+        executor.shutdownNow();
+    }
+}
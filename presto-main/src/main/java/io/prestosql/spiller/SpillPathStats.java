@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.spiller;
+
+import io.airlift.stats.CounterStat;
+import io.airlift.stats.TimeStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class SpillPathStats
+{
+    private final CounterStat writtenBytes = new CounterStat();
+    private final CounterStat readBytes = new CounterStat();
+    private final TimeStat writeTime = new TimeStat(MILLISECONDS);
+    private final TimeStat readTime = new TimeStat(MILLISECONDS);
+
+    @Managed
+    @Nested
+    public CounterStat getWrittenBytes()
+    {
+        return writtenBytes;
+    }
+
+    @Managed
+    @Nested
+    public CounterStat getReadBytes()
+    {
+        return readBytes;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getWriteTime()
+    {
+        return writeTime;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getReadTime()
+    {
+        return readTime;
+    }
+
+    public void recordWrite(long bytes, long nanos)
+    {
+        writtenBytes.update(bytes);
+        writeTime.addNanos(nanos);
+    }
+
+    public void recordRead(long bytes, long nanos)
+    {
+        readBytes.update(bytes);
+        readTime.addNanos(nanos);
+    }
+}
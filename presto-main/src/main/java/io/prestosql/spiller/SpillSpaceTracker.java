@@ -60,6 +60,22 @@ public class SpillSpaceTracker
         return NOT_BLOCKED;
     }
 
+    /**
+     * Reserves the given number of bytes to spill, unless that would exceed the maximum.
+     *
+     * @return whether the bytes were reserved
+     */
+    public synchronized boolean tryReserve(long bytes)
+    {
+        checkArgument(bytes >= 0, "bytes is negative");
+
+        if ((currentBytes + bytes) > maxBytes) {
+            return false;
+        }
+        currentBytes += bytes;
+        return true;
+    }
+
     public synchronized void free(long bytes)
     {
         checkArgument(bytes >= 0, "bytes is negative");
@@ -15,11 +15,16 @@ package io.prestosql.spiller;
 
 import org.weakref.jmx.Managed;
 
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class SpillerStats
 {
     protected final AtomicLong totalSpilledBytes = new AtomicLong();
+    private final AtomicLong totalInMemorySpilledBytes = new AtomicLong();
+    private final Map<Path, SpillPathStats> spillPathStats = new ConcurrentHashMap<>();
 
     @Managed
     public long getTotalSpilledBytes()
@@ -31,4 +36,20 @@ public class SpillerStats
     {
         totalSpilledBytes.addAndGet(delta);
     }
+
+    @Managed
+    public long getTotalInMemorySpilledBytes()
+    {
+        return totalInMemorySpilledBytes.get();
+    }
+
+    public void addToTotalInMemorySpilledBytes(long delta)
+    {
+        totalInMemorySpilledBytes.addAndGet(delta);
+    }
+
+    public SpillPathStats getSpillPathStats(Path spillPath)
+    {
+        return spillPathStats.computeIfAbsent(spillPath, path -> new SpillPathStats());
+    }
 }
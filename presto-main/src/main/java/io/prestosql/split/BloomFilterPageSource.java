@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.split;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import io.prestosql.operator.BloomFilter;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.connector.ConnectorPageSource;
+import io.prestosql.spi.type.Type;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Drops the rows of the delegate's pages which are rejected by the Bloom filters of dynamic filters,
+ * before they are processed by the filter and projections of the table scan.
+ * Only the filtered channels are loaded, the other channels of the page stay lazy.
+ */
+public class BloomFilterPageSource
+        implements ConnectorPageSource
+{
+    private final ConnectorPageSource delegate;
+    private final int[] channels;
+    private final List<Type> types;
+    private final List<BloomFilter> bloomFilters;
+
+    public BloomFilterPageSource(ConnectorPageSource delegate, List<Integer> channels, List<Type> types, List<BloomFilter> bloomFilters)
+    {
+        this.delegate = requireNonNull(delegate, "delegate is null");
+        this.channels = Ints.toArray(requireNonNull(channels, "channels is null"));
+        this.types = ImmutableList.copyOf(requireNonNull(types, "types is null"));
+        this.bloomFilters = ImmutableList.copyOf(requireNonNull(bloomFilters, "bloomFilters is null"));
+        checkArgument(this.channels.length == types.size() && types.size() == bloomFilters.size(), "channels, types and bloomFilters must have the same size");
+    }
+
+    @Override
+    public long getCompletedBytes()
+    {
+        return delegate.getCompletedBytes();
+    }
+
+    @Override
+    public long getReadTimeNanos()
+    {
+        return delegate.getReadTimeNanos();
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return delegate.isFinished();
+    }
+
+    @Override
+    public Page getNextPage()
+    {
+        Page page = delegate.getNextPage();
+        if (page == null) {
+            return null;
+        }
+
+        int[] retainedPositions = new int[page.getPositionCount()];
+        int retainedPositionCount = 0;
+        Block[] blocks = new Block[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            blocks[i] = page.getBlock(channels[i]);
+        }
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            if (mightMatch(blocks, position)) {
+                retainedPositions[retainedPositionCount] = position;
+                retainedPositionCount++;
+            }
+        }
+        if (retainedPositionCount == page.getPositionCount()) {
+            return page;
+        }
+        return page.getPositions(retainedPositions, 0, retainedPositionCount);
+    }
+
+    private boolean mightMatch(Block[] blocks, int position)
+    {
+        for (int i = 0; i < blocks.length; i++) {
+            if (!bloomFilters.get(i).mightContain(types.get(i), blocks[i], position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getSystemMemoryUsage()
+    {
+        return delegate.getSystemMemoryUsage();
+    }
+
+    @Override
+    public CompletableFuture<?> isBlocked()
+    {
+        return delegate.isBlocked();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        delegate.close();
+    }
+}
@@ -14,6 +14,7 @@
 package io.prestosql.sql;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import io.airlift.slice.Slice;
 import io.prestosql.metadata.Metadata;
 import io.prestosql.metadata.ResolvedFunction;
@@ -25,6 +26,9 @@ import io.prestosql.spi.function.TypeParameter;
 import io.prestosql.spi.type.Type;
 import io.prestosql.spi.type.VarcharType;
 import io.prestosql.sql.planner.FunctionCallBuilder;
+import io.prestosql.sql.planner.plan.JoinNode;
+import io.prestosql.sql.planner.plan.PlanNode;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
 import io.prestosql.sql.tree.Expression;
 import io.prestosql.sql.tree.FunctionCall;
 import io.prestosql.sql.tree.QualifiedName;
@@ -34,12 +38,14 @@ import io.prestosql.sql.tree.SymbolReference;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.prestosql.spi.type.StandardTypes.BOOLEAN;
 import static io.prestosql.spi.type.StandardTypes.VARCHAR;
 import static io.prestosql.sql.ExpressionUtils.extractConjuncts;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
 import static java.util.Objects.requireNonNull;
 
 public final class DynamicFilters
@@ -75,6 +81,20 @@ public final class DynamicFilters
         return new ExtractResult(staticConjuncts.build(), dynamicConjuncts.build());
     }
 
+    public static Set<String> getProducedDynamicFilters(PlanNode root)
+    {
+        ImmutableSet.Builder<String> producedDynamicFilters = ImmutableSet.builder();
+        searchFrom(root)
+                .where(JoinNode.class::isInstance)
+                .<JoinNode>findAll()
+                .forEach(node -> producedDynamicFilters.addAll(node.getDynamicFilters().keySet()));
+        searchFrom(root)
+                .where(SemiJoinNode.class::isInstance)
+                .<SemiJoinNode>findAll()
+                .forEach(node -> node.getDynamicFilterId().ifPresent(producedDynamicFilters::add));
+        return producedDynamicFilters.build();
+    }
+
     public static boolean isDynamicFilter(Expression expression)
     {
         return getDescriptor(expression).isPresent();
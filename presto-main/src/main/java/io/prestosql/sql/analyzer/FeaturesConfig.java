@@ -108,6 +108,7 @@ public class FeaturesConfig
     private DataSize aggregationOperatorUnspillMemoryLimit = new DataSize(4, DataSize.Unit.MEGABYTE);
     private List<Path> spillerSpillPaths = ImmutableList.of();
     private int spillerThreads = 4;
+    private DataSize spillerReadAheadSize = new DataSize(1, MEGABYTE);
     private double spillMaxUsedSpaceThreshold = 0.9;
     private boolean iterativeOptimizerEnabled = true;
     private boolean enableStatsCalculator = true;
@@ -129,8 +130,27 @@ public class FeaturesConfig
 
     private Duration iterativeOptimizerTimeout = new Duration(3, MINUTES); // by default let optimizer wait a long time in case it retrieves some data from ConnectorMetadata
     private boolean enableDynamicFiltering;
+    private boolean enableCoordinatorDynamicFiltersDistribution = true;
     private int dynamicFilteringMaxPerDriverRowCount = 100;
     private DataSize dynamicFilteringMaxPerDriverSize = new DataSize(10, KILOBYTE);
+    private DataSize dynamicFilteringBloomFilterSize = new DataSize(256, KILOBYTE);
+    private boolean taskRetryEnabled;
+    private int taskMaxRetries = 3;
+    private boolean adaptiveJoinReorderingEnabled;
+    private boolean joinSkewSplittingEnabled;
+    private int joinSkewFactor = 5;
+    private DataSize joinSkewMinPartitionSize = new DataSize(256, MEGABYTE);
+    private boolean adaptivePartialAggregationEnabled = true;
+    private int adaptivePartialAggregationMinRows = 100_000;
+    private double adaptivePartialAggregationUniqueRowsRatioThreshold = 0.8;
+    private boolean partitionedAggregationSpillEnabled;
+    private boolean joinHashOffHeapEnabled;
+    private boolean flatHashAggregationEnabled;
+    private boolean directGroupByHashEnabled;
+    private boolean fusedAggregationEnabled;
+    private boolean joinBloomFilterEnabled;
+    private boolean radixPartitionedJoinEnabled;
+    private boolean mergeJoinEnabled;
 
     private DataSize filterAndProjectMinOutputPageSize = new DataSize(500, KILOBYTE);
     private int filterAndProjectMinOutputPageRowCount = 256;
@@ -688,6 +708,20 @@ public class FeaturesConfig
         return this;
     }
 
+    @NotNull
+    public DataSize getSpillerReadAheadSize()
+    {
+        return spillerReadAheadSize;
+    }
+
+    @Config("spiller-read-ahead-size")
+    @ConfigDescription("Size of the spilled pages read ahead of time from the spill files, 0 disables read-ahead")
+    public FeaturesConfig setSpillerReadAheadSize(DataSize spillerReadAheadSize)
+    {
+        this.spillerReadAheadSize = spillerReadAheadSize;
+        return this;
+    }
+
     @DecimalMin("0.0")
     @DecimalMax("1.0")
     public double getMemoryRevokingThreshold()
@@ -745,6 +779,19 @@ public class FeaturesConfig
         return this;
     }
 
+    public boolean isEnableCoordinatorDynamicFiltersDistribution()
+    {
+        return enableCoordinatorDynamicFiltersDistribution;
+    }
+
+    @Config("experimental.enable-coordinator-dynamic-filters-distribution")
+    @ConfigDescription("Collect dynamic filters on the coordinator and distribute them to the probe-side tasks of distributed joins")
+    public FeaturesConfig setEnableCoordinatorDynamicFiltersDistribution(boolean value)
+    {
+        this.enableCoordinatorDynamicFiltersDistribution = value;
+        return this;
+    }
+
     public int getDynamicFilteringMaxPerDriverRowCount()
     {
         return dynamicFilteringMaxPerDriverRowCount;
@@ -770,6 +817,244 @@ public class FeaturesConfig
         return this;
     }
 
+    public DataSize getDynamicFilteringBloomFilterSize()
+    {
+        return dynamicFilteringBloomFilterSize;
+    }
+
+    @Config("experimental.dynamic-filtering-bloom-filter-size")
+    public FeaturesConfig setDynamicFilteringBloomFilterSize(DataSize dynamicFilteringBloomFilterSize)
+    {
+        this.dynamicFilteringBloomFilterSize = dynamicFilteringBloomFilterSize;
+        return this;
+    }
+
+    public boolean isTaskRetryEnabled()
+    {
+        return taskRetryEnabled;
+    }
+
+    @Config("experimental.task-retry-enabled")
+    @ConfigDescription("Spool task output to the exchange storage and retry failed tasks on other nodes")
+    public FeaturesConfig setTaskRetryEnabled(boolean taskRetryEnabled)
+    {
+        this.taskRetryEnabled = taskRetryEnabled;
+        return this;
+    }
+
+    @Min(0)
+    public int getTaskMaxRetries()
+    {
+        return taskMaxRetries;
+    }
+
+    @Config("experimental.task-max-retries")
+    public FeaturesConfig setTaskMaxRetries(int taskMaxRetries)
+    {
+        this.taskMaxRetries = taskMaxRetries;
+        return this;
+    }
+
+    public boolean isAdaptiveJoinReorderingEnabled()
+    {
+        return adaptiveJoinReorderingEnabled;
+    }
+
+    @Config("experimental.adaptive-join-reordering-enabled")
+    @ConfigDescription("Choose the build side of partitioned joins from the actual size of their inputs, when task output is spooled")
+    public FeaturesConfig setAdaptiveJoinReorderingEnabled(boolean adaptiveJoinReorderingEnabled)
+    {
+        this.adaptiveJoinReorderingEnabled = adaptiveJoinReorderingEnabled;
+        return this;
+    }
+
+    public boolean isJoinSkewSplittingEnabled()
+    {
+        return joinSkewSplittingEnabled;
+    }
+
+    @Config("experimental.join-skew-splitting-enabled")
+    @ConfigDescription("Split skewed partitions of partitioned joins over multiple tasks, when task output is spooled")
+    public FeaturesConfig setJoinSkewSplittingEnabled(boolean joinSkewSplittingEnabled)
+    {
+        this.joinSkewSplittingEnabled = joinSkewSplittingEnabled;
+        return this;
+    }
+
+    @Min(2)
+    public int getJoinSkewFactor()
+    {
+        return joinSkewFactor;
+    }
+
+    @Config("experimental.join-skew-factor")
+    @ConfigDescription("A join partition is skewed when its probe side is this many times larger than the median partition")
+    public FeaturesConfig setJoinSkewFactor(int joinSkewFactor)
+    {
+        this.joinSkewFactor = joinSkewFactor;
+        return this;
+    }
+
+    @NotNull
+    public DataSize getJoinSkewMinPartitionSize()
+    {
+        return joinSkewMinPartitionSize;
+    }
+
+    @Config("experimental.join-skew-min-partition-size")
+    @ConfigDescription("Minimum size of the probe side of a join partition for it to be considered skewed")
+    public FeaturesConfig setJoinSkewMinPartitionSize(DataSize joinSkewMinPartitionSize)
+    {
+        this.joinSkewMinPartitionSize = joinSkewMinPartitionSize;
+        return this;
+    }
+
+    public boolean isAdaptivePartialAggregationEnabled()
+    {
+        return adaptivePartialAggregationEnabled;
+    }
+
+    @Config("experimental.adaptive-partial-aggregation-enabled")
+    @ConfigDescription("Stop aggregating in partial aggregations which do not reduce the number of rows")
+    public FeaturesConfig setAdaptivePartialAggregationEnabled(boolean adaptivePartialAggregationEnabled)
+    {
+        this.adaptivePartialAggregationEnabled = adaptivePartialAggregationEnabled;
+        return this;
+    }
+
+    @Min(0)
+    public int getAdaptivePartialAggregationMinRows()
+    {
+        return adaptivePartialAggregationMinRows;
+    }
+
+    @Config("experimental.adaptive-partial-aggregation-min-rows")
+    @ConfigDescription("Minimum number of rows a partial aggregation must process before it can be disabled")
+    public FeaturesConfig setAdaptivePartialAggregationMinRows(int adaptivePartialAggregationMinRows)
+    {
+        this.adaptivePartialAggregationMinRows = adaptivePartialAggregationMinRows;
+        return this;
+    }
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    public double getAdaptivePartialAggregationUniqueRowsRatioThreshold()
+    {
+        return adaptivePartialAggregationUniqueRowsRatioThreshold;
+    }
+
+    @Config("experimental.adaptive-partial-aggregation-unique-rows-ratio-threshold")
+    @ConfigDescription("Disable a partial aggregation when the ratio of its output rows to its input rows exceeds this threshold")
+    public FeaturesConfig setAdaptivePartialAggregationUniqueRowsRatioThreshold(double adaptivePartialAggregationUniqueRowsRatioThreshold)
+    {
+        this.adaptivePartialAggregationUniqueRowsRatioThreshold = adaptivePartialAggregationUniqueRowsRatioThreshold;
+        return this;
+    }
+
+    public boolean isPartitionedAggregationSpillEnabled()
+    {
+        return partitionedAggregationSpillEnabled;
+    }
+
+    @Config("experimental.partitioned-aggregation-spill-enabled")
+    @ConfigDescription("Spill hash aggregations in partitions of the group by hash, instead of as sorted runs which are merged")
+    public FeaturesConfig setPartitionedAggregationSpillEnabled(boolean partitionedAggregationSpillEnabled)
+    {
+        this.partitionedAggregationSpillEnabled = partitionedAggregationSpillEnabled;
+        return this;
+    }
+
+    public boolean isJoinHashOffHeapEnabled()
+    {
+        return joinHashOffHeapEnabled;
+    }
+
+    @Config("experimental.join-hash-off-heap-enabled")
+    @ConfigDescription("Keep the hash tables and position links of join build sides in direct memory")
+    public FeaturesConfig setJoinHashOffHeapEnabled(boolean joinHashOffHeapEnabled)
+    {
+        this.joinHashOffHeapEnabled = joinHashOffHeapEnabled;
+        return this;
+    }
+
+    public boolean isFlatHashAggregationEnabled()
+    {
+        return flatHashAggregationEnabled;
+    }
+
+    @Config("experimental.flat-hash-aggregation-enabled")
+    @ConfigDescription("Keep group by keys and fixed size aggregation states together in a flat hash table")
+    public FeaturesConfig setFlatHashAggregationEnabled(boolean flatHashAggregationEnabled)
+    {
+        this.flatHashAggregationEnabled = flatHashAggregationEnabled;
+        return this;
+    }
+
+    public boolean isDirectGroupByHashEnabled()
+    {
+        return directGroupByHashEnabled;
+    }
+
+    @Config("experimental.direct-group-by-hash-enabled")
+    @ConfigDescription("Look up groups of small range integer keys by array index instead of hashing")
+    public FeaturesConfig setDirectGroupByHashEnabled(boolean directGroupByHashEnabled)
+    {
+        this.directGroupByHashEnabled = directGroupByHashEnabled;
+        return this;
+    }
+
+    public boolean isFusedAggregationEnabled()
+    {
+        return fusedAggregationEnabled;
+    }
+
+    @Config("experimental.fused-aggregation-enabled")
+    @ConfigDescription("Compile all aggregations of a flat hash aggregation into a single accumulator")
+    public FeaturesConfig setFusedAggregationEnabled(boolean fusedAggregationEnabled)
+    {
+        this.fusedAggregationEnabled = fusedAggregationEnabled;
+        return this;
+    }
+
+    public boolean isJoinBloomFilterEnabled()
+    {
+        return joinBloomFilterEnabled;
+    }
+
+    @Config("experimental.join-bloom-filter-enabled")
+    @ConfigDescription("Check probe rows against a Bloom filter of the build side before looking them up in the join hash table")
+    public FeaturesConfig setJoinBloomFilterEnabled(boolean joinBloomFilterEnabled)
+    {
+        this.joinBloomFilterEnabled = joinBloomFilterEnabled;
+        return this;
+    }
+
+    public boolean isRadixPartitionedJoinEnabled()
+    {
+        return radixPartitionedJoinEnabled;
+    }
+
+    @Config("experimental.radix-partitioned-join-enabled")
+    @ConfigDescription("Split large join hash tables into cache sized partitions and look up probe rows grouped by partition")
+    public FeaturesConfig setRadixPartitionedJoinEnabled(boolean radixPartitionedJoinEnabled)
+    {
+        this.radixPartitionedJoinEnabled = radixPartitionedJoinEnabled;
+        return this;
+    }
+
+    public boolean isMergeJoinEnabled()
+    {
+        return mergeJoinEnabled;
+    }
+
+    @Config("experimental.merge-join-enabled")
+    @ConfigDescription("Use a merge join instead of a hash join when both sides of an inner join are sorted on the join keys")
+    public FeaturesConfig setMergeJoinEnabled(boolean mergeJoinEnabled)
+    {
+        this.mergeJoinEnabled = mergeJoinEnabled;
+        return this;
+    }
+
     public boolean isOptimizeMixedDistinctAggregations()
     {
         return optimizeMixedDistinctAggregations;
@@ -0,0 +1,214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner;
+
+import io.prestosql.Session;
+import io.prestosql.sql.planner.Partitioning.ArgumentBinding;
+import io.prestosql.sql.planner.plan.ExchangeNode;
+import io.prestosql.sql.planner.plan.FilterNode;
+import io.prestosql.sql.planner.plan.JoinNode;
+import io.prestosql.sql.planner.plan.PlanFragmentId;
+import io.prestosql.sql.planner.plan.PlanNode;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+import io.prestosql.sql.planner.plan.ProjectNode;
+import io.prestosql.sql.planner.plan.RemoteSourceNode;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
+import io.prestosql.sql.planner.plan.SimplePlanRewriter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.prestosql.SystemSessionProperties.getTaskConcurrency;
+import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.LOCAL;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Type.REPARTITION;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Type.REPLICATE;
+import static io.prestosql.sql.planner.plan.ExchangeNode.gatheringExchange;
+import static io.prestosql.sql.planner.plan.ExchangeNode.partitionedExchange;
+import static io.prestosql.sql.planner.plan.JoinNode.DistributionType.PARTITIONED;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Chooses the build side of partitioned joins from the actual output size of the stages which
+ * produce the join inputs, instead of the estimates used by the optimizer. Both join inputs are
+ * partitioned on the join keys by the source stages, so the sides can be swapped in the join
+ * fragment without changing the source stages.
+ * <p>
+ * This requires the source stages to finish before the join stage is scheduled, which is only
+ * possible when their output is spooled.
+ * <p>
+ * Only the sides of partitioned joins are chosen. Replicated joins keep the distribution chosen
+ * by the optimizer, even when their build side is larger than the broadcast limit.
+ */
+public final class AdaptiveJoinReordering
+{
+    private AdaptiveJoinReordering() {}
+
+    /**
+     * Returns true if the fragment contains a join whose sides can be chosen from the size of its inputs.
+     */
+    public static boolean hasReorderableJoins(PlanFragment fragment)
+    {
+        return canWaitForSources(fragment) && searchFrom(fragment.getRoot())
+                .where(node -> node instanceof JoinNode && isReorderable((JoinNode) node))
+                .matches();
+    }
+
+    /**
+     * Returns true if the fragment can be held back until its source stages have finished.
+     * Fragments with dynamic filters or replicated inputs are excluded, as the source stages would
+     * wait for the filters or the output buffers of the held back stage.
+     */
+    static boolean canWaitForSources(PlanFragment fragment)
+    {
+        if (fragment.getRemoteSourceNodes().stream().anyMatch(node -> node.getExchangeType() == REPLICATE)) {
+            return false;
+        }
+        return !searchFrom(fragment.getRoot())
+                .where(node -> (node instanceof JoinNode && !((JoinNode) node).getDynamicFilters().isEmpty()) ||
+                        (node instanceof SemiJoinNode && ((SemiJoinNode) node).getDynamicFilterId().isPresent()))
+                .matches();
+    }
+
+    /**
+     * Swaps the sides of the reorderable joins of the fragment whose build side produced more data than the probe side.
+     *
+     * @param sourceOutputSizes the output size in bytes of each source fragment
+     */
+    public static PlanFragment reorderJoins(Session session, PlanFragment fragment, Map<PlanFragmentId, Long> sourceOutputSizes)
+    {
+        PlanNode root = SimplePlanRewriter.rewriteWith(new Rewriter(sourceOutputSizes, getTaskConcurrency(session) > 1), fragment.getRoot());
+        if (root == fragment.getRoot()) {
+            return fragment;
+        }
+        return fragment.withRoot(root);
+    }
+
+    static boolean isReorderable(JoinNode node)
+    {
+        return node.getDistributionType().equals(Optional.of(PARTITIONED)) &&
+                !node.getCriteria().isEmpty() &&
+                node.getDynamicFilters().isEmpty() &&
+                isRemoteInput(node.getLeft()) &&
+                isRemoteInput(node.getRight());
+    }
+
+    /**
+     * Returns true if the size of the output of the node is known from the size of its remote sources.
+     */
+    private static boolean isRemoteInput(PlanNode node)
+    {
+        if (node instanceof RemoteSourceNode) {
+            return true;
+        }
+        if (node instanceof ProjectNode || node instanceof FilterNode || (node instanceof ExchangeNode && ((ExchangeNode) node).getScope() == LOCAL)) {
+            return node.getSources().stream().allMatch(AdaptiveJoinReordering::isRemoteInput);
+        }
+        return false;
+    }
+
+    private static class Rewriter
+            extends SimplePlanRewriter<Void>
+    {
+        private final Map<PlanFragmentId, Long> sourceOutputSizes;
+        private final boolean parallelBuild;
+
+        public Rewriter(Map<PlanFragmentId, Long> sourceOutputSizes, boolean parallelBuild)
+        {
+            this.sourceOutputSizes = requireNonNull(sourceOutputSizes, "sourceOutputSizes is null");
+            this.parallelBuild = parallelBuild;
+        }
+
+        @Override
+        public PlanNode visitJoin(JoinNode node, RewriteContext<Void> context)
+        {
+            if (!isReorderable(node)) {
+                return context.defaultRewrite(node);
+            }
+
+            Optional<Long> probeSize = getInputSize(node.getLeft());
+            Optional<Long> buildSize = getInputSize(node.getRight());
+            if (!probeSize.isPresent() || !buildSize.isPresent() || buildSize.get() <= probeSize.get()) {
+                return node;
+            }
+
+            JoinNode flipped = node.flipChildren();
+            // the build side must be partitioned on the join keys when it is built in parallel
+            return new JoinNode(
+                    flipped.getId(),
+                    flipped.getType(),
+                    flipped.getLeft(),
+                    enforceBuildPartitioning(flipped),
+                    flipped.getCriteria(),
+                    flipped.getOutputSymbols(),
+                    flipped.getFilter(),
+                    flipped.getLeftHashSymbol(),
+                    flipped.getRightHashSymbol(),
+                    flipped.getDistributionType(),
+                    flipped.isSpillable(),
+                    flipped.getDynamicFilters());
+        }
+
+        private PlanNode enforceBuildPartitioning(JoinNode node)
+        {
+            PlanNode build = node.getRight();
+            List<Symbol> buildSymbols = node.getCriteria().stream()
+                    .map(JoinNode.EquiJoinClause::getRight)
+                    .collect(toImmutableList());
+            if (build instanceof ExchangeNode && isLocalPartitionedOn((ExchangeNode) build, buildSymbols)) {
+                return build;
+            }
+
+            PlanNodeId id = new PlanNodeId(node.getId() + "_build");
+            if (parallelBuild) {
+                return partitionedExchange(id, LOCAL, build, buildSymbols, node.getRightHashSymbol());
+            }
+            return gatheringExchange(id, LOCAL, build);
+        }
+
+        private static boolean isLocalPartitionedOn(ExchangeNode exchange, List<Symbol> symbols)
+        {
+            Partitioning partitioning = exchange.getPartitioningScheme().getPartitioning();
+            return exchange.getScope() == LOCAL &&
+                    exchange.getType() == REPARTITION &&
+                    partitioning.getHandle().equals(FIXED_HASH_DISTRIBUTION) &&
+                    partitioning.getArguments().stream().allMatch(ArgumentBinding::isVariable) &&
+                    partitioning.getArguments().stream()
+                            .map(ArgumentBinding::getColumn)
+                            .collect(toImmutableList())
+                            .equals(symbols);
+        }
+
+        private Optional<Long> getInputSize(PlanNode node)
+        {
+            List<RemoteSourceNode> remoteSources = searchFrom(node)
+                    .where(RemoteSourceNode.class::isInstance)
+                    .findAll();
+            long size = 0;
+            for (RemoteSourceNode remoteSource : remoteSources) {
+                for (PlanFragmentId fragmentId : remoteSource.getSourceFragmentIds()) {
+                    Long fragmentSize = sourceOutputSizes.get(fragmentId);
+                    if (fragmentSize == null) {
+                        return Optional.empty();
+                    }
+                    size += fragmentSize;
+                }
+            }
+            return Optional.of(size);
+        }
+    }
+}
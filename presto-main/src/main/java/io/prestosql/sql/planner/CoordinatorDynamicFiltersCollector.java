@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import io.prestosql.spi.connector.ColumnHandle;
+import io.prestosql.spi.connector.DynamicFilter;
+import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.TupleDomain;
+import io.prestosql.sql.DynamicFilters;
+import io.prestosql.sql.tree.SymbolReference;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the domains of dynamic filters collected by the coordinator for a single query
+ * (see {@link DistributedDynamicFilter}), so they can be used when enumerating splits.
+ */
+@ThreadSafe
+public class CoordinatorDynamicFiltersCollector
+{
+    private final Map<String, Domain> domains = new ConcurrentHashMap<>();
+
+    // Mapping from dynamic filter ID to a future completed once its domain is collected.
+    private final Map<String, CompletableFuture<Void>> collectedFilters = new ConcurrentHashMap<>();
+
+    public void addDomains(Map<String, Domain> domains)
+    {
+        requireNonNull(domains, "domains is null");
+        this.domains.putAll(domains);
+        domains.keySet().forEach(filterId -> getCollectedFuture(filterId).complete(null));
+    }
+
+    private CompletableFuture<Void> getCollectedFuture(String filterId)
+    {
+        return collectedFilters.computeIfAbsent(filterId, id -> new CompletableFuture<>());
+    }
+
+    /**
+     * Creates the dynamic filter over the columns of a table scan, based on the dynamic filters collected so far.
+     *
+     * @param localDynamicFilters IDs of the dynamic filters produced within the plan fragment of the table scan.
+     * Their build side runs in the same tasks as the table scan, which are only started once the first splits
+     * of the table are scheduled, so these filters are not waited for.
+     */
+    public DynamicFilter createDynamicFilter(List<DynamicFilters.Descriptor> dynamicFilters, Map<Symbol, ColumnHandle> columnHandles, Set<String> localDynamicFilters)
+    {
+        requireNonNull(dynamicFilters, "dynamicFilters is null");
+        requireNonNull(columnHandles, "columnHandles is null");
+        requireNonNull(localDynamicFilters, "localDynamicFilters is null");
+
+        // Mapping from dynamic filter ID to the filtered table scan columns.
+        ImmutableMultimap.Builder<String, ColumnHandle> builder = ImmutableMultimap.builder();
+        for (DynamicFilters.Descriptor descriptor : dynamicFilters) {
+            if (!(descriptor.getInput() instanceof SymbolReference)) {
+                continue;
+            }
+            ColumnHandle column = columnHandles.get(Symbol.from(descriptor.getInput()));
+            checkArgument(column != null, "No column handle for dynamic filter %s", descriptor);
+            builder.put(descriptor.getId(), column);
+        }
+        Multimap<String, ColumnHandle> filterColumns = builder.build();
+        if (filterColumns.isEmpty()) {
+            return DynamicFilter.EMPTY;
+        }
+
+        CompletableFuture<?> blocked = CompletableFuture.allOf(filterColumns.keySet().stream()
+                .filter(filterId -> !localDynamicFilters.contains(filterId))
+                .map(this::getCollectedFuture)
+                .toArray(CompletableFuture[]::new));
+        return new TableScanDynamicFilter(filterColumns, blocked);
+    }
+
+    private class TableScanDynamicFilter
+            implements DynamicFilter
+    {
+        private final Multimap<String, ColumnHandle> filterColumns;
+        private final CompletableFuture<?> blocked;
+
+        private TableScanDynamicFilter(Multimap<String, ColumnHandle> filterColumns, CompletableFuture<?> blocked)
+        {
+            this.filterColumns = requireNonNull(filterColumns, "filterColumns is null");
+            this.blocked = requireNonNull(blocked, "blocked is null");
+        }
+
+        @Override
+        public Set<ColumnHandle> getColumnsCovered()
+        {
+            return ImmutableSet.copyOf(filterColumns.values());
+        }
+
+        @Override
+        public CompletableFuture<?> isBlocked()
+        {
+            // do not allow the connector to complete the future
+            return blocked.thenApply(ignored -> null);
+        }
+
+        @Override
+        public boolean isAwaitable()
+        {
+            return !blocked.isDone();
+        }
+
+        @Override
+        public TupleDomain<ColumnHandle> getCurrentPredicate()
+        {
+            TupleDomain<ColumnHandle> result = TupleDomain.all();
+            for (Map.Entry<String, ColumnHandle> entry : filterColumns.entries()) {
+                Domain domain = domains.get(entry.getKey());
+                if (domain != null) {
+                    result = result.intersect(TupleDomain.withColumnDomains(ImmutableMap.of(entry.getValue(), domain)));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner;
+
+import com.google.common.collect.ImmutableMap;
+import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.TupleDomain;
+import io.prestosql.spi.type.Type;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Verify.verify;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects build-side domains of dynamic filters which are not consumed within the local plan fragment
+ * (e.g. in case of a partitioned join, where the probe-side table scan runs in a different stage),
+ * and of dynamic filters of replicated joins, which the coordinator uses to prune the splits of the probe-side table scans.
+ * The union over all build partitions of the task is handed to the consumer, which reports it to the coordinator.
+ * The coordinator merges the domains collected by all tasks of the stage and distributes the result to the probe-side tasks.
+ */
+public class DistributedDynamicFilter
+{
+    // Mapping from dynamic filter ID to its build channel indices.
+    private final Map<String, Integer> buildChannels;
+
+    // Mapping from dynamic filter ID to its build channel type.
+    private final Map<String, Type> filterTypes;
+
+    private final Consumer<Map<String, Domain>> domainsConsumer;
+
+    // The union of the predicates collected by the build partitions.
+    private TupleDomain<String> result;
+
+    // Number of partitions left to be processed.
+    private int partitionsLeft;
+
+    public DistributedDynamicFilter(Map<String, Integer> buildChannels, Map<String, Type> filterTypes, int partitionCount, Consumer<Map<String, Domain>> domainsConsumer)
+    {
+        this.buildChannels = ImmutableMap.copyOf(requireNonNull(buildChannels, "buildChannels is null"));
+        this.filterTypes = ImmutableMap.copyOf(requireNonNull(filterTypes, "filterTypes is null"));
+        verify(buildChannels.keySet().equals(filterTypes.keySet()), "buildChannels and filterTypes must have same keys");
+        this.domainsConsumer = requireNonNull(domainsConsumer, "domainsConsumer is null");
+
+        this.result = TupleDomain.none();
+        this.partitionsLeft = partitionCount;
+    }
+
+    private void addPartition(TupleDomain<String> tupleDomain)
+    {
+        Map<String, Domain> domains;
+        synchronized (this) {
+            // Called concurrently by each DynamicFilterSourceOperator instance (when collection is over).
+            partitionsLeft -= 1;
+            verify(partitionsLeft >= 0);
+            result = TupleDomain.columnWiseUnion(result, tupleDomain);
+            if (partitionsLeft > 0) {
+                return;
+            }
+            domains = convertTupleDomain(result);
+        }
+        domainsConsumer.accept(domains);
+    }
+
+    private Map<String, Domain> convertTupleDomain(TupleDomain<String> result)
+    {
+        // Materialize a domain for each dynamic filter ID, since the remote consumers
+        // cannot tell apart a missing domain from an unconstrained one.
+        ImmutableMap.Builder<String, Domain> builder = ImmutableMap.builder();
+        for (Map.Entry<String, Type> entry : filterTypes.entrySet()) {
+            String filterId = entry.getKey();
+            Type type = entry.getValue();
+            if (result.isNone()) {
+                builder.put(filterId, Domain.none(type));
+                continue;
+            }
+            builder.put(filterId, result.getDomains().get().getOrDefault(filterId, Domain.all(type)));
+        }
+        return builder.build();
+    }
+
+    public Map<String, Integer> getBuildChannels()
+    {
+        return buildChannels;
+    }
+
+    public Consumer<TupleDomain<String>> getTupleDomainConsumer()
+    {
+        return this::addPartition;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return toStringHelper(this)
+                .add("buildChannels", buildChannels)
+                .add("result", result)
+                .add("partitionsLeft", partitionsLeft)
+                .toString();
+    }
+}
@@ -19,6 +19,8 @@ import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.airlift.log.Logger;
+import io.prestosql.operator.BloomFilter;
+import io.prestosql.spi.block.Block;
 import io.prestosql.spi.predicate.Domain;
 import io.prestosql.spi.predicate.TupleDomain;
 import io.prestosql.sql.DynamicFilters;
@@ -26,9 +28,11 @@ import io.prestosql.sql.planner.optimizations.PlanNodeSearcher;
 import io.prestosql.sql.planner.plan.FilterNode;
 import io.prestosql.sql.planner.plan.JoinNode;
 import io.prestosql.sql.planner.plan.PlanNode;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
 import io.prestosql.sql.planner.plan.TableScanNode;
 import io.prestosql.sql.tree.SymbolReference;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -37,6 +41,7 @@ import java.util.function.Consumer;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Verify.verify;
+import static io.prestosql.spi.predicate.Utils.nativeValueToBlock;
 import static io.prestosql.sql.DynamicFilters.Descriptor;
 import static io.prestosql.sql.DynamicFilters.extractDynamicFilters;
 import static java.util.Objects.requireNonNull;
@@ -53,10 +58,17 @@ public class LocalDynamicFilter
     private final Map<String, Integer> buildChannels;
 
     private final SettableFuture<TupleDomain<Symbol>> resultFuture;
+    private final SettableFuture<Map<Symbol, BloomFilter>> bloomFiltersFuture;
 
     // The resulting predicate for local dynamic filtering.
     private TupleDomain<String> result;
 
+    // The union of the Bloom filters collected by the partitions which exceeded the predicate size limits.
+    private final Map<String, BloomFilter> bloomFilters = new HashMap<>();
+
+    // The union of the exact (discrete) domains collected by the other partitions, which must be added to the Bloom filters.
+    private final Map<String, Domain> discreteDomains = new HashMap<>();
+
     // Number of partitions left to be processed.
     private int partitionsLeft;
 
@@ -67,6 +79,7 @@ public class LocalDynamicFilter
         verify(probeSymbols.keySet().equals(buildChannels.keySet()), "probeSymbols and buildChannels must have same keys");
 
         this.resultFuture = SettableFuture.create();
+        this.bloomFiltersFuture = SettableFuture.create();
 
         this.result = TupleDomain.none();
         this.partitionsLeft = partitionCount;
@@ -80,12 +93,55 @@ public class LocalDynamicFilter
         // NOTE: may result in a bit more relaxed constraint if there are multiple columns and multiple rows.
         // See the comment at TupleDomain::columnWiseUnion() for more details.
         result = TupleDomain.columnWiseUnion(result, tupleDomain);
+        tupleDomain.getDomains().ifPresent(domains -> domains.forEach((filterId, domain) -> {
+            if (domain.getValues().isDiscreteSet()) {
+                discreteDomains.merge(filterId, domain, Domain::union);
+            }
+        }));
         if (partitionsLeft == 0) {
             // No more partitions are left to be processed.
+            // Bloom filters are provided first, so they are available when the (less selective) predicate is applied.
+            verify(bloomFiltersFuture.set(convertBloomFilters()), "dynamic filter Bloom filters are provided more than once");
             verify(resultFuture.set(convertTupleDomain(result)), "dynamic filter result is provided more than once");
         }
     }
 
+    private synchronized void addBloomFilters(Map<String, BloomFilter> partitionBloomFilters)
+    {
+        // Called by a DynamicFilterSourceOperator instance before providing its (approximate) predicate.
+        for (Map.Entry<String, BloomFilter> entry : partitionBloomFilters.entrySet()) {
+            bloomFilters.merge(entry.getKey(), entry.getValue(), BloomFilter::union);
+        }
+    }
+
+    private Map<Symbol, BloomFilter> convertBloomFilters()
+    {
+        ImmutableMap.Builder<Symbol, BloomFilter> builder = ImmutableMap.builder();
+        for (Map.Entry<String, BloomFilter> entry : bloomFilters.entrySet()) {
+            String filterId = entry.getKey();
+            BloomFilter bloomFilter = entry.getValue();
+            Domain discreteDomain = discreteDomains.get(filterId);
+            if (discreteDomain != null) {
+                // The partitions which didn't exceed the predicate size limits provided only their exact values.
+                bloomFilter = bloomFilter.union(createBloomFilter(discreteDomain, bloomFilter.getSizeInBits() / Byte.SIZE));
+            }
+            for (Symbol probeSymbol : probeSymbols.get(filterId)) {
+                builder.put(probeSymbol, bloomFilter);
+            }
+        }
+        return builder.build();
+    }
+
+    private static BloomFilter createBloomFilter(Domain domain, long sizeInBytes)
+    {
+        BloomFilter.Builder builder = BloomFilter.builder(sizeInBytes);
+        for (Object value : domain.getValues().getDiscreteSet()) {
+            Block block = nativeValueToBlock(domain.getType(), value);
+            builder.add(domain.getType(), block, 0);
+        }
+        return builder.build();
+    }
+
     private TupleDomain<Symbol> convertTupleDomain(TupleDomain<String> result)
     {
         if (result.isNone()) {
@@ -106,9 +162,22 @@ public class LocalDynamicFilter
 
     public static Optional<LocalDynamicFilter> create(JoinNode planNode, int partitionCount)
     {
-        Set<String> joinDynamicFilters = planNode.getDynamicFilters().keySet();
+        return create(planNode.getDynamicFilters(), planNode.getLeft(), planNode.getRight(), partitionCount);
+    }
+
+    public static Optional<LocalDynamicFilter> create(SemiJoinNode planNode, int partitionCount)
+    {
+        Map<String, Symbol> dynamicFilters = planNode.getDynamicFilterId()
+                .map(id -> ImmutableMap.of(id, planNode.getFilteringSourceJoinSymbol()))
+                .orElse(ImmutableMap.of());
+        return create(dynamicFilters, planNode.getSource(), planNode.getFilteringSource(), partitionCount);
+    }
+
+    private static Optional<LocalDynamicFilter> create(Map<String, Symbol> dynamicFilters, PlanNode probeNode, PlanNode buildNode, int partitionCount)
+    {
+        Set<String> joinDynamicFilters = dynamicFilters.keySet();
         List<FilterNode> filterNodes = PlanNodeSearcher
-                .searchFrom(planNode.getLeft())
+                .searchFrom(probeNode)
                 .where(LocalDynamicFilter::isFilterAboveTableScan)
                 .findAll();
 
@@ -129,8 +198,7 @@ public class LocalDynamicFilter
         }
 
         Multimap<String, Symbol> probeSymbols = probeSymbolsBuilder.build();
-        PlanNode buildNode = planNode.getRight();
-        Map<String, Integer> buildChannels = planNode.getDynamicFilters().entrySet().stream()
+        Map<String, Integer> buildChannels = dynamicFilters.entrySet().stream()
                 // Skip build channels that don't match local probe dynamic filters.
                 .filter(entry -> probeSymbols.containsKey(entry.getKey()))
                 .collect(toMap(
@@ -170,11 +238,21 @@ public class LocalDynamicFilter
         return resultFuture;
     }
 
+    public ListenableFuture<Map<Symbol, BloomFilter>> getBloomFiltersFuture()
+    {
+        return bloomFiltersFuture;
+    }
+
     public Consumer<TupleDomain<String>> getTupleDomainConsumer()
     {
         return this::addPartition;
     }
 
+    public Consumer<Map<String, BloomFilter>> getBloomFiltersConsumer()
+    {
+        return this::addBloomFilters;
+    }
+
     @Override
     public String toString()
     {
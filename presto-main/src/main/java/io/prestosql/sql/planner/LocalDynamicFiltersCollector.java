@@ -13,11 +13,16 @@
  */
 package io.prestosql.sql.planner;
 
+import com.google.common.collect.ImmutableMap;
+import io.prestosql.operator.BloomFilter;
 import io.prestosql.spi.predicate.TupleDomain;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @ThreadSafe
 class LocalDynamicFiltersCollector
 {
@@ -28,6 +33,12 @@ class LocalDynamicFiltersCollector
     @GuardedBy("this")
     private TupleDomain<Symbol> predicate;
 
+    /**
+     * Bloom filters of dynamic filters whose build side was too large to be described by the predicate.
+     */
+    @GuardedBy("this")
+    private final Map<Symbol, BloomFilter> bloomFilters = new HashMap<>();
+
     public LocalDynamicFiltersCollector()
     {
         this.predicate = TupleDomain.all();
@@ -42,4 +53,14 @@ class LocalDynamicFiltersCollector
     {
         this.predicate = this.predicate.intersect(predicate);
     }
+
+    public synchronized Map<Symbol, BloomFilter> getBloomFilters()
+    {
+        return ImmutableMap.copyOf(bloomFilters);
+    }
+
+    public synchronized void intersectBloomFilters(Map<Symbol, BloomFilter> bloomFilters)
+    {
+        bloomFilters.forEach((symbol, bloomFilter) -> this.bloomFilters.merge(symbol, bloomFilter, BloomFilter::intersect));
+    }
 }
@@ -30,6 +30,9 @@ import io.airlift.log.Logger;
 import io.airlift.units.DataSize;
 import io.prestosql.Session;
 import io.prestosql.SystemSessionProperties;
+import io.prestosql.cost.PlanNodeStatsEstimate;
+import io.prestosql.cost.StatsAndCosts;
+import io.prestosql.cost.SymbolStatsEstimate;
 import io.prestosql.execution.ExplainAnalyzeContext;
 import io.prestosql.execution.StageId;
 import io.prestosql.execution.TaskManagerConfig;
@@ -42,6 +45,7 @@ import io.prestosql.metadata.Signature;
 import io.prestosql.metadata.TableHandle;
 import io.prestosql.operator.AggregationOperator.AggregationOperatorFactory;
 import io.prestosql.operator.AssignUniqueIdOperator;
+import io.prestosql.operator.BloomFilter;
 import io.prestosql.operator.DeleteOperator.DeleteOperatorFactory;
 import io.prestosql.operator.DevNullOperator.DevNullOperatorFactory;
 import io.prestosql.operator.DriverFactory;
@@ -52,6 +56,7 @@ import io.prestosql.operator.ExchangeClientSupplier;
 import io.prestosql.operator.ExchangeOperator.ExchangeOperatorFactory;
 import io.prestosql.operator.ExplainAnalyzeOperator.ExplainAnalyzeOperatorFactory;
 import io.prestosql.operator.FilterAndProjectOperator;
+import io.prestosql.operator.GroupByKeyRange;
 import io.prestosql.operator.GroupIdOperator;
 import io.prestosql.operator.HashAggregationOperator.HashAggregationOperatorFactory;
 import io.prestosql.operator.HashBuilderOperator.HashBuilderOperatorFactory;
@@ -65,6 +70,9 @@ import io.prestosql.operator.LookupJoinOperators;
 import io.prestosql.operator.LookupOuterOperator.LookupOuterOperatorFactory;
 import io.prestosql.operator.LookupSourceFactory;
 import io.prestosql.operator.MarkDistinctOperator.MarkDistinctOperatorFactory;
+import io.prestosql.operator.MergeJoinBridge;
+import io.prestosql.operator.MergeJoinOperator.MergeJoinOperatorFactory;
+import io.prestosql.operator.MergeJoinSinkOperator.MergeJoinSinkOperatorFactory;
 import io.prestosql.operator.MergeOperator.MergeOperatorFactory;
 import io.prestosql.operator.NestedLoopJoinBridge;
 import io.prestosql.operator.NestedLoopJoinPagesSupplier;
@@ -73,6 +81,7 @@ import io.prestosql.operator.OrderByOperator.OrderByOperatorFactory;
 import io.prestosql.operator.OutputFactory;
 import io.prestosql.operator.PagesIndex;
 import io.prestosql.operator.PagesSpatialIndexFactory;
+import io.prestosql.operator.PartialAggregationController;
 import io.prestosql.operator.PartitionFunction;
 import io.prestosql.operator.PartitionedLookupSourceFactory;
 import io.prestosql.operator.PartitionedOutputOperator.PartitionedOutputFactory;
@@ -101,6 +110,9 @@ import io.prestosql.operator.WorkProcessorPipelineSourceOperator;
 import io.prestosql.operator.aggregation.AccumulatorFactory;
 import io.prestosql.operator.aggregation.InternalAggregationFunction;
 import io.prestosql.operator.aggregation.LambdaProvider;
+import io.prestosql.operator.aggregation.builder.FlatAccumulator;
+import io.prestosql.operator.aggregation.builder.FlatAccumulatorCompiler;
+import io.prestosql.operator.aggregation.builder.FlatAggregation;
 import io.prestosql.operator.exchange.LocalExchange.LocalExchangeFactory;
 import io.prestosql.operator.exchange.LocalExchangeSinkOperator.LocalExchangeSinkOperatorFactory;
 import io.prestosql.operator.exchange.LocalExchangeSourceOperator.LocalExchangeSourceOperatorFactory;
@@ -122,14 +134,19 @@ import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.block.SortOrder;
 import io.prestosql.spi.connector.ColumnHandle;
 import io.prestosql.spi.connector.ConnectorIndex;
+import io.prestosql.spi.connector.ConnectorPageSource;
 import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.connector.RecordPageSource;
 import io.prestosql.spi.connector.RecordSet;
+import io.prestosql.spi.connector.UpdatablePageSource;
+import io.prestosql.spi.predicate.Domain;
 import io.prestosql.spi.predicate.NullableValue;
 import io.prestosql.spi.predicate.TupleDomain;
 import io.prestosql.spi.type.Type;
 import io.prestosql.spiller.PartitioningSpillerFactory;
 import io.prestosql.spiller.SingleStreamSpillerFactory;
 import io.prestosql.spiller.SpillerFactory;
+import io.prestosql.split.BloomFilterPageSource;
 import io.prestosql.split.MappedRecordSet;
 import io.prestosql.split.PageSinkManager;
 import io.prestosql.split.PageSourceProvider;
@@ -141,6 +158,8 @@ import io.prestosql.sql.gen.JoinFilterFunctionCompiler.JoinFilterFunctionFactory
 import io.prestosql.sql.gen.OrderingCompiler;
 import io.prestosql.sql.gen.PageFunctionCompiler;
 import io.prestosql.sql.planner.optimizations.IndexJoinOptimizer;
+import io.prestosql.sql.planner.optimizations.StreamPropertyDerivations;
+import io.prestosql.sql.planner.optimizations.StreamPropertyDerivations.StreamProperties;
 import io.prestosql.sql.planner.plan.AggregationNode;
 import io.prestosql.sql.planner.plan.AggregationNode.Aggregation;
 import io.prestosql.sql.planner.plan.AggregationNode.Step;
@@ -209,6 +228,7 @@ import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -226,19 +246,30 @@ import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Range.closedOpen;
 import static io.airlift.concurrent.MoreFutures.addSuccessCallback;
 import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.prestosql.SystemSessionProperties.getAdaptivePartialAggregationMinRows;
+import static io.prestosql.SystemSessionProperties.getAdaptivePartialAggregationUniqueRowsRatioThreshold;
 import static io.prestosql.SystemSessionProperties.getAggregationOperatorUnspillMemoryLimit;
+import static io.prestosql.SystemSessionProperties.getDynamicFilteringBloomFilterSize;
 import static io.prestosql.SystemSessionProperties.getDynamicFilteringMaxPerDriverRowCount;
 import static io.prestosql.SystemSessionProperties.getDynamicFilteringMaxPerDriverSize;
 import static io.prestosql.SystemSessionProperties.getFilterAndProjectMinOutputPageRowCount;
 import static io.prestosql.SystemSessionProperties.getFilterAndProjectMinOutputPageSize;
 import static io.prestosql.SystemSessionProperties.getTaskConcurrency;
 import static io.prestosql.SystemSessionProperties.getTaskWriterCount;
+import static io.prestosql.SystemSessionProperties.isAdaptivePartialAggregationEnabled;
+import static io.prestosql.SystemSessionProperties.isDirectGroupByHashEnabled;
+import static io.prestosql.SystemSessionProperties.isEnableCoordinatorDynamicFiltersDistribution;
 import static io.prestosql.SystemSessionProperties.isEnableDynamicFiltering;
 import static io.prestosql.SystemSessionProperties.isExchangeCompressionEnabled;
+import static io.prestosql.SystemSessionProperties.isFlatHashAggregationEnabled;
+import static io.prestosql.SystemSessionProperties.isFusedAggregationEnabled;
 import static io.prestosql.SystemSessionProperties.isLateMaterializationEnabled;
+import static io.prestosql.SystemSessionProperties.isMergeJoinEnabled;
+import static io.prestosql.SystemSessionProperties.isPartitionedAggregationSpillEnabled;
 import static io.prestosql.SystemSessionProperties.isSpillEnabled;
 import static io.prestosql.SystemSessionProperties.isSpillOrderBy;
 import static io.prestosql.SystemSessionProperties.isSpillWindowOperator;
+import static io.prestosql.SystemSessionProperties.isTaskRetryEnabled;
 import static io.prestosql.operator.DistinctLimitOperator.DistinctLimitOperatorFactory;
 import static io.prestosql.operator.NestedLoopBuildOperator.NestedLoopBuildOperatorFactory;
 import static io.prestosql.operator.NestedLoopJoinOperator.NestedLoopJoinOperatorFactory;
@@ -265,6 +296,9 @@ import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_ARBITRARY_
 import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_BROADCAST_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SCALED_WRITER_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
+import static io.prestosql.sql.planner.optimizations.MergeJoins.isMergeJoinCandidate;
+import static io.prestosql.sql.planner.optimizations.MergeJoins.isMergeJoinPossible;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
 import static io.prestosql.sql.planner.plan.AggregationNode.Step.FINAL;
 import static io.prestosql.sql.planner.plan.AggregationNode.Step.PARTIAL;
 import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.LOCAL;
@@ -315,6 +349,7 @@ public class LocalExecutionPlanner
     private final JoinCompiler joinCompiler;
     private final LookupJoinOperators lookupJoinOperators;
     private final OrderingCompiler orderingCompiler;
+    private final FlatAccumulatorCompiler flatAccumulatorCompiler;
 
     @Inject
     public LocalExecutionPlanner(
@@ -337,7 +372,8 @@ public class LocalExecutionPlanner
             PagesIndex.Factory pagesIndexFactory,
             JoinCompiler joinCompiler,
             LookupJoinOperators lookupJoinOperators,
-            OrderingCompiler orderingCompiler)
+            OrderingCompiler orderingCompiler,
+            FlatAccumulatorCompiler flatAccumulatorCompiler)
     {
         this.explainAnalyzeContext = requireNonNull(explainAnalyzeContext, "explainAnalyzeContext is null");
         this.pageSourceProvider = requireNonNull(pageSourceProvider, "pageSourceProvider is null");
@@ -362,6 +398,7 @@ public class LocalExecutionPlanner
         this.joinCompiler = requireNonNull(joinCompiler, "joinCompiler is null");
         this.lookupJoinOperators = requireNonNull(lookupJoinOperators, "lookupJoinOperators is null");
         this.orderingCompiler = requireNonNull(orderingCompiler, "orderingCompiler is null");
+        this.flatAccumulatorCompiler = requireNonNull(flatAccumulatorCompiler, "flatAccumulatorCompiler is null");
     }
 
     public LocalExecutionPlan plan(
@@ -371,6 +408,7 @@ public class LocalExecutionPlanner
             PartitioningScheme partitioningScheme,
             StageExecutionDescriptor stageExecutionDescriptor,
             List<PlanNodeId> partitionedSourceOrder,
+            StatsAndCosts statsAndCosts,
             OutputBuffer outputBuffer)
     {
         List<Symbol> outputLayout = partitioningScheme.getOutputLayout();
@@ -380,7 +418,7 @@ public class LocalExecutionPlanner
                 partitioningScheme.getPartitioning().getHandle().equals(SCALED_WRITER_DISTRIBUTION) ||
                 partitioningScheme.getPartitioning().getHandle().equals(SINGLE_DISTRIBUTION) ||
                 partitioningScheme.getPartitioning().getHandle().equals(COORDINATOR_DISTRIBUTION)) {
-            return plan(taskContext, stageExecutionDescriptor, plan, outputLayout, types, partitionedSourceOrder, new TaskOutputFactory(outputBuffer));
+            return plan(taskContext, stageExecutionDescriptor, plan, outputLayout, types, partitionedSourceOrder, statsAndCosts, new TaskOutputFactory(outputBuffer));
         }
 
         // We can convert the symbols directly into channels, because the root must be a sink and therefore the layout is fixed
@@ -436,6 +474,7 @@ public class LocalExecutionPlanner
                 outputLayout,
                 types,
                 partitionedSourceOrder,
+                statsAndCosts,
                 new PartitionedOutputFactory(
                         partitionFunction,
                         partitionChannels,
@@ -453,12 +492,13 @@ public class LocalExecutionPlanner
             List<Symbol> outputLayout,
             TypeProvider types,
             List<PlanNodeId> partitionedSourceOrder,
+            StatsAndCosts statsAndCosts,
             OutputFactory outputOperatorFactory)
     {
         Session session = taskContext.getSession();
         LocalExecutionPlanContext context = new LocalExecutionPlanContext(taskContext, types);
 
-        PhysicalOperation physicalOperation = plan.accept(new Visitor(session, stageExecutionDescriptor), context);
+        PhysicalOperation physicalOperation = plan.accept(new Visitor(session, stageExecutionDescriptor, statsAndCosts), context);
 
         Function<Page, Page> pagePreprocessor = enforceLayoutProcessor(outputLayout, physicalOperation.getLayout());
 
@@ -592,6 +632,11 @@ public class LocalExecutionPlanner
             return taskContext.getSession();
         }
 
+        public TaskContext getTaskContext()
+        {
+            return taskContext;
+        }
+
         public StageId getStageId()
         {
             return taskContext.getTaskId().getStageId();
@@ -707,11 +752,13 @@ public class LocalExecutionPlanner
     {
         private final Session session;
         private final StageExecutionDescriptor stageExecutionDescriptor;
+        private final StatsAndCosts statsAndCosts;
 
-        private Visitor(Session session, StageExecutionDescriptor stageExecutionDescriptor)
+        private Visitor(Session session, StageExecutionDescriptor stageExecutionDescriptor, StatsAndCosts statsAndCosts)
         {
             this.session = session;
             this.stageExecutionDescriptor = stageExecutionDescriptor;
+            this.statsAndCosts = statsAndCosts;
         }
 
         @Override
@@ -744,7 +791,7 @@ public class LocalExecutionPlanner
             OperatorFactory operatorFactory = new MergeOperatorFactory(
                     context.getNextOperatorId(),
                     node.getId(),
-                    exchangeClientSupplier,
+                    getExchangeClientSupplier(),
                     new PagesSerdeFactory(metadata.getBlockEncodingSerde(), isExchangeCompressionEnabled(session)),
                     orderingCompiler,
                     types,
@@ -764,12 +811,21 @@ public class LocalExecutionPlanner
             OperatorFactory operatorFactory = new ExchangeOperatorFactory(
                     context.getNextOperatorId(),
                     node.getId(),
-                    exchangeClientSupplier,
+                    getExchangeClientSupplier(),
                     new PagesSerdeFactory(metadata.getBlockEncodingSerde(), isExchangeCompressionEnabled(session)));
 
             return new PhysicalOperation(operatorFactory, makeLayout(node), context, UNGROUPED_EXECUTION);
         }
 
+        private ExchangeClientSupplier getExchangeClientSupplier()
+        {
+            // the output of the source tasks is spooled when task retries are enabled
+            if (isTaskRetryEnabled(session)) {
+                return exchangeClientSupplier::getSpooled;
+            }
+            return exchangeClientSupplier;
+        }
+
         @Override
         public PhysicalOperation visitExplainAnalyze(ExplainAnalyzeNode node, LocalExecutionPlanContext context)
         {
@@ -877,7 +933,9 @@ public class LocalExecutionPlanner
                     node.isPartial(),
                     hashChannel,
                     1000,
-                    joinCompiler);
+                    joinCompiler,
+                    isSpillEnabled(session) && isSpillWindowOperator(session),
+                    partitioningSpillerFactory);
 
             return new PhysicalOperation(operatorFactory, makeLayout(node), context, source);
         }
@@ -1056,7 +1114,9 @@ public class LocalExecutionPlanner
                     distinctChannels,
                     node.getLimit(),
                     hashChannel,
-                    joinCompiler);
+                    joinCompiler,
+                    isSpillEnabled(context.getSession()),
+                    partitioningSpillerFactory);
             return new PhysicalOperation(operatorFactory, makeLayout(node), context, source);
         }
 
@@ -1132,7 +1192,15 @@ public class LocalExecutionPlanner
 
             List<Integer> channels = getChannelsForSymbols(node.getDistinctSymbols(), source.getLayout());
             Optional<Integer> hashChannel = node.getHashSymbol().map(channelGetter(source));
-            MarkDistinctOperatorFactory operator = new MarkDistinctOperatorFactory(context.getNextOperatorId(), node.getId(), source.getTypes(), channels, hashChannel, joinCompiler);
+            MarkDistinctOperatorFactory operator = new MarkDistinctOperatorFactory(
+                    context.getNextOperatorId(),
+                    node.getId(),
+                    source.getTypes(),
+                    channels,
+                    hashChannel,
+                    joinCompiler,
+                    isSpillEnabled(context.getSession()),
+                    partitioningSpillerFactory);
             return new PhysicalOperation(operator, makeLayout(node), context, source);
         }
 
@@ -1243,15 +1311,21 @@ public class LocalExecutionPlanner
             // TODO: Execution must be plugged in here
             Optional<List<DynamicFilters.Descriptor>> dynamicFilters = extractDynamicFilterResult.map(DynamicFilters.ExtractResult::getDynamicConjuncts);
             Supplier<TupleDomain<ColumnHandle>> dynamicFilterSupplier = TupleDomain::all;
+            PageSourceProvider scanPageSourceProvider = pageSourceProvider;
             if (dynamicFilters.isPresent() && !dynamicFilters.get().isEmpty()) {
                 log.debug("[TableScan] Dynamic filters: %s", dynamicFilters);
                 if (sourceNode instanceof TableScanNode) {
                     TableScanNode tableScanNode = (TableScanNode) sourceNode;
                     LocalDynamicFiltersCollector collector = context.getDynamicFiltersCollector();
+                    TaskContext taskContext = context.getTaskContext();
+                    List<DynamicFilters.Descriptor> descriptors = dynamicFilters.get();
                     dynamicFilterSupplier = () -> {
-                        TupleDomain<Symbol> predicate = collector.getPredicate();
+                        // Dynamic filters collected by the coordinator (e.g. for distributed joins) are combined with local ones.
+                        TupleDomain<Symbol> predicate = collector.getPredicate()
+                                .intersect(getDistributedDynamicFilterPredicate(descriptors, taskContext.getDynamicFilterDomains()));
                         return predicate.transform(tableScanNode.getAssignments()::get);
                     };
+                    scanPageSourceProvider = createBloomFilterPageSourceProvider(collector, tableScanNode.getOutputSymbols(), context.getTypes());
                 }
             }
 
@@ -1279,7 +1353,7 @@ public class LocalExecutionPlanner
                             context.getNextOperatorId(),
                             planNodeId,
                             sourceNode.getId(),
-                            pageSourceProvider,
+                            scanPageSourceProvider,
                             cursorProcessor,
                             pageProcessor,
                             table,
@@ -1626,6 +1700,10 @@ public class LocalExecutionPlanner
             List<Symbol> leftSymbols = Lists.transform(clauses, JoinNode.EquiJoinClause::getLeft);
             List<Symbol> rightSymbols = Lists.transform(clauses, JoinNode.EquiJoinClause::getRight);
 
+            if (canUseMergeJoin(node, context)) {
+                return createMergeJoin(node, leftSymbols, rightSymbols, context);
+            }
+
             switch (node.getType()) {
                 case INNER:
                 case LEFT:
@@ -1810,6 +1888,95 @@ public class LocalExecutionPlanner
             return new PhysicalOperation(operatorFactory, outputMappings.build(), context, probeSource);
         }
 
+        private boolean canUseMergeJoin(JoinNode node, LocalExecutionPlanContext context)
+        {
+            if (!isMergeJoinEnabled(session) || !isMergeJoinCandidate(node, context.getTypes())) {
+                return false;
+            }
+
+            StreamProperties probeProperties = StreamPropertyDerivations.derivePropertiesRecursively(node.getLeft(), metadata, session, context.getTypes(), typeAnalyzer);
+            StreamProperties buildProperties = StreamPropertyDerivations.derivePropertiesRecursively(node.getRight(), metadata, session, context.getTypes(), typeAnalyzer);
+            if (!isMergeJoinPossible(node, probeProperties, buildProperties, metadata, session, context.getTypes())) {
+                return false;
+            }
+            if (probeProperties.isSingleStream() && buildProperties.isSingleStream()) {
+                return true;
+            }
+            // partitioned streams are paired only within the lifespans of grouped execution
+            return isScanGroupedExecution(node.getLeft()) && isScanGroupedExecution(node.getRight());
+        }
+
+        private boolean isScanGroupedExecution(PlanNode node)
+        {
+            List<TableScanNode> tableScans = searchFrom(node)
+                    .where(TableScanNode.class::isInstance)
+                    .findAll();
+            return !tableScans.isEmpty() && tableScans.stream()
+                    .allMatch(tableScan -> stageExecutionDescriptor.isScanGroupedExecution(tableScan.getId()));
+        }
+
+        private PhysicalOperation createMergeJoin(JoinNode node, List<Symbol> probeSymbols, List<Symbol> buildSymbols, LocalExecutionPlanContext context)
+        {
+            PhysicalOperation probeSource = node.getLeft().accept(this, context);
+
+            LocalExecutionPlanContext buildContext = context.createSubContext();
+            PhysicalOperation buildSource = node.getRight().accept(this, buildContext);
+
+            checkState(
+                    probeSource.getPipelineExecutionStrategy() == buildSource.getPipelineExecutionStrategy(),
+                    "Probe and build of a merge join are expected to have the same execution strategy");
+            checkState(
+                    context.getDriverInstanceCount().orElse(1) == 1 && buildContext.getDriverInstanceCount().orElse(1) == 1,
+                    "Expected local execution of a merge join to not be parallel");
+
+            List<Symbol> probeOutputSymbols = node.getOutputSymbols().stream()
+                    .filter(symbol -> node.getLeft().getOutputSymbols().contains(symbol))
+                    .collect(toImmutableList());
+            List<Symbol> buildOutputSymbols = node.getOutputSymbols().stream()
+                    .filter(symbol -> node.getRight().getOutputSymbols().contains(symbol))
+                    .collect(toImmutableList());
+
+            JoinBridgeManager<MergeJoinBridge> mergeJoinBridgeManager = new JoinBridgeManager<>(
+                    false,
+                    probeSource.getPipelineExecutionStrategy(),
+                    buildSource.getPipelineExecutionStrategy(),
+                    lifespan -> new MergeJoinBridge(context.getTaskContext().newUserMemoryContext(MergeJoinBridge.class.getSimpleName())),
+                    buildSource.getTypes());
+            MergeJoinSinkOperatorFactory mergeJoinSinkOperatorFactory = new MergeJoinSinkOperatorFactory(
+                    buildContext.getNextOperatorId(),
+                    node.getId(),
+                    mergeJoinBridgeManager);
+
+            context.addDriverFactory(
+                    buildContext.isInputDriver(),
+                    false,
+                    ImmutableList.<OperatorFactory>builder()
+                            .addAll(buildSource.getOperatorFactories())
+                            .add(mergeJoinSinkOperatorFactory)
+                            .build(),
+                    buildContext.getDriverInstanceCount(),
+                    buildSource.getPipelineExecutionStrategy());
+
+            OperatorFactory operatorFactory = new MergeJoinOperatorFactory(
+                    context.getNextOperatorId(),
+                    node.getId(),
+                    mergeJoinBridgeManager,
+                    probeSource.getTypes(),
+                    getChannelsForSymbols(probeSymbols, probeSource.getLayout()),
+                    getChannelsForSymbols(probeOutputSymbols, probeSource.getLayout()),
+                    buildSource.getTypes(),
+                    getChannelsForSymbols(buildSymbols, buildSource.getLayout()),
+                    getChannelsForSymbols(buildOutputSymbols, buildSource.getLayout()));
+
+            ImmutableMap.Builder<Symbol, Integer> outputMappings = ImmutableMap.builder();
+            List<Symbol> outputSymbols = node.getOutputSymbols();
+            for (int i = 0; i < outputSymbols.size(); i++) {
+                outputMappings.put(outputSymbols.get(i), i);
+            }
+
+            return new PhysicalOperation(operatorFactory, outputMappings.build(), context, probeSource);
+        }
+
         private PhysicalOperation createSpatialLookupJoin(
                 SpatialJoinNode node,
                 PlanNode probeNode,
@@ -2040,8 +2207,18 @@ public class LocalExecutionPlanner
             ImmutableList.Builder<OperatorFactory> factoriesBuilder = new ImmutableList.Builder<>();
             factoriesBuilder.addAll(buildSource.getOperatorFactories());
 
-            createDynamicFilter(node, context, partitionCount).ifPresent(
-                    filter -> factoriesBuilder.add(createDynamicFilterSourceOperatorFactory(filter, node, buildSource, buildContext)));
+            Optional<LocalDynamicFilter> localDynamicFilter = createDynamicFilter(node.getDynamicFilters(), () -> LocalDynamicFilter.create(node, partitionCount), context);
+            Optional<DistributedDynamicFilter> distributedDynamicFilter = createDistributedDynamicFilter(
+                    node.getDynamicFilters(),
+                    context,
+                    buildSource,
+                    buildContext,
+                    localDynamicFilter,
+                    node.getDistributionType().equals(Optional.of(JoinNode.DistributionType.REPLICATED)),
+                    partitionCount);
+            if (localDynamicFilter.isPresent() || distributedDynamicFilter.isPresent()) {
+                factoriesBuilder.add(createDynamicFilterSourceOperatorFactory(localDynamicFilter, distributedDynamicFilter, node.getId(), buildSource, buildContext));
+            }
 
             HashBuilderOperatorFactory hashBuilderOperatorFactory = new HashBuilderOperatorFactory(
                     buildContext.getNextOperatorId(),
@@ -2055,7 +2232,7 @@ public class LocalExecutionPlanner
                     searchFunctionFactories,
                     10_000,
                     pagesIndexFactory,
-                    spillEnabled && !buildOuter && partitionCount > 1,
+                    spillEnabled && partitionCount > 1,
                     singleStreamSpillerFactory);
 
             factoriesBuilder.add(hashBuilderOperatorFactory);
@@ -2071,12 +2248,16 @@ public class LocalExecutionPlanner
         }
 
         private DynamicFilterSourceOperatorFactory createDynamicFilterSourceOperatorFactory(
-                LocalDynamicFilter dynamicFilter,
-                JoinNode node,
+                Optional<LocalDynamicFilter> localDynamicFilter,
+                Optional<DistributedDynamicFilter> distributedDynamicFilter,
+                PlanNodeId planNodeId,
                 PhysicalOperation buildSource,
                 LocalExecutionPlanContext context)
         {
-            List<DynamicFilterSourceOperator.Channel> filterBuildChannels = dynamicFilter.getBuildChannels().entrySet().stream()
+            Map<String, Integer> buildChannels = new HashMap<>();
+            localDynamicFilter.ifPresent(filter -> buildChannels.putAll(filter.getBuildChannels()));
+            distributedDynamicFilter.ifPresent(filter -> buildChannels.putAll(filter.getBuildChannels()));
+            List<DynamicFilterSourceOperator.Channel> filterBuildChannels = buildChannels.entrySet().stream()
                     .map(entry -> {
                         String filterId = entry.getKey();
                         int index = entry.getValue();
@@ -2084,35 +2265,96 @@ public class LocalExecutionPlanner
                         return new DynamicFilterSourceOperator.Channel(filterId, type, index);
                     })
                     .collect(Collectors.toList());
+            // Each consumer ignores the domains of dynamic filters it doesn't know about.
+            Consumer<TupleDomain<String>> tupleDomainConsumer = tupleDomain -> {
+                localDynamicFilter.ifPresent(filter -> filter.getTupleDomainConsumer().accept(tupleDomain));
+                distributedDynamicFilter.ifPresent(filter -> filter.getTupleDomainConsumer().accept(tupleDomain));
+            };
+            // Bloom filters are only applied by the probe-side table scans of the same task.
+            Consumer<Map<String, BloomFilter>> bloomFiltersConsumer = localDynamicFilter
+                    .map(LocalDynamicFilter::getBloomFiltersConsumer)
+                    .orElse(bloomFilters -> {});
+            DataSize bloomFilterSize = localDynamicFilter.isPresent()
+                    ? getDynamicFilteringBloomFilterSize(context.getSession())
+                    : new DataSize(0, BYTE);
             return new DynamicFilterSourceOperatorFactory(
                     context.getNextOperatorId(),
-                    node.getId(),
-                    dynamicFilter.getTupleDomainConsumer(),
+                    planNodeId,
+                    tupleDomainConsumer,
+                    bloomFiltersConsumer,
                     filterBuildChannels,
                     getDynamicFilteringMaxPerDriverRowCount(context.getSession()),
-                    getDynamicFilteringMaxPerDriverSize(context.getSession()));
+                    getDynamicFilteringMaxPerDriverSize(context.getSession()),
+                    bloomFilterSize);
         }
 
-        private Optional<LocalDynamicFilter> createDynamicFilter(JoinNode node, LocalExecutionPlanContext context, int partitionCount)
+        private Optional<LocalDynamicFilter> createDynamicFilter(Map<String, Symbol> dynamicFilters, Supplier<Optional<LocalDynamicFilter>> localDynamicFilter, LocalExecutionPlanContext context)
         {
             if (!isEnableDynamicFiltering(context.getSession())) {
                 return Optional.empty();
             }
-            if (node.getDynamicFilters().isEmpty()) {
+            if (dynamicFilters.isEmpty()) {
                 return Optional.empty();
             }
-            log.debug("[Join] Dynamic filters: %s", node.getDynamicFilters());
+            log.debug("[Join] Dynamic filters: %s", dynamicFilters);
             LocalDynamicFiltersCollector collector = context.getDynamicFiltersCollector();
-            return LocalDynamicFilter
-                    .create(node, partitionCount)
+            return localDynamicFilter.get()
                     .map(filter -> {
                         // Intersect dynamic filters' predicates when they become ready,
                         // in order to support multiple join nodes in the same plan fragment.
+                        addSuccessCallback(filter.getBloomFiltersFuture(), collector::intersectBloomFilters);
                         addSuccessCallback(filter.getResultFuture(), collector::intersect);
                         return filter;
                     });
         }
 
+        private Optional<DistributedDynamicFilter> createDistributedDynamicFilter(
+                Map<String, Symbol> dynamicFilters,
+                LocalExecutionPlanContext context,
+                PhysicalOperation buildSource,
+                LocalExecutionPlanContext buildContext,
+                Optional<LocalDynamicFilter> localDynamicFilter,
+                boolean replicatedBuild,
+                int partitionCount)
+        {
+            if (!isEnableDynamicFiltering(context.getSession()) || !isEnableCoordinatorDynamicFiltersDistribution(context.getSession())) {
+                return Optional.empty();
+            }
+            if (buildSource.getPipelineExecutionStrategy() == GROUPED_EXECUTION || !buildContext.getDriverInstanceCount().isPresent()) {
+                // Domains must be collected from the whole build side of the task
+                return Optional.empty();
+            }
+            // The domains of replicated builds are reported as well, as the coordinator can use them to prune the splits
+            // of the probe-side table scans. They are complete in every task, so the coordinator does not need to wait for all tasks.
+            Set<String> localFilterIds = localDynamicFilter
+                    .filter(filter -> !replicatedBuild)
+                    .map(filter -> filter.getBuildChannels().keySet())
+                    .orElse(ImmutableSet.of());
+            ImmutableMap.Builder<String, Integer> buildChannels = ImmutableMap.builder();
+            ImmutableMap.Builder<String, Type> filterTypes = ImmutableMap.builder();
+            for (Map.Entry<String, Symbol> entry : dynamicFilters.entrySet()) {
+                String filterId = entry.getKey();
+                if (localFilterIds.contains(filterId)) {
+                    // the dynamic filter is consumed within the task
+                    continue;
+                }
+                int buildChannel = buildSource.getLayout().get(entry.getValue());
+                buildChannels.put(filterId, buildChannel);
+                filterTypes.put(filterId, buildSource.getTypes().get(buildChannel));
+            }
+            Map<String, Integer> distributedBuildChannels = buildChannels.build();
+            if (distributedBuildChannels.isEmpty()) {
+                return Optional.empty();
+            }
+            log.debug("[Join] Distributed dynamic filters: %s", distributedBuildChannels.keySet());
+            TaskContext taskContext = context.getTaskContext();
+            return Optional.of(new DistributedDynamicFilter(
+                    distributedBuildChannels,
+                    filterTypes.build(),
+                    partitionCount,
+                    taskContext::collectDynamicFilterDomains));
+        }
+
         private JoinFilterFunctionFactory compileJoinFilterFunction(
                 Expression filterExpression,
                 Map<Symbol, Integer> probeLayout,
@@ -2126,6 +2368,39 @@ public class LocalExecutionPlanner
             return joinFilterFunctionCompiler.compileJoinFilterFunction(translatedFilter, buildLayout.size());
         }
 
+        /**
+         * Bloom filters are only collected by joins of the same task, and are not passed to the connector,
+         * so they are applied to the pages produced by the connector, before the filter and projections run.
+         */
+        private PageSourceProvider createBloomFilterPageSourceProvider(LocalDynamicFiltersCollector collector, List<Symbol> scanSymbols, TypeProvider types)
+        {
+            return (session, split, table, columns, dynamicFilter) -> {
+                ConnectorPageSource pageSource = pageSourceProvider.createPageSource(session, split, table, columns, dynamicFilter);
+                Map<Symbol, BloomFilter> bloomFilters = collector.getBloomFilters();
+                if (bloomFilters.isEmpty() || pageSource instanceof RecordPageSource || pageSource instanceof UpdatablePageSource) {
+                    // Record cursors are filtered by the cursor processor, and deletes require access to the original page source.
+                    return pageSource;
+                }
+                ImmutableList.Builder<Integer> filteredChannels = ImmutableList.builder();
+                ImmutableList.Builder<Type> filteredTypes = ImmutableList.builder();
+                ImmutableList.Builder<BloomFilter> filteredBloomFilters = ImmutableList.builder();
+                for (int channel = 0; channel < scanSymbols.size(); channel++) {
+                    Symbol symbol = scanSymbols.get(channel);
+                    BloomFilter bloomFilter = bloomFilters.get(symbol);
+                    if (bloomFilter != null) {
+                        filteredChannels.add(channel);
+                        filteredTypes.add(types.get(symbol));
+                        filteredBloomFilters.add(bloomFilter);
+                    }
+                }
+                List<Integer> channels = filteredChannels.build();
+                if (channels.isEmpty()) {
+                    return pageSource;
+                }
+                return new BloomFilterPageSource(pageSource, channels, filteredTypes.build(), filteredBloomFilters.build());
+            };
+        }
+
         private OperatorFactory createLookupJoin(
                 JoinNode node,
                 PhysicalOperation probeSource,
@@ -2188,6 +2463,30 @@ public class LocalExecutionPlanner
             Optional<Integer> buildHashChannel = node.getFilteringSourceHashSymbol().map(channelGetter(buildSource));
             Optional<Integer> probeHashChannel = node.getSourceHashSymbol().map(channelGetter(probeSource));
 
+            // a spilled set is probed one partition at a time by all probe operators, so their number has to be known up front
+            OptionalInt probeOperatorsCount = context.getDriverInstanceCount();
+            boolean spillEnabled = isSpillEnabled(session) && probeOperatorsCount.isPresent() && probeSource.getPipelineExecutionStrategy() == UNGROUPED_EXECUTION;
+
+            ImmutableList.Builder<OperatorFactory> factoriesBuilder = ImmutableList.builder();
+            factoriesBuilder.addAll(buildSource.getOperatorFactories());
+
+            // Collect the filtering source values for pruning the source side table scans
+            Map<String, Symbol> dynamicFilters = node.getDynamicFilterId()
+                    .map(id -> ImmutableMap.of(id, node.getFilteringSourceJoinSymbol()))
+                    .orElse(ImmutableMap.of());
+            Optional<LocalDynamicFilter> localDynamicFilter = createDynamicFilter(dynamicFilters, () -> LocalDynamicFilter.create(node, 1), context);
+            Optional<DistributedDynamicFilter> distributedDynamicFilter = createDistributedDynamicFilter(
+                    dynamicFilters,
+                    context,
+                    buildSource,
+                    buildContext,
+                    localDynamicFilter,
+                    node.getDistributionType().equals(Optional.of(SemiJoinNode.DistributionType.REPLICATED)),
+                    1);
+            if (localDynamicFilter.isPresent() || distributedDynamicFilter.isPresent()) {
+                factoriesBuilder.add(createDynamicFilterSourceOperatorFactory(localDynamicFilter, distributedDynamicFilter, node.getId(), buildSource, buildContext));
+            }
+
             SetBuilderOperatorFactory setBuilderOperatorFactory = new SetBuilderOperatorFactory(
                     buildContext.getNextOperatorId(),
                     node.getId(),
@@ -2195,15 +2494,15 @@ public class LocalExecutionPlanner
                     buildChannel,
                     buildHashChannel,
                     10_000,
-                    joinCompiler);
+                    joinCompiler,
+                    spillEnabled,
+                    partitioningSpillerFactory);
             SetSupplier setProvider = setBuilderOperatorFactory.getSetProvider();
+            factoriesBuilder.add(setBuilderOperatorFactory);
             context.addDriverFactory(
                     buildContext.isInputDriver(),
                     false,
-                    ImmutableList.<OperatorFactory>builder()
-                            .addAll(buildSource.getOperatorFactories())
-                            .add(setBuilderOperatorFactory)
-                            .build(),
+                    factoriesBuilder.build(),
                     buildContext.getDriverInstanceCount(),
                     buildSource.getPipelineExecutionStrategy());
 
@@ -2213,7 +2512,16 @@ public class LocalExecutionPlanner
                     .put(node.getSemiJoinOutput(), probeSource.getLayout().size())
                     .build();
 
-            HashSemiJoinOperatorFactory operator = new HashSemiJoinOperatorFactory(context.getNextOperatorId(), node.getId(), setProvider, probeSource.getTypes(), probeChannel, probeHashChannel);
+            HashSemiJoinOperatorFactory operator = new HashSemiJoinOperatorFactory(
+                    context.getNextOperatorId(),
+                    node.getId(),
+                    setProvider,
+                    probeSource.getTypes(),
+                    probeChannel,
+                    probeHashChannel,
+                    spillEnabled,
+                    probeOperatorsCount,
+                    partitioningSpillerFactory);
             return new PhysicalOperation(operator, outputMappings, context, probeSource);
         }
 
@@ -2671,6 +2979,15 @@ public class LocalExecutionPlanner
                     session);
         }
 
+        private Optional<FlatAggregation> buildFlatAggregation(Aggregation aggregation, AccumulatorFactory accumulatorFactory, Step step)
+        {
+            if (aggregation.getMask().isPresent() || aggregation.isDistinct() || aggregation.getOrderingScheme().isPresent()) {
+                return Optional.empty();
+            }
+            InternalAggregationFunction internalAggregationFunction = metadata.getAggregateFunctionImplementation(aggregation.getResolvedFunction());
+            return FlatAggregation.create(internalAggregationFunction, accumulatorFactory.getInputChannels(), step);
+        }
+
         private PhysicalOperation planGlobalAggregation(AggregationNode node, PhysicalOperation source, LocalExecutionPlanContext context)
         {
             ImmutableMap.Builder<Symbol, Integer> outputMappings = ImmutableMap.builder();
@@ -2760,12 +3077,21 @@ public class LocalExecutionPlanner
         {
             List<Symbol> aggregationOutputSymbols = new ArrayList<>();
             List<AccumulatorFactory> accumulatorFactories = new ArrayList<>();
+            List<FlatAggregation> flatAggregations = new ArrayList<>();
+            boolean flatHashAggregation = !isStreamable && isFlatHashAggregationEnabled(context.getSession());
             for (Map.Entry<Symbol, Aggregation> entry : aggregations.entrySet()) {
                 Symbol symbol = entry.getKey();
                 Aggregation aggregation = entry.getValue();
 
-                accumulatorFactories.add(buildAccumulatorFactory(source, aggregation));
+                AccumulatorFactory accumulatorFactory = buildAccumulatorFactory(source, aggregation);
+                accumulatorFactories.add(accumulatorFactory);
                 aggregationOutputSymbols.add(symbol);
+
+                if (flatHashAggregation) {
+                    Optional<FlatAggregation> flatAggregation = buildFlatAggregation(aggregation, accumulatorFactory, step);
+                    flatAggregation.ifPresent(flatAggregations::add);
+                    flatHashAggregation = flatAggregation.isPresent();
+                }
             }
 
             // add group-by key fields each in a separate channel
@@ -2808,6 +3134,16 @@ public class LocalExecutionPlanner
             }
             else {
                 Optional<Integer> hashChannel = hashSymbol.map(channelGetter(source));
+                Optional<PartialAggregationController> partialAggregationController = Optional.empty();
+                if (step == Step.PARTIAL && isAdaptivePartialAggregationEnabled(context.getSession())) {
+                    partialAggregationController = Optional.of(new PartialAggregationController(
+                            getAdaptivePartialAggregationMinRows(context.getSession()),
+                            getAdaptivePartialAggregationUniqueRowsRatioThreshold(context.getSession())));
+                }
+                Optional<FlatAccumulator> flatAccumulator = Optional.empty();
+                if (flatHashAggregation && isFusedAggregationEnabled(context.getSession())) {
+                    flatAccumulator = Optional.of(flatAccumulatorCompiler.compileFlatAccumulator(groupByTypes.size(), flatAggregations, step));
+                }
                 return new HashAggregationOperatorFactory(
                         context.getNextOperatorId(),
                         planNodeId,
@@ -2824,9 +3160,34 @@ public class LocalExecutionPlanner
                         spillEnabled,
                         unspillMemoryLimit,
                         spillerFactory,
+                        isPartitionedAggregationSpillEnabled(context.getSession()),
+                        partitioningSpillerFactory,
                         joinCompiler,
-                        useSystemMemory);
+                        useSystemMemory,
+                        partialAggregationController,
+                        flatHashAggregation ? Optional.of(flatAggregations) : Optional.empty(),
+                        flatAccumulator,
+                        getGroupByKeyRange(planNodeId, groupBySymbols, groupByTypes));
+            }
+        }
+
+        private Optional<GroupByKeyRange> getGroupByKeyRange(PlanNodeId planNodeId, List<Symbol> groupBySymbols, List<Type> groupByTypes)
+        {
+            if (!isDirectGroupByHashEnabled(session) || groupBySymbols.size() != 1 || !GroupByKeyRange.isSupportedType(getOnlyElement(groupByTypes))) {
+                return Optional.empty();
             }
+            Type type = getOnlyElement(groupByTypes);
+
+            // the group by keys are passed through the aggregation, so their range is the same in the output of the node
+            PlanNodeStatsEstimate stats = statsAndCosts.getStats().get(planNodeId);
+            if (stats != null) {
+                SymbolStatsEstimate symbolStats = stats.getSymbolStatistics(getOnlyElement(groupBySymbols));
+                Optional<GroupByKeyRange> keyRange = GroupByKeyRange.fromStatistics(type, symbolStats.getLowValue(), symbolStats.getHighValue());
+                if (keyRange.isPresent()) {
+                    return keyRange;
+                }
+            }
+            return GroupByKeyRange.fromType(type);
         }
     }
 
@@ -2890,6 +3251,18 @@ public class LocalExecutionPlanner
         };
     }
 
+    private static TupleDomain<Symbol> getDistributedDynamicFilterPredicate(List<DynamicFilters.Descriptor> descriptors, Map<String, Domain> dynamicFilterDomains)
+    {
+        TupleDomain<Symbol> predicate = TupleDomain.all();
+        for (DynamicFilters.Descriptor descriptor : descriptors) {
+            Domain domain = dynamicFilterDomains.get(descriptor.getId());
+            if (domain != null && descriptor.getInput() instanceof SymbolReference) {
+                predicate = predicate.intersect(TupleDomain.withColumnDomains(ImmutableMap.of(Symbol.from(descriptor.getInput()), domain)));
+            }
+        }
+        return predicate;
+    }
+
     /**
      * Encapsulates an physical operator plus the mapping of logical symbols to channel/field
      */
@@ -203,6 +203,11 @@ public class PlanFragment
         }
     }
 
+    public PlanFragment withRoot(PlanNode root)
+    {
+        return new PlanFragment(id, root, symbols, partitioning, partitionedSources, partitioningScheme, stageExecutionDescriptor, statsAndCosts, jsonRepresentation);
+    }
+
     public PlanFragment withBucketToPartition(Optional<int[]> bucketToPartition)
     {
         return new PlanFragment(id, root, symbols, partitioning, partitionedSources, partitioningScheme.withBucketToPartition(bucketToPartition), stageExecutionDescriptor, statsAndCosts, jsonRepresentation);
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner;
+
+import io.prestosql.sql.planner.plan.AggregationNode;
+import io.prestosql.sql.planner.plan.ExchangeNode;
+import io.prestosql.sql.planner.plan.FilterNode;
+import io.prestosql.sql.planner.plan.JoinNode;
+import io.prestosql.sql.planner.plan.PlanNode;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+import io.prestosql.sql.planner.plan.ProjectNode;
+import io.prestosql.sql.planner.plan.RemoteSourceNode;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static io.prestosql.sql.planner.AdaptiveJoinReordering.canWaitForSources;
+import static io.prestosql.sql.planner.AdaptiveJoinReordering.isReorderable;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
+import static io.prestosql.sql.planner.plan.AggregationNode.Step.PARTIAL;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.LOCAL;
+import static io.prestosql.sql.planner.plan.JoinNode.Type.INNER;
+import static io.prestosql.sql.planner.plan.JoinNode.Type.LEFT;
+
+/**
+ * Finds the partitioned join of a fragment whose skewed partitions can be split over multiple tasks.
+ * Each task processes the rows of a skewed partition produced by a subset of the tasks of the probe
+ * side, and all rows of the partition of the build side. Every probe row is processed by exactly one
+ * task, so this is only correct for inner and left joins, and only if nothing above the join in the
+ * fragment depends on seeing all rows of a partition.
+ */
+public final class SkewedJoinSplitting
+{
+    private SkewedJoinSplitting() {}
+
+    /**
+     * Returns the remote sources of the probe side of the join whose partitions can be split, if any.
+     */
+    public static Optional<Set<PlanNodeId>> getSplittableProbeSources(PlanFragment fragment)
+    {
+        if (!canWaitForSources(fragment)) {
+            return Optional.empty();
+        }
+
+        PlanNode node = fragment.getRoot();
+        while (isSplittable(node)) {
+            node = getOnlyElement(node.getSources());
+        }
+        if (!(node instanceof JoinNode)) {
+            return Optional.empty();
+        }
+        JoinNode join = (JoinNode) node;
+        if ((join.getType() != INNER && join.getType() != LEFT) || !isReorderable(join)) {
+            return Optional.empty();
+        }
+        return Optional.of(searchFrom(join.getLeft())
+                .where(RemoteSourceNode.class::isInstance)
+                .findAll().stream()
+                .map(PlanNode::getId)
+                .collect(toImmutableSet()));
+    }
+
+    /**
+     * Returns true if the output of the node for a subset of its input rows does not depend on the other rows.
+     * Partial aggregations qualify, as their output is combined by the final aggregation in another stage.
+     */
+    private static boolean isSplittable(PlanNode node)
+    {
+        if (node instanceof ProjectNode || node instanceof FilterNode) {
+            return true;
+        }
+        if (node instanceof ExchangeNode) {
+            return ((ExchangeNode) node).getScope() == LOCAL && node.getSources().size() == 1;
+        }
+        return node instanceof AggregationNode && ((AggregationNode) node).getStep() == PARTIAL;
+    }
+}
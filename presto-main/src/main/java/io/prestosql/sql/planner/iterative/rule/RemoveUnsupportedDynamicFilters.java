@@ -28,6 +28,7 @@ import io.prestosql.sql.planner.plan.FilterNode;
 import io.prestosql.sql.planner.plan.JoinNode;
 import io.prestosql.sql.planner.plan.PlanNode;
 import io.prestosql.sql.planner.plan.PlanVisitor;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
 import io.prestosql.sql.planner.plan.TableScanNode;
 import io.prestosql.sql.tree.Expression;
 import io.prestosql.sql.tree.ExpressionRewriter;
@@ -37,6 +38,7 @@ import io.prestosql.sql.tree.LogicalBinaryExpression;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -55,7 +57,7 @@ import static java.util.stream.Collectors.toList;
 
 /**
  * Dynamic filters are supported only right after TableScan and only if the subtree is on the probe side of some downstream join node
- * Dynamic filters are removed from JoinNode if there is no consumer for it on probe side
+ * Dynamic filters are removed from JoinNode (or SemiJoinNode) if there is no consumer for it on probe (source) side
  */
 public class RemoveUnsupportedDynamicFilters
         implements PlanOptimizer
@@ -138,6 +140,42 @@ public class RemoveUnsupportedDynamicFilters
             return new PlanWithConsumedDynamicFilters(node, ImmutableSet.copyOf(consumed));
         }
 
+        @Override
+        public PlanWithConsumedDynamicFilters visitSemiJoin(SemiJoinNode node, Set<String> allowedDynamicFilterIds)
+        {
+            ImmutableSet<String> allowedDynamicFilterIdsSourceSide = ImmutableSet.<String>builder()
+                    .addAll(node.getDynamicFilterId().map(ImmutableSet::of).orElse(ImmutableSet.of()))
+                    .addAll(allowedDynamicFilterIds)
+                    .build();
+
+            PlanWithConsumedDynamicFilters sourceResult = node.getSource().accept(this, allowedDynamicFilterIdsSourceSide);
+            Set<String> consumedSourceSide = sourceResult.getConsumedDynamicFilterIds();
+            Optional<String> dynamicFilterId = node.getDynamicFilterId().filter(consumedSourceSide::contains);
+
+            PlanWithConsumedDynamicFilters filteringSourceResult = node.getFilteringSource().accept(this, allowedDynamicFilterIds);
+            Set<String> consumed = new HashSet<>(filteringSourceResult.getConsumedDynamicFilterIds());
+            consumed.addAll(consumedSourceSide);
+            dynamicFilterId.ifPresent(consumed::remove);
+
+            PlanNode source = sourceResult.getNode();
+            PlanNode filteringSource = filteringSourceResult.getNode();
+            if (!source.equals(node.getSource()) || !filteringSource.equals(node.getFilteringSource()) || !dynamicFilterId.equals(node.getDynamicFilterId())) {
+                return new PlanWithConsumedDynamicFilters(new SemiJoinNode(
+                        node.getId(),
+                        source,
+                        filteringSource,
+                        node.getSourceJoinSymbol(),
+                        node.getFilteringSourceJoinSymbol(),
+                        node.getSemiJoinOutput(),
+                        node.getSourceHashSymbol(),
+                        node.getFilteringSourceHashSymbol(),
+                        node.getDistributionType(),
+                        dynamicFilterId),
+                        ImmutableSet.copyOf(consumed));
+            }
+            return new PlanWithConsumedDynamicFilters(node, ImmutableSet.copyOf(consumed));
+        }
+
         @Override
         public PlanWithConsumedDynamicFilters visitFilter(FilterNode node, Set<String> allowedDynamicFilterIds)
         {
@@ -152,7 +152,9 @@ public class AddExchanges
             this.session = session;
             this.distributedIndexJoins = SystemSessionProperties.isDistributedIndexJoinEnabled(session);
             this.redistributeWrites = SystemSessionProperties.isRedistributeWrites(session);
-            this.scaleWriters = SystemSessionProperties.isScaleWriters(session);
+            // scaled writers add output buffers until the source tasks finish, but tasks which spool
+            // their output for task retries can only finish once all of their output buffers are known
+            this.scaleWriters = SystemSessionProperties.isScaleWriters(session) && !SystemSessionProperties.isTaskRetryEnabled(session);
             this.preferStreamingOperators = SystemSessionProperties.preferStreamingOperators(session);
         }
 
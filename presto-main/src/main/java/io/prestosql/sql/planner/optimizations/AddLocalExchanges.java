@@ -70,10 +70,12 @@ import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static io.prestosql.SystemSessionProperties.getTaskConcurrency;
 import static io.prestosql.SystemSessionProperties.getTaskWriterCount;
 import static io.prestosql.SystemSessionProperties.isDistributedSortEnabled;
+import static io.prestosql.SystemSessionProperties.isMergeJoinEnabled;
 import static io.prestosql.SystemSessionProperties.isSpillEnabled;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_ARBITRARY_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
+import static io.prestosql.sql.planner.optimizations.MergeJoins.isMergeJoinPossible;
 import static io.prestosql.sql.planner.optimizations.StreamPreferredProperties.any;
 import static io.prestosql.sql.planner.optimizations.StreamPreferredProperties.defaultParallelism;
 import static io.prestosql.sql.planner.optimizations.StreamPreferredProperties.exactlyPartitionedOn;
@@ -581,11 +583,29 @@ public class AddLocalExchanges
         @Override
         public PlanWithProperties visitJoin(JoinNode node, StreamPreferredProperties parentPreferences)
         {
-            PlanWithProperties probe = planAndEnforce(
-                    node.getLeft(),
-                    defaultParallelism(session),
+            PlanWithProperties probe = node.getLeft().accept(
+                    this,
                     parentPreferences.constrainTo(node.getLeft().getOutputSymbols()).withDefaultParallelism(session));
 
+            // this build consumes the input completely, so we do not pass through parent preferences
+            List<Symbol> buildHashSymbols = Lists.transform(node.getCriteria(), JoinNode.EquiJoinClause::getRight);
+            StreamPreferredProperties buildPreference;
+            if (getTaskConcurrency(session) > 1) {
+                buildPreference = exactlyPartitionedOn(buildHashSymbols);
+            }
+            else {
+                buildPreference = singleStream();
+            }
+            PlanWithProperties build = node.getRight().accept(this, buildPreference);
+
+            if (isMergeJoinEnabled(session) && isMergeJoinPossible(node, probe.getProperties(), build.getProperties(), metadata, session, types)) {
+                // adding a local exchange to either side would break its sort order
+                return rebaseAndDeriveProperties(node, ImmutableList.of(probe, build));
+            }
+
+            probe = enforce(probe, defaultParallelism(session));
+            build = enforce(build, buildPreference);
+
             if (isSpillEnabled(session)) {
                 if (probe.getProperties().getDistribution() != FIXED) {
                     // Disable spill for joins over non-fixed streams as otherwise we would need to insert local exchange.
@@ -598,17 +618,6 @@ public class AddLocalExchanges
                 }
             }
 
-            // this build consumes the input completely, so we do not pass through parent preferences
-            List<Symbol> buildHashSymbols = Lists.transform(node.getCriteria(), JoinNode.EquiJoinClause::getRight);
-            StreamPreferredProperties buildPreference;
-            if (getTaskConcurrency(session) > 1) {
-                buildPreference = exactlyPartitionedOn(buildHashSymbols);
-            }
-            else {
-                buildPreference = singleStream();
-            }
-            PlanWithProperties build = planAndEnforce(node.getRight(), buildPreference, buildPreference);
-
             return rebaseAndDeriveProperties(node, ImmutableList.of(probe, build));
         }
 
@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner.optimizations;
+
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.Session;
+import io.prestosql.metadata.Metadata;
+import io.prestosql.metadata.TableProperties;
+import io.prestosql.spi.connector.ColumnHandle;
+import io.prestosql.spi.connector.ConstantProperty;
+import io.prestosql.spi.connector.LocalProperty;
+import io.prestosql.spi.connector.SortingProperty;
+import io.prestosql.spi.type.Type;
+import io.prestosql.sql.planner.Symbol;
+import io.prestosql.sql.planner.TypeProvider;
+import io.prestosql.sql.planner.optimizations.StreamPropertyDerivations.StreamProperties;
+import io.prestosql.sql.planner.plan.ExchangeNode;
+import io.prestosql.sql.planner.plan.JoinNode;
+import io.prestosql.sql.planner.plan.PlanNode;
+import io.prestosql.sql.planner.plan.RemoteSourceNode;
+import io.prestosql.sql.planner.plan.TableScanNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static io.prestosql.sql.planner.optimizations.PlanNodeSearcher.searchFrom;
+import static io.prestosql.sql.planner.optimizations.StreamPropertyDerivations.StreamProperties.StreamDistribution.SINGLE;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.REMOTE;
+import static io.prestosql.sql.planner.plan.JoinNode.Type.INNER;
+
+/**
+ * Decides whether a join can be executed as a merge join of its sorted inputs.
+ */
+public final class MergeJoins
+{
+    private MergeJoins() {}
+
+    /**
+     * A merge join is possible for an inner equi-join without a filter, when both inputs are sorted
+     * in ascending order on the join keys and each stream of the probe side is paired with exactly one
+     * stream of the build side. This is the case when both sides are single streams, or when both
+     * sides are partitioned on the same join keys, e.g. by the buckets of co-bucketed tables. In the
+     * latter case the streams are paired by the lifespans of grouped execution, which has to be checked
+     * when the plan is executed, so every bucket of the tables must be read as a single stream.
+     * <p>
+     * Inputs from other stages are not merged, because the build stage of a join is scheduled before
+     * its probe stage, and would block once the buffer between the sides is full.
+     */
+    public static boolean isMergeJoinPossible(JoinNode node, StreamProperties probeProperties, StreamProperties buildProperties, Metadata metadata, Session session, TypeProvider types)
+    {
+        if (!isMergeJoinCandidate(node, types)) {
+            return false;
+        }
+
+        List<Symbol> probeKeys = node.getCriteria().stream()
+                .map(JoinNode.EquiJoinClause::getLeft)
+                .collect(toImmutableList());
+        List<Symbol> buildKeys = node.getCriteria().stream()
+                .map(JoinNode.EquiJoinClause::getRight)
+                .collect(toImmutableList());
+        if (!isSortedAscending(probeProperties.getLocalProperties(), probeKeys) || !isSortedAscending(buildProperties.getLocalProperties(), buildKeys)) {
+            return false;
+        }
+
+        return areStreamsPaired(node, probeProperties, buildProperties, metadata, session);
+    }
+
+    /**
+     * Checks the conditions which do not depend on the properties of the inputs of the join.
+     */
+    public static boolean isMergeJoinCandidate(JoinNode node, TypeProvider types)
+    {
+        if (node.getType() != INNER || node.getCriteria().isEmpty() || node.getFilter().isPresent() || !node.getDynamicFilters().isEmpty()) {
+            return false;
+        }
+
+        for (JoinNode.EquiJoinClause clause : node.getCriteria()) {
+            Type probeType = types.get(clause.getLeft());
+            if (!probeType.isOrderable() || !probeType.equals(types.get(clause.getRight()))) {
+                return false;
+            }
+        }
+
+        return !hasRemoteInput(node.getLeft()) && !hasRemoteInput(node.getRight());
+    }
+
+    private static boolean isSortedAscending(List<LocalProperty<Symbol>> localProperties, List<Symbol> keys)
+    {
+        Iterator<Symbol> keyIterator = keys.iterator();
+        for (LocalProperty<Symbol> property : localProperties) {
+            if (!keyIterator.hasNext()) {
+                return true;
+            }
+            if (property instanceof ConstantProperty) {
+                continue;
+            }
+            if (!(property instanceof SortingProperty)) {
+                return false;
+            }
+            SortingProperty<Symbol> sortingProperty = (SortingProperty<Symbol>) property;
+            if (!sortingProperty.getColumn().equals(keyIterator.next()) || !sortingProperty.getOrder().isAscending()) {
+                return false;
+            }
+        }
+        return !keyIterator.hasNext();
+    }
+
+    private static boolean areStreamsPaired(JoinNode node, StreamProperties probeProperties, StreamProperties buildProperties, Metadata metadata, Session session)
+    {
+        if (probeProperties.getDistribution() == SINGLE && buildProperties.getDistribution() == SINGLE) {
+            return true;
+        }
+
+        Optional<List<Symbol>> probePartitioning = probeProperties.getPartitioningColumns();
+        Optional<List<Symbol>> buildPartitioning = buildProperties.getPartitioningColumns();
+        if (!probePartitioning.isPresent() || !buildPartitioning.isPresent() || probePartitioning.get().isEmpty()) {
+            return false;
+        }
+
+        Map<Symbol, Symbol> probeToBuild = new HashMap<>();
+        for (JoinNode.EquiJoinClause clause : node.getCriteria()) {
+            probeToBuild.put(clause.getLeft(), clause.getRight());
+        }
+        if (!probeToBuild.keySet().containsAll(probePartitioning.get())) {
+            return false;
+        }
+        Set<Symbol> pairedBuildPartitioning = probePartitioning.get().stream()
+                .map(probeToBuild::get)
+                .collect(toImmutableSet());
+        return pairedBuildPartitioning.equals(ImmutableSet.copyOf(buildPartitioning.get()))
+                && hasSingleStreamPerBucket(node.getLeft(), metadata, session)
+                && hasSingleStreamPerBucket(node.getRight(), metadata, session);
+    }
+
+    /**
+     * A table which is stream partitioned on exactly its bucketing columns is read as a single stream for each bucket.
+     * A table which is stream partitioned on other columns as well, e.g. a Hive table which is partitioned in addition to
+     * being bucketed, has multiple streams for each bucket, which are not sorted with respect to each other.
+     */
+    private static boolean hasSingleStreamPerBucket(PlanNode node, Metadata metadata, Session session)
+    {
+        List<TableScanNode> tableScans = searchFrom(node)
+                .where(TableScanNode.class::isInstance)
+                .findAll();
+        return !tableScans.isEmpty() && tableScans.stream().allMatch(tableScan -> {
+            TableProperties properties = metadata.getTableProperties(session, tableScan.getTable());
+            Optional<Set<ColumnHandle>> streamPartitioning = properties.getStreamPartitioningColumns();
+            return properties.getTablePartitioning().isPresent()
+                    && streamPartitioning.isPresent()
+                    && streamPartitioning.get().equals(ImmutableSet.copyOf(properties.getTablePartitioning().get().getPartitioningColumns()));
+        });
+    }
+
+    private static boolean hasRemoteInput(PlanNode node)
+    {
+        return searchFrom(node)
+                .where(source -> source instanceof RemoteSourceNode || (source instanceof ExchangeNode && ((ExchangeNode) source).getScope() == REMOTE))
+                .matches();
+    }
+}
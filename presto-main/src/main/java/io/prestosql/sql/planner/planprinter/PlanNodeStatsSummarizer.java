@@ -17,6 +17,7 @@ import com.google.common.collect.ImmutableMap;
 import io.airlift.units.Duration;
 import io.prestosql.execution.StageInfo;
 import io.prestosql.execution.TaskInfo;
+import io.prestosql.operator.HashAggregationInfo;
 import io.prestosql.operator.HashCollisionsInfo;
 import io.prestosql.operator.OperatorStats;
 import io.prestosql.operator.PipelineStats;
@@ -121,8 +122,14 @@ public final class PlanNodeStatsSummarizer
                                         operatorStats.getSumSquaredInputPositions())),
                         (map1, map2) -> mergeMaps(map1, map2, OperatorInputStats::merge));
 
+                HashCollisionsInfo hashCollisionsInfo = null;
                 if (operatorStats.getInfo() instanceof HashCollisionsInfo) {
-                    HashCollisionsInfo hashCollisionsInfo = (HashCollisionsInfo) operatorStats.getInfo();
+                    hashCollisionsInfo = (HashCollisionsInfo) operatorStats.getInfo();
+                }
+                else if (operatorStats.getInfo() instanceof HashAggregationInfo) {
+                    hashCollisionsInfo = ((HashAggregationInfo) operatorStats.getInfo()).getHashCollisionsInfo();
+                }
+                if (hashCollisionsInfo != null) {
                     operatorHashCollisionsStats.merge(planNodeId,
                             ImmutableMap.of(
                                     operatorStats.getOperatorType(),
@@ -293,6 +293,14 @@ public class PlanPrinter
                             formatDouble(sdAmongTasks),
                             formatPositions(stageStats.getOutputPositions()),
                             stageStats.getOutputDataSize()));
+            if (stageStats.getSkewedPartitions() > 0) {
+                builder.append(indentString(1))
+                        .append(format("Skewed partitions: %s split over %s tasks, largest partition: %s, largest task: %s\n",
+                                stageStats.getSkewedPartitions(),
+                                stageStats.getSkewedPartitionTasks(),
+                                stageStats.getLargestSkewedPartitionDataSize(),
+                                stageStats.getLargestSkewedPartitionTaskDataSize()));
+            }
         }
 
         PartitioningScheme partitioningScheme = fragment.getPartitioningScheme();
@@ -444,6 +452,7 @@ public class PlanPrinter
                             node.getFilteringSourceJoinSymbol(),
                             formatHash(node.getSourceHashSymbol(), node.getFilteringSourceHashSymbol())));
             node.getDistributionType().ifPresent(distributionType -> nodeOutput.appendDetailsLine("Distribution: %s", distributionType));
+            node.getDynamicFilterId().ifPresent(dynamicFilterId -> nodeOutput.appendDetails("dynamicFilterId = %s", dynamicFilterId));
             node.getSource().accept(this, context);
             node.getFilteringSource().accept(this, context);
 
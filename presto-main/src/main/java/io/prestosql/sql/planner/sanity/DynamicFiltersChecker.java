@@ -26,6 +26,7 @@ import io.prestosql.sql.planner.plan.JoinNode;
 import io.prestosql.sql.planner.plan.OutputNode;
 import io.prestosql.sql.planner.plan.PlanNode;
 import io.prestosql.sql.planner.plan.PlanVisitor;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
 import io.prestosql.sql.tree.Expression;
 
 import java.util.HashSet;
@@ -40,6 +41,7 @@ import static com.google.common.collect.Sets.intersection;
 
 /**
  * When dynamic filter assignments are present on a Join node, they should be consumed by a Filter node on it's probe side
+ * (the same applies to the dynamic filter of a SemiJoin node and its source side)
  */
 public class DynamicFiltersChecker
         implements PlanSanityChecker.Checker
@@ -85,6 +87,24 @@ public class DynamicFiltersChecker
                 return ImmutableSet.copyOf(unmatched);
             }
 
+            @Override
+            public Set<String> visitSemiJoin(SemiJoinNode node, Void context)
+            {
+                Set<String> currentJoinDynamicFilters = node.getDynamicFilterId().map(ImmutableSet::of).orElse(ImmutableSet.of());
+                Set<String> consumedSourceSide = node.getSource().accept(this, context);
+                verify(difference(currentJoinDynamicFilters, consumedSourceSide).isEmpty(),
+                        "Dynamic filter present in semi join was not consumed by it's source side.");
+
+                Set<String> consumedFilteringSourceSide = node.getFilteringSource().accept(this, context);
+                verify(intersection(currentJoinDynamicFilters, consumedFilteringSourceSide).isEmpty(),
+                        "Dynamic filter present in semi join was consumed by it's filtering source side.");
+
+                Set<String> unmatched = new HashSet<>(consumedFilteringSourceSide);
+                unmatched.addAll(consumedSourceSide);
+                unmatched.removeAll(currentJoinDynamicFilters);
+                return ImmutableSet.copyOf(unmatched);
+            }
+
             @Override
             public Set<String> visitFilter(FilterNode node, Void context)
             {
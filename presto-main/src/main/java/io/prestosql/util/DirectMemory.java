@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.util;
+
+import com.google.common.base.FinalizablePhantomReference;
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.collect.Sets;
+import io.airlift.slice.Slice;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static sun.misc.Unsafe.ARRAY_BYTE_BASE_OFFSET;
+
+/**
+ * Memory allocated outside of the Java heap, which is freed explicitly by {@link #free} as soon as
+ * it is no longer used. Memory which is not freed explicitly, e.g. because a query failed while it
+ * was still in use, is freed once it is no longer reachable.
+ * <p>
+ * The accessors of single values do not check the offset, which is the responsibility of the caller.
+ */
+public final class DirectMemory
+{
+    private static final Unsafe unsafe;
+
+    private static final FinalizableReferenceQueue DEALLOCATOR_QUEUE = new FinalizableReferenceQueue();
+    // the deallocators must stay reachable until the memory is freed
+    private static final Set<Deallocator> DEALLOCATORS = Sets.newConcurrentHashSet();
+
+    static {
+        try {
+            // fetch theUnsafe object
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            if (unsafe == null) {
+                throw new RuntimeException("Unsafe access not available");
+            }
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private final long address;
+    private final long size;
+    private final Deallocator deallocator;
+
+    public DirectMemory(long size)
+    {
+        checkArgument(size >= 0, "size is negative");
+        this.size = size;
+        this.address = unsafe.allocateMemory(Math.max(size, 1));
+        this.deallocator = new Deallocator(this, address);
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public int getInt(long offset)
+    {
+        return unsafe.getInt(address + offset);
+    }
+
+    public void setInt(long offset, int value)
+    {
+        unsafe.putInt(address + offset, value);
+    }
+
+    public byte getByte(long offset)
+    {
+        return unsafe.getByte(address + offset);
+    }
+
+    public void setByte(long offset, byte value)
+    {
+        unsafe.putByte(address + offset, value);
+    }
+
+    public void fill(byte value)
+    {
+        unsafe.setMemory(address, size, value);
+    }
+
+    public void getBytes(long offset, byte[] destination, int length)
+    {
+        checkArgument(length <= destination.length, "length is greater than the destination");
+        checkRange(offset, length);
+        unsafe.copyMemory(null, address + offset, destination, ARRAY_BYTE_BASE_OFFSET, length);
+    }
+
+    public void setBytes(long offset, Slice source)
+    {
+        checkRange(offset, source.length());
+        unsafe.copyMemory(source.getBase(), source.getAddress(), null, address + offset, source.length());
+    }
+
+    private void checkRange(long offset, long length)
+    {
+        checkArgument(offset >= 0 && length >= 0 && offset + length <= size, "Range [%s, %s) is out of bounds of %s bytes", offset, offset + length, size);
+    }
+
+    /**
+     * Frees the memory. The memory must not be accessed once it is freed.
+     */
+    public void free()
+    {
+        deallocator.free();
+    }
+
+    private static class Deallocator
+            extends FinalizablePhantomReference<DirectMemory>
+    {
+        private final long address;
+        private final AtomicBoolean freed = new AtomicBoolean();
+
+        public Deallocator(DirectMemory memory, long address)
+        {
+            super(memory, DEALLOCATOR_QUEUE);
+            this.address = address;
+            DEALLOCATORS.add(this);
+        }
+
+        public void free()
+        {
+            if (freed.compareAndSet(false, true)) {
+                unsafe.freeMemory(address);
+                DEALLOCATORS.remove(this);
+            }
+        }
+
+        @Override
+        public void finalizeReferent()
+        {
+            free();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import io.airlift.stats.CounterStat;
 import io.airlift.stats.TestingGcMonitor;
 import io.airlift.units.DataSize;
 import io.prestosql.Session;
+import io.prestosql.exchange.ExchangeStorageManager;
 import io.prestosql.execution.executor.TaskExecutor;
 import io.prestosql.memory.MemoryPool;
 import io.prestosql.memory.QueryContext;
@@ -303,6 +304,7 @@ public class TestMemoryRevokingScheduler
                         new DataSize(1, GIGABYTE),
                         spillSpaceTracker),
                 sqlTaskExecutionFactory,
+                new ExchangeStorageManager(),
                 executor,
                 Functions.identity(),
                 new DataSize(32, MEGABYTE),
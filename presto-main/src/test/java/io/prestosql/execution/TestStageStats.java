@@ -76,6 +76,11 @@ public class TestStageStats
 
             new DataSize(26, BYTE),
 
+            27,
+            28,
+            new DataSize(29, BYTE),
+            new DataSize(30, BYTE),
+
             new StageGcStatistics(
                     101,
                     102,
@@ -143,6 +148,11 @@ public class TestStageStats
 
         assertEquals(actual.getPhysicalWrittenDataSize(), new DataSize(26, BYTE));
 
+        assertEquals(actual.getSkewedPartitions(), 27);
+        assertEquals(actual.getSkewedPartitionTasks(), 28);
+        assertEquals(actual.getLargestSkewedPartitionDataSize(), new DataSize(29, BYTE));
+        assertEquals(actual.getLargestSkewedPartitionTaskDataSize(), new DataSize(30, BYTE));
+
         assertEquals(actual.getGcInfo().getStageId(), 101);
         assertEquals(actual.getGcInfo().getTasks(), 102);
         assertEquals(actual.getGcInfo().getFullGcTasks(), 103);
@@ -0,0 +1,310 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.execution.buffer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.DataSize;
+import io.prestosql.exchange.LocalFileSystemExchangeStorage;
+import io.prestosql.execution.StateMachine;
+import io.prestosql.execution.TaskId;
+import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.memory.context.SimpleLocalMemoryContext;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.exchange.ExchangeStorage;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.slice.Slices.wrappedBuffer;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static io.prestosql.execution.buffer.BufferState.FAILED;
+import static io.prestosql.execution.buffer.BufferState.OPEN;
+import static io.prestosql.execution.buffer.BufferState.TERMINAL_BUFFER_STATES;
+import static io.prestosql.execution.buffer.BufferTestUtils.PAGES_SERDE;
+import static io.prestosql.execution.buffer.BufferTestUtils.addPage;
+import static io.prestosql.execution.buffer.BufferTestUtils.createPage;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.ARBITRARY;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.PARTITIONED;
+import static io.prestosql.execution.buffer.OutputBuffers.createInitialEmptyOutputBuffers;
+import static io.prestosql.execution.buffer.SpoolingManifest.MANIFEST_FILE_NAME;
+import static io.prestosql.execution.buffer.SpoolingOutputBuffer.getTaskDirectory;
+import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
+import static io.prestosql.operator.PageAssertions.assertPageEquals;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static java.nio.file.Files.createTempDirectory;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test(singleThreaded = true)
+public class TestSpoolingOutputBuffer
+{
+    private static final TaskId TASK_ID = new TaskId("query", 0, 0);
+    private static final OutputBufferId FIRST = new OutputBufferId(0);
+    private static final OutputBufferId SECOND = new OutputBufferId(1);
+
+    private Path baseDirectory;
+    private ExchangeStorage exchangeStorage;
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp()
+            throws IOException
+    {
+        baseDirectory = createTempDirectory("exchange");
+        exchangeStorage = new LocalFileSystemExchangeStorage(baseDirectory);
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+            throws IOException
+    {
+        executor.shutdownNow();
+        deleteRecursively(baseDirectory, ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testPartitioned()
+            throws IOException
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer("attempt", createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withBuffer(SECOND, 1)
+                .withNoMoreBufferIds());
+
+        addPage(buffer, createPage(0), 0);
+        addPage(buffer, createPage(1), 1);
+        addPage(buffer, createPage(2), 0);
+
+        // the output is not visible until the task has finished
+        assertFalse(exchangeStorage.openFile(getTaskDirectory(TASK_ID), MANIFEST_FILE_NAME).isPresent());
+
+        buffer.setNoMorePages();
+        assertTrue(buffer.isFinished());
+
+        SpoolingManifest manifest = readManifest();
+        assertEquals(manifest.getType(), PARTITIONED);
+        assertEquals(manifest.getFileCount(), 2);
+        assertPagesEqual(readPages(manifest.getFileName(FIRST)), ImmutableList.of(createPage(0), createPage(2)));
+        assertPagesEqual(readPages(manifest.getFileName(SECOND)), ImmutableList.of(createPage(1)));
+        assertEquals(manifest.getFileSize(FIRST), readFile(manifest.getFileName(FIRST)).length);
+        assertEquals(manifest.getFileSize(SECOND), readFile(manifest.getFileName(SECOND)).length);
+        assertTrue(manifest.getFileSize(FIRST) > manifest.getFileSize(SECOND));
+    }
+
+    @Test
+    public void testEmptyPartitions()
+            throws IOException
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer("attempt", createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withBuffer(SECOND, 1)
+                .withNoMoreBufferIds());
+
+        buffer.setNoMorePages();
+        assertTrue(buffer.isFinished());
+
+        // readers of partitions without pages must find an empty file
+        SpoolingManifest manifest = readManifest();
+        assertPagesEqual(readPages(manifest.getFileName(FIRST)), ImmutableList.of());
+        assertPagesEqual(readPages(manifest.getFileName(SECOND)), ImmutableList.of());
+        assertEquals(manifest.getFileSize(FIRST), 0);
+        assertEquals(manifest.getFileSize(SECOND), 0);
+    }
+
+    @Test
+    public void testCommitAfterNoMoreBuffers()
+            throws IOException
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer("attempt", createInitialEmptyOutputBuffers(ARBITRARY));
+        addPage(buffer, createPage(0));
+        buffer.setNoMorePages();
+
+        // the manifest needs the final number of output buffers
+        assertFalse(buffer.isFinished());
+
+        buffer.setOutputBuffers(createInitialEmptyOutputBuffers(ARBITRARY)
+                .withBuffer(FIRST, 0)
+                .withBuffer(SECOND, 0)
+                .withNoMoreBufferIds());
+        assertTrue(buffer.isFinished());
+
+        SpoolingManifest manifest = readManifest();
+        assertEquals(manifest.getType(), ARBITRARY);
+        assertEquals(manifest.getBufferCount(), 2);
+        assertTrue(manifest.isPageSelected(FIRST, 0));
+        assertFalse(manifest.isPageSelected(SECOND, 0));
+        assertPagesEqual(readPages(manifest.getFileName(FIRST)), ImmutableList.of(createPage(0)));
+    }
+
+    @Test
+    public void testFirstCommitWins()
+            throws IOException
+    {
+        OutputBuffers outputBuffers = createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withNoMoreBufferIds();
+        SpoolingOutputBuffer firstAttempt = createSpoolingBuffer("first", outputBuffers);
+        SpoolingOutputBuffer secondAttempt = createSpoolingBuffer("second", outputBuffers);
+
+        addPage(firstAttempt, createPage(1), 0);
+        addPage(secondAttempt, createPage(2), 0);
+
+        secondAttempt.setNoMorePages();
+        firstAttempt.setNoMorePages();
+        assertTrue(firstAttempt.isFinished());
+        assertTrue(secondAttempt.isFinished());
+
+        assertPagesEqual(readPages(readManifest().getFileName(FIRST)), ImmutableList.of(createPage(2)));
+    }
+
+    @Test
+    public void testFailedAttemptIsDiscarded()
+            throws IOException
+    {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        StateMachine<BufferState> state = new StateMachine<>("bufferState", executor, OPEN, TERMINAL_BUFFER_STATES);
+        SpoolingOutputBuffer buffer = new SpoolingOutputBuffer(
+                TASK_ID,
+                "attempt",
+                state,
+                createInitialEmptyOutputBuffers(PARTITIONED).withBuffer(FIRST, 0).withNoMoreBufferIds(),
+                new DataSize(1, MEGABYTE),
+                () -> new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), "test"),
+                exchangeStorage,
+                directExecutor(),
+                executor,
+                failure::set);
+
+        addPage(buffer, createPage(0), 0);
+        buffer.fail();
+        assertEquals(state.get(), FAILED);
+        assertNull(failure.get());
+
+        // pages added after the failure are ignored, and the output is never committed
+        addPage(buffer, createPage(1), 0);
+        buffer.setNoMorePages();
+        assertFalse(exchangeStorage.openFile(getTaskDirectory(TASK_ID), MANIFEST_FILE_NAME).isPresent());
+        assertEquals(state.get(), FAILED);
+    }
+
+    private SpoolingOutputBuffer createSpoolingBuffer(String taskInstanceId, OutputBuffers outputBuffers)
+    {
+        return createSpoolingBuffer(taskInstanceId, outputBuffers, new DataSize(1, MEGABYTE), directExecutor());
+    }
+
+    private SpoolingOutputBuffer createSpoolingBuffer(String taskInstanceId, OutputBuffers outputBuffers, DataSize maxBufferSize, Executor writeExecutor)
+    {
+        return new SpoolingOutputBuffer(
+                TASK_ID,
+                taskInstanceId,
+                new StateMachine<>("bufferState", executor, OPEN, TERMINAL_BUFFER_STATES),
+                outputBuffers,
+                maxBufferSize,
+                () -> new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), "test"),
+                exchangeStorage,
+                writeExecutor,
+                executor,
+                throwable -> {
+                    throw new AssertionError("Unexpected failure", throwable);
+                });
+    }
+
+    @Test
+    public void testBlockedWhileWritesArePending()
+            throws Exception
+    {
+        Queue<Runnable> writes = new ArrayDeque<>();
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(
+                "attempt",
+                createInitialEmptyOutputBuffers(PARTITIONED)
+                        .withBuffer(FIRST, 0)
+                        .withNoMoreBufferIds(),
+                new DataSize(1, BYTE),
+                writes::add);
+
+        // the page is not written by the driver, which is blocked until it is
+        buffer.enqueue(0, ImmutableList.of(PAGES_SERDE.serialize(createPage(0))));
+        ListenableFuture<?> full = buffer.isFull();
+        assertFalse(full.isDone());
+        assertTrue(buffer.isOverutilized());
+        assertEquals(writes.size(), 1);
+
+        writes.poll().run();
+        full.get(10, SECONDS);
+        assertTrue(buffer.isFull().isDone());
+        assertFalse(buffer.isOverutilized());
+
+        // the output is committed by the write executor
+        buffer.setNoMorePages();
+        assertFalse(buffer.isFinished());
+        writes.poll().run();
+        assertTrue(buffer.isFinished());
+        assertTrue(writes.isEmpty());
+
+        assertPagesEqual(readPages(readManifest().getFileName(FIRST)), ImmutableList.of(createPage(0)));
+    }
+
+    private SpoolingManifest readManifest()
+            throws IOException
+    {
+        return SpoolingManifest.deserialize(wrappedBuffer(readFile(MANIFEST_FILE_NAME)).getInput());
+    }
+
+    private List<Page> readPages(String fileName)
+            throws IOException
+    {
+        return ImmutableList.copyOf(PagesSerdeUtil.readPages(PAGES_SERDE, wrappedBuffer(readFile(fileName)).getInput()));
+    }
+
+    private byte[] readFile(String fileName)
+            throws IOException
+    {
+        Optional<InputStream> input = exchangeStorage.openFile(getTaskDirectory(TASK_ID), fileName);
+        assertTrue(input.isPresent(), "Task output is not committed");
+        try (InputStream stream = input.get()) {
+            return ByteStreams.toByteArray(stream);
+        }
+    }
+
+    private static void assertPagesEqual(List<Page> actual, List<Page> expected)
+    {
+        assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertPageEquals(ImmutableList.of(BIGINT), actual.get(i), expected.get(i));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.execution.scheduler;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.execution.StageId;
+import io.prestosql.execution.TaskId;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.prestosql.execution.scheduler.AdaptiveJoinScheduler.splitSkewedPartitions;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdaptiveJoinScheduler
+{
+    private static final StageId STAGE_ID = new StageId("query", 1);
+    private static final TaskId TASK_0 = new TaskId(STAGE_ID, 0);
+    private static final TaskId TASK_1 = new TaskId(STAGE_ID, 1);
+    private static final TaskId TASK_2 = new TaskId(STAGE_ID, 2);
+    private static final TaskId TASK_3 = new TaskId(STAGE_ID, 3);
+
+    @Test
+    public void testNoSkew()
+    {
+        Map<TaskId, long[]> sizes = ImmutableMap.of(
+                TASK_0, new long[] {100, 110, 90, 100},
+                TASK_1, new long[] {100, 90, 110, 100});
+        assertTrue(splitSkewedPartitions(sizes, 4, 5, 0).isEmpty());
+    }
+
+    @Test
+    public void testSkewedPartition()
+    {
+        Map<TaskId, long[]> sizes = ImmutableMap.of(
+                TASK_0, new long[] {10, 1000, 10, 10},
+                TASK_1, new long[] {10, 600, 10, 10},
+                TASK_2, new long[] {10, 400, 10, 10},
+                TASK_3, new long[] {10, 0, 10, 10});
+
+        // the partition is split in as many slices as producers with output for it, and the slices are balanced
+        Map<Integer, List<Set<TaskId>>> skewedPartitions = splitSkewedPartitions(sizes, 4, 5, 0);
+        assertEquals(skewedPartitions, ImmutableMap.of(1, ImmutableList.of(
+                ImmutableSet.of(TASK_0),
+                ImmutableSet.of(TASK_1),
+                ImmutableSet.of(TASK_2))));
+    }
+
+    @Test
+    public void testSliceCountLimitedBySkew()
+    {
+        Map<TaskId, long[]> sizes = ImmutableMap.of(
+                TASK_0, new long[] {200, 300, 200, 200},
+                TASK_1, new long[] {200, 300, 200, 200},
+                TASK_2, new long[] {0, 200, 0, 0},
+                TASK_3, new long[] {0, 200, 0, 0});
+
+        // the partition is 2.5 times the median, so three slices are enough to bring it down to the median
+        Map<Integer, List<Set<TaskId>>> skewedPartitions = splitSkewedPartitions(sizes, 4, 2, 0);
+        assertEquals(skewedPartitions, ImmutableMap.of(1, ImmutableList.of(
+                ImmutableSet.of(TASK_0),
+                ImmutableSet.of(TASK_1),
+                ImmutableSet.of(TASK_2, TASK_3))));
+    }
+
+    @Test
+    public void testMinPartitionSize()
+    {
+        Map<TaskId, long[]> sizes = ImmutableMap.of(
+                TASK_0, new long[] {10, 1000, 10, 10},
+                TASK_1, new long[] {10, 1000, 10, 10});
+        assertTrue(splitSkewedPartitions(sizes, 4, 5, 2001).isEmpty());
+        assertEquals(splitSkewedPartitions(sizes, 4, 5, 2000).keySet(), ImmutableSet.of(1));
+    }
+}
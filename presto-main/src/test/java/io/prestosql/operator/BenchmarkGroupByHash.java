@@ -136,6 +136,41 @@ public class BenchmarkGroupByHash
         return pageBuilder.build();
     }
 
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long hashPositions(BenchmarkData data)
+    {
+        HashGenerator hashGenerator = new InterpretedHashGenerator(data.getTypes(), data.getChannels());
+        long[] hashes = new long[0];
+        long result = 0;
+        for (Page page : data.getPages()) {
+            int positionCount = page.getPositionCount();
+            if (hashes.length < positionCount) {
+                hashes = new long[positionCount];
+            }
+            hashGenerator.hashPositions(page, 0, positionCount, hashes);
+            for (int position = 0; position < positionCount; position++) {
+                result += hashes[position];
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public long hashPosition(BenchmarkData data)
+    {
+        HashGenerator hashGenerator = new InterpretedHashGenerator(data.getTypes(), data.getChannels());
+        long result = 0;
+        for (Page page : data.getPages()) {
+            int positionCount = page.getPositionCount();
+            for (int position = 0; position < positionCount; position++) {
+                result += hashGenerator.hashPosition(position, page);
+            }
+        }
+        return result;
+    }
+
     @Benchmark
     @OperationsPerInvocation(POSITIONS)
     public long baseline(BaselinePagesData data)
@@ -398,6 +433,8 @@ public class BenchmarkGroupByHash
         data.setup();
         new BenchmarkGroupByHash().groupByHashPreCompute(data);
         new BenchmarkGroupByHash().addPagePreCompute(data);
+        new BenchmarkGroupByHash().hashPositions(data);
+        new BenchmarkGroupByHash().hashPosition(data);
 
         SingleChannelBenchmarkData singleChannelBenchmarkData = new SingleChannelBenchmarkData();
         singleChannelBenchmarkData.setup();
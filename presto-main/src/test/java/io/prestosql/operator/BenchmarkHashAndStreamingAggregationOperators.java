@@ -20,8 +20,12 @@ import io.prestosql.metadata.Metadata;
 import io.prestosql.operator.HashAggregationOperator.HashAggregationOperatorFactory;
 import io.prestosql.operator.StreamingAggregationOperator.StreamingAggregationOperatorFactory;
 import io.prestosql.operator.aggregation.InternalAggregationFunction;
+import io.prestosql.operator.aggregation.builder.FlatAccumulator;
+import io.prestosql.operator.aggregation.builder.FlatAccumulatorCompiler;
+import io.prestosql.operator.aggregation.builder.FlatAggregation;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.type.Type;
 import io.prestosql.spiller.SpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
 import io.prestosql.sql.planner.plan.AggregationNode;
@@ -62,6 +66,7 @@ import static io.prestosql.operator.BenchmarkHashAndStreamingAggregationOperator
 import static io.prestosql.operator.BenchmarkHashAndStreamingAggregationOperators.Context.TOTAL_PAGES;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static io.prestosql.sql.analyzer.TypeSignatureProvider.fromTypes;
 import static java.lang.String.format;
 import static java.util.concurrent.Executors.newCachedThreadPool;
@@ -94,9 +99,12 @@ public class BenchmarkHashAndStreamingAggregationOperators
         @Param({"1", "10", "1000"})
         public int rowsPerGroup;
 
-        @Param({"streaming", "hash"})
+        @Param({"streaming", "hash", "flat-hash", "fused-hash", "direct-hash"})
         public String operatorType;
 
+        @Param({"varchar", "bigint"})
+        public String keyType = "varchar";
+
         private ExecutorService executor;
         private ScheduledExecutorService scheduledExecutor;
         private OperatorFactory operatorFactory;
@@ -110,14 +118,27 @@ public class BenchmarkHashAndStreamingAggregationOperators
 
             int groupsPerPage = ROWS_PER_PAGE / rowsPerGroup;
 
-            boolean hashAggregation = operatorType.equalsIgnoreCase("hash");
+            boolean hashAggregation = operatorType.equalsIgnoreCase("hash") || operatorType.equalsIgnoreCase("flat-hash") || operatorType.equalsIgnoreCase("fused-hash") || operatorType.equalsIgnoreCase("direct-hash");
+            boolean fusedAggregation = operatorType.equalsIgnoreCase("fused-hash");
+            boolean flatHashAggregation = operatorType.equalsIgnoreCase("flat-hash") || fusedAggregation;
+            Optional<GroupByKeyRange> groupByKeyRange = Optional.empty();
+            if (operatorType.equalsIgnoreCase("direct-hash")) {
+                // keys outside of the range go to the overflow map
+                groupByKeyRange = Optional.of(new GroupByKeyRange(0, Math.min(TOTAL_PAGES * groupsPerPage, GroupByKeyRange.MAX_RANGE_SIZE) - 1));
+            }
+            Type groupByType = keyType.equalsIgnoreCase("bigint") ? BIGINT : VARCHAR;
 
-            RowPagesBuilder pagesBuilder = RowPagesBuilder.rowPagesBuilder(hashAggregation, ImmutableList.of(0), VARCHAR, BIGINT);
+            RowPagesBuilder pagesBuilder = RowPagesBuilder.rowPagesBuilder(hashAggregation, ImmutableList.of(0), groupByType, BIGINT);
             for (int i = 0; i < TOTAL_PAGES; i++) {
-                BlockBuilder blockBuilder = VARCHAR.createBlockBuilder(null, ROWS_PER_PAGE);
+                BlockBuilder blockBuilder = groupByType.createBlockBuilder(null, ROWS_PER_PAGE);
                 for (int j = 0; j < groupsPerPage; j++) {
-                    String groupKey = format("%s", i * groupsPerPage + j);
-                    repeatToStringBlock(groupKey, rowsPerGroup, blockBuilder);
+                    long groupKey = i * groupsPerPage + j;
+                    if (groupByType == BIGINT) {
+                        repeatToLongBlock(groupKey, rowsPerGroup, blockBuilder);
+                    }
+                    else {
+                        repeatToStringBlock(format("%s", groupKey), rowsPerGroup, blockBuilder);
+                    }
                 }
                 pagesBuilder.addBlocksPage(blockBuilder.build(), createLongSequenceBlock(0, ROWS_PER_PAGE));
             }
@@ -125,10 +146,10 @@ public class BenchmarkHashAndStreamingAggregationOperators
             pages = pagesBuilder.build();
 
             if (hashAggregation) {
-                operatorFactory = createHashAggregationOperatorFactory(pagesBuilder.getHashChannel());
+                operatorFactory = createHashAggregationOperatorFactory(groupByType, pagesBuilder.getHashChannel(), flatHashAggregation, fusedAggregation, groupByKeyRange);
             }
             else {
-                operatorFactory = createStreamingAggregationOperatorFactory();
+                operatorFactory = createStreamingAggregationOperatorFactory(groupByType);
             }
         }
 
@@ -139,13 +160,13 @@ public class BenchmarkHashAndStreamingAggregationOperators
             scheduledExecutor.shutdownNow();
         }
 
-        private OperatorFactory createStreamingAggregationOperatorFactory()
+        private OperatorFactory createStreamingAggregationOperatorFactory(Type groupByType)
         {
             return new StreamingAggregationOperatorFactory(
                     0,
                     new PlanNodeId("test"),
-                    ImmutableList.of(VARCHAR),
-                    ImmutableList.of(VARCHAR),
+                    ImmutableList.of(groupByType),
+                    ImmutableList.of(groupByType),
                     ImmutableList.of(0),
                     AggregationNode.Step.SINGLE,
                     ImmutableList.of(COUNT.bind(ImmutableList.of(0), Optional.empty()),
@@ -153,15 +174,31 @@ public class BenchmarkHashAndStreamingAggregationOperators
                     new JoinCompiler(createTestMetadataManager()));
         }
 
-        private OperatorFactory createHashAggregationOperatorFactory(Optional<Integer> hashChannel)
+        private OperatorFactory createHashAggregationOperatorFactory(
+                Type groupByType,
+                Optional<Integer> hashChannel,
+                boolean flatHashAggregation,
+                boolean fusedAggregation,
+                Optional<GroupByKeyRange> groupByKeyRange)
         {
             JoinCompiler joinCompiler = new JoinCompiler(createTestMetadataManager());
             SpillerFactory spillerFactory = (types, localSpillContext, aggregatedMemoryContext) -> null;
 
+            Optional<List<FlatAggregation>> flatAggregations = Optional.empty();
+            if (flatHashAggregation) {
+                flatAggregations = Optional.of(ImmutableList.of(
+                        FlatAggregation.create(COUNT, ImmutableList.of(), AggregationNode.Step.SINGLE).get(),
+                        FlatAggregation.create(LONG_SUM, ImmutableList.of(1), AggregationNode.Step.SINGLE).get()));
+            }
+            Optional<FlatAccumulator> flatAccumulator = Optional.empty();
+            if (fusedAggregation) {
+                flatAccumulator = Optional.of(new FlatAccumulatorCompiler().compileFlatAccumulator(1, flatAggregations.get(), AggregationNode.Step.SINGLE));
+            }
+
             return new HashAggregationOperatorFactory(
                     0,
                     new PlanNodeId("test"),
-                    ImmutableList.of(VARCHAR),
+                    ImmutableList.of(groupByType),
                     ImmutableList.of(0),
                     ImmutableList.of(),
                     AggregationNode.Step.SINGLE,
@@ -176,8 +213,14 @@ public class BenchmarkHashAndStreamingAggregationOperators
                     succinctBytes(8),
                     succinctBytes(Integer.MAX_VALUE),
                     spillerFactory,
+                    false,
+                    unsupportedPartitioningSpillerFactory(),
                     joinCompiler,
-                    false);
+                    false,
+                    Optional.empty(),
+                    flatAggregations,
+                    flatAccumulator,
+                    groupByKeyRange);
         }
 
         private static void repeatToStringBlock(String value, int count, BlockBuilder blockBuilder)
@@ -187,6 +230,13 @@ public class BenchmarkHashAndStreamingAggregationOperators
             }
         }
 
+        private static void repeatToLongBlock(long value, int count, BlockBuilder blockBuilder)
+        {
+            for (int i = 0; i < count; i++) {
+                BIGINT.writeLong(blockBuilder, value);
+            }
+        }
+
         public TaskContext createTaskContext()
         {
             return TestingTaskContext.createTaskContext(executor, scheduledExecutor, TEST_SESSION, new DataSize(2, GIGABYTE));
@@ -250,11 +300,41 @@ public class BenchmarkHashAndStreamingAggregationOperators
         verify(1000, "hash");
     }
 
+    @Test
+    public void verifyFlatHash()
+    {
+        verify(1, "flat-hash", "bigint");
+        verify(10, "flat-hash", "bigint");
+        verify(1000, "flat-hash", "bigint");
+    }
+
+    @Test
+    public void verifyFusedHash()
+    {
+        verify(1, "fused-hash", "bigint");
+        verify(10, "fused-hash", "bigint");
+        verify(1000, "fused-hash", "bigint");
+    }
+
+    @Test
+    public void verifyDirectHash()
+    {
+        verify(1, "direct-hash", "bigint");
+        verify(10, "direct-hash", "bigint");
+        verify(1000, "direct-hash", "bigint");
+    }
+
     private void verify(int rowsPerGroup, String operatorType)
+    {
+        verify(rowsPerGroup, operatorType, "varchar");
+    }
+
+    private void verify(int rowsPerGroup, String operatorType, String keyType)
     {
         Context context = new Context();
         context.operatorType = operatorType;
         context.rowsPerGroup = rowsPerGroup;
+        context.keyType = keyType;
         context.setup();
 
         assertEquals(TOTAL_PAGES, context.getPages().size());
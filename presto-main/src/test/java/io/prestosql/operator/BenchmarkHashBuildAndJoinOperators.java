@@ -18,8 +18,10 @@ import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.units.DataSize;
 import io.prestosql.RowPagesBuilder;
+import io.prestosql.Session;
 import io.prestosql.execution.Lifespan;
 import io.prestosql.operator.HashBuilderOperator.HashBuilderOperatorFactory;
+import io.prestosql.operator.JoinProbe.JoinProbeFactory;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.type.Type;
 import io.prestosql.spiller.SingleStreamSpillerFactory;
@@ -56,6 +58,8 @@ import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.units.DataSize.Unit.GIGABYTE;
 import static io.prestosql.RowPagesBuilder.rowPagesBuilder;
 import static io.prestosql.SessionTestUtils.TEST_SESSION;
+import static io.prestosql.SystemSessionProperties.JOIN_BLOOM_FILTER_ENABLED;
+import static io.prestosql.SystemSessionProperties.RADIX_PARTITIONED_JOIN_ENABLED;
 import static io.prestosql.operator.JoinBridgeManager.lookupAllAtOnce;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
@@ -97,6 +101,12 @@ public class BenchmarkHashBuildAndJoinOperators
         @Param({"1", "5"})
         protected int buildRowsRepetition = 1;
 
+        @Param({"false", "true"})
+        protected boolean joinBloomFilterEnabled;
+
+        @Param({"false", "true"})
+        protected boolean radixPartitionedJoinEnabled;
+
         protected ExecutorService executor;
         protected ScheduledExecutorService scheduledExecutor;
         protected List<Page> buildPages;
@@ -128,7 +138,11 @@ public class BenchmarkHashBuildAndJoinOperators
 
         public TaskContext createTaskContext()
         {
-            return TestingTaskContext.createTaskContext(executor, scheduledExecutor, TEST_SESSION, new DataSize(2, GIGABYTE));
+            Session session = Session.builder(TEST_SESSION)
+                    .setSystemProperty(JOIN_BLOOM_FILTER_ENABLED, String.valueOf(joinBloomFilterEnabled))
+                    .setSystemProperty(RADIX_PARTITIONED_JOIN_ENABLED, String.valueOf(radixPartitionedJoinEnabled))
+                    .build();
+            return TestingTaskContext.createTaskContext(executor, scheduledExecutor, session, new DataSize(2, GIGABYTE));
         }
 
         public OptionalInt getHashChannel()
@@ -177,7 +191,7 @@ public class BenchmarkHashBuildAndJoinOperators
     {
         protected static final int PROBE_ROWS_NUMBER = 1_400_000;
 
-        @Param({"0.1", "1", "2"})
+        @Param({"0.01", "0.1", "1", "2"})
         protected double matchRate = 1;
 
         @Param({"bigint", "all"})
@@ -187,6 +201,8 @@ public class BenchmarkHashBuildAndJoinOperators
         protected List<Integer> outputChannels;
 
         protected OperatorFactory joinOperatorFactory;
+        protected JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactoryManager;
+        protected JoinProbeFactory joinProbeFactory;
 
         @Override
         @Setup
@@ -209,6 +225,14 @@ public class BenchmarkHashBuildAndJoinOperators
             }
 
             JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactory = getLookupSourceFactoryManager(this, outputChannels);
+            lookupSourceFactoryManager = lookupSourceFactory;
+            joinProbeFactory = new JoinProbeFactory(
+                    Ints.toArray(outputChannels),
+                    hashChannels,
+                    hashChannel,
+                    Optional.of(hashChannels.stream()
+                            .map(types::get)
+                            .collect(toImmutableList())));
             joinOperatorFactory = LOOKUP_JOIN_OPERATORS.innerJoin(
                     HASH_JOIN_OPERATOR_ID,
                     TEST_PLAN_NODE_ID,
@@ -233,6 +257,16 @@ public class BenchmarkHashBuildAndJoinOperators
             return probePages;
         }
 
+        public LookupSourceFactory getLookupSourceFactory()
+        {
+            return lookupSourceFactoryManager.getJoinBridge(Lifespan.taskWide());
+        }
+
+        public JoinProbeFactory getJoinProbeFactory()
+        {
+            return joinProbeFactory;
+        }
+
         protected void initializeProbePages()
         {
             RowPagesBuilder probePagesBuilder = rowPagesBuilder(buildHashEnabled, hashChannels, ImmutableList.of(VARCHAR, BIGINT, BIGINT));
@@ -371,6 +405,53 @@ public class BenchmarkHashBuildAndJoinOperators
         return outputPages.build();
     }
 
+    @Benchmark
+    public long benchmarkJoinProbe(JoinContext joinContext)
+    {
+        try (LookupSourceProvider lookupSourceProvider = getFutureValue(joinContext.getLookupSourceFactory().createLookupSourceProvider())) {
+            return lookupSourceProvider.withLease(lease -> {
+                LookupSource lookupSource = lease.getLookupSource();
+                long matchedPositions = 0;
+                for (Page page : joinContext.getProbePages()) {
+                    JoinProbe probe = joinContext.getJoinProbeFactory().createJoinProbe(page);
+                    while (probe.advanceNextPosition()) {
+                        if (probe.getCurrentJoinPosition(lookupSource) >= 0) {
+                            matchedPositions++;
+                        }
+                    }
+                }
+                return matchedPositions;
+            });
+        }
+    }
+
+    @Test
+    public void testBenchmarkJoinProbe()
+    {
+        JoinContext joinContext = new JoinContext();
+        joinContext.setup();
+        checkState(benchmarkJoinProbe(joinContext) > 0);
+    }
+
+    @Test
+    public void testBenchmarkJoinProbeWithBloomFilter()
+    {
+        JoinContext joinContext = new JoinContext();
+        joinContext.matchRate = 0.01;
+        joinContext.joinBloomFilterEnabled = true;
+        joinContext.setup();
+        checkState(benchmarkJoinProbe(joinContext) > 0);
+    }
+
+    @Test
+    public void testBenchmarkJoinProbeWithRadixPartitionedHash()
+    {
+        JoinContext joinContext = new JoinContext();
+        joinContext.radixPartitionedJoinEnabled = true;
+        joinContext.setup();
+        checkState(benchmarkJoinProbe(joinContext) > 0);
+    }
+
     @Test
     public void testBenchmarkJoinHash()
             throws Exception
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.type.Type;
+import org.testng.annotations.Test;
+
+import static io.airlift.slice.Slices.utf8Slice;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestBloomFilter
+{
+    @Test
+    public void testSize()
+    {
+        assertEquals(BloomFilter.builder(1).build().getSizeInBits(), 64);
+        assertEquals(BloomFilter.builder(1024).build().getSizeInBits(), 8192);
+        assertEquals(BloomFilter.builder(1000).build().getSizeInBits(), 4096);
+    }
+
+    @Test
+    public void testMightContain()
+    {
+        Block values = createLongsBlock(0, 10_000);
+        BloomFilter bloomFilter = createBloomFilter(BIGINT, values, 64 * 1024);
+        for (int position = 0; position < values.getPositionCount(); position++) {
+            assertTrue(bloomFilter.mightContain(BIGINT, values, position));
+        }
+
+        // only a few of the other values should be false positives
+        Block otherValues = createLongsBlock(10_000, 20_000);
+        int falsePositives = 0;
+        for (int position = 0; position < otherValues.getPositionCount(); position++) {
+            if (bloomFilter.mightContain(BIGINT, otherValues, position)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 500, "too many false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testNulls()
+    {
+        BlockBuilder blockBuilder = VARCHAR.createBlockBuilder(null, 2);
+        VARCHAR.writeSlice(blockBuilder, utf8Slice("abc"));
+        blockBuilder.appendNull();
+        Block block = blockBuilder.build();
+
+        BloomFilter bloomFilter = createBloomFilter(VARCHAR, block, 128);
+        assertTrue(bloomFilter.mightContain(VARCHAR, block, 0));
+        assertFalse(bloomFilter.mightContain(VARCHAR, block, 1));
+    }
+
+    @Test
+    public void testUnionAndIntersect()
+    {
+        Block values = createLongsBlock(0, 2000);
+        Block first = values.getRegion(0, 1500);
+        Block second = values.getRegion(500, 1500);
+        BloomFilter firstFilter = createBloomFilter(BIGINT, first, 8 * 1024);
+        BloomFilter secondFilter = createBloomFilter(BIGINT, second, 8 * 1024);
+
+        BloomFilter union = firstFilter.union(secondFilter);
+        for (int position = 0; position < values.getPositionCount(); position++) {
+            assertTrue(union.mightContain(BIGINT, values, position));
+        }
+        assertEquals(union, createBloomFilter(BIGINT, values, 8 * 1024));
+
+        BloomFilter intersection = firstFilter.intersect(secondFilter);
+        for (int position = 500; position < 1500; position++) {
+            assertTrue(intersection.mightContain(BIGINT, values, position));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Mismatched bloom filter sizes: 1024 vs 2048")
+    public void testMismatchedSizes()
+    {
+        BloomFilter.builder(128).build().union(BloomFilter.builder(256).build());
+    }
+
+    private static BloomFilter createBloomFilter(Type type, Block block, long sizeInBytes)
+    {
+        BloomFilter.Builder builder = BloomFilter.builder(sizeInBytes);
+        for (int position = 0; position < block.getPositionCount(); position++) {
+            builder.add(type, block, position);
+        }
+        return builder.build();
+    }
+
+    private static Block createLongsBlock(long start, long end)
+    {
+        BlockBuilder blockBuilder = BIGINT.createBlockBuilder(null, (int) (end - start));
+        for (long value = start; value < end; value++) {
+            BIGINT.writeLong(blockBuilder, value);
+        }
+        return blockBuilder.build();
+    }
+}
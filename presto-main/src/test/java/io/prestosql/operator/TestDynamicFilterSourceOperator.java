@@ -15,9 +15,11 @@ package io.prestosql.operator;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import io.airlift.units.DataSize;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.Range;
 import io.prestosql.spi.predicate.TupleDomain;
 import io.prestosql.spi.predicate.ValueSet;
 import io.prestosql.spi.type.Type;
@@ -29,13 +31,20 @@ import org.testng.annotations.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import static com.google.common.base.Strings.repeat;
 import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.slice.Slices.utf8Slice;
+import static io.airlift.testing.Assertions.assertGreaterThan;
+import static io.airlift.testing.Assertions.assertGreaterThanOrEqual;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
 import static io.prestosql.SequencePageBuilder.createSequencePage;
 import static io.prestosql.SessionTestUtils.TEST_SESSION;
+import static io.prestosql.SystemSessionProperties.getDynamicFilteringBloomFilterSize;
 import static io.prestosql.SystemSessionProperties.getDynamicFilteringMaxPerDriverRowCount;
 import static io.prestosql.SystemSessionProperties.getDynamicFilteringMaxPerDriverSize;
 import static io.prestosql.block.BlockAssertions.createBooleansBlock;
@@ -55,6 +64,7 @@ import static io.prestosql.testing.assertions.Assert.assertEquals;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static java.util.stream.Collectors.toList;
+import static org.testng.Assert.assertTrue;
 
 @Test(singleThreaded = true)
 public class TestDynamicFilterSourceOperator
@@ -64,6 +74,7 @@ public class TestDynamicFilterSourceOperator
     private PipelineContext pipelineContext;
 
     private ImmutableList.Builder<TupleDomain<String>> partitions;
+    private ImmutableList.Builder<Map<String, BloomFilter>> bloomFilters;
 
     @BeforeMethod
     public void setUp()
@@ -74,6 +85,7 @@ public class TestDynamicFilterSourceOperator
                 .addPipelineContext(0, true, true, false);
 
         partitions = ImmutableList.builder();
+        bloomFilters = ImmutableList.builder();
     }
 
     @AfterMethod(alwaysRun = true)
@@ -93,14 +105,21 @@ public class TestDynamicFilterSourceOperator
     }
 
     private OperatorFactory createOperatorFactory(DynamicFilterSourceOperator.Channel... buildChannels)
+    {
+        return createOperatorFactory(getDynamicFilteringBloomFilterSize(TEST_SESSION), buildChannels);
+    }
+
+    private OperatorFactory createOperatorFactory(DataSize bloomFilterSize, DynamicFilterSourceOperator.Channel... buildChannels)
     {
         return new DynamicFilterSourceOperator.DynamicFilterSourceOperatorFactory(
                 0,
                 new PlanNodeId("PLAN_NODE_ID"),
                 this::consumePredicate,
+                this::consumeBloomFilters,
                 Arrays.stream(buildChannels).collect(toList()),
                 getDynamicFilteringMaxPerDriverRowCount(TEST_SESSION),
-                getDynamicFilteringMaxPerDriverSize(TEST_SESSION));
+                getDynamicFilteringMaxPerDriverSize(TEST_SESSION),
+                bloomFilterSize);
     }
 
     private void consumePredicate(TupleDomain<String> partitionPredicate)
@@ -108,6 +127,11 @@ public class TestDynamicFilterSourceOperator
         partitions.add(partitionPredicate);
     }
 
+    private void consumeBloomFilters(Map<String, BloomFilter> partitionBloomFilters)
+    {
+        bloomFilters.add(partitionBloomFilters);
+    }
+
     private Operator createOperator(OperatorFactory operatorFactory)
     {
         return operatorFactory.createOperator(pipelineContext.addDriverContext());
@@ -248,7 +272,58 @@ public class TestDynamicFilterSourceOperator
                 ImmutableList.of(BIGINT),
                 largePage);
         operatorFactory.noMoreOperators();
-        assertEquals(partitions.build(), ImmutableList.of(TupleDomain.all()));
+        assertEquals(partitions.build(), ImmutableList.of(
+                TupleDomain.withColumnDomains(ImmutableMap.of(
+                        "0", Domain.create(ValueSet.ofRanges(Range.range(BIGINT, 0L, true, (long) maxRowCount, true)), false)))));
+
+        List<Map<String, BloomFilter>> partitionBloomFilters = bloomFilters.build();
+        assertEquals(partitionBloomFilters.size(), 1);
+        BloomFilter bloomFilter = partitionBloomFilters.get(0).get("0");
+        Block block = largePage.getBlock(0);
+        for (int position = 0; position < block.getPositionCount(); ++position) {
+            assertTrue(bloomFilter.mightContain(BIGINT, block, position));
+        }
+    }
+
+    @Test
+    public void testMemoryUsage()
+    {
+        final int maxRowCount = getDynamicFilteringMaxPerDriverRowCount(pipelineContext.getSession());
+        DataSize bloomFilterSize = new DataSize(64, KILOBYTE);
+
+        OperatorFactory operatorFactory = createOperatorFactory(bloomFilterSize, channel(0, BIGINT));
+        Operator operator = createOperator(operatorFactory);
+
+        operator.addInput(createSequencePage(ImmutableList.of(BIGINT), 10));
+        assertGreaterThan(operator.getOperatorContext().getOperatorMemoryContext().getUserMemory(), 0L);
+        operator.getOutput();
+
+        // the Bloom filter being built is accounted once the predicate becomes too large
+        operator.addInput(createSequencePage(ImmutableList.of(BIGINT), maxRowCount + 1));
+        assertGreaterThanOrEqual(operator.getOperatorContext().getOperatorMemoryContext().getUserMemory(), bloomFilterSize.toBytes());
+        operator.getOutput();
+
+        operator.finish();
+        assertEquals(operator.getOperatorContext().getOperatorMemoryContext().getUserMemory(), 0L);
+        operator.close();
+        operatorFactory.noMoreOperators();
+    }
+
+    @Test
+    public void testCollectTooMuchRowsWithoutBloomFilter()
+    {
+        final int maxRowCount = getDynamicFilteringMaxPerDriverRowCount(pipelineContext.getSession());
+
+        OperatorFactory operatorFactory = createOperatorFactory(new DataSize(0, BYTE), channel(0, BIGINT), channel(1, BOOLEAN));
+        verifyPassthrough(createOperator(operatorFactory),
+                ImmutableList.of(BIGINT, BOOLEAN),
+                createSequencePage(ImmutableList.of(BIGINT, BOOLEAN), maxRowCount + 1));
+        operatorFactory.noMoreOperators();
+        assertEquals(partitions.build(), ImmutableList.of(
+                TupleDomain.withColumnDomains(ImmutableMap.of(
+                        "0", Domain.create(ValueSet.ofRanges(Range.range(BIGINT, 0L, true, (long) maxRowCount, true)), false),
+                        "1", Domain.create(ValueSet.ofRanges(Range.range(BOOLEAN, false, true, true, true)), false)))));
+        assertEquals(bloomFilters.build(), ImmutableList.of(ImmutableMap.of()));
     }
 
     @Test
@@ -262,7 +337,9 @@ public class TestDynamicFilterSourceOperator
                 ImmutableList.of(VARCHAR),
                 largePage);
         operatorFactory.noMoreOperators();
-        assertEquals(partitions.build(), ImmutableList.of(TupleDomain.all()));
+        assertEquals(partitions.build(), ImmutableList.of(
+                TupleDomain.withColumnDomains(ImmutableMap.of(
+                        "0", Domain.create(ValueSet.ofRanges(Range.equal(VARCHAR, utf8Slice(repeat("A", (int) maxByteSize + 1)))), false)))));
     }
 
     @Test
@@ -278,7 +355,10 @@ public class TestDynamicFilterSourceOperator
                 ImmutableList.of(VARCHAR, VARCHAR),
                 largePage);
         operatorFactory.noMoreOperators();
-        assertEquals(partitions.build(), ImmutableList.of(TupleDomain.all()));
+        assertEquals(partitions.build(), ImmutableList.of(
+                TupleDomain.withColumnDomains(ImmutableMap.of(
+                        "0", Domain.create(ValueSet.ofRanges(Range.equal(VARCHAR, utf8Slice(repeat("A", (int) (maxByteSize / 2) + 1)))), false),
+                        "1", Domain.create(ValueSet.ofRanges(Range.equal(VARCHAR, utf8Slice(repeat("B", (int) (maxByteSize / 2) + 1)))), false)))));
     }
 
     @Test
@@ -44,6 +44,9 @@ import static io.prestosql.operator.GroupByHash.createGroupByHash;
 import static io.prestosql.spi.block.DictionaryId.randomDictionaryId;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static io.prestosql.spi.type.IntegerType.INTEGER;
+import static io.prestosql.spi.type.SmallintType.SMALLINT;
+import static io.prestosql.spi.type.TinyintType.TINYINT;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
 import static io.prestosql.type.TypeUtils.getHashBlock;
 import static org.testng.Assert.assertEquals;
@@ -231,6 +234,111 @@ public class TestGroupByHash
         assertTrue(groupByHash.contains(0, new Page(testValuesBlock, testStringValuesBlock, testHashBlock), hashChannels));
     }
 
+    @Test
+    public void testDirectGroupByHash()
+    {
+        // values on both sides of the range go to the overflow map
+        List<Integer> values = new ArrayList<>();
+        for (int i = -20; i < 120; i++) {
+            values.add(i);
+        }
+        values.add(null);
+        Block valuesBlock = BlockAssertions.createIntsBlock(values);
+        Block hashBlock = TypeUtils.getHashBlock(ImmutableList.of(INTEGER), valuesBlock);
+        Page page = new Page(valuesBlock, hashBlock);
+
+        GroupByHash groupByHash = createGroupByHash(ImmutableList.of(INTEGER), new int[] {0}, Optional.of(1), 100, true, JOIN_COMPILER, UpdateMemory.NOOP, Optional.of(new GroupByKeyRange(0, 99)));
+        assertTrue(groupByHash instanceof DirectGroupByHash);
+        assertEquals(groupByHash.getCapacity(), 100);
+
+        for (int tries = 0; tries < 2; tries++) {
+            Work<GroupByIdBlock> work = groupByHash.getGroupIds(page);
+            assertTrue(work.process());
+            GroupByIdBlock groupIds = work.getResult();
+            assertEquals(groupIds.getGroupCount(), values.size());
+            for (int position = 0; position < values.size(); position++) {
+                assertEquals(groupIds.getGroupId(position), position);
+                assertEquals(groupByHash.getRawHash(position), BIGINT.getLong(hashBlock, position));
+            }
+        }
+        assertEquals(groupByHash.getGroupCount(), values.size());
+
+        PageBuilder pageBuilder = new PageBuilder(groupByHash.getTypes());
+        for (int i = 0; i < groupByHash.getGroupCount(); i++) {
+            pageBuilder.declarePosition();
+            groupByHash.appendValuesTo(i, pageBuilder, 0);
+        }
+        Page outputPage = pageBuilder.build();
+        BlockAssertions.assertBlockEquals(INTEGER, outputPage.getBlock(0), valuesBlock);
+        BlockAssertions.assertBlockEquals(BIGINT, outputPage.getBlock(1), hashBlock);
+
+        assertTrue(groupByHash.contains(0, new Page(BlockAssertions.createIntsBlock(50)), CONTAINS_CHANNELS));
+        assertTrue(groupByHash.contains(0, new Page(BlockAssertions.createIntsBlock(-10)), CONTAINS_CHANNELS));
+        assertTrue(groupByHash.contains(0, new Page(BlockAssertions.createIntsBlock((Integer) null)), CONTAINS_CHANNELS));
+        assertFalse(groupByHash.contains(0, new Page(BlockAssertions.createIntsBlock(500)), CONTAINS_CHANNELS));
+    }
+
+    @Test
+    public void testDirectGroupByHashWithoutHashChannel()
+    {
+        Block valuesBlock = BlockAssertions.createLongsBlock(3L, 1L, 3L, 2L, 1L);
+        GroupByHash groupByHash = createGroupByHash(ImmutableList.of(BIGINT), new int[] {0}, Optional.empty(), 100, true, JOIN_COMPILER, UpdateMemory.NOOP, Optional.of(new GroupByKeyRange(1, 3)));
+        assertEquals(groupByHash.getTypes(), ImmutableList.of(BIGINT));
+
+        Work<GroupByIdBlock> work = groupByHash.getGroupIds(new Page(valuesBlock));
+        assertTrue(work.process());
+        GroupByIdBlock groupIds = work.getResult();
+        assertEquals(groupIds.getGroupId(0), 0);
+        assertEquals(groupIds.getGroupId(1), 1);
+        assertEquals(groupIds.getGroupId(2), 0);
+        assertEquals(groupIds.getGroupId(3), 2);
+        assertEquals(groupIds.getGroupId(4), 1);
+        assertEquals(groupByHash.getGroupCount(), 3);
+
+        // the raw hash matches the one of the hash generator used when the hash is not precomputed
+        InterpretedHashGenerator hashGenerator = new InterpretedHashGenerator(ImmutableList.of(BIGINT), new int[] {0});
+        assertEquals(groupByHash.getRawHash(2), hashGenerator.hashPosition(3, new Page(valuesBlock)));
+    }
+
+    @Test
+    public void testGroupByKeyRange()
+    {
+        assertEquals(GroupByKeyRange.fromType(TINYINT), Optional.of(new GroupByKeyRange(Byte.MIN_VALUE, Byte.MAX_VALUE)));
+        assertEquals(GroupByKeyRange.fromType(SMALLINT), Optional.of(new GroupByKeyRange(Short.MIN_VALUE, Short.MAX_VALUE)));
+        assertEquals(GroupByKeyRange.fromType(INTEGER), Optional.empty());
+
+        assertEquals(GroupByKeyRange.fromStatistics(BIGINT, 10.5, 20.5), Optional.of(new GroupByKeyRange(10, 21)));
+        assertEquals(GroupByKeyRange.fromStatistics(BIGINT, 0, GroupByKeyRange.MAX_RANGE_SIZE), Optional.empty());
+        assertEquals(GroupByKeyRange.fromStatistics(BIGINT, Double.NEGATIVE_INFINITY, 10), Optional.empty());
+        assertEquals(GroupByKeyRange.fromStatistics(INTEGER, Double.NaN, Double.NaN), Optional.empty());
+        assertEquals(GroupByKeyRange.fromStatistics(DOUBLE, 0, 10), Optional.empty());
+
+        // the key range is only used for the supported types
+        GroupByHash groupByHash = createGroupByHash(ImmutableList.of(VARCHAR), new int[] {0}, Optional.empty(), 100, true, JOIN_COMPILER, UpdateMemory.NOOP, Optional.of(new GroupByKeyRange(0, 10)));
+        assertTrue(groupByHash instanceof MultiChannelGroupByHash);
+    }
+
+    @Test
+    public void testHashPositions()
+    {
+        Block longsBlock = BlockAssertions.createLongsBlock(1L, null, 3L, 4L, null, 6L);
+        Block stringsBlock = BlockAssertions.createStringsBlock("a", "b", null, "d", null, "f");
+        Block hashBlock = TypeUtils.getHashBlock(ImmutableList.of(BIGINT, VARCHAR), longsBlock, stringsBlock);
+        Page page = new Page(longsBlock, stringsBlock, hashBlock);
+
+        List<HashGenerator> hashGenerators = ImmutableList.of(
+                new InterpretedHashGenerator(ImmutableList.of(BIGINT, VARCHAR), new int[] {0, 1}),
+                new InterpretedHashGenerator(ImmutableList.of(VARCHAR), new int[] {1}),
+                new PrecomputedHashGenerator(2));
+        for (HashGenerator hashGenerator : hashGenerators) {
+            long[] hashes = new long[4];
+            hashGenerator.hashPositions(page, 2, 4, hashes);
+            for (int i = 0; i < hashes.length; i++) {
+                assertEquals(hashes[i], hashGenerator.hashPosition(i + 2, page));
+            }
+        }
+    }
+
     @Test
     public void testForceRehash()
     {
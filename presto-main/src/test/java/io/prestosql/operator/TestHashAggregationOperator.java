@@ -24,13 +24,19 @@ import io.prestosql.RowPagesBuilder;
 import io.prestosql.memory.context.AggregatedMemoryContext;
 import io.prestosql.metadata.Metadata;
 import io.prestosql.operator.HashAggregationOperator.HashAggregationOperatorFactory;
+import io.prestosql.operator.aggregation.AccumulatorFactory;
 import io.prestosql.operator.aggregation.InternalAggregationFunction;
+import io.prestosql.operator.aggregation.builder.FlatAccumulator;
+import io.prestosql.operator.aggregation.builder.FlatAccumulatorCompiler;
+import io.prestosql.operator.aggregation.builder.FlatAggregation;
+import io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder;
 import io.prestosql.operator.aggregation.builder.HashAggregationBuilder;
 import io.prestosql.operator.aggregation.builder.InMemoryHashAggregationBuilder;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.block.PageBuilderStatus;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.GenericPartitioningSpillerFactory;
 import io.prestosql.spiller.Spiller;
 import io.prestosql.spiller.SpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
@@ -78,6 +84,7 @@ import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.BooleanType.BOOLEAN;
 import static io.prestosql.spi.type.DoubleType.DOUBLE;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static io.prestosql.spiller.PartitioningSpillerFactory.unsupportedPartitioningSpillerFactory;
 import static io.prestosql.sql.analyzer.TypeSignatureProvider.fromTypes;
 import static io.prestosql.testing.MaterializedResult.resultBuilder;
 import static io.prestosql.testing.TestingTaskContext.createTaskContext;
@@ -87,6 +94,7 @@ import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -103,6 +111,8 @@ public class TestHashAggregationOperator
             metadata.resolveFunction(QualifiedName.of("count"), ImmutableList.of()));
     private static final InternalAggregationFunction LONG_MIN = metadata.getAggregateFunctionImplementation(
             metadata.resolveFunction(QualifiedName.of("min"), fromTypes(BIGINT)));
+    private static final InternalAggregationFunction DOUBLE_MAX = metadata.getAggregateFunctionImplementation(
+            metadata.resolveFunction(QualifiedName.of("max"), fromTypes(DOUBLE)));
 
     private static final int MAX_BLOCK_SIZE_IN_BYTES = 64 * 1024;
 
@@ -140,6 +150,34 @@ public class TestHashAggregationOperator
                 {false, true, false, 8, Integer.MAX_VALUE}};
     }
 
+    @DataProvider
+    public static Object[][] partitionedSpillValues()
+    {
+        return new Object[][] {
+                {true, true, 0},
+                {true, false, 0},
+                {false, true, 0},
+                {false, false, 0},
+                {true, true, 64 * 1024},
+                {false, false, 64 * 1024}};
+    }
+
+    @DataProvider(name = "fused")
+    public static Object[][] fused()
+    {
+        return new Object[][] {{true}, {false}};
+    }
+
+    @DataProvider
+    public static Object[][] flatHashAggregationValues()
+    {
+        return new Object[][] {
+                {true, false},
+                {false, false},
+                {true, true},
+                {false, true}};
+    }
+
     @DataProvider
     public Object[][] dataType()
     {
@@ -214,6 +252,73 @@ public class TestHashAggregationOperator
         assertTrue(spillEnabled == (spillerFactory.getSpillsCount() > 0), format("Spill state mismatch. Expected spill: %s, spill count: %s", spillEnabled, spillerFactory.getSpillsCount()));
     }
 
+    @Test(dataProvider = "partitionedSpillValues")
+    public void testHashAggregationWithPartitionedSpill(boolean hashEnabled, boolean revokeMemoryWhenAddingPages, long memoryLimitForMerge)
+    {
+        testHashAggregationWithPartitionedSpill(hashEnabled, revokeMemoryWhenAddingPages, memoryLimitForMerge, new DummySingleStreamSpillerFactory());
+    }
+
+    @Test(dataProvider = "partitionedSpillValues")
+    public void testHashAggregationWithAsynchronousPartitionedSpill(boolean hashEnabled, boolean revokeMemoryWhenAddingPages, long memoryLimitForMerge)
+    {
+        // the operator is blocked while the partitions are spilled when finishing and while spilled partitions are split
+        testHashAggregationWithPartitionedSpill(hashEnabled, revokeMemoryWhenAddingPages, memoryLimitForMerge, new DummySingleStreamSpillerFactory(executor));
+    }
+
+    private void testHashAggregationWithPartitionedSpill(boolean hashEnabled, boolean revokeMemoryWhenAddingPages, long memoryLimitForMerge, DummySingleStreamSpillerFactory singleStreamSpillerFactory)
+    {
+        // make operator produce multiple pages during finish phase
+        int numberOfRows = 40_000;
+        List<Integer> hashChannels = Ints.asList(1);
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(hashEnabled, hashChannels, VARCHAR, VARCHAR, BIGINT);
+        List<Page> input = rowPagesBuilder
+                .addSequencePage(numberOfRows, 100, 0, 100_000)
+                .addSequencePage(numberOfRows, 100, 0, 200_000)
+                .addSequencePage(numberOfRows, 100, 0, 300_000)
+                .build();
+
+        HashAggregationOperatorFactory operatorFactory = new HashAggregationOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                ImmutableList.of(VARCHAR),
+                hashChannels,
+                ImmutableList.of(),
+                Step.SINGLE,
+                false,
+                ImmutableList.of(COUNT.bind(ImmutableList.of(0), Optional.empty()),
+                        LONG_SUM.bind(ImmutableList.of(2), Optional.empty()),
+                        LONG_MIN.bind(ImmutableList.of(2), Optional.empty())),
+                rowPagesBuilder.getHashChannel(),
+                Optional.empty(),
+                100_000,
+                Optional.of(new DataSize(16, MEGABYTE)),
+                true,
+                succinctBytes(memoryLimitForMerge),
+                succinctBytes(memoryLimitForMerge),
+                spillerFactory,
+                true,
+                new GenericPartitioningSpillerFactory(singleStreamSpillerFactory),
+                joinCompiler,
+                false,
+                Optional.empty());
+
+        // revocable memory cannot be converted to user memory in the small memory pool, so the remaining groups are spilled when finishing
+        DriverContext driverContext = createDriverContext(8);
+
+        MaterializedResult.Builder expectedBuilder = resultBuilder(driverContext.getSession(), VARCHAR, BIGINT, BIGINT, BIGINT);
+        for (int i = 0; i < numberOfRows; ++i) {
+            expectedBuilder.row(Integer.toString(i), 3L, 600_000L + 3L * i, 100_000L + i);
+        }
+        MaterializedResult expected = expectedBuilder.build();
+
+        List<Page> pages = toPages(operatorFactory, driverContext, input, revokeMemoryWhenAddingPages);
+        assertPagesEqualIgnoreOrder(driverContext, pages, expected, hashEnabled, Optional.of(hashChannels.size()));
+
+        assertGreaterThan(singleStreamSpillerFactory.getSpillsCount(), 0L);
+        // groups are not spilled as sorted runs
+        assertEquals(spillerFactory.getSpillsCount(), 0);
+    }
+
     @Test(dataProvider = "hashEnabledAndMemoryLimitForMergeValues")
     public void testHashAggregationWithGlobals(boolean hashEnabled, boolean spillEnabled, boolean revokeMemoryWhenAddingPages, long memoryLimitForMerge, long memoryLimitForMergeWithMemory)
     {
@@ -579,6 +684,195 @@ public class TestHashAggregationOperator
         assertEquals(driverContext.getMemoryUsage(), 0);
     }
 
+    @Test(dataProvider = "hashEnabled")
+    public void testAdaptivePartialAggregation(boolean hashEnabled)
+    {
+        List<Integer> hashChannels = Ints.asList(0);
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(hashEnabled, hashChannels, BIGINT);
+        List<Page> input = rowPagesBuilder
+                .addSequencePage(500, 0)
+                .addSequencePage(500, 500)
+                .addSequencePage(500, 1000)
+                .addSequencePage(500, 1500)
+                .build();
+
+        PartialAggregationController partialAggregationController = new PartialAggregationController(0, 0.5);
+        HashAggregationOperatorFactory operatorFactory = new HashAggregationOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                ImmutableList.of(BIGINT),
+                hashChannels,
+                ImmutableList.of(),
+                Step.PARTIAL,
+                false,
+                ImmutableList.of(LONG_SUM.bind(ImmutableList.of(0), Optional.empty())),
+                rowPagesBuilder.getHashChannel(),
+                Optional.empty(),
+                100_000,
+                Optional.of(new DataSize(1, KILOBYTE)),
+                false,
+                succinctBytes(0),
+                succinctBytes(0),
+                spillerFactory,
+                joinCompiler,
+                true,
+                Optional.of(partialAggregationController));
+
+        DriverContext driverContext = createDriverContext(1024);
+        try (Operator operator = operatorFactory.createOperator(driverContext)) {
+            List<Page> outputPages = toPages(operator, input.iterator());
+
+            // every group is unique, so the first flush disables the aggregation and the remaining rows are passed through
+            assertTrue(partialAggregationController.isPartialAggregationDisabled());
+            HashAggregationInfo info = (HashAggregationInfo) operator.getOperatorContext().getOperatorStats().getInfo();
+            assertTrue(info.isPartialAggregationDisabled());
+            assertGreaterThan(info.getPassThroughPositions(), 0L);
+
+            if (hashEnabled) {
+                outputPages = dropChannel(outputPages, ImmutableList.of(1));
+            }
+            MaterializedResult expected = resultBuilder(driverContext.getSession(), BIGINT, BIGINT)
+                    .pages(rowPagesBuilder(BIGINT, BIGINT).addSequencePage(2000, 0, 0).build())
+                    .build();
+            MaterializedResult actual = toMaterializedResult(driverContext.getSession(), expected.getTypes(), outputPages);
+            assertEqualsIgnoreOrder(actual.getMaterializedRows(), expected.getMaterializedRows());
+        }
+    }
+
+    @Test(dataProvider = "flatHashAggregationValues")
+    public void testFlatHashAggregation(boolean hashEnabled, boolean fused)
+    {
+        int numberOfRows = 40_000;
+        List<Integer> hashChannels = Ints.asList(0);
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(hashEnabled, hashChannels, BIGINT, BIGINT, DOUBLE);
+        List<Page> input = rowPagesBuilder
+                .addSequencePage(numberOfRows, 0, 100_000, 0)
+                .addSequencePage(numberOfRows, 0, 200_000, 0)
+                .addSequencePage(numberOfRows, 0, 300_000, 0)
+                .build();
+
+        HashAggregationOperatorFactory operatorFactory = createFlatHashAggregationOperatorFactory(
+                Step.SINGLE,
+                rowPagesBuilder.getHashChannel(),
+                ImmutableList.of(COUNT, LONG_SUM, LONG_MIN, DOUBLE_MAX, LONG_AVERAGE),
+                ImmutableList.of(ImmutableList.of(), ImmutableList.of(1), ImmutableList.of(1), ImmutableList.of(2), ImmutableList.of(1)),
+                fused);
+
+        DriverContext driverContext = createDriverContext();
+        try (Operator operator = operatorFactory.createOperator(driverContext)) {
+            operator.addInput(input.get(0));
+            assertThat(((HashAggregationOperator) operator).getAggregationBuilder()).isInstanceOf(FlatHashAggregationBuilder.class);
+        }
+
+        driverContext = createDriverContext();
+        MaterializedResult.Builder expectedBuilder = resultBuilder(driverContext.getSession(), BIGINT, BIGINT, BIGINT, BIGINT, DOUBLE, DOUBLE);
+        for (int i = 0; i < numberOfRows; ++i) {
+            expectedBuilder.row((long) i, 3L, 600_000L + 3L * i, 100_000L + i, (double) i, 200_000.0 + i);
+        }
+        List<Page> pages = toPages(operatorFactory, driverContext, input);
+        assertPagesEqualIgnoreOrder(driverContext, pages, expectedBuilder.build(), hashEnabled, Optional.of(hashChannels.size()));
+    }
+
+    @Test(dataProvider = "fused")
+    public void testFlatHashAggregationPartialAndFinal(boolean fused)
+    {
+        int numberOfRows = 1000;
+        List<Page> input = rowPagesBuilder(BIGINT, BIGINT)
+                .addSequencePage(numberOfRows, 0, 100_000)
+                .addSequencePage(numberOfRows, 0, 200_000)
+                .addSequencePage(numberOfRows, 0, 300_000)
+                .build();
+
+        List<Page> partialPages = toPages(
+                createFlatHashAggregationOperatorFactory(
+                        Step.PARTIAL,
+                        Optional.empty(),
+                        ImmutableList.of(COUNT, LONG_MIN),
+                        ImmutableList.of(ImmutableList.of(), ImmutableList.of(1)),
+                        fused),
+                createDriverContext(),
+                input);
+
+        DriverContext driverContext = createDriverContext();
+        List<Page> finalPages = toPages(
+                createFlatHashAggregationOperatorFactory(
+                        Step.FINAL,
+                        Optional.empty(),
+                        ImmutableList.of(COUNT, LONG_MIN),
+                        ImmutableList.of(ImmutableList.of(1), ImmutableList.of(2)),
+                        fused),
+                driverContext,
+                partialPages);
+
+        MaterializedResult.Builder expectedBuilder = resultBuilder(driverContext.getSession(), BIGINT, BIGINT, BIGINT);
+        for (int i = 0; i < numberOfRows; ++i) {
+            expectedBuilder.row((long) i, 3L, 100_000L + i);
+        }
+        assertPagesEqualIgnoreOrder(driverContext, finalPages, expectedBuilder.build(), false, Optional.empty());
+    }
+
+    @Test
+    public void testFlatAggregationSupport()
+    {
+        assertTrue(FlatAggregation.create(COUNT, ImmutableList.of(), Step.PARTIAL).isPresent());
+        assertTrue(FlatAggregation.create(LONG_MIN, ImmutableList.of(0), Step.FINAL).isPresent());
+        assertTrue(FlatAggregation.create(LONG_AVERAGE, ImmutableList.of(0), Step.SINGLE).isPresent());
+        // the intermediate states of avg and of sum of bigint are not the flat states
+        assertFalse(FlatAggregation.create(LONG_AVERAGE, ImmutableList.of(0), Step.PARTIAL).isPresent());
+        assertFalse(FlatAggregation.create(LONG_SUM, ImmutableList.of(0), Step.FINAL).isPresent());
+
+        InternalAggregationFunction maxVarcharColumn = metadata.getAggregateFunctionImplementation(
+                metadata.resolveFunction(QualifiedName.of("max"), fromTypes(VARCHAR)));
+        assertFalse(FlatAggregation.create(maxVarcharColumn, ImmutableList.of(0), Step.SINGLE).isPresent());
+
+        assertTrue(FlatHashAggregationBuilder.isSupported(ImmutableList.of(BIGINT, BIGINT), 2));
+        assertFalse(FlatHashAggregationBuilder.isSupported(ImmutableList.of(VARCHAR), 2));
+    }
+
+    private HashAggregationOperatorFactory createFlatHashAggregationOperatorFactory(
+            Step step,
+            Optional<Integer> hashChannel,
+            List<InternalAggregationFunction> functions,
+            List<List<Integer>> inputChannels,
+            boolean fused)
+    {
+        ImmutableList.Builder<AccumulatorFactory> accumulatorFactories = ImmutableList.builder();
+        ImmutableList.Builder<FlatAggregation> flatAggregationsBuilder = ImmutableList.builder();
+        for (int i = 0; i < functions.size(); i++) {
+            accumulatorFactories.add(functions.get(i).bind(inputChannels.get(i), Optional.empty()));
+            flatAggregationsBuilder.add(FlatAggregation.create(functions.get(i), inputChannels.get(i), step).get());
+        }
+        List<FlatAggregation> flatAggregations = flatAggregationsBuilder.build();
+        Optional<FlatAccumulator> flatAccumulator = Optional.empty();
+        if (fused) {
+            flatAccumulator = Optional.of(new FlatAccumulatorCompiler().compileFlatAccumulator(1, flatAggregations, step));
+        }
+        return new HashAggregationOperatorFactory(
+                0,
+                new PlanNodeId("test"),
+                ImmutableList.of(BIGINT),
+                Ints.asList(0),
+                ImmutableList.of(),
+                step,
+                false,
+                accumulatorFactories.build(),
+                hashChannel,
+                Optional.empty(),
+                100_000,
+                Optional.of(new DataSize(16, MEGABYTE)),
+                false,
+                succinctBytes(0),
+                spillerFactory,
+                false,
+                unsupportedPartitioningSpillerFactory(),
+                joinCompiler,
+                false,
+                Optional.empty(),
+                Optional.of(flatAggregations),
+                flatAccumulator,
+                Optional.empty());
+    }
+
     @Test
     public void testMergeWithMemorySpill()
     {
@@ -22,6 +22,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.units.DataSize;
 import io.prestosql.ExceededMemoryLimitException;
 import io.prestosql.RowPagesBuilder;
+import io.prestosql.Session;
 import io.prestosql.execution.Lifespan;
 import io.prestosql.execution.TaskId;
 import io.prestosql.execution.TaskStateMachine;
@@ -81,6 +82,9 @@ import static io.airlift.testing.Assertions.assertEqualsIgnoreOrder;
 import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.prestosql.RowPagesBuilder.rowPagesBuilder;
 import static io.prestosql.SessionTestUtils.TEST_SESSION;
+import static io.prestosql.SystemSessionProperties.JOIN_BLOOM_FILTER_ENABLED;
+import static io.prestosql.SystemSessionProperties.JOIN_HASH_OFF_HEAP_ENABLED;
+import static io.prestosql.SystemSessionProperties.RADIX_PARTITIONED_JOIN_ENABLED;
 import static io.prestosql.operator.OperatorAssertion.assertOperatorEquals;
 import static io.prestosql.operator.OperatorAssertion.dropChannel;
 import static io.prestosql.operator.OperatorAssertion.without;
@@ -198,6 +202,98 @@ public class TestHashJoinOperator
         assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected, true, getHashChannels(probePages, buildPages));
     }
 
+    @Test
+    public void testInnerJoinWithOffHeapHash()
+    {
+        assertInnerJoinWithRepeatedKeys(Session.builder(TEST_SESSION)
+                .setSystemProperty(JOIN_HASH_OFF_HEAP_ENABLED, "true")
+                .build());
+    }
+
+    @Test
+    public void testInnerJoinWithBloomFilter()
+    {
+        // most of the probe rows have no match, so they are rejected by the filter
+        assertInnerJoinWithRepeatedKeys(Session.builder(TEST_SESSION)
+                .setSystemProperty(JOIN_BLOOM_FILTER_ENABLED, "true")
+                .build());
+    }
+
+    @Test
+    public void testInnerJoinWithRadixPartitionedHash()
+    {
+        TaskContext taskContext = TestingTaskContext.createTaskContext(executor, scheduledExecutor, Session.builder(TEST_SESSION)
+                .setSystemProperty(RADIX_PARTITIONED_JOIN_ENABLED, "true")
+                .build());
+
+        // build factory, large enough to be split into several partitions, with every key present twice
+        int entries = 50_000;
+        RowPagesBuilder buildPages = rowPagesBuilder(true, Ints.asList(0), ImmutableList.of(BIGINT))
+                .addSequencePage(entries, 0)
+                .addSequencePage(entries, 0);
+        BuildSideSetup buildSideSetup = setupBuildSide(false, taskContext, Ints.asList(0), buildPages, Optional.empty(), false, SINGLE_STREAM_SPILLER_FACTORY);
+        JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactory = buildSideSetup.getLookupSourceFactoryManager();
+
+        // probe factory, with half of the rows matching the build side
+        RowPagesBuilder probePages = rowPagesBuilder(true, Ints.asList(0), ImmutableList.of(BIGINT));
+        List<Page> probeInput = probePages
+                .addSequencePage(10_000, entries - 5_000)
+                .build();
+        OperatorFactory joinOperatorFactory = innerJoinOperatorFactory(lookupSourceFactory, probePages, PARTITIONING_SPILLER_FACTORY);
+
+        // build drivers and operators
+        instantiateBuildDrivers(buildSideSetup, taskContext);
+        buildLookupSource(buildSideSetup);
+
+        // expected
+        MaterializedResult.Builder expected = MaterializedResult.resultBuilder(taskContext.getSession(), concat(probePages.getTypesWithoutHash(), buildPages.getTypesWithoutHash()));
+        for (long key = entries - 5_000; key < entries; key++) {
+            expected.row(key, key);
+            expected.row(key, key);
+        }
+
+        assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected.build(), true, getHashChannels(probePages, buildPages));
+    }
+
+    private void assertInnerJoinWithRepeatedKeys(Session session)
+    {
+        TaskContext taskContext = TestingTaskContext.createTaskContext(executor, scheduledExecutor, session);
+
+        // build factory, with every key present twice to exercise the position links
+        RowPagesBuilder buildPages = rowPagesBuilder(false, Ints.asList(0), ImmutableList.of(VARCHAR, BIGINT))
+                .addSequencePage(5, 20, 30)
+                .addSequencePage(5, 20, 30);
+        BuildSideSetup buildSideSetup = setupBuildSide(false, taskContext, Ints.asList(0), buildPages, Optional.empty(), false, SINGLE_STREAM_SPILLER_FACTORY);
+        JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactory = buildSideSetup.getLookupSourceFactoryManager();
+
+        // probe factory
+        RowPagesBuilder probePages = rowPagesBuilder(false, Ints.asList(0), ImmutableList.of(VARCHAR, BIGINT));
+        List<Page> probeInput = probePages
+                .addSequencePage(100, 0, 1000)
+                .build();
+        OperatorFactory joinOperatorFactory = innerJoinOperatorFactory(lookupSourceFactory, probePages, PARTITIONING_SPILLER_FACTORY);
+
+        // build drivers and operators
+        instantiateBuildDrivers(buildSideSetup, taskContext);
+        buildLookupSource(buildSideSetup);
+
+        // expected
+        MaterializedResult expected = MaterializedResult.resultBuilder(taskContext.getSession(), concat(probePages.getTypesWithoutHash(), buildPages.getTypesWithoutHash()))
+                .row("20", 1020L, "20", 30L)
+                .row("20", 1020L, "20", 30L)
+                .row("21", 1021L, "21", 31L)
+                .row("21", 1021L, "21", 31L)
+                .row("22", 1022L, "22", 32L)
+                .row("22", 1022L, "22", 32L)
+                .row("23", 1023L, "23", 33L)
+                .row("23", 1023L, "23", 33L)
+                .row("24", 1024L, "24", 34L)
+                .row("24", 1024L, "24", 34L)
+                .build();
+
+        assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected, true, getHashChannels(probePages, buildPages));
+    }
+
     @Test
     public void testYield()
     {
@@ -364,8 +460,21 @@ public class TestHashJoinOperator
         }
     }
 
+    @Test(dataProvider = "joinWithSpillValues")
+    public void testLookupOuterJoinWithSpill(boolean probeHashEnabled, List<WhenSpill> whenSpill, boolean isDictionaryProcessingJoinEnabled)
+            throws Exception
+    {
+        joinWithSpill(probeHashEnabled, whenSpill, true, SINGLE_STREAM_SPILLER_FACTORY, PARTITIONING_SPILLER_FACTORY);
+    }
+
     private void innerJoinWithSpill(boolean probeHashEnabled, List<WhenSpill> whenSpill, SingleStreamSpillerFactory buildSpillerFactory, PartitioningSpillerFactory joinSpillerFactory)
             throws Exception
+    {
+        joinWithSpill(probeHashEnabled, whenSpill, false, buildSpillerFactory, joinSpillerFactory);
+    }
+
+    private void joinWithSpill(boolean probeHashEnabled, List<WhenSpill> whenSpill, boolean buildOuter, SingleStreamSpillerFactory buildSpillerFactory, PartitioningSpillerFactory joinSpillerFactory)
+            throws Exception
     {
         TaskStateMachine taskStateMachine = new TaskStateMachine(new TaskId("query", 0, 0), executor);
         TaskContext taskContext = TestingTaskContext.createTaskContext(executor, scheduledExecutor, TEST_SESSION, taskStateMachine);
@@ -388,7 +497,7 @@ public class TestHashJoinOperator
                 .addSequencePage(4, 30, 300)
                 .addSequencePage(4, 40, 400);
 
-        BuildSideSetup buildSideSetup = setupBuildSide(true, taskContext, Ints.asList(0), buildPages, Optional.of(filterFunction), true, buildSpillerFactory);
+        BuildSideSetup buildSideSetup = setupBuildSide(true, taskContext, Ints.asList(0), buildPages, Optional.of(filterFunction), true, buildOuter, buildSpillerFactory);
         JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactoryManager = buildSideSetup.getLookupSourceFactoryManager();
 
         // probe factory
@@ -398,7 +507,9 @@ public class TestHashJoinOperator
                 .pageBreak()
                 .addSequencePage(20, 0, 123_000)
                 .addSequencePage(10, 30, 123_000);
-        OperatorFactory joinOperatorFactory = innerJoinOperatorFactory(lookupSourceFactoryManager, probePages, joinSpillerFactory);
+        OperatorFactory joinOperatorFactory = buildOuter
+                ? lookupOuterJoinOperatorFactory(lookupSourceFactoryManager, probePages, joinSpillerFactory)
+                : innerJoinOperatorFactory(lookupSourceFactoryManager, probePages, joinSpillerFactory);
 
         // build drivers and operators
         instantiateBuildDrivers(buildSideSetup, taskContext);
@@ -408,6 +519,8 @@ public class TestHashJoinOperator
         LookupSourceFactory lookupSourceFactory = lookupSourceFactoryManager.getJoinBridge(Lifespan.taskWide());
 
         try (Operator joinOperator = joinOperatorFactory.createOperator(joinDriverContext)) {
+            joinOperatorFactory.noMoreOperators();
+
             // build lookup source
             ListenableFuture<LookupSourceProvider> lookupSourceProvider = lookupSourceFactory.createLookupSourceProvider();
             List<Boolean> revoked = new ArrayList<>(nCopies(buildOperatorCount, false));
@@ -464,7 +577,7 @@ public class TestHashJoinOperator
 
             List<Page> actualPages = getPages(pageBuffer);
 
-            MaterializedResult expected = MaterializedResult.resultBuilder(taskContext.getSession(), concat(probePages.getTypesWithoutHash(), buildPages.getTypesWithoutHash()))
+            MaterializedResult.Builder expected = MaterializedResult.resultBuilder(taskContext.getSession(), concat(probePages.getTypesWithoutHash(), buildPages.getTypesWithoutHash()))
                     .row("20", 123_000L, "20", 200L)
                     .row("20", 123_000L, "20", 200L)
                     .row("20", 123_000L, "20", 200L)
@@ -472,14 +585,52 @@ public class TestHashJoinOperator
                     .row("30", 123_000L, "30", 300L)
                     .row("31", 123_001L, "31", 301L)
                     .row("32", 123_002L, "32", 302L)
-                    .row("33", 123_003L, "33", 303L)
-                    .build();
+                    .row("33", 123_003L, "33", 303L);
+
+            if (buildOuter) {
+                // outer positions are available once all probe operators are closed
+                joinOperator.close();
+                actualPages.addAll(getOuterPages(joinOperatorFactory, taskContext, taskStateMachine));
+
+                expected.row(null, null, "21", 201L)
+                        .row(null, null, "21", 201L)
+                        .row(null, null, "22", 202L)
+                        .row(null, null, "22", 202L)
+                        .row(null, null, "23", 203L)
+                        .row(null, null, "23", 203L)
+                        .row(null, null, "40", 400L)
+                        .row(null, null, "41", 401L)
+                        .row(null, null, "42", 402L)
+                        .row(null, null, "43", 403L);
+            }
 
-            assertEqualsIgnoreOrder(getProperColumns(joinOperator, concat(probePages.getTypes(), buildPages.getTypes()), probePages, actualPages).getMaterializedRows(), expected.getMaterializedRows());
+            assertEqualsIgnoreOrder(getProperColumns(joinOperator, concat(probePages.getTypes(), buildPages.getTypes()), probePages, actualPages).getMaterializedRows(), expected.build().getMaterializedRows());
         }
-        finally {
-            joinOperatorFactory.noMoreOperators();
+    }
+
+    private static List<Page> getOuterPages(OperatorFactory joinOperatorFactory, TaskContext taskContext, TaskStateMachine taskStateMachine)
+            throws Exception
+    {
+        OperatorFactory outerOperatorFactory = ((JoinOperatorFactory) joinOperatorFactory).createOuterOperatorFactory()
+                .orElseThrow(() -> new IllegalStateException("Outer operator factory not present"))
+                .getOuterOperatorFactory();
+        DriverContext outerDriverContext = taskContext.addPipelineContext(3, false, true, false).addDriverContext();
+
+        List<Page> pages = new ArrayList<>();
+        try (Operator outerOperator = outerOperatorFactory.createOperator(outerDriverContext)) {
+            outerOperatorFactory.noMoreOperators(Lifespan.taskWide());
+            outerOperatorFactory.noMoreOperators();
+
+            while (!outerOperator.isFinished()) {
+                checkErrors(taskStateMachine);
+                getFutureValue(outerOperator.isBlocked());
+                Page page = outerOperator.getOutput();
+                if (page != null) {
+                    pages.add(page);
+                }
+            }
         }
+        return pages;
     }
 
     private static void processRow(final Driver joinDriver, final TaskStateMachine taskStateMachine)
@@ -1417,6 +1568,20 @@ public class TestHashJoinOperator
                 PARTITIONING_SPILLER_FACTORY);
     }
 
+    private OperatorFactory lookupOuterJoinOperatorFactory(JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactoryManager, RowPagesBuilder probePages, PartitioningSpillerFactory partitioningSpillerFactory)
+    {
+        return LOOKUP_JOIN_OPERATORS.lookupOuterJoin(
+                0,
+                new PlanNodeId("test"),
+                lookupSourceFactoryManager,
+                probePages.getTypes(),
+                Ints.asList(0),
+                getHashChannelAsInt(probePages),
+                Optional.empty(),
+                OptionalInt.of(1),
+                partitioningSpillerFactory);
+    }
+
     private OperatorFactory innerJoinOperatorFactory(JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactoryManager, RowPagesBuilder probePages, PartitioningSpillerFactory partitioningSpillerFactory)
     {
         return LOOKUP_JOIN_OPERATORS.innerJoin(
@@ -1439,6 +1604,19 @@ public class TestHashJoinOperator
             Optional<InternalJoinFilterFunction> filterFunction,
             boolean spillEnabled,
             SingleStreamSpillerFactory singleStreamSpillerFactory)
+    {
+        return setupBuildSide(parallelBuild, taskContext, hashChannels, buildPages, filterFunction, spillEnabled, false, singleStreamSpillerFactory);
+    }
+
+    private BuildSideSetup setupBuildSide(
+            boolean parallelBuild,
+            TaskContext taskContext,
+            List<Integer> hashChannels,
+            RowPagesBuilder buildPages,
+            Optional<InternalJoinFilterFunction> filterFunction,
+            boolean spillEnabled,
+            boolean buildOuter,
+            SingleStreamSpillerFactory singleStreamSpillerFactory)
     {
         Optional<JoinFilterFunctionFactory> filterFunctionFactory = filterFunction
                 .map(function -> (session, addresses, pages) -> new StandardJoinFilterFunction(function, addresses, pages));
@@ -1471,7 +1649,7 @@ public class TestHashJoinOperator
 
         // build side operator factories
         LocalExchangeSourceOperatorFactory sourceOperatorFactory = new LocalExchangeSourceOperatorFactory(0, new PlanNodeId("source"), localExchangeFactory);
-        JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactoryManager = JoinBridgeManager.lookupAllAtOnce(new PartitionedLookupSourceFactory(
+        PartitionedLookupSourceFactory lookupSourceFactory = new PartitionedLookupSourceFactory(
                 buildPages.getTypes(),
                 rangeList(buildPages.getTypes().size()).stream()
                         .map(buildPages.getTypes()::get)
@@ -1480,7 +1658,13 @@ public class TestHashJoinOperator
                         .map(buildPages.getTypes()::get)
                         .collect(toImmutableList()),
                 partitionCount,
-                false));
+                buildOuter);
+        JoinBridgeManager<PartitionedLookupSourceFactory> lookupSourceFactoryManager = new JoinBridgeManager<>(
+                buildOuter,
+                UNGROUPED_EXECUTION,
+                UNGROUPED_EXECUTION,
+                ignored -> lookupSourceFactory,
+                lookupSourceFactory.getOutputTypes());
 
         HashBuilderOperatorFactory buildOperatorFactory = new HashBuilderOperatorFactory(
                 1,
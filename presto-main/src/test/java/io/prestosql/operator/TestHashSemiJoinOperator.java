@@ -22,6 +22,8 @@ import io.prestosql.operator.HashSemiJoinOperator.HashSemiJoinOperatorFactory;
 import io.prestosql.operator.SetBuilderOperator.SetBuilderOperatorFactory;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.GenericPartitioningSpillerFactory;
+import io.prestosql.spiller.PartitioningSpillerFactory;
 import io.prestosql.sql.gen.JoinCompiler;
 import io.prestosql.sql.planner.plan.PlanNodeId;
 import io.prestosql.testing.MaterializedResult;
@@ -30,8 +32,10 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -53,6 +57,8 @@ import static io.prestosql.testing.TestingTaskContext.createTaskContext;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 @Test(singleThreaded = true)
 public class TestHashSemiJoinOperator
@@ -420,6 +426,99 @@ public class TestHashSemiJoinOperator
         OperatorAssertion.assertOperatorEquals(joinOperatorFactory, driverContext, probeInput, expected, hashEnabled, ImmutableList.of(probeTypes.size()));
     }
 
+    @Test(dataProvider = "hashEnabledValues")
+    public void testSemiJoinWithSpilledSet(boolean hashEnabled)
+    {
+        DriverContext buildDriverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+        DriverContext probeDriverContext = taskContext.addPipelineContext(1, true, true, false).addDriverContext();
+
+        // build
+        RowPagesBuilder rowPagesBuilder = rowPagesBuilder(hashEnabled, Ints.asList(0), BIGINT);
+        List<Page> buildInput = rowPagesBuilder
+                .row(10L)
+                .row(30L)
+                .row(30L)
+                .pageBreak()
+                .row(35L)
+                .row(36L)
+                .row((Object) null)
+                .pageBreak()
+                .row(37L)
+                .row(50L)
+                .row(10L)
+                .build();
+        DummySingleStreamSpillerFactory spillerFactory = new DummySingleStreamSpillerFactory();
+        PartitioningSpillerFactory partitioningSpillerFactory = new GenericPartitioningSpillerFactory(spillerFactory);
+        SetBuilderOperatorFactory setBuilderOperatorFactory = new SetBuilderOperatorFactory(
+                1,
+                new PlanNodeId("test"),
+                rowPagesBuilder.getTypes().get(0),
+                0,
+                rowPagesBuilder.getHashChannel(),
+                10,
+                new JoinCompiler(createTestMetadataManager()),
+                true,
+                partitioningSpillerFactory);
+        Operator setBuilderOperator = setBuilderOperatorFactory.createOperator(buildDriverContext);
+
+        // memory is revoked after the first input page, so the rest of the input is spilled as well
+        OperatorAssertion.toPagesPartial(setBuilderOperator, buildInput.iterator(), true);
+        setBuilderOperator.finish();
+        assertGreaterThan(spillerFactory.getSpillsCount(), 0L);
+        assertFalse(setBuilderOperator.isFinished());
+
+        // probe
+        List<Type> probeTypes = ImmutableList.of(BIGINT, BIGINT);
+        RowPagesBuilder rowPagesBuilderProbe = rowPagesBuilder(hashEnabled, Ints.asList(0), BIGINT, BIGINT);
+        List<Page> probeInput = rowPagesBuilderProbe
+                .addSequencePage(10, 30, 0)
+                .row(null, 10L)
+                .build();
+        Optional<Integer> probeHashChannel = hashEnabled ? Optional.of(probeTypes.size()) : Optional.empty();
+        HashSemiJoinOperatorFactory joinOperatorFactory = new HashSemiJoinOperatorFactory(
+                2,
+                new PlanNodeId("test"),
+                setBuilderOperatorFactory.getSetProvider(),
+                rowPagesBuilderProbe.getTypes(),
+                0,
+                probeHashChannel,
+                true,
+                OptionalInt.of(1),
+                partitioningSpillerFactory);
+        Operator joinOperator = joinOperatorFactory.createOperator(probeDriverContext);
+
+        // the probe input is spilled, and then probed as the set builder loads each partition of the set
+        List<Page> output = new ArrayList<>(OperatorAssertion.toPagesPartial(joinOperator, probeInput.iterator()));
+        joinOperator.finish();
+        for (int i = 0; i < 1_000 && !joinOperator.isFinished(); i++) {
+            setBuilderOperator.finish();
+            Page page = joinOperator.getOutput();
+            if (page != null) {
+                output.add(page);
+            }
+        }
+        setBuilderOperator.finish();
+        assertTrue(joinOperator.isFinished());
+        assertTrue(setBuilderOperator.isFinished());
+
+        // expected
+        MaterializedResult expected = resultBuilder(probeDriverContext.getSession(), concat(probeTypes, ImmutableList.of(BOOLEAN)))
+                .row(30L, 0L, true)
+                .row(31L, 1L, null)
+                .row(32L, 2L, null)
+                .row(33L, 3L, null)
+                .row(34L, 4L, null)
+                .row(35L, 5L, true)
+                .row(36L, 6L, true)
+                .row(37L, 7L, true)
+                .row(38L, 8L, null)
+                .row(39L, 9L, null)
+                .row(null, 10L, null)
+                .build();
+
+        OperatorAssertion.assertPagesEqualIgnoreOrder(probeDriverContext, output, expected, hashEnabled, probeHashChannel);
+    }
+
     @Test(dataProvider = "hashEnabledValues", expectedExceptions = ExceededMemoryLimitException.class, expectedExceptionsMessageRegExp = "Query exceeded per-node user memory limit of.*")
     public void testMemoryLimit(boolean hashEnabled)
     {
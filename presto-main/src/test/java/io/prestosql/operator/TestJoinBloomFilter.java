@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import org.testng.annotations.Test;
+
+import static io.prestosql.spi.type.AbstractLongType.hash;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestJoinBloomFilter
+{
+    private static final int ENTRIES = 100_000;
+
+    @Test
+    public void testNoFalseNegatives()
+    {
+        JoinBloomFilter bloomFilter = new JoinBloomFilter(ENTRIES);
+        for (long value = 0; value < ENTRIES; value++) {
+            bloomFilter.put(hash(value));
+        }
+        for (long value = 0; value < ENTRIES; value++) {
+            assertTrue(bloomFilter.mightContain(hash(value)));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate()
+    {
+        JoinBloomFilter bloomFilter = new JoinBloomFilter(ENTRIES);
+        for (long value = 0; value < ENTRIES; value++) {
+            bloomFilter.put(hash(value));
+        }
+
+        int falsePositives = 0;
+        for (long value = ENTRIES; value < 2 * ENTRIES; value++) {
+            if (bloomFilter.mightContain(hash(value))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < ENTRIES / 10, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        JoinBloomFilter bloomFilter = new JoinBloomFilter(0);
+        for (long value = 0; value < 1000; value++) {
+            assertFalse(bloomFilter.mightContain(hash(value)));
+        }
+    }
+}
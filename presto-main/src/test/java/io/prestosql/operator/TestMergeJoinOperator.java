@@ -0,0 +1,241 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.prestosql.RowPagesBuilder;
+import io.prestosql.operator.MergeJoinOperator.MergeJoinOperatorFactory;
+import io.prestosql.operator.MergeJoinSinkOperator.MergeJoinSinkOperatorFactory;
+import io.prestosql.operator.ValuesOperator.ValuesOperatorFactory;
+import io.prestosql.spi.Page;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+import io.prestosql.testing.MaterializedResult;
+import io.prestosql.testing.TestingTaskContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.collect.Iterables.concat;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.prestosql.RowPagesBuilder.rowPagesBuilder;
+import static io.prestosql.SessionTestUtils.TEST_SESSION;
+import static io.prestosql.operator.OperatorAssertion.assertOperatorEquals;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static io.prestosql.testing.MaterializedResult.resultBuilder;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+@Test(singleThreaded = true)
+public class TestMergeJoinOperator
+{
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduledExecutor;
+
+    @BeforeClass
+    public void setUp()
+    {
+        executor = newCachedThreadPool(daemonThreadsNamed("test-executor-%s"));
+        scheduledExecutor = newScheduledThreadPool(2, daemonThreadsNamed("test-scheduledExecutor-%s"));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testMergeJoin()
+    {
+        TaskContext taskContext = createTaskContext();
+
+        // build, with repeated keys spanning pages and null keys sorted first
+        RowPagesBuilder buildPages = rowPagesBuilder(ImmutableList.of(BIGINT, VARCHAR))
+                .row(null, "n")
+                .row(1L, "a")
+                .row(2L, "b")
+                .pageBreak()
+                .row(2L, "c")
+                .row(4L, "d")
+                .row(5L, "e")
+                .pageBreak()
+                .row(5L, "f")
+                .row(7L, "g");
+
+        // probe
+        RowPagesBuilder probePages = rowPagesBuilder(ImmutableList.of(VARCHAR, BIGINT))
+                .row("x", null)
+                .row("p0", 0L)
+                .row("p2", 2L)
+                .pageBreak()
+                .row("q2", 2L)
+                .row("p3", 3L)
+                .row("p5", 5L)
+                .row("p8", 8L);
+        List<Page> probeInput = probePages.build();
+
+        MergeJoinOperatorFactory joinOperatorFactory = newJoinOperatorFactoryWithCompletedBuild(taskContext, probePages, ImmutableList.of(1), buildPages, ImmutableList.of(0));
+
+        MaterializedResult expected = resultBuilder(taskContext.getSession(), concat(probePages.getTypes(), buildPages.getTypes()))
+                .row("p2", 2L, 2L, "b")
+                .row("p2", 2L, 2L, "c")
+                .row("q2", 2L, 2L, "b")
+                .row("q2", 2L, 2L, "c")
+                .row("p5", 5L, 5L, "e")
+                .row("p5", 5L, 5L, "f")
+                .build();
+
+        assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected);
+    }
+
+    @Test
+    public void testMergeJoinMultipleKeys()
+    {
+        TaskContext taskContext = createTaskContext();
+
+        RowPagesBuilder buildPages = rowPagesBuilder(ImmutableList.of(BIGINT, BIGINT))
+                .row(1L, 1L)
+                .row(1L, 2L)
+                .row(1L, null)
+                .row(2L, 1L)
+                .row(3L, 3L);
+
+        RowPagesBuilder probePages = rowPagesBuilder(ImmutableList.of(BIGINT, BIGINT))
+                .row(1L, 2L)
+                .row(1L, 3L)
+                .row(2L, 1L)
+                .row(2L, 1L)
+                .row(3L, 4L);
+        List<Page> probeInput = probePages.build();
+
+        MergeJoinOperatorFactory joinOperatorFactory = newJoinOperatorFactoryWithCompletedBuild(taskContext, probePages, ImmutableList.of(0, 1), buildPages, ImmutableList.of(0, 1));
+
+        MaterializedResult expected = resultBuilder(taskContext.getSession(), concat(probePages.getTypes(), buildPages.getTypes()))
+                .row(1L, 2L, 1L, 2L)
+                .row(2L, 1L, 2L, 1L)
+                .row(2L, 1L, 2L, 1L)
+                .build();
+
+        assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected);
+    }
+
+    @Test
+    public void testMergeJoinWithEmptyBuild()
+    {
+        TaskContext taskContext = createTaskContext();
+
+        RowPagesBuilder buildPages = rowPagesBuilder(ImmutableList.of(BIGINT));
+        RowPagesBuilder probePages = rowPagesBuilder(ImmutableList.of(BIGINT))
+                .addSequencePage(10, 0);
+        List<Page> probeInput = probePages.build();
+
+        MergeJoinOperatorFactory joinOperatorFactory = newJoinOperatorFactoryWithCompletedBuild(taskContext, probePages, ImmutableList.of(0), buildPages, ImmutableList.of(0));
+
+        MaterializedResult expected = resultBuilder(taskContext.getSession(), concat(probePages.getTypes(), buildPages.getTypes())).build();
+
+        assertOperatorEquals(joinOperatorFactory, taskContext.addPipelineContext(0, true, true, false).addDriverContext(), probeInput, expected);
+    }
+
+    @Test
+    public void testBuildBlockedOnlyWhileProbeIsRunning()
+    {
+        TaskContext taskContext = createTaskContext();
+        MergeJoinBridge mergeJoinBridge = new MergeJoinBridge(taskContext.newUserMemoryContext(MergeJoinBridge.class.getSimpleName()));
+        mergeJoinBridge.sinkCreated();
+        Page page = getOnlyElement(rowPagesBuilder(BIGINT).addSequencePage(100_000, 0).build());
+
+        // the build is not blocked before the probe is running, but the buffered pages are accounted
+        for (int i = 0; i < 10; i++) {
+            assertTrue(mergeJoinBridge.addPage(page).isDone());
+        }
+        assertEquals(taskContext.getTaskMemoryContext().getUserMemory(), 10 * page.getRetainedSizeInBytes());
+
+        mergeJoinBridge.probeCreated();
+        ListenableFuture<?> blocked = mergeJoinBridge.addPage(page);
+        assertFalse(blocked.isDone());
+
+        // the build is unblocked once the probe has consumed enough pages
+        int polledPages = 0;
+        while (!blocked.isDone()) {
+            assertNotNull(mergeJoinBridge.pollPage());
+            polledPages++;
+        }
+        assertEquals(taskContext.getTaskMemoryContext().getUserMemory(), (11 - polledPages) * page.getRetainedSizeInBytes());
+
+        mergeJoinBridge.probeFinished();
+        assertEquals(taskContext.getTaskMemoryContext().getUserMemory(), 0);
+    }
+
+    private TaskContext createTaskContext()
+    {
+        return TestingTaskContext.createTaskContext(executor, scheduledExecutor, TEST_SESSION);
+    }
+
+    private static MergeJoinOperatorFactory newJoinOperatorFactoryWithCompletedBuild(
+            TaskContext taskContext,
+            RowPagesBuilder probePages,
+            List<Integer> probeJoinChannels,
+            RowPagesBuilder buildPages,
+            List<Integer> buildJoinChannels)
+    {
+        DriverContext driverContext = taskContext.addPipelineContext(0, true, true, false).addDriverContext();
+
+        ValuesOperatorFactory valuesOperatorFactory = new ValuesOperatorFactory(0, new PlanNodeId("test"), buildPages.build());
+
+        JoinBridgeManager<MergeJoinBridge> mergeJoinBridgeManager = new JoinBridgeManager<>(
+                false,
+                PipelineExecutionStrategy.UNGROUPED_EXECUTION,
+                PipelineExecutionStrategy.UNGROUPED_EXECUTION,
+                lifespan -> new MergeJoinBridge(taskContext.newUserMemoryContext(MergeJoinBridge.class.getSimpleName())),
+                buildPages.getTypes());
+        MergeJoinSinkOperatorFactory mergeJoinSinkOperatorFactory = new MergeJoinSinkOperatorFactory(1, new PlanNodeId("test"), mergeJoinBridgeManager);
+        MergeJoinOperatorFactory joinOperatorFactory = new MergeJoinOperatorFactory(
+                3,
+                new PlanNodeId("test"),
+                mergeJoinBridgeManager,
+                probePages.getTypes(),
+                probeJoinChannels,
+                ImmutableList.of(0, 1).subList(0, probePages.getTypes().size()),
+                buildPages.getTypes(),
+                buildJoinChannels,
+                ImmutableList.of(0, 1).subList(0, buildPages.getTypes().size()));
+
+        Operator valuesOperator = valuesOperatorFactory.createOperator(driverContext);
+        Operator mergeJoinSinkOperator = mergeJoinSinkOperatorFactory.createOperator(driverContext);
+        Driver driver = Driver.createDriver(driverContext,
+                valuesOperator,
+                mergeJoinSinkOperator);
+
+        valuesOperatorFactory.noMoreOperators();
+        mergeJoinSinkOperatorFactory.noMoreOperators();
+
+        while (!mergeJoinSinkOperator.isFinished()) {
+            driver.process();
+        }
+
+        return joinOperatorFactory;
+    }
+}
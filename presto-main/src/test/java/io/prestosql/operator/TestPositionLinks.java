@@ -35,7 +35,21 @@ public class TestPositionLinks
     @Test
     public void testArrayPositionLinks()
     {
-        PositionLinks.FactoryBuilder factoryBuilder = ArrayPositionLinks.builder(1000);
+        assertArrayPositionLinks(false);
+    }
+
+    @Test
+    public void testOffHeapArrayPositionLinks()
+    {
+        assertArrayPositionLinks(true);
+        assertEquals(
+                ArrayPositionLinks.builder(1000, true).build().checksum(),
+                ArrayPositionLinks.builder(1000, false).build().checksum());
+    }
+
+    private static void assertArrayPositionLinks(boolean offHeap)
+    {
+        PositionLinks.FactoryBuilder factoryBuilder = ArrayPositionLinks.builder(1000, offHeap);
 
         assertEquals(factoryBuilder.link(1, 0), 1);
         assertEquals(factoryBuilder.link(2, 1), 2);
@@ -57,6 +71,8 @@ public class TestPositionLinks
         assertEquals(positionLinks.start(12, 0, TEST_PAGE), 12);
         assertEquals(positionLinks.next(12, 0, TEST_PAGE), 11);
         assertEquals(positionLinks.next(11, 0, TEST_PAGE), 10);
+
+        factoryBuilder.close();
     }
 
     @Test
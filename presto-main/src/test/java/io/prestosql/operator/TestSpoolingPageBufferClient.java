@@ -0,0 +1,379 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.DataSize;
+import io.prestosql.exchange.LocalFileSystemExchangeStorage;
+import io.prestosql.execution.StateMachine;
+import io.prestosql.execution.TaskId;
+import io.prestosql.execution.buffer.BufferState;
+import io.prestosql.execution.buffer.OutputBuffers;
+import io.prestosql.execution.buffer.OutputBuffers.OutputBufferId;
+import io.prestosql.execution.buffer.PagesSerde;
+import io.prestosql.execution.buffer.SerializedPage;
+import io.prestosql.execution.buffer.SpoolingManifest;
+import io.prestosql.execution.buffer.SpoolingOutputBuffer;
+import io.prestosql.memory.context.SimpleLocalMemoryContext;
+import io.prestosql.operator.PageBufferClient.ClientCallback;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.exchange.ExchangeStorage;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.testing.Assertions.assertInstanceOf;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static io.prestosql.execution.buffer.BufferState.OPEN;
+import static io.prestosql.execution.buffer.BufferState.TERMINAL_BUFFER_STATES;
+import static io.prestosql.execution.buffer.BufferTestUtils.addPage;
+import static io.prestosql.execution.buffer.BufferTestUtils.createPage;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.ARBITRARY;
+import static io.prestosql.execution.buffer.OutputBuffers.BufferType.PARTITIONED;
+import static io.prestosql.execution.buffer.OutputBuffers.createInitialEmptyOutputBuffers;
+import static io.prestosql.execution.buffer.SpoolingOutputBuffer.getTaskDirectory;
+import static io.prestosql.execution.buffer.TestingPagesSerdeFactory.testingPagesSerde;
+import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
+import static io.prestosql.operator.PageAssertions.assertPageEquals;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static java.nio.file.Files.createTempDirectory;
+import static java.nio.file.Files.delete;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Test(singleThreaded = true)
+public class TestSpoolingPageBufferClient
+{
+    private static final PagesSerde PAGES_SERDE = testingPagesSerde();
+    private static final TaskId TASK_ID = new TaskId("query", 0, 0);
+    private static final OutputBufferId FIRST = new OutputBufferId(0);
+    private static final OutputBufferId SECOND = new OutputBufferId(1);
+    private static final DataSize MAX_RESPONSE_SIZE = new DataSize(1, MEGABYTE);
+
+    private Path baseDirectory;
+    private ExchangeStorage exchangeStorage;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp()
+            throws IOException
+    {
+        baseDirectory = createTempDirectory("exchange");
+        exchangeStorage = new LocalFileSystemExchangeStorage(baseDirectory);
+        scheduler = newScheduledThreadPool(2, daemonThreadsNamed("test-scheduler-%s"));
+        executor = newCachedThreadPool(daemonThreadsNamed("test-%s"));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+            throws IOException
+    {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        deleteRecursively(baseDirectory, ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testPartitioned()
+            throws Exception
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withBuffer(SECOND, 1)
+                .withNoMoreBufferIds());
+        addPage(buffer, createPage(0), 0);
+        addPage(buffer, createPage(1), 1);
+        addPage(buffer, createPage(2), 0);
+        buffer.setNoMorePages();
+
+        TestingClientCallback first = new TestingClientCallback();
+        PageBufferClient firstClient = createClient(FIRST, MAX_RESPONSE_SIZE, first);
+        readAll(firstClient, first);
+        assertPagesEqual(first.getPages(), ImmutableList.of(createPage(0), createPage(2)));
+        assertStatus(firstClient, "completed", 2, 1, 1, 0);
+
+        TestingClientCallback second = new TestingClientCallback();
+        PageBufferClient secondClient = createClient(SECOND, MAX_RESPONSE_SIZE, second);
+        readAll(secondClient, second);
+        assertPagesEqual(second.getPages(), ImmutableList.of(createPage(1)));
+        assertStatus(secondClient, "completed", 1, 1, 1, 0);
+    }
+
+    @Test
+    public void testArbitrary()
+            throws Exception
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(createInitialEmptyOutputBuffers(ARBITRARY)
+                .withBuffer(FIRST, 0)
+                .withBuffer(SECOND, 0)
+                .withNoMoreBufferIds());
+        for (int i = 0; i < 4; i++) {
+            addPage(buffer, createPage(i));
+        }
+        buffer.setNoMorePages();
+
+        // every page is read by exactly one of the readers
+        TestingClientCallback first = new TestingClientCallback();
+        readAll(createClient(FIRST, MAX_RESPONSE_SIZE, first), first);
+        assertPagesEqual(first.getPages(), ImmutableList.of(createPage(0), createPage(2)));
+
+        TestingClientCallback second = new TestingClientCallback();
+        readAll(createClient(SECOND, MAX_RESPONSE_SIZE, second), second);
+        assertPagesEqual(second.getPages(), ImmutableList.of(createPage(1), createPage(3)));
+    }
+
+    @Test
+    public void testPollUntilCommitted()
+            throws Exception
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withNoMoreBufferIds());
+        addPage(buffer, createPage(0), 0);
+
+        TestingClientCallback callback = new TestingClientCallback();
+        PageBufferClient client = createClient(FIRST, MAX_RESPONSE_SIZE, callback);
+
+        // the output of a running task is not visible
+        runRequest(client, callback);
+        assertEquals(callback.getCompletedRequests(), 1);
+        assertFalse(callback.isFinished());
+        assertTrue(callback.getPages().isEmpty());
+        assertStatus(client, "queued", 0, 1, 1, 0);
+
+        buffer.setNoMorePages();
+        readAll(client, callback);
+        assertPagesEqual(callback.getPages(), ImmutableList.of(createPage(0)));
+        assertStatus(client, "completed", 1, 2, 2, 0);
+    }
+
+    @Test
+    public void testMaxResponseSize()
+            throws Exception
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withNoMoreBufferIds());
+        for (int i = 0; i < 3; i++) {
+            addPage(buffer, createPage(i), 0);
+        }
+        buffer.setNoMorePages();
+
+        // each request returns at least one page
+        TestingClientCallback callback = new TestingClientCallback();
+        PageBufferClient client = createClient(FIRST, new DataSize(1, BYTE), callback);
+        readAll(client, callback);
+        assertPagesEqual(callback.getPages(), ImmutableList.of(createPage(0), createPage(1), createPage(2)));
+        assertEquals(callback.getCompletedRequests(), 2);
+        assertStatus(client, "completed", 3, 3, 3, 0);
+    }
+
+    @Test
+    public void testMissingFile()
+            throws Exception
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withNoMoreBufferIds());
+        addPage(buffer, createPage(0), 0);
+        buffer.setNoMorePages();
+        delete(baseDirectory.resolve(getTaskDirectory(TASK_ID)).resolve(SpoolingManifest.getFileName(0)));
+
+        TestingClientCallback callback = new TestingClientCallback();
+        PageBufferClient client = createClient(FIRST, MAX_RESPONSE_SIZE, callback);
+        runRequest(client, callback);
+        assertInstanceOf(callback.getFailure(), PageTransportErrorException.class);
+        assertFalse(callback.isFinished());
+        assertStatus(client, "queued", 0, 1, 0, 1);
+    }
+
+    @Test
+    public void testClose()
+            throws Exception
+    {
+        SpoolingOutputBuffer buffer = createSpoolingBuffer(createInitialEmptyOutputBuffers(PARTITIONED)
+                .withBuffer(FIRST, 0)
+                .withNoMoreBufferIds());
+        addPage(buffer, createPage(0), 0);
+        buffer.setNoMorePages();
+
+        TestingClientCallback callback = new TestingClientCallback();
+        PageBufferClient client = createClient(FIRST, MAX_RESPONSE_SIZE, callback);
+        client.close();
+        assertStatus(client, "closed", 0, 0, 0, 0);
+
+        // requests of a closed client are ignored
+        client.scheduleRequest();
+        assertFalse(callback.awaitRequest(1));
+        assertTrue(callback.getPages().isEmpty());
+        assertStatus(client, "closed", 0, 0, 0, 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Invalid output buffer location: .*")
+    public void testInvalidLocation()
+    {
+        new SpoolingPageBufferClient(exchangeStorage, MAX_RESPONSE_SIZE, URI.create("http://localhost:8080/v1/task/" + TASK_ID), new TestingClientCallback(), scheduler, executor);
+    }
+
+    private SpoolingOutputBuffer createSpoolingBuffer(OutputBuffers outputBuffers)
+    {
+        return new SpoolingOutputBuffer(
+                TASK_ID,
+                "attempt",
+                new StateMachine<BufferState>("bufferState", executor, OPEN, TERMINAL_BUFFER_STATES),
+                outputBuffers,
+                new DataSize(1, MEGABYTE),
+                () -> new SimpleLocalMemoryContext(newSimpleAggregatedMemoryContext(), "test"),
+                exchangeStorage,
+                directExecutor(),
+                executor,
+                throwable -> {
+                    throw new AssertionError("Unexpected failure", throwable);
+                });
+    }
+
+    private PageBufferClient createClient(OutputBufferId bufferId, DataSize maxResponseSize, ClientCallback callback)
+    {
+        URI location = URI.create("http://localhost:8080/v1/task/" + TASK_ID + "/results/" + bufferId);
+        return new SpoolingPageBufferClient(exchangeStorage, maxResponseSize, location, callback, scheduler, executor);
+    }
+
+    private static void readAll(PageBufferClient client, TestingClientCallback callback)
+            throws InterruptedException
+    {
+        for (int i = 0; i < 100 && !callback.isFinished(); i++) {
+            runRequest(client, callback);
+            assertNull(callback.getFailure());
+        }
+        assertTrue(callback.isFinished(), "Client did not finish");
+    }
+
+    private static void runRequest(PageBufferClient client, TestingClientCallback callback)
+            throws InterruptedException
+    {
+        client.scheduleRequest();
+        assertTrue(callback.awaitRequest(10), "Request did not complete");
+    }
+
+    private static void assertStatus(PageBufferClient client, String state, int pagesReceived, int requestsScheduled, int requestsCompleted, int requestsFailed)
+    {
+        PageBufferClientStatus status = client.getStatus();
+        assertEquals(status.getState(), state);
+        assertEquals(status.getPagesReceived(), pagesReceived);
+        assertEquals(status.getRequestsScheduled(), requestsScheduled);
+        assertEquals(status.getRequestsCompleted(), requestsCompleted);
+        assertEquals(status.getRequestsFailed(), requestsFailed);
+    }
+
+    private static void assertPagesEqual(List<Page> actual, List<Page> expected)
+    {
+        assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertPageEquals(ImmutableList.of(BIGINT), actual.get(i), expected.get(i));
+        }
+    }
+
+    private static class TestingClientCallback
+            implements ClientCallback
+    {
+        private final Semaphore requests = new Semaphore(0);
+        private final List<SerializedPage> pages = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger completedRequests = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        public List<Page> getPages()
+        {
+            synchronized (pages) {
+                return pages.stream()
+                        .map(PAGES_SERDE::deserialize)
+                        .collect(toImmutableList());
+            }
+        }
+
+        public int getCompletedRequests()
+        {
+            return completedRequests.get();
+        }
+
+        public boolean isFinished()
+        {
+            return finished.get();
+        }
+
+        public Throwable getFailure()
+        {
+            return failure.get();
+        }
+
+        public boolean awaitRequest(int timeoutSeconds)
+                throws InterruptedException
+        {
+            return requests.tryAcquire(timeoutSeconds, SECONDS);
+        }
+
+        @Override
+        public boolean addPages(PageBufferClient client, List<SerializedPage> pages)
+        {
+            this.pages.addAll(pages);
+            return true;
+        }
+
+        @Override
+        public void requestComplete(PageBufferClient client)
+        {
+            completedRequests.incrementAndGet();
+            requests.release();
+        }
+
+        @Override
+        public void clientFinished(PageBufferClient client)
+        {
+            finished.set(true);
+            requests.release();
+        }
+
+        @Override
+        public void clientFailed(PageBufferClient client, Throwable cause)
+        {
+            failure.compareAndSet(null, cause);
+            requests.release();
+        }
+    }
+}
@@ -15,6 +15,7 @@ package io.prestosql.operator;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 import io.prestosql.ExceededMemoryLimitException;
@@ -45,8 +46,10 @@ import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
 import static io.airlift.concurrent.Threads.daemonThreadsNamed;
 import static io.airlift.testing.Assertions.assertGreaterThan;
+import static io.airlift.testing.Assertions.assertLessThan;
 import static io.airlift.units.DataSize.succinctBytes;
 import static io.prestosql.RowPagesBuilder.rowPagesBuilder;
 import static io.prestosql.SessionTestUtils.TEST_SESSION;
@@ -64,10 +67,12 @@ import static io.prestosql.sql.tree.FrameBound.Type.UNBOUNDED_PRECEDING;
 import static io.prestosql.sql.tree.WindowFrame.Type.RANGE;
 import static io.prestosql.testing.MaterializedResult.resultBuilder;
 import static io.prestosql.testing.TestingTaskContext.createTaskContext;
+import static java.lang.Math.max;
 import static java.lang.String.format;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 @Test(singleThreaded = true)
@@ -302,6 +307,76 @@ public class TestWindowOperator
         assertOperatorEquals(operatorFactory, driverContext, input, expected);
     }
 
+    @Test
+    public void testSpillLastRunBeforeMerging()
+    {
+        // every row is a partition of its own, so that the merged partitions are small compared to the last run
+        List<Page> input = rowPagesBuilder(BIGINT, BIGINT)
+                .addSequencePage(1_000, 0, 0)
+                .addSequencePage(50_000, 1_000, 0)
+                .addSequencePage(50_000, 51_000, 0)
+                .addSequencePage(50_000, 101_000, 0)
+                .addSequencePage(50_000, 151_000, 0)
+                .build();
+        int rowCount = input.stream().mapToInt(Page::getPositionCount).sum();
+
+        WindowOperatorFactory operatorFactory = createFactoryUnbounded(
+                ImmutableList.of(BIGINT, BIGINT),
+                Ints.asList(0, 1),
+                ROW_NUMBER,
+                Ints.asList(0),
+                Ints.asList(1),
+                ImmutableList.copyOf(new SortOrder[] {SortOrder.ASC_NULLS_LAST}),
+                true);
+        DriverContext driverContext = createDriverContext();
+        Operator operator = operatorFactory.createOperator(driverContext);
+
+        // the first page is spilled as a run of its own, and the following pages are buffered as the last run
+        addInput(operator, input.get(0));
+        getFutureValue(operator.startMemoryRevoke());
+        operator.finishMemoryRevoke();
+        for (Page page : input.subList(1, input.size())) {
+            addInput(operator, page);
+        }
+        long lastRunBytes = driverContext.getRevocableMemoryUsage();
+        assertGreaterThan(lastRunBytes, 0L);
+        assertEquals(spillerFactory.getSpillsCount(), 1);
+
+        operator.finish();
+        int outputRowCount = 0;
+        long maxMergeMemory = 0;
+        while (!operator.isFinished()) {
+            ListenableFuture<?> blocked = operator.isBlocked();
+            if (!blocked.isDone()) {
+                getFutureValue(blocked);
+                continue;
+            }
+            Page output = operator.getOutput();
+            if (output != null) {
+                for (int position = 0; position < output.getPositionCount(); position++) {
+                    assertEquals(BIGINT.getLong(output.getBlock(2), position), 1L);
+                }
+                outputRowCount += output.getPositionCount();
+            }
+            if (outputRowCount > 0) {
+                maxMergeMemory = max(maxMergeMemory, driverContext.getMemoryUsage() + driverContext.getRevocableMemoryUsage());
+            }
+        }
+        assertEquals(outputRowCount, rowCount);
+
+        // the last run is spilled before the runs are merged, so that only the current partition is kept in memory
+        assertEquals(spillerFactory.getSpillsCount(), 2);
+        assertLessThan(maxMergeMemory, lastRunBytes / 2);
+        operator.close();
+    }
+
+    private static void addInput(Operator operator, Page page)
+    {
+        assertTrue(operator.needsInput());
+        operator.addInput(page);
+        assertNull(operator.getOutput());
+    }
+
     @Test(expectedExceptions = ExceededMemoryLimitException.class, expectedExceptionsMessageRegExp = "Query exceeded per-node user memory limit of 10B.*")
     public void testMemoryLimit()
     {
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.operator.aggregation.builder;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.operator.aggregation.builder.FlatAggregation.Kind;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.type.Type;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Random;
+
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.SEGMENT_SHIFT;
+import static io.prestosql.operator.aggregation.builder.FlatHashAggregationBuilder.getRowSize;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class TestFlatAccumulatorCompiler
+{
+    private static final int POSITION_COUNT = 5000;
+    private static final int GROUP_COUNT = 2000;
+
+    @Test
+    public void testSingleStep()
+    {
+        List<FlatAggregation> aggregations = ImmutableList.of(
+                new FlatAggregation(Kind.COUNT, BIGINT, OptionalInt.empty()),
+                new FlatAggregation(Kind.COUNT, BIGINT, OptionalInt.of(0)),
+                new FlatAggregation(Kind.SUM, BIGINT, OptionalInt.of(1)),
+                new FlatAggregation(Kind.SUM, DOUBLE, OptionalInt.of(2)),
+                new FlatAggregation(Kind.MIN, BIGINT, OptionalInt.of(1)),
+                new FlatAggregation(Kind.MIN, DOUBLE, OptionalInt.of(2)),
+                new FlatAggregation(Kind.MAX, BIGINT, OptionalInt.of(1)),
+                new FlatAggregation(Kind.MAX, DOUBLE, OptionalInt.of(2)),
+                new FlatAggregation(Kind.AVERAGE, BIGINT, OptionalInt.of(1)),
+                new FlatAggregation(Kind.AVERAGE, DOUBLE, OptionalInt.of(2)));
+        // count(x) accepts values of any type
+        List<Type> inputTypes = ImmutableList.of(BIGINT, VARCHAR, BIGINT, DOUBLE, BIGINT, DOUBLE, BIGINT, DOUBLE, BIGINT, DOUBLE);
+
+        assertCompiledMatchesInterpreted(2, aggregations, inputTypes, true);
+    }
+
+    @Test
+    public void testIntermediateInput()
+    {
+        List<FlatAggregation> aggregations = ImmutableList.of(
+                new FlatAggregation(Kind.COUNT, BIGINT, OptionalInt.of(0)),
+                new FlatAggregation(Kind.SUM, DOUBLE, OptionalInt.of(1)),
+                new FlatAggregation(Kind.MIN, BIGINT, OptionalInt.of(2)),
+                new FlatAggregation(Kind.MAX, DOUBLE, OptionalInt.of(3)));
+        List<Type> inputTypes = ImmutableList.of(BIGINT, DOUBLE, BIGINT, DOUBLE);
+
+        assertCompiledMatchesInterpreted(1, aggregations, inputTypes, false);
+    }
+
+    private static void assertCompiledMatchesInterpreted(int keyCount, List<FlatAggregation> aggregations, List<Type> inputTypes, boolean inputRaw)
+    {
+        FlatAccumulator compiled = new FlatAccumulatorCompiler().internalCompileFlatAccumulator(keyCount, aggregations, inputRaw);
+        assertFalse(compiled instanceof InterpretedFlatAccumulator, "accumulator was not compiled");
+        FlatAccumulator interpreted = new InterpretedFlatAccumulator(keyCount, aggregations, inputRaw);
+
+        Random random = new Random(42);
+        int[] groupIds = new int[POSITION_COUNT];
+        for (int position = 0; position < POSITION_COUNT; position++) {
+            groupIds[position] = random.nextInt(GROUP_COUNT);
+        }
+        Block[] inputBlocks = new Block[aggregations.size()];
+        for (int i = 0; i < aggregations.size(); i++) {
+            if (aggregations.get(i).getInputChannel().isPresent()) {
+                inputBlocks[i] = createBlock(inputTypes.get(i), random);
+            }
+        }
+
+        long[][] expected = createSegments(keyCount, aggregations);
+        long[][] actual = createSegments(keyCount, aggregations);
+        // accumulate twice, so the states are updated after they have a value
+        for (int i = 0; i < 2; i++) {
+            interpreted.accumulate(expected, groupIds, inputBlocks, POSITION_COUNT);
+            compiled.accumulate(actual, groupIds, inputBlocks, POSITION_COUNT);
+        }
+        assertEquals(actual, expected);
+    }
+
+    private static long[][] createSegments(int keyCount, List<FlatAggregation> aggregations)
+    {
+        int rowsPerSegment = 1 << SEGMENT_SHIFT;
+        long[][] segments = new long[(GROUP_COUNT + rowsPerSegment - 1) / rowsPerSegment][];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new long[rowsPerSegment * getRowSize(keyCount, aggregations)];
+        }
+        return segments;
+    }
+
+    private static Block createBlock(Type type, Random random)
+    {
+        BlockBuilder blockBuilder = type.createBlockBuilder(null, POSITION_COUNT);
+        for (int position = 0; position < POSITION_COUNT; position++) {
+            if (random.nextInt(10) == 0) {
+                blockBuilder.appendNull();
+            }
+            else if (type.equals(DOUBLE)) {
+                DOUBLE.writeDouble(blockBuilder, random.nextDouble() * 1000 - 500);
+            }
+            else if (type.equals(BIGINT)) {
+                BIGINT.writeLong(blockBuilder, random.nextInt(1000) - 500);
+            }
+            else {
+                VARCHAR.writeString(blockBuilder, String.valueOf(position));
+            }
+        }
+        return blockBuilder.build();
+    }
+}
@@ -14,15 +14,23 @@
 package io.prestosql.operator.window;
 
 import io.prestosql.testing.MaterializedResult;
+import io.prestosql.testing.MaterializedRow;
 import org.intellij.lang.annotations.Language;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static io.prestosql.SessionTestUtils.TEST_SESSION;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.DoubleType.DOUBLE;
 import static io.prestosql.spi.type.IntegerType.INTEGER;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
 import static io.prestosql.testing.MaterializedResult.resultBuilder;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static org.testng.Assert.assertEquals;
 
 public class TestAggregateWindowFunction
         extends AbstractTestWindowFunction
@@ -595,4 +603,56 @@ public class TestAggregateWindowFunction
                         .row(null, null, null)
                         .build());
     }
+
+    @Test
+    public void testMaxRollingLargeFrames()
+    {
+        // the frames are large enough to be evaluated with a segment tree, as max cannot remove input
+        assertRollingAggregation("max", 100, 50);
+        assertRollingAggregation("max", 300, -200);
+        assertRollingAggregation("max", -70, 150);
+        assertRollingAggregation("min", 1000, 1000);
+    }
+
+    @Test
+    public void testArrayAggRollingLargeFrames()
+    {
+        // array_agg has a state of variable width, so the rows of large moving frames are accumulated one by one
+        @Language("SQL") String sql = "SELECT x, array_agg(x) OVER (PARTITION BY x % 3 ORDER BY x ROWS BETWEEN 90 PRECEDING AND 40 FOLLOWING) " +
+                "FROM UNNEST(sequence(0, 1999)) t(x)";
+        for (MaterializedRow row : queryRunner.execute(sql).getMaterializedRows()) {
+            int x = ((Number) row.getField(0)).intValue();
+            List<Long> expected = new ArrayList<>();
+            for (int value = max(x % 3, x - 90 * 3); value <= min(1999, x + 40 * 3); value += 3) {
+                expected.add((long) value);
+            }
+            assertEquals(row.getField(1), expected);
+        }
+    }
+
+    private void assertRollingAggregation(String function, int preceding, int following)
+    {
+        int rowCount = 3000;
+        long[] values = new long[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            values[i] = (i * 7919L) % 1009;
+        }
+
+        @Language("SQL") String sql = format(
+                "SELECT x, %s(IF(x %% 11 = 0, NULL, (x * 7919) %% 1009)) OVER (ORDER BY x ROWS BETWEEN %s AND %s) FROM UNNEST(sequence(0, %s)) t(x)",
+                function,
+                preceding >= 0 ? preceding + " PRECEDING" : -preceding + " FOLLOWING",
+                following >= 0 ? following + " FOLLOWING" : -following + " PRECEDING",
+                rowCount - 1);
+        for (MaterializedRow row : queryRunner.execute(sql).getMaterializedRows()) {
+            int x = ((Number) row.getField(0)).intValue();
+            Long expected = null;
+            for (int i = max(0, x - preceding); i <= min(rowCount - 1, x + following); i++) {
+                if (i % 11 != 0 && (expected == null || (function.equals("max") ? values[i] > expected : values[i] < expected))) {
+                    expected = values[i];
+                }
+            }
+            assertEquals(row.getField(1), expected, "row " + x);
+        }
+    }
 }
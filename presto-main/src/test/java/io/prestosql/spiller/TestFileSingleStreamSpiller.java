@@ -18,6 +18,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import io.airlift.slice.InputStreamSliceInput;
+import io.airlift.units.DataSize;
 import io.prestosql.execution.buffer.PageCodecMarker;
 import io.prestosql.execution.buffer.PagesSerdeUtil;
 import io.prestosql.execution.buffer.SerializedPage;
@@ -38,6 +39,9 @@ import static com.google.common.io.MoreFiles.deleteRecursively;
 import static com.google.common.io.MoreFiles.listFiles;
 import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.airlift.units.DataSize.Unit.BYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static io.prestosql.metadata.MetadataManager.createTestMetadataManager;
 import static io.prestosql.spi.type.BigintType.BIGINT;
@@ -45,6 +49,7 @@ import static io.prestosql.spi.type.DoubleType.DOUBLE;
 import static io.prestosql.spi.type.VarbinaryType.VARBINARY;
 import static java.lang.Double.doubleToLongBits;
 import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.size;
 import static java.util.concurrent.Executors.newCachedThreadPool;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
@@ -147,13 +152,145 @@ public class TestFileSingleStreamSpiller
         assertEquals(memoryContext.getBytes(), 0);
     }
 
+    @Test
+    public void testSpillWithReadAhead()
+            throws Exception
+    {
+        SpillerStats spillerStats = new SpillerStats();
+        FileSingleStreamSpillerFactory spillerFactory = new FileSingleStreamSpillerFactory(
+                executor, // executor won't be closed, because we don't call destroy() on the spiller factory
+                createTestMetadataManager().getBlockEncodingSerde(),
+                spillerStats,
+                ImmutableList.of(spillPath.toPath()),
+                1.0,
+                false,
+                false,
+                new DataSize(1, BYTE),
+                new SpillSpaceTracker(new DataSize(0, BYTE)));
+        LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        SingleStreamSpiller spiller = spillerFactory.create(TYPES, bytes -> {}, memoryContext);
+
+        Page page = buildPage();
+        for (int i = 0; i < 10; i++) {
+            spiller.spill(Iterators.forArray(page, page)).get();
+        }
+        assertEquals(listFiles(spillPath.toPath()).size(), 1);
+        long spillFileSize = size(listFiles(spillPath.toPath()).get(0));
+
+        // every page is read by a separate read on the spiller executor
+        Iterator<Page> spilledPagesIterator = spiller.getSpilledPages();
+        assertEquals(memoryContext.getBytes(), FileSingleStreamSpiller.BUFFER_SIZE);
+        ImmutableList<Page> spilledPages = ImmutableList.copyOf(spilledPagesIterator);
+        assertEquals(memoryContext.getBytes(), FileSingleStreamSpiller.BUFFER_SIZE);
+
+        assertEquals(spilledPages.size(), 20);
+        for (Page spilledPage : spilledPages) {
+            PageAssertions.assertPageEquals(TYPES, page, spilledPage);
+        }
+
+        SpillPathStats spillPathStats = spillerStats.getSpillPathStats(spillPath.toPath());
+        assertEquals(spillPathStats.getWrittenBytes().getTotalCount(), spillerStats.getTotalSpilledBytes());
+        assertEquals(spillPathStats.getReadBytes().getTotalCount(), spillFileSize);
+        assertEquals(spillPathStats.getWriteTime().getAllTime().getCount(), 10.0);
+        assertEquals(spillPathStats.getReadTime().getAllTime().getCount(), 21.0);
+
+        spiller.close();
+        assertEquals(listFiles(spillPath.toPath()).size(), 0);
+        assertEquals(memoryContext.getBytes(), 0);
+    }
+
+    @Test
+    public void testSpillToMemory()
+            throws Exception
+    {
+        SpillSpaceTracker inMemorySpillSpaceTracker = new SpillSpaceTracker(new DataSize(1, MEGABYTE));
+        SpillerStats spillerStats = new SpillerStats();
+        FileSingleStreamSpillerFactory spillerFactory = createSpillerFactory(spillerStats, inMemorySpillSpaceTracker);
+        LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        SingleStreamSpiller spiller = spillerFactory.create(TYPES, bytes -> {}, memoryContext);
+
+        spiller.spill(buildPage(1)).get();
+        spiller.spill(Iterators.forArray(buildPage(2), buildPage(3))).get();
+
+        // all the pages fit into memory, so nothing is written to disk
+        assertEquals(listFiles(spillPath.toPath()).size(), 1);
+        assertEquals(size(listFiles(spillPath.toPath()).get(0)), 0);
+        assertTrue(inMemorySpillSpaceTracker.getCurrentBytes() > 0);
+        assertEquals(spillerStats.getTotalInMemorySpilledBytes(), inMemorySpillSpaceTracker.getCurrentBytes());
+        assertEquals(spillerStats.getTotalSpilledBytes(), 0);
+
+        List<Page> spilledPages = ImmutableList.copyOf(spiller.getSpilledPages());
+        assertEquals(spilledPages.size(), 3);
+        for (int i = 0; i < 3; ++i) {
+            PageAssertions.assertPageEquals(TYPES, spilledPages.get(i), buildPage(i + 1));
+        }
+
+        spiller.close();
+        assertEquals(listFiles(spillPath.toPath()).size(), 0);
+        assertEquals(inMemorySpillSpaceTracker.getCurrentBytes(), 0);
+    }
+
+    @Test
+    public void testSpillToMemoryOverflow()
+            throws Exception
+    {
+        // measure the size of a spilled page
+        SpillSpaceTracker inMemorySpillSpaceTracker = new SpillSpaceTracker(new DataSize(1, MEGABYTE));
+        SingleStreamSpiller spiller = createSpillerFactory(new SpillerStats(), inMemorySpillSpaceTracker)
+                .create(TYPES, bytes -> {}, newSimpleAggregatedMemoryContext().newLocalMemoryContext("test"));
+        spiller.spill(buildPage(0)).get();
+        long pageSize = inMemorySpillSpaceTracker.getCurrentBytes();
+        spiller.close();
+
+        inMemorySpillSpaceTracker = new SpillSpaceTracker(new DataSize(2 * pageSize, BYTE));
+        SpillerStats spillerStats = new SpillerStats();
+        spiller = createSpillerFactory(spillerStats, inMemorySpillSpaceTracker)
+                .create(TYPES, bytes -> {}, newSimpleAggregatedMemoryContext().newLocalMemoryContext("test"));
+        spiller.spill(Iterators.forArray(buildPage(1), buildPage(2), buildPage(3))).get();
+        spiller.spill(buildPage(4)).get();
+
+        // the pages which do not fit into memory are written to disk
+        assertEquals(inMemorySpillSpaceTracker.getCurrentBytes(), 2 * pageSize);
+        assertEquals(spillerStats.getTotalInMemorySpilledBytes(), 2 * pageSize);
+        assertEquals(spillerStats.getTotalSpilledBytes(), 2 * pageSize);
+
+        List<Page> spilledPages = getFutureValue(spiller.getAllSpilledPages());
+        assertEquals(spilledPages.size(), 4);
+        for (int i = 0; i < 4; ++i) {
+            PageAssertions.assertPageEquals(TYPES, spilledPages.get(i), buildPage(i + 1));
+        }
+
+        spiller.close();
+        assertEquals(listFiles(spillPath.toPath()).size(), 0);
+        assertEquals(inMemorySpillSpaceTracker.getCurrentBytes(), 0);
+    }
+
+    private FileSingleStreamSpillerFactory createSpillerFactory(SpillerStats spillerStats, SpillSpaceTracker inMemorySpillSpaceTracker)
+    {
+        return new FileSingleStreamSpillerFactory(
+                executor, // executor won't be closed, because we don't call destroy() on the spiller factory
+                createTestMetadataManager().getBlockEncodingSerde(),
+                spillerStats,
+                ImmutableList.of(spillPath.toPath()),
+                1.0,
+                false,
+                false,
+                new DataSize(1, MEGABYTE),
+                inMemorySpillSpaceTracker);
+    }
+
     private Page buildPage()
+    {
+        return buildPage(42);
+    }
+
+    private Page buildPage(long value)
     {
         BlockBuilder col1 = BIGINT.createBlockBuilder(null, 1);
         BlockBuilder col2 = DOUBLE.createBlockBuilder(null, 1);
         BlockBuilder col3 = VARBINARY.createBlockBuilder(null, 1);
 
-        col1.writeLong(42).closeEntry();
+        col1.writeLong(value).closeEntry();
         col2.writeLong(doubleToLongBits(43.0)).closeEntry();
         col3.writeLong(doubleToLongBits(43.0)).writeLong(1).closeEntry();
 
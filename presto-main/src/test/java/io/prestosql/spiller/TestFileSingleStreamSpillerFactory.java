@@ -13,10 +13,12 @@
  */
 package io.prestosql.spiller;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Closer;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import io.prestosql.spi.Page;
@@ -31,13 +33,17 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 
+import static com.google.common.collect.Iterators.singletonIterator;
 import static com.google.common.io.MoreFiles.deleteRecursively;
 import static com.google.common.io.MoreFiles.listFiles;
 import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
 import static com.google.common.util.concurrent.Futures.getUnchecked;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
 import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static io.prestosql.metadata.MetadataManager.createTestMetadataManager;
 import static io.prestosql.spi.type.BigintType.BIGINT;
@@ -46,6 +52,7 @@ import static io.prestosql.spiller.FileSingleStreamSpillerFactory.SPILL_FILE_SUF
 import static java.nio.file.Files.setPosixFilePermissions;
 import static java.util.Collections.emptyList;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 
 @Test(singleThreaded = true)
 public class TestFileSingleStreamSpillerFactory
@@ -147,6 +154,60 @@ public class TestFileSingleStreamSpillerFactory
         assertEquals(listFiles(spillPath2.toPath()).size(), 0);
     }
 
+    @Test
+    public void testDistributesSpillOverLeastBusyPaths()
+            throws Exception
+    {
+        List<Type> types = ImmutableList.of(BIGINT);
+        List<Path> spillPaths = ImmutableList.of(spillPath1.toPath(), spillPath2.toPath());
+        FileSingleStreamSpillerFactory spillerFactory = new FileSingleStreamSpillerFactory(
+                executor, // executor won't be closed, because we don't call destroy() on the spiller factory
+                blockEncodingSerde,
+                new SpillerStats(),
+                spillPaths,
+                1.0,
+                false,
+                false);
+
+        Page page = buildPage();
+        CountDownLatch spillBlocked = new CountDownLatch(1);
+        Iterator<Page> blockedPages = new AbstractIterator<Page>()
+        {
+            private boolean returned;
+
+            @Override
+            protected Page computeNext()
+            {
+                if (returned) {
+                    return endOfData();
+                }
+                awaitUninterruptibly(spillBlocked);
+                returned = true;
+                return page;
+            }
+        };
+
+        // the first spill to the first path stays in progress, so the next spillers use the second path
+        List<SingleStreamSpiller> spillers = new ArrayList<>();
+        SingleStreamSpiller blockedSpiller = spillerFactory.create(types, bytes -> {}, newSimpleAggregatedMemoryContext().newLocalMemoryContext("test"));
+        spillers.add(blockedSpiller);
+        ListenableFuture<?> blockedSpill = blockedSpiller.spill(blockedPages);
+        for (int i = 0; i < 3; ++i) {
+            SingleStreamSpiller singleStreamSpiller = spillerFactory.create(types, bytes -> {}, newSimpleAggregatedMemoryContext().newLocalMemoryContext("test"));
+            getUnchecked(singleStreamSpiller.spill(singletonIterator(page)));
+            spillers.add(singleStreamSpiller);
+        }
+        assertFalse(blockedSpill.isDone());
+        assertEquals(listFiles(spillPath1.toPath()).size(), 1);
+        assertEquals(listFiles(spillPath2.toPath()).size(), 3);
+
+        spillBlocked.countDown();
+        getUnchecked(blockedSpill);
+        spillers.forEach(SingleStreamSpiller::close);
+        assertEquals(listFiles(spillPath1.toPath()).size(), 0);
+        assertEquals(listFiles(spillPath2.toPath()).size(), 0);
+    }
+
     private Page buildPage()
     {
         BlockBuilder col1 = BIGINT.createBlockBuilder(null, 1);
@@ -22,6 +22,7 @@ import java.util.Map;
 import static io.airlift.configuration.testing.ConfigAssertions.assertFullMapping;
 import static io.airlift.configuration.testing.ConfigAssertions.assertRecordedDefaults;
 import static io.airlift.configuration.testing.ConfigAssertions.recordDefaults;
+import static io.airlift.units.DataSize.Unit.BYTE;
 import static io.airlift.units.DataSize.Unit.GIGABYTE;
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 
@@ -33,6 +34,7 @@ public class TestNodeSpillConfig
         assertRecordedDefaults(recordDefaults(NodeSpillConfig.class)
                 .setMaxSpillPerNode(new DataSize(100, GIGABYTE))
                 .setQueryMaxSpillPerNode(new DataSize(100, GIGABYTE))
+                .setMaxInMemorySpillPerNode(new DataSize(0, BYTE))
                 .setSpillCompressionEnabled(false)
                 .setSpillEncryptionEnabled(false));
     }
@@ -43,6 +45,7 @@ public class TestNodeSpillConfig
         Map<String, String> properties = new ImmutableMap.Builder<String, String>()
                 .put("max-spill-per-node", "10MB")
                 .put("query-max-spill-per-node", "15 MB")
+                .put("max-in-memory-spill-per-node", "2GB")
                 .put("spill-compression-enabled", "true")
                 .put("spill-encryption-enabled", "true")
                 .build();
@@ -50,6 +53,7 @@ public class TestNodeSpillConfig
         NodeSpillConfig expected = new NodeSpillConfig()
                 .setMaxSpillPerNode(new DataSize(10, MEGABYTE))
                 .setQueryMaxSpillPerNode(new DataSize(15, MEGABYTE))
+                .setMaxInMemorySpillPerNode(new DataSize(2, GIGABYTE))
                 .setSpillCompressionEnabled(true)
                 .setSpillEncryptionEnabled(true);
 
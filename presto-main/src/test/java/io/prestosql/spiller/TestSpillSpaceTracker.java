@@ -20,6 +20,8 @@ import org.testng.annotations.Test;
 
 import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 @Test(singleThreaded = true)
 public class TestSpillSpaceTracker
@@ -57,6 +59,20 @@ public class TestSpillSpaceTracker
         assertEquals(spillSpaceTracker.getCurrentBytes(), 0);
     }
 
+    @Test
+    public void testTryReserve()
+    {
+        assertTrue(spillSpaceTracker.tryReserve(MAX_DATA_SIZE.toBytes() - 1000));
+        assertFalse(spillSpaceTracker.tryReserve(1001));
+        assertEquals(spillSpaceTracker.getCurrentBytes(), MAX_DATA_SIZE.toBytes() - 1000);
+
+        assertTrue(spillSpaceTracker.tryReserve(1000));
+        assertEquals(spillSpaceTracker.getCurrentBytes(), MAX_DATA_SIZE.toBytes());
+
+        spillSpaceTracker.free(MAX_DATA_SIZE.toBytes());
+        assertEquals(spillSpaceTracker.getCurrentBytes(), 0);
+    }
+
     @Test(expectedExceptions = ExceededSpillLimitException.class)
     public void testSpillOutOfSpace()
     {
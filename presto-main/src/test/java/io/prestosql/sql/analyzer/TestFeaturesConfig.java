@@ -77,6 +77,7 @@ public class TestFeaturesConfig
                 .setAggregationOperatorUnspillMemoryLimit(DataSize.valueOf("4MB"))
                 .setSpillerSpillPaths("")
                 .setSpillerThreads(4)
+                .setSpillerReadAheadSize(DataSize.valueOf("1MB"))
                 .setSpillMaxUsedSpaceThreshold(0.9)
                 .setMemoryRevokingThreshold(0.9)
                 .setMemoryRevokingTarget(0.5)
@@ -110,8 +111,27 @@ public class TestFeaturesConfig
                 .setSkipRedundantSort(true)
                 .setPredicatePushdownUseTableProperties(true)
                 .setEnableDynamicFiltering(false)
+                .setEnableCoordinatorDynamicFiltersDistribution(true)
                 .setDynamicFilteringMaxPerDriverRowCount(100)
                 .setDynamicFilteringMaxPerDriverSize(new DataSize(10, KILOBYTE))
+                .setDynamicFilteringBloomFilterSize(new DataSize(256, KILOBYTE))
+                .setTaskRetryEnabled(false)
+                .setTaskMaxRetries(3)
+                .setAdaptiveJoinReorderingEnabled(false)
+                .setJoinSkewSplittingEnabled(false)
+                .setJoinSkewFactor(5)
+                .setJoinSkewMinPartitionSize(new DataSize(256, MEGABYTE))
+                .setAdaptivePartialAggregationEnabled(true)
+                .setAdaptivePartialAggregationMinRows(100_000)
+                .setAdaptivePartialAggregationUniqueRowsRatioThreshold(0.8)
+                .setPartitionedAggregationSpillEnabled(false)
+                .setJoinHashOffHeapEnabled(false)
+                .setFlatHashAggregationEnabled(false)
+                .setDirectGroupByHashEnabled(false)
+                .setFusedAggregationEnabled(false)
+                .setJoinBloomFilterEnabled(false)
+                .setRadixPartitionedJoinEnabled(false)
+                .setMergeJoinEnabled(false)
                 .setIgnoreDownstreamPreferences(false));
     }
 
@@ -159,6 +179,7 @@ public class TestFeaturesConfig
                 .put("aggregation-operator-unspill-memory-limit", "100MB")
                 .put("spiller-spill-path", "/tmp/custom/spill/path1,/tmp/custom/spill/path2")
                 .put("spiller-threads", "42")
+                .put("spiller-read-ahead-size", "64kB")
                 .put("spiller-max-used-space-threshold", "0.8")
                 .put("memory-revoking-threshold", "0.2")
                 .put("memory-revoking-target", "0.8")
@@ -182,8 +203,27 @@ public class TestFeaturesConfig
                 .put("optimizer.skip-redundant-sort", "false")
                 .put("optimizer.predicate-pushdown-use-table-properties", "false")
                 .put("experimental.enable-dynamic-filtering", "true")
+                .put("experimental.enable-coordinator-dynamic-filters-distribution", "false")
                 .put("experimental.dynamic-filtering-max-per-driver-row-count", "256")
                 .put("experimental.dynamic-filtering-max-per-driver-size", "64kB")
+                .put("experimental.dynamic-filtering-bloom-filter-size", "1MB")
+                .put("experimental.task-retry-enabled", "true")
+                .put("experimental.task-max-retries", "5")
+                .put("experimental.adaptive-join-reordering-enabled", "true")
+                .put("experimental.join-skew-splitting-enabled", "true")
+                .put("experimental.join-skew-factor", "10")
+                .put("experimental.join-skew-min-partition-size", "1GB")
+                .put("experimental.adaptive-partial-aggregation-enabled", "false")
+                .put("experimental.adaptive-partial-aggregation-min-rows", "1000")
+                .put("experimental.adaptive-partial-aggregation-unique-rows-ratio-threshold", "0.5")
+                .put("experimental.partitioned-aggregation-spill-enabled", "true")
+                .put("experimental.join-hash-off-heap-enabled", "true")
+                .put("experimental.flat-hash-aggregation-enabled", "true")
+                .put("experimental.direct-group-by-hash-enabled", "true")
+                .put("experimental.fused-aggregation-enabled", "true")
+                .put("experimental.join-bloom-filter-enabled", "true")
+                .put("experimental.radix-partitioned-join-enabled", "true")
+                .put("experimental.merge-join-enabled", "true")
                 .put("optimizer.ignore-downstream-preferences", "true")
                 .build();
 
@@ -227,6 +267,7 @@ public class TestFeaturesConfig
                 .setAggregationOperatorUnspillMemoryLimit(DataSize.valueOf("100MB"))
                 .setSpillerSpillPaths("/tmp/custom/spill/path1,/tmp/custom/spill/path2")
                 .setSpillerThreads(42)
+                .setSpillerReadAheadSize(DataSize.valueOf("64kB"))
                 .setSpillMaxUsedSpaceThreshold(0.8)
                 .setMemoryRevokingThreshold(0.2)
                 .setMemoryRevokingTarget(0.8)
@@ -251,8 +292,27 @@ public class TestFeaturesConfig
                 .setSkipRedundantSort(false)
                 .setPredicatePushdownUseTableProperties(false)
                 .setEnableDynamicFiltering(true)
+                .setEnableCoordinatorDynamicFiltersDistribution(false)
                 .setDynamicFilteringMaxPerDriverRowCount(256)
                 .setDynamicFilteringMaxPerDriverSize(new DataSize(64, KILOBYTE))
+                .setDynamicFilteringBloomFilterSize(new DataSize(1, MEGABYTE))
+                .setTaskRetryEnabled(true)
+                .setTaskMaxRetries(5)
+                .setAdaptiveJoinReorderingEnabled(true)
+                .setJoinSkewSplittingEnabled(true)
+                .setJoinSkewFactor(10)
+                .setJoinSkewMinPartitionSize(new DataSize(1, GIGABYTE))
+                .setAdaptivePartialAggregationEnabled(false)
+                .setAdaptivePartialAggregationMinRows(1000)
+                .setAdaptivePartialAggregationUniqueRowsRatioThreshold(0.5)
+                .setPartitionedAggregationSpillEnabled(true)
+                .setJoinHashOffHeapEnabled(true)
+                .setFlatHashAggregationEnabled(true)
+                .setDirectGroupByHashEnabled(true)
+                .setFusedAggregationEnabled(true)
+                .setJoinBloomFilterEnabled(true)
+                .setRadixPartitionedJoinEnabled(true)
+                .setMergeJoinEnabled(true)
                 .setIgnoreDownstreamPreferences(true);
         assertFullMapping(properties, expected);
     }
@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.Session;
+import io.prestosql.cost.StatsAndCosts;
+import io.prestosql.spi.type.Type;
+import io.prestosql.sql.planner.plan.ExchangeNode;
+import io.prestosql.sql.planner.plan.JoinNode;
+import io.prestosql.sql.planner.plan.JoinNode.EquiJoinClause;
+import io.prestosql.sql.planner.plan.PlanFragmentId;
+import io.prestosql.sql.planner.plan.PlanNode;
+import io.prestosql.sql.planner.plan.PlanNodeId;
+import io.prestosql.sql.planner.plan.RemoteSourceNode;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static io.prestosql.SystemSessionProperties.TASK_CONCURRENCY;
+import static io.prestosql.operator.StageExecutionDescriptor.ungroupedExecution;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.sql.planner.AdaptiveJoinReordering.hasReorderableJoins;
+import static io.prestosql.sql.planner.AdaptiveJoinReordering.reorderJoins;
+import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_HASH_DISTRIBUTION;
+import static io.prestosql.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.LOCAL;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Type.GATHER;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Type.REPARTITION;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Type.REPLICATE;
+import static io.prestosql.sql.planner.plan.JoinNode.DistributionType.PARTITIONED;
+import static io.prestosql.sql.planner.plan.JoinNode.DistributionType.REPLICATED;
+import static io.prestosql.sql.planner.plan.JoinNode.Type.LEFT;
+import static io.prestosql.sql.planner.plan.JoinNode.Type.RIGHT;
+import static io.prestosql.testing.TestingSession.testSessionBuilder;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestAdaptiveJoinReordering
+{
+    private static final PlanFragmentId PROBE_FRAGMENT = new PlanFragmentId("probe");
+    private static final PlanFragmentId BUILD_FRAGMENT = new PlanFragmentId("build");
+    private static final Symbol PROBE_KEY = new Symbol("probe_key");
+    private static final Symbol BUILD_KEY = new Symbol("build_key");
+
+    private static final Session PARALLEL_SESSION = testSessionBuilder()
+            .setSystemProperty(TASK_CONCURRENCY, "4")
+            .build();
+    private static final Session SINGLE_STREAM_SESSION = testSessionBuilder()
+            .setSystemProperty(TASK_CONCURRENCY, "1")
+            .build();
+
+    @Test
+    public void testHasReorderableJoins()
+    {
+        assertTrue(hasReorderableJoins(createFragment(createJoin(PARTITIONED, REPARTITION))));
+        assertFalse(hasReorderableJoins(createFragment(createJoin(REPLICATED, REPARTITION))));
+        // the output buffers of replicated sources are only complete once the join stage is scheduled
+        assertFalse(hasReorderableJoins(createFragment(createJoin(PARTITIONED, REPLICATE))));
+
+        JoinNode join = createJoin(PARTITIONED, REPARTITION);
+        JoinNode withDynamicFilter = new JoinNode(
+                join.getId(),
+                join.getType(),
+                join.getLeft(),
+                join.getRight(),
+                join.getCriteria(),
+                join.getOutputSymbols(),
+                join.getFilter(),
+                join.getLeftHashSymbol(),
+                join.getRightHashSymbol(),
+                join.getDistributionType(),
+                join.isSpillable(),
+                ImmutableMap.of("df", BUILD_KEY));
+        assertFalse(hasReorderableJoins(createFragment(withDynamicFilter)));
+    }
+
+    @Test
+    public void testKeepSmallerBuildSide()
+    {
+        PlanFragment fragment = createFragment(createJoin(PARTITIONED, REPARTITION));
+        assertSame(reorderJoins(PARALLEL_SESSION, fragment, outputSizes(1000, 10)), fragment);
+        assertSame(reorderJoins(PARALLEL_SESSION, fragment, outputSizes(1000, 1000)), fragment);
+
+        // sizes of all sources are required
+        assertSame(reorderJoins(PARALLEL_SESSION, fragment, ImmutableMap.of(PROBE_FRAGMENT, 10L)), fragment);
+    }
+
+    @Test
+    public void testFlipLargerBuildSide()
+    {
+        PlanFragment fragment = createFragment(createJoin(PARTITIONED, REPARTITION));
+        PlanFragment reordered = reorderJoins(PARALLEL_SESSION, fragment, outputSizes(10, 1000));
+
+        JoinNode join = (JoinNode) reordered.getRoot();
+        assertEquals(join.getType(), RIGHT);
+        assertEquals(join.getCriteria(), ImmutableList.of(new EquiJoinClause(BUILD_KEY, PROBE_KEY)));
+        assertEquals(((RemoteSourceNode) join.getLeft()).getSourceFragmentIds(), ImmutableList.of(BUILD_FRAGMENT));
+
+        // the new build side is partitioned on its join key for the parallel build
+        ExchangeNode build = (ExchangeNode) join.getRight();
+        assertEquals(build.getScope(), LOCAL);
+        assertEquals(build.getType(), REPARTITION);
+        assertEquals(build.getPartitioningScheme().getPartitioning().getHandle(), FIXED_HASH_DISTRIBUTION);
+        assertEquals(build.getPartitioningScheme().getPartitioning().getColumns(), ImmutableSet.of(PROBE_KEY));
+        assertEquals(((RemoteSourceNode) getOnlySource(build)).getSourceFragmentIds(), ImmutableList.of(PROBE_FRAGMENT));
+
+        assertEquals(reordered.getId(), fragment.getId());
+        assertEquals(reordered.getRemoteSourceNodes().size(), 2);
+    }
+
+    @Test
+    public void testFlipSingleStreamBuild()
+    {
+        PlanFragment reordered = reorderJoins(SINGLE_STREAM_SESSION, createFragment(createJoin(PARTITIONED, REPARTITION)), outputSizes(10, 1000));
+
+        ExchangeNode build = (ExchangeNode) ((JoinNode) reordered.getRoot()).getRight();
+        assertEquals(build.getScope(), LOCAL);
+        assertEquals(build.getType(), GATHER);
+    }
+
+    private static PlanNode getOnlySource(PlanNode node)
+    {
+        assertEquals(node.getSources().size(), 1);
+        return node.getSources().get(0);
+    }
+
+    private static Map<PlanFragmentId, Long> outputSizes(long probeSize, long buildSize)
+    {
+        return ImmutableMap.of(PROBE_FRAGMENT, probeSize, BUILD_FRAGMENT, buildSize);
+    }
+
+    private static JoinNode createJoin(JoinNode.DistributionType distributionType, ExchangeNode.Type buildExchangeType)
+    {
+        RemoteSourceNode probe = new RemoteSourceNode(new PlanNodeId("probe_source"), PROBE_FRAGMENT, ImmutableList.of(PROBE_KEY), Optional.empty(), REPARTITION);
+        RemoteSourceNode build = new RemoteSourceNode(new PlanNodeId("build_source"), BUILD_FRAGMENT, ImmutableList.of(BUILD_KEY), Optional.empty(), buildExchangeType);
+        return new JoinNode(
+                new PlanNodeId("join"),
+                LEFT,
+                probe,
+                build,
+                ImmutableList.of(new EquiJoinClause(PROBE_KEY, BUILD_KEY)),
+                ImmutableList.of(PROBE_KEY, BUILD_KEY),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.empty(),
+                Optional.of(distributionType),
+                Optional.empty(),
+                ImmutableMap.of());
+    }
+
+    private static PlanFragment createFragment(PlanNode root)
+    {
+        ImmutableMap.Builder<Symbol, Type> types = ImmutableMap.builder();
+        for (Symbol symbol : root.getOutputSymbols()) {
+            types.put(symbol, BIGINT);
+        }
+        return new PlanFragment(
+                new PlanFragmentId("join_fragment"),
+                root,
+                types.build(),
+                FIXED_HASH_DISTRIBUTION,
+                ImmutableList.of(),
+                new PartitioningScheme(Partitioning.create(SINGLE_DISTRIBUTION, ImmutableList.of()), root.getOutputSymbols()),
+                ungroupedExecution(),
+                StatsAndCosts.empty(),
+                Optional.empty());
+    }
+}
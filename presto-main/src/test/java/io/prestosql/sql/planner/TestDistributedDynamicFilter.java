@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.prestosql.sql.planner;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.TupleDomain;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.IntegerType.INTEGER;
+import static io.prestosql.testing.assertions.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestDistributedDynamicFilter
+{
+    @Test
+    public void testMultiplePartitions()
+    {
+        AtomicReference<Map<String, Domain>> result = new AtomicReference<>();
+        DistributedDynamicFilter filter = new DistributedDynamicFilter(
+                ImmutableMap.of("123", 0),
+                ImmutableMap.of("123", INTEGER),
+                2,
+                result::set);
+        assertEquals(filter.getBuildChannels(), ImmutableMap.of("123", 0));
+        Consumer<TupleDomain<String>> consumer = filter.getTupleDomainConsumer();
+
+        consumer.accept(TupleDomain.withColumnDomains(ImmutableMap.of(
+                "123", Domain.singleValue(INTEGER, 10L))));
+        assertNull(result.get());
+
+        consumer.accept(TupleDomain.withColumnDomains(ImmutableMap.of(
+                "123", Domain.singleValue(INTEGER, 20L))));
+        assertEquals(result.get(), ImmutableMap.of(
+                "123", Domain.multipleValues(INTEGER, ImmutableList.of(10L, 20L))));
+    }
+
+    @Test
+    public void testNoneAndAll()
+    {
+        AtomicReference<Map<String, Domain>> result = new AtomicReference<>();
+        DistributedDynamicFilter filter = new DistributedDynamicFilter(
+                ImmutableMap.of("123", 0, "456", 1),
+                ImmutableMap.of("123", INTEGER, "456", BIGINT),
+                1,
+                result::set);
+        filter.getTupleDomainConsumer().accept(TupleDomain.none());
+        assertEquals(result.get(), ImmutableMap.of(
+                "123", Domain.none(INTEGER),
+                "456", Domain.none(BIGINT)));
+
+        filter = new DistributedDynamicFilter(
+                ImmutableMap.of("123", 0, "456", 1),
+                ImmutableMap.of("123", INTEGER, "456", BIGINT),
+                1,
+                result::set);
+        filter.getTupleDomainConsumer().accept(TupleDomain.withColumnDomains(ImmutableMap.of(
+                "123", Domain.singleValue(INTEGER, 7L))));
+        assertEquals(result.get(), ImmutableMap.of(
+                "123", Domain.singleValue(INTEGER, 7L),
+                "456", Domain.all(BIGINT)));
+    }
+}
@@ -17,33 +17,43 @@ package io.prestosql.sql.planner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.prestosql.Session;
 import io.prestosql.metadata.Metadata;
+import io.prestosql.operator.BloomFilter;
+import io.prestosql.spi.block.Block;
 import io.prestosql.spi.predicate.Domain;
+import io.prestosql.spi.predicate.Range;
 import io.prestosql.spi.predicate.TupleDomain;
+import io.prestosql.spi.predicate.ValueSet;
 import io.prestosql.sql.planner.assertions.BasePlanTest;
 import io.prestosql.sql.planner.optimizations.PlanNodeSearcher;
 import io.prestosql.sql.planner.plan.JoinNode;
+import io.prestosql.sql.planner.plan.SemiJoinNode;
 import org.testng.annotations.Test;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.MoreCollectors.onlyElement;
 import static io.prestosql.SystemSessionProperties.ENABLE_DYNAMIC_FILTERING;
 import static io.prestosql.SystemSessionProperties.FORCE_SINGLE_NODE_OUTPUT;
 import static io.prestosql.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
+import static io.prestosql.block.BlockAssertions.createLongSequenceBlock;
 import static io.prestosql.metadata.MetadataManager.createTestMetadataManager;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.IntegerType.INTEGER;
 import static io.prestosql.sql.planner.LogicalPlanner.Stage.OPTIMIZED_AND_VALIDATED;
 import static io.prestosql.testing.assertions.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestLocalDynamicFilter
         extends BasePlanTest
@@ -121,6 +131,44 @@ public class TestLocalDynamicFilter
                 new Symbol("a"), Domain.multipleValues(INTEGER, ImmutableList.of(10L, 20L)))));
     }
 
+    @Test
+    public void testBloomFilters()
+            throws ExecutionException, InterruptedException
+    {
+        LocalDynamicFilter filter = new LocalDynamicFilter(
+                ImmutableMultimap.of("123", new Symbol("a")),
+                ImmutableMap.of("123", 0),
+                2);
+        ListenableFuture<Map<Symbol, BloomFilter>> bloomFilters = filter.getBloomFiltersFuture();
+        ListenableFuture<TupleDomain<Symbol>> result = filter.getResultFuture();
+
+        // the first partition was too large to be collected exactly
+        Block values = createLongSequenceBlock(0, 1000);
+        BloomFilter.Builder builder = BloomFilter.builder(1024);
+        for (int position = 0; position < values.getPositionCount(); position++) {
+            builder.add(BIGINT, values, position);
+        }
+        filter.getBloomFiltersConsumer().accept(ImmutableMap.of("123", builder.build()));
+        filter.getTupleDomainConsumer().accept(TupleDomain.withColumnDomains(ImmutableMap.of(
+                "123", Domain.create(ValueSet.ofRanges(Range.range(BIGINT, 0L, true, 999L, true)), false))));
+        assertFalse(bloomFilters.isDone());
+        assertFalse(result.isDone());
+
+        // the second partition was collected exactly
+        filter.getTupleDomainConsumer().accept(TupleDomain.withColumnDomains(ImmutableMap.of(
+                "123", Domain.singleValue(BIGINT, 5000L))));
+
+        assertEquals(result.get(), TupleDomain.withColumnDomains(ImmutableMap.of(
+                new Symbol("a"), Domain.create(ValueSet.ofRanges(
+                        Range.range(BIGINT, 0L, true, 999L, true),
+                        Range.equal(BIGINT, 5000L)), false))));
+        BloomFilter bloomFilter = bloomFilters.get().get(new Symbol("a"));
+        for (int position = 0; position < values.getPositionCount(); position++) {
+            assertTrue(bloomFilter.mightContain(BIGINT, values, position));
+        }
+        assertTrue(bloomFilter.mightContain(BIGINT, createLongSequenceBlock(5000, 5001), 0));
+    }
+
     @Test
     public void testNone()
             throws ExecutionException, InterruptedException
@@ -302,6 +350,32 @@ public class TestLocalDynamicFilter
         assertEquals(filter.getResultFuture().get(), expected);
     }
 
+    @Test
+    public void testCreateSemiJoin()
+            throws ExecutionException, InterruptedException
+    {
+        SubPlan subplan = subplan(
+                "SELECT count() FROM lineitem WHERE lineitem.orderkey IN " +
+                        "(SELECT orders.orderkey FROM orders WHERE orders.custkey < 10)",
+                OPTIMIZED_AND_VALIDATED,
+                false);
+        SemiJoinNode semiJoinNode = subplan.getAllFragments().stream()
+                .flatMap(fragment -> PlanNodeSearcher.searchFrom(fragment.getRoot())
+                        .where(SemiJoinNode.class::isInstance)
+                        .<SemiJoinNode>findAll()
+                        .stream())
+                .collect(onlyElement());
+        assertTrue(semiJoinNode.getDynamicFilterId().isPresent());
+        LocalDynamicFilter filter = LocalDynamicFilter.create(semiJoinNode, 1).get();
+        String filterId = semiJoinNode.getDynamicFilterId().get();
+        assertEquals(filter.getBuildChannels().keySet(), ImmutableSet.of(filterId));
+
+        filter.getTupleDomainConsumer().accept(TupleDomain.withColumnDomains(ImmutableMap.of(
+                filterId, Domain.singleValue(BIGINT, 3L))));
+        assertEquals(filter.getResultFuture().get(), TupleDomain.withColumnDomains(ImmutableMap.of(
+                semiJoinNode.getSourceJoinSymbol(), Domain.singleValue(BIGINT, 3L))));
+    }
+
     private PlanNodeSearcher searchJoins(PlanFragment fragment)
     {
         return PlanNodeSearcher
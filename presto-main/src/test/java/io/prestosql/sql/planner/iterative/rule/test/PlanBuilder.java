@@ -534,7 +534,8 @@ public class PlanBuilder
                 semiJoinOutput,
                 sourceHashSymbol,
                 filteringSourceHashSymbol,
-                distributionType);
+                distributionType,
+                Optional.empty());
     }
 
     public IndexSourceNode indexSource(
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.sql.planner.optimizations;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.prestosql.Session;
+import io.prestosql.sql.planner.assertions.BasePlanTest;
+import io.prestosql.sql.planner.assertions.PlanMatchPattern;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+
+import static io.prestosql.SystemSessionProperties.COLOCATED_JOIN;
+import static io.prestosql.SystemSessionProperties.JOIN_DISTRIBUTION_TYPE;
+import static io.prestosql.SystemSessionProperties.JOIN_REORDERING_STRATEGY;
+import static io.prestosql.SystemSessionProperties.MERGE_JOIN_ENABLED;
+import static io.prestosql.SystemSessionProperties.OPTIMIZE_HASH_GENERATION;
+import static io.prestosql.SystemSessionProperties.TASK_CONCURRENCY;
+import static io.prestosql.sql.analyzer.FeaturesConfig.JoinDistributionType.PARTITIONED;
+import static io.prestosql.sql.analyzer.FeaturesConfig.JoinReorderingStrategy.NONE;
+import static io.prestosql.sql.planner.assertions.PlanMatchPattern.anyTree;
+import static io.prestosql.sql.planner.assertions.PlanMatchPattern.equiJoinClause;
+import static io.prestosql.sql.planner.assertions.PlanMatchPattern.exchange;
+import static io.prestosql.sql.planner.assertions.PlanMatchPattern.join;
+import static io.prestosql.sql.planner.assertions.PlanMatchPattern.tableScan;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.LOCAL;
+import static io.prestosql.sql.planner.plan.ExchangeNode.Type.GATHER;
+import static io.prestosql.sql.planner.plan.JoinNode.Type.INNER;
+
+public class TestMergeJoinPlans
+        extends BasePlanTest
+{
+    private static final String ORDERS_JOIN_LINEITEM = "SELECT o.orderkey FROM orders o JOIN lineitem l ON o.orderkey = l.orderkey";
+
+    public TestMergeJoinPlans()
+    {
+        super(ImmutableMap.of(
+                MERGE_JOIN_ENABLED, "true",
+                COLOCATED_JOIN, "true",
+                JOIN_DISTRIBUTION_TYPE, PARTITIONED.name(),
+                JOIN_REORDERING_STRATEGY, NONE.name(),
+                OPTIMIZE_HASH_GENERATION, "false"));
+    }
+
+    @Test
+    public void testMergeJoin()
+    {
+        // both sides are sorted and have a single stream per bucket, so no local exchange is added
+        PlanMatchPattern mergeJoin = anyTree(
+                join(INNER, ImmutableList.of(equiJoinClause("O_ORDERKEY", "L_ORDERKEY")),
+                        tableScan("orders", ImmutableMap.of("O_ORDERKEY", "orderkey")),
+                        tableScan("lineitem", ImmutableMap.of("L_ORDERKEY", "orderkey"))));
+
+        assertPlan(ORDERS_JOIN_LINEITEM, mergeJoin);
+        assertPlan(
+                ORDERS_JOIN_LINEITEM,
+                Session.builder(getQueryRunner().getDefaultSession())
+                        .setSystemProperty(TASK_CONCURRENCY, "4")
+                        .build(),
+                mergeJoin);
+    }
+
+    @Test
+    public void testMergeJoinDisabled()
+    {
+        assertPlan(
+                ORDERS_JOIN_LINEITEM,
+                Session.builder(getQueryRunner().getDefaultSession())
+                        .setSystemProperty(MERGE_JOIN_ENABLED, "false")
+                        .build(),
+                anyTree(
+                        join(INNER, ImmutableList.of(equiJoinClause("O_ORDERKEY", "L_ORDERKEY")),
+                                tableScan("orders", ImmutableMap.of("O_ORDERKEY", "orderkey")),
+                                exchange(LOCAL, GATHER,
+                                        tableScan("lineitem", ImmutableMap.of("L_ORDERKEY", "orderkey"))))));
+    }
+
+    @Test
+    public void testJoinFilter()
+    {
+        // a merge join cannot evaluate a join filter
+        assertPlan(
+                "SELECT o.orderkey FROM orders o JOIN lineitem l ON o.orderkey = l.orderkey AND o.orderdate < l.shipdate",
+                anyTree(
+                        join(INNER, ImmutableList.of(equiJoinClause("O_ORDERKEY", "L_ORDERKEY")), Optional.of("O_ORDERDATE < L_SHIPDATE"),
+                                tableScan("orders", ImmutableMap.of("O_ORDERKEY", "orderkey", "O_ORDERDATE", "orderdate")),
+                                exchange(LOCAL, GATHER,
+                                        tableScan("lineitem", ImmutableMap.of("L_ORDERKEY", "orderkey", "L_SHIPDATE", "shipdate"))))));
+    }
+}
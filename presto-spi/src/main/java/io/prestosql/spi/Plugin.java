@@ -16,6 +16,7 @@ package io.prestosql.spi;
 import io.prestosql.spi.block.BlockEncoding;
 import io.prestosql.spi.connector.ConnectorFactory;
 import io.prestosql.spi.eventlistener.EventListenerFactory;
+import io.prestosql.spi.exchange.ExchangeStorageFactory;
 import io.prestosql.spi.resourcegroups.ResourceGroupConfigurationManagerFactory;
 import io.prestosql.spi.security.PasswordAuthenticatorFactory;
 import io.prestosql.spi.security.SystemAccessControlFactory;
@@ -79,4 +80,9 @@ public interface Plugin
     {
         return emptyList();
     }
+
+    default Iterable<ExchangeStorageFactory> getExchangeStorageFactories()
+    {
+        return emptyList();
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.spi.connector;
+
+import io.prestosql.spi.predicate.TupleDomain;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Dynamic filter of a table scan, collected from the build sides of joins while the splits of the table are enumerated.
+ */
+public interface DynamicFilter
+{
+    DynamicFilter EMPTY = new DynamicFilter()
+    {
+        @Override
+        public Set<ColumnHandle> getColumnsCovered()
+        {
+            return emptySet();
+        }
+
+        @Override
+        public CompletableFuture<?> isBlocked()
+        {
+            return completedFuture(null);
+        }
+
+        @Override
+        public boolean isAwaitable()
+        {
+            return false;
+        }
+
+        @Override
+        public TupleDomain<ColumnHandle> getCurrentPredicate()
+        {
+            return TupleDomain.all();
+        }
+    };
+
+    /**
+     * Returns the columns of the table which are constrained by the dynamic filter.
+     */
+    Set<ColumnHandle> getColumnsCovered();
+
+    /**
+     * Returns a future which is completed once all the domains of the dynamic filter which can be waited for have been collected.
+     * Domains which are only collected after the splits of the table are scheduled, e.g. the domains of broadcast joins,
+     * are not waited for.
+     */
+    CompletableFuture<?> isBlocked();
+
+    /**
+     * Returns whether waiting for {@link #isBlocked()} may narrow down the predicate.
+     */
+    boolean isAwaitable();
+
+    /**
+     * Returns the predicate of the domains collected so far, or {@link TupleDomain#all()} when none has been collected.
+     */
+    TupleDomain<ColumnHandle> getCurrentPredicate();
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.spi.exchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Durable storage for the output of tasks, which allows failed tasks to be retried
+ * without restarting the tasks which produced their input.
+ * <p>
+ * Files are written to a temporary directory, and become visible to readers once the
+ * directory is committed. Directory names are relative paths separated by {@code /}.
+ * The storage must be accessible from all nodes of the cluster.
+ */
+public interface ExchangeStorage
+{
+    /**
+     * Creates a new file in the given uncommitted directory. The directory is created if needed.
+     */
+    OutputStream createFile(String directory, String fileName)
+            throws IOException;
+
+    /**
+     * Atomically renames a directory to its final name, which makes its files visible to readers.
+     *
+     * @return {@code false} if the target directory has already been committed, in which case
+     * the source directory is left unchanged
+     */
+    boolean commitDirectory(String directory, String targetDirectory)
+            throws IOException;
+
+    /**
+     * Opens a file of a committed directory.
+     *
+     * @return the contents of the file, or empty if the directory has not been committed yet
+     */
+    Optional<InputStream> openFile(String directory, String fileName)
+            throws IOException;
+
+    /**
+     * Removes the directory and all of its contents, if it exists.
+     */
+    void removeDirectory(String directory)
+            throws IOException;
+}
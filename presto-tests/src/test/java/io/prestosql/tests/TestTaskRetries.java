@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.tests;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.inject.Key;
+import io.prestosql.Session;
+import io.prestosql.exchange.ExchangeStorageManager;
+import io.prestosql.execution.TaskId;
+import io.prestosql.execution.TaskInfo;
+import io.prestosql.execution.TaskState;
+import io.prestosql.server.testing.TestingPrestoServer;
+import io.prestosql.spi.Plugin;
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.QueryId;
+import io.prestosql.spi.function.ScalarFunction;
+import io.prestosql.spi.function.SqlType;
+import io.prestosql.spi.type.StandardTypes;
+import io.prestosql.testing.DistributedQueryRunner;
+import io.prestosql.testing.MaterializedResult;
+import io.prestosql.testing.ResultWithQueryId;
+import io.prestosql.tests.tpch.TpchQueryRunnerBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableListMultimap.toImmutableListMultimap;
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static io.prestosql.SystemSessionProperties.TASK_RETRY_ENABLED;
+import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static java.nio.file.Files.createTempDirectory;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+// run single threaded, since the injected failure is shared by all queries
+@Test(singleThreaded = true)
+public class TestTaskRetries
+{
+    private static final AtomicBoolean FAILURE_INJECTED = new AtomicBoolean();
+
+    private DistributedQueryRunner queryRunner;
+    private Path baseDirectory;
+    private Session session;
+
+    @BeforeClass
+    public void setUp()
+            throws Exception
+    {
+        queryRunner = TpchQueryRunnerBuilder.builder()
+                .setNodeCount(3)
+                .build();
+        queryRunner.installPlugin(new Plugin()
+        {
+            @Override
+            public Set<Class<?>> getFunctions()
+            {
+                return ImmutableSet.of(FailOnceFunction.class);
+            }
+        });
+        session = Session.builder(queryRunner.getDefaultSession())
+                .setSystemProperty(TASK_RETRY_ENABLED, "true")
+                .build();
+    }
+
+    @BeforeMethod
+    public void setUpExchangeStorage()
+            throws IOException
+    {
+        if (baseDirectory != null) {
+            deleteRecursively(baseDirectory, ALLOW_INSECURE);
+        }
+        baseDirectory = createTempDirectory("exchange");
+        for (TestingPrestoServer server : queryRunner.getServers()) {
+            server.getInstance(Key.get(ExchangeStorageManager.class))
+                    .setConfiguredExchangeStorage("local", ImmutableMap.of("exchange.base-directory", baseDirectory.toString()));
+        }
+        FAILURE_INJECTED.set(false);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+            throws IOException
+    {
+        if (queryRunner != null) {
+            queryRunner.close();
+            queryRunner = null;
+        }
+        if (baseDirectory != null) {
+            deleteRecursively(baseDirectory, ALLOW_INSECURE);
+            baseDirectory = null;
+        }
+    }
+
+    @Test(timeOut = 60_000)
+    public void testRetryFailedTask()
+    {
+        ResultWithQueryId<MaterializedResult> result = queryRunner.executeWithQueryId(session, "SELECT count(fail_once(orderkey)) FROM orders");
+        assertEquals(result.getResult().getOnlyValue(), 15000L);
+        assertTrue(FAILURE_INJECTED.get());
+
+        // only the failed task has been rerun, on another node
+        Multimap<TaskId, TaskInfo> attempts = getTaskInfos(result.getQueryId()).stream()
+                .collect(toImmutableListMultimap(taskInfo -> taskInfo.getTaskStatus().getTaskId(), taskInfo -> taskInfo));
+        List<TaskId> retriedTasks = attempts.keySet().stream()
+                .filter(taskId -> attempts.get(taskId).size() > 1)
+                .collect(toImmutableList());
+        assertEquals(retriedTasks.size(), 1);
+        List<TaskState> states = attempts.get(retriedTasks.get(0)).stream()
+                .map(taskInfo -> taskInfo.getTaskStatus().getState())
+                .collect(toImmutableList());
+        assertEquals(states.size(), 2);
+        assertTrue(states.contains(TaskState.FAILED), "Expected a failed attempt: " + states);
+        assertTrue(states.contains(TaskState.FINISHED), "Expected a finished attempt: " + states);
+        assertTrue(attempts.size() > 2, "Expected tasks which were not retried");
+    }
+
+    @Test(timeOut = 60_000)
+    public void testSpooledOutputRemovedAfterFailure()
+            throws Exception
+    {
+        try {
+            // user errors are not retried
+            queryRunner.execute(session, "SELECT count(1 / (orderkey - orderkey)) FROM orders");
+            fail("Expected query to fail");
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Division by zero"), e.getMessage());
+        }
+
+        // the spooled output of a failed query is removed when the query completes
+        while (hasSpooledFiles()) {
+            Thread.sleep(100);
+        }
+    }
+
+    private List<TaskInfo> getTaskInfos(QueryId queryId)
+    {
+        return queryRunner.getServers().stream()
+                .flatMap(server -> server.getTaskManager().getAllTaskInfo().stream())
+                .filter(taskInfo -> taskInfo.getTaskStatus().getTaskId().getQueryId().equals(queryId))
+                .collect(toImmutableList());
+    }
+
+    private boolean hasSpooledFiles()
+            throws IOException
+    {
+        try (Stream<Path> files = Files.walk(baseDirectory)) {
+            return files.anyMatch(Files::isRegularFile);
+        }
+    }
+
+    public static final class FailOnceFunction
+    {
+        private FailOnceFunction() {}
+
+        @ScalarFunction(value = "fail_once", deterministic = false)
+        @SqlType(StandardTypes.BIGINT)
+        public static long failOnce(@SqlType(StandardTypes.BIGINT) long value)
+        {
+            if (FAILURE_INJECTED.compareAndSet(false, true)) {
+                throw new PrestoException(GENERIC_INTERNAL_ERROR, "Injected task failure");
+            }
+            return value;
+        }
+    }
+}